@@ -0,0 +1,46 @@
+#!/bin/sh
+# 在两个版本的BQL上运行同一个基准测试，比较耗时和每次操作的分配量(gc.alloc.rate.norm)。
+#
+#   ./compare.sh <旧版本> [新版本] [JMH参数...]
+#
+# 新版本默认是HEAD，JMH参数默认是OptimizeGenerateBenchmark。
+# 基准测试的jar按当前目录构建，运行时把各版本的BQL放在classpath前面，所以选择的基准测试只能用两个版本都有的接口。
+set -e
+
+if [ $# -lt 1 ]; then
+    echo "usage: $0 <base> [revision] [jmh args...]" >&2
+    exit 1
+fi
+
+base=$1
+shift
+revision=HEAD
+if [ $# -gt 0 ]; then
+    revision=$1
+    shift
+fi
+if [ $# -eq 0 ]; then
+    set -- OptimizeGenerateBenchmark
+fi
+
+cd "$(dirname "$0")"
+root=$(git rev-parse --show-toplevel)
+work=$(mktemp -d)
+trap 'git -C "$root" worktree remove --force "$work/base" >/dev/null 2>&1 || true;
+      git -C "$root" worktree remove --force "$work/revision" >/dev/null 2>&1 || true;
+      rm -rf "$work"' EXIT
+
+mvn -q -B -f "$root/pom.xml" install -DskipTests
+mvn -q -B package
+
+for name in base revision; do
+    eval rev=\$$name
+    git -C "$root" worktree add --detach "$work/$name" "$rev" >/dev/null
+    mvn -q -B -f "$work/$name/pom.xml" package -DskipTests
+done
+
+for name in base revision; do
+    eval rev=\$$name
+    echo "== $rev"
+    java -cp "$work/$name/target/BQL-1.0.jar:target/benchmarks.jar" org.openjdk.jmh.Main -prof gc "$@"
+done
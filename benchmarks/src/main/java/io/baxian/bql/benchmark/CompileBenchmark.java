@@ -0,0 +1,71 @@
+package io.baxian.bql.benchmark;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLLexer;
+import io.baxian.bql.BQLParserType;
+import io.baxian.bql.BQLPlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 词法分析和编译(解析+收集元数据)，两种parser对比。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+
+    @State(Scope.Thread)
+    public static class LexState {
+
+        @Param
+        private Corpus corpus;
+
+        private Workload workload;
+
+        @Setup
+        public void setup() throws BQLException {
+            workload = new Workload(corpus, corpus.statements());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CompileState {
+
+        @Param
+        private Corpus corpus;
+
+        @Param
+        private BQLParserType parser;
+
+        private Workload workload;
+
+        @Setup
+        public void setup() throws BQLException {
+            workload = new Workload(corpus, corpus.statements());
+        }
+    }
+
+    @Benchmark
+    public BQLLexer lex(LexState state) {
+        return BQLLexer.tokenize(state.workload.statements[state.workload.next()]);
+    }
+
+    @Benchmark
+    public BQLPlan compile(CompileState state) throws BQLException {
+        return BQLPlan.compile(state.workload.statements[state.workload.next()], state.parser);
+    }
+}
@@ -0,0 +1,162 @@
+package io.baxian.bql.benchmark;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLPlan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试用的语句集合。
+ *
+ * STATEMENTS来自单元测试用到的语句(src/test/resources/statements.bql)，去掉了有语法错误的；
+ * 其余是人为构造的大语句。
+ */
+public enum Corpus {
+
+    STATEMENTS {
+        @Override
+        List<String> statements() {
+            List<String> statements = new ArrayList<String>();
+            for (String bql : readLines("/statements.bql")) {
+                try {
+                    BQLPlan.compile(bql);
+                    statements.add(bql);
+                } catch (BQLException e) {
+                    // 测试语法错误的语句
+                }
+            }
+            return statements;
+        }
+
+        @Override
+        Map<String, Object> options(BQLPlan plan) {
+            Map<String, Object> options = new HashMap<String, Object>();
+            for (String option : plan.getOptionNames()) {
+                options.put(option, 1);
+            }
+            return options;
+        }
+    },
+
+    /**
+     * 1000个常量的IN，加上一个有1000个元素的List参数。
+     */
+    IN_1000 {
+        @Override
+        List<String> statements() {
+            StringBuilder bql = new StringBuilder("select id, name from users where id in (");
+            for (int i = 0; i < 1000; ++i) {
+                bql.append(i > 0 ? ", " : "").append(i);
+            }
+            bql.append(") and uid in (:ids) and status = :status");
+            return Collections.singletonList(bql.toString());
+        }
+
+        @Override
+        Map<String, Object> options(BQLPlan plan) {
+            List<Integer> ids = new ArrayList<Integer>();
+            for (int i = 0; i < 1000; ++i) {
+                ids.add(i);
+            }
+
+            Map<String, Object> options = new HashMap<String, Object>();
+            options.put("ids", ids);
+            options.put("status", 1);
+            return options;
+        }
+    },
+
+    INSERT_500 {
+        @Override
+        List<String> statements() {
+            StringBuilder bql = new StringBuilder("insert into logs (id, name, data) values ");
+            for (int i = 0; i < 500; ++i) {
+                bql.append(i > 0 ? ", " : "").append('(').append(i).append(", :name, 'data").append(i).append("')");
+            }
+            return Collections.singletonList(bql.toString());
+        }
+
+        @Override
+        Map<String, Object> options(BQLPlan plan) {
+            return Collections.<String, Object>singletonMap("name", "bql");
+        }
+    },
+
+    /**
+     * 8层交替嵌套的AND/OR，256个条件，部分参数不存在，需要裁剪。
+     */
+    NESTED_AND_OR {
+        @Override
+        List<String> statements() {
+            StringBuilder bql = new StringBuilder("select id from users where ");
+            appendNested(bql, 8, new int[1]);
+            return Collections.singletonList(bql.toString());
+        }
+
+        @Override
+        Map<String, Object> options(BQLPlan plan) {
+            Map<String, Object> options = new HashMap<String, Object>();
+            for (int i = 0; i < 6; ++i) {
+                options.put("p" + i, i);
+            }
+            return options;
+        }
+
+        private void appendNested(StringBuilder bql, int depth, int[] leaf) {
+            if (depth == 0) {
+                int n = leaf[0]++;
+                bql.append('c').append(n).append(" = :p").append(n % 8);
+                return;
+            }
+
+            bql.append('(');
+            appendNested(bql, depth - 1, leaf);
+            bql.append(depth % 2 == 0 ? " and " : " or ");
+            appendNested(bql, depth - 1, leaf);
+            bql.append(')');
+        }
+    };
+
+    abstract List<String> statements();
+
+    abstract Map<String, Object> options(BQLPlan plan);
+
+    List<String> selectStatements() {
+        List<String> selects = new ArrayList<String>();
+        for (String bql : statements()) {
+            if (bql.regionMatches(true, 0, "select", 0, 6)) {
+                selects.add(bql);
+            }
+        }
+        return selects;
+    }
+
+    private static List<String> readLines(String resource) {
+        List<String> lines = new ArrayList<String>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    Corpus.class.getResourceAsStream(resource), Charset.forName("UTF-8")));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        lines.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,101 @@
+package io.baxian.bql.benchmark;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLPlanCache;
+import io.baxian.bql.BQLRenderCache;
+import io.baxian.bql.ElasticSearchQueryGenerator;
+import io.baxian.bql.PreparedBQL;
+import io.baxian.bql.RenderedBQL;
+import io.baxian.bql.SQLGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编译、优化、生成整个流程。
+ *
+ * mysql和elasticSearch每次都重新解析，prepared使用编译缓存和模板模式的渲染缓存。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @State(Scope.Thread)
+    public static class SqlState {
+
+        @Param
+        private Corpus corpus;
+
+        private Workload workload;
+
+        private PreparedBQL[] prepared;
+
+        @Setup
+        public void setup() throws BQLException {
+            workload = new Workload(corpus, corpus.statements());
+
+            BQLPlanCache planCache = new BQLPlanCache();
+            BQLRenderCache renderCache = new BQLRenderCache(BQLRenderCache.DEFAULT_MAXIMUM_SIZE, true);
+            prepared = new PreparedBQL[workload.statements.length];
+            for (int i = 0; i < prepared.length; ++i) {
+                prepared[i] = new PreparedBQL(planCache.get(workload.statements[i]), renderCache);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ElasticSearchState {
+
+        @Param({"STATEMENTS", "IN_1000", "NESTED_AND_OR"})
+        private Corpus corpus;
+
+        private Workload workload;
+
+        @Setup
+        public void setup() throws BQLException {
+            workload = new Workload(corpus, corpus.selectStatements());
+        }
+    }
+
+    @Benchmark
+    public String mysql(SqlState state) throws BQLException {
+        Workload workload = state.workload;
+        int i = workload.next();
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile(workload.statements[i]);
+        compiler.optimize(workload.options[i]);
+        compiler.generate(new SQLGenerator(workload.options[i]));
+        return compiler.output();
+    }
+
+    @Benchmark
+    public RenderedBQL prepared(SqlState state) throws BQLException {
+        int i = state.workload.next();
+        return state.prepared[i].render(state.workload.options[i]);
+    }
+
+    @Benchmark
+    public String elasticSearch(ElasticSearchState state) throws BQLException {
+        Workload workload = state.workload;
+        int i = workload.next();
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile(workload.statements[i]);
+        compiler.optimize(workload.options[i]);
+        compiler.generate(new ElasticSearchQueryGenerator(workload.options[i]));
+        return compiler.output();
+    }
+}
@@ -0,0 +1,91 @@
+package io.baxian.bql.benchmark;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.ElasticSearchQueryGenerator;
+import io.baxian.bql.SQLGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只运行生成器，优化结果事先准备好。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerateBenchmark {
+
+    @State(Scope.Thread)
+    public static class SqlState {
+
+        @Param
+        private Corpus corpus;
+
+        private Workload workload;
+
+        private final SQLGenerator pooled = new SQLGenerator();
+
+        @Setup
+        public void setup() throws BQLException {
+            workload = new Workload(corpus, corpus.statements());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ElasticSearchState {
+
+        // ElasticSearchQueryGenerator只支持SELECT
+        @Param({"STATEMENTS", "IN_1000", "NESTED_AND_OR"})
+        private Corpus corpus;
+
+        private Workload workload;
+
+        @Setup
+        public void setup() throws BQLException {
+            workload = new Workload(corpus, corpus.selectStatements());
+        }
+    }
+
+    @Benchmark
+    public String sql(SqlState state) {
+        Workload workload = state.workload;
+        int i = workload.next();
+        SQLGenerator generator = new SQLGenerator(workload.options[i]);
+        generator.setRewrites(workload.rewrites[i]);
+        workload.plans[i].getAst().apply(generator);
+        return generator.output();
+    }
+
+    @Benchmark
+    public String sqlReused(SqlState state) {
+        Workload workload = state.workload;
+        int i = workload.next();
+        SQLGenerator generator = state.pooled;
+        generator.reset(workload.options[i]);
+        generator.setRewrites(workload.rewrites[i]);
+        workload.plans[i].getAst().apply(generator);
+        return generator.output();
+    }
+
+    @Benchmark
+    public String elasticSearch(ElasticSearchState state) {
+        Workload workload = state.workload;
+        int i = workload.next();
+        ElasticSearchQueryGenerator generator = new ElasticSearchQueryGenerator(workload.options[i]);
+        generator.setRewrites(workload.rewrites[i]);
+        workload.plans[i].getAst().apply(generator);
+        return generator.output();
+    }
+}
@@ -0,0 +1,47 @@
+package io.baxian.bql.benchmark;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOptimizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只运行优化器：裁剪条件、收集绑定值。
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizeBenchmark {
+
+    @Param
+    private Corpus corpus;
+
+    private Workload workload;
+
+    @Setup
+    public void setup() throws BQLException {
+        workload = new Workload(corpus, corpus.statements());
+    }
+
+    @Benchmark
+    public BQLOptimizer optimize() {
+        int i = workload.next();
+        BQLOptimizer optimizer = new BQLOptimizer(workload.options[i]);
+        workload.plans[i].getAst().apply(optimizer);
+        return optimizer;
+    }
+}
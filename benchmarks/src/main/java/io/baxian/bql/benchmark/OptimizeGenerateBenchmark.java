@@ -0,0 +1,86 @@
+package io.baxian.bql.benchmark;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOptimizer;
+import io.baxian.bql.ElasticSearchQueryGenerator;
+import io.baxian.bql.SQLGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 优化加生成，语句事先编译好。
+ *
+ * 只用到优化器不修改语法树之后就有的接口，可以用compare.sh在两个版本上运行，比较同一组语句的耗时和分配量。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizeGenerateBenchmark {
+
+    @State(Scope.Thread)
+    public static class SqlState {
+
+        @Param({"STATEMENTS"})
+        private Corpus corpus;
+
+        private Workload workload;
+
+        @Setup
+        public void setup() throws BQLException {
+            workload = new Workload(corpus, corpus.statements());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ElasticSearchState {
+
+        @Param({"STATEMENTS"})
+        private Corpus corpus;
+
+        private Workload workload;
+
+        @Setup
+        public void setup() throws BQLException {
+            workload = new Workload(corpus, corpus.selectStatements());
+        }
+    }
+
+    @Benchmark
+    public String sql(SqlState state) {
+        Workload workload = state.workload;
+        int i = workload.next();
+        BQLOptimizer optimizer = new BQLOptimizer(workload.options[i]);
+        workload.plans[i].getAst().apply(optimizer);
+
+        SQLGenerator generator = new SQLGenerator(workload.options[i]);
+        generator.setRewrites(optimizer.getRewrites());
+        workload.plans[i].getAst().apply(generator);
+        return generator.output();
+    }
+
+    @Benchmark
+    public String elasticSearch(ElasticSearchState state) {
+        Workload workload = state.workload;
+        int i = workload.next();
+        BQLOptimizer optimizer = new BQLOptimizer(workload.options[i]);
+        workload.plans[i].getAst().apply(optimizer);
+
+        ElasticSearchQueryGenerator generator = new ElasticSearchQueryGenerator(workload.options[i]);
+        generator.setRewrites(optimizer.getRewrites());
+        workload.plans[i].getAst().apply(generator);
+        return generator.output();
+    }
+}
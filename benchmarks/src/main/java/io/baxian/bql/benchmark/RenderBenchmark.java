@@ -0,0 +1,105 @@
+package io.baxian.bql.benchmark;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.BQLRenderCache;
+import io.baxian.bql.PreparedBQL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一个语句分别用SQLGenerator解释执行、模板和专用渲染函数生成。
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    private static final String BQL = "select id, name from users partition (:p) where id in (:ids) and name = :name"
+            + " and (age > :age or status = 1) order by id desc limit :offset, :count";
+
+    @Param({"4", "64"})
+    private int ids;
+
+    private Map<String, Object> options;
+
+    private PreparedBQL interpreted;
+
+    private PreparedBQL template;
+
+    private PreparedBQL specialized;
+
+    private final StringBuilder sql = new StringBuilder();
+
+    private final List<BQLOption> values = new ArrayList<BQLOption>();
+
+    @Setup
+    public void setup() throws BQLException {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < ids; ++i) {
+            list.add(i);
+        }
+
+        options = new HashMap<String, Object>();
+        options.put("p", "p0");
+        options.put("ids", list);
+        options.put("name", "bql");
+        options.put("age", 18);
+        options.put("offset", 0);
+        options.put("count", 20);
+
+        BQLPlan plan = BQLPlan.compile(BQL);
+        interpreted = new PreparedBQL(plan);
+
+        BQLRenderCache templateCache = new BQLRenderCache(16, true);
+        templateCache.setSpecialization(0, 0);
+        template = new PreparedBQL(plan, templateCache);
+
+        BQLRenderCache specializedCache = new BQLRenderCache(16, true);
+        specializedCache.setSpecialization(1, 1);
+        specialized = new PreparedBQL(plan, specializedCache);
+        specialized.render(options);
+        specialized.render(options);
+    }
+
+    @Benchmark
+    public void interpreted(Blackhole bh) throws BQLException {
+        bh.consume(interpreted.render(options));
+    }
+
+    @Benchmark
+    public void template(Blackhole bh) throws BQLException {
+        sql.setLength(0);
+        values.clear();
+        template.render(options, sql, values);
+        bh.consume(sql);
+    }
+
+    @Benchmark
+    public void specialized(Blackhole bh) throws BQLException {
+        sql.setLength(0);
+        values.clear();
+        specialized.render(options, sql, values);
+        bh.consume(sql);
+    }
+}
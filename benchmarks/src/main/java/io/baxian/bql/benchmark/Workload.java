@@ -0,0 +1,59 @@
+package io.baxian.bql.benchmark;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOptimizer;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.BQLRewrites;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译好的语句、参数和优化结果，基准测试按顺序轮流使用。
+ */
+final class Workload {
+
+    final String[] statements;
+
+    final BQLPlan[] plans;
+
+    final Map<String, Object>[] options;
+
+    final BQLRewrites[] rewrites;
+
+    private int next;
+
+    @SuppressWarnings("unchecked")
+    Workload(Corpus corpus, List<String> statements) throws BQLException {
+        int size = statements.size();
+        if (size == 0) {
+            throw new IllegalArgumentException(corpus + " has no statements");
+        }
+
+        this.statements = statements.toArray(new String[size]);
+        this.plans = new BQLPlan[size];
+        this.options = new Map[size];
+        this.rewrites = new BQLRewrites[size];
+
+        for (int i = 0; i < size; ++i) {
+            plans[i] = BQLPlan.compile(this.statements[i]);
+            options[i] = corpus.options(plans[i]);
+
+            BQLOptimizer optimizer = new BQLOptimizer(options[i]);
+            plans[i].getAst().apply(optimizer);
+            if (optimizer.getError() != null) {
+                throw optimizer.getError();
+            }
+            rewrites[i] = optimizer.getRewrites();
+        }
+    }
+
+    /**
+     * @return 下一个语句的下标
+     */
+    int next() {
+        int i = next;
+        next = i + 1 == statements.length ? 0 : i + 1;
+        return i;
+    }
+}
@@ -0,0 +1,28 @@
+package io.baxian.bql;
+
+/**
+ * BQL入口。
+ *
+ * prepare()返回的{@link PreparedBQL}共用进程内的编译缓存和渲染缓存。
+ */
+public final class BQL {
+
+    private static final BQLPlanCache PLAN_CACHE = new BQLPlanCache();
+
+    private static final BQLRenderCache RENDER_CACHE = new BQLRenderCache();
+
+    private BQL() {
+    }
+
+    public static PreparedBQL prepare(String bql) throws BQLException {
+        return new PreparedBQL(PLAN_CACHE.get(bql), RENDER_CACHE);
+    }
+
+    public static BQLPlanCache getPlanCache() {
+        return PLAN_CACHE;
+    }
+
+    public static BQLRenderCache getRenderCache() {
+        return RENDER_CACHE;
+    }
+}
@@ -0,0 +1,275 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.node.*;
+
+import java.util.*;
+
+/**
+ * 规范化WHERE条件，所有改写在SQL的三值逻辑下都是等价的：
+ * <ul>
+ * <li>NOT推到叶子条件：De Morgan定律，NOT NOT去掉，=和!=、&lt;和&gt;=、&gt;和&lt;=、IN和NOT IN、IS和IS NOT互换，
+ * BETWEEN没有对应的运算符，保留NOT</li>
+ * <li>嵌套的AND、OR展开成一串，OR中同一列上的=和IN合并成一个IN，AND中的!=和NOT IN合并成一个NOT IN</li>
+ * </ul>
+ * 不把条件展开成CNF或DNF，改写后的条件个数不会增加。
+ *
+ * 新建的节点通过{@link BQLRewrites#reference(PExpr)}引用原来的节点，语法树保持不变。
+ */
+final class BQLBooleanNormalizer {
+
+    private final BQLRewrites rewrites;
+
+    private final Map<PExpr, int[]> predicateOptions;
+
+    /**
+     * @param predicateOptions 条件的绑定值下标，新建的条件继承原来条件的绑定值
+     */
+    BQLBooleanNormalizer(BQLRewrites rewrites, Map<PExpr, int[]> predicateOptions) {
+        this.rewrites = rewrites;
+        this.predicateOptions = predicateOptions;
+    }
+
+    PExpr normalize(PExpr expr) {
+        return normalize(expr, false);
+    }
+
+    private PExpr normalize(PExpr expr, boolean negate) {
+        if (expr instanceof ANotExpr) {
+            return normalize(rewrites.resolve(((ANotExpr) expr).getExpr()), !negate);
+        } else if (expr instanceof AConditionExpr) {
+            return normalizeCondition((AConditionExpr) expr, negate);
+        } else if (!negate) {
+            return expr;
+        }
+
+        PExpr inverted = invert(expr);
+        return inverted != null ? inverted : new ANotExpr(rewrites.reference(expr));
+    }
+
+    private PExpr normalizeCondition(AConditionExpr condition, boolean negate) {
+        boolean and = condition.getOp() instanceof AAndOp;
+        List<PExpr> operands = new ArrayList<PExpr>();
+        flatten(condition, and, operands);
+
+        // NOT (a AND b)写成NOT a OR NOT b
+        boolean resultAnd = and != negate;
+        List<PExpr> normalized = new ArrayList<PExpr>(operands.size());
+        for (PExpr operand : operands) {
+            PExpr child = normalize(operand, negate);
+            if (child != operand && isCondition(child, resultAnd)) {
+                flatten(child, resultAnd, normalized);
+            } else {
+                normalized.add(child);
+            }
+        }
+
+        normalized = merge(normalized, resultAnd);
+        if (!negate && normalized.equals(operands)) {
+            return condition;
+        }
+        return chain(normalized, resultAnd);
+    }
+
+    /**
+     * OR中同一列的=和IN合并成IN，AND中同一列的!=和NOT IN合并成NOT IN，合并后的条件放在第一个条件的位置。
+     */
+    private List<PExpr> merge(List<PExpr> operands, boolean and) {
+        Map<String, List<PExpr>> columns = new LinkedHashMap<String, List<PExpr>>();
+        boolean mergeable = false;
+        for (PExpr operand : operands) {
+            PColumnComponents column = listColumn(operand, !and);
+            if (column != null) {
+                String key = BQLNodes.key(column, rewrites);
+                List<PExpr> group = columns.get(key);
+                if (group == null) {
+                    group = new ArrayList<PExpr>();
+                    columns.put(key, group);
+                } else {
+                    mergeable = true;
+                }
+                group.add(operand);
+            }
+        }
+        if (!mergeable) {
+            return operands;
+        }
+
+        Map<PExpr, PExpr> merged = new IdentityHashMap<PExpr, PExpr>();
+        for (List<PExpr> group : columns.values()) {
+            if (group.size() < 2) {
+                continue;
+            }
+
+            PColumnComponents column = (PColumnComponents) listColumn(group.get(0), !and).clone();
+            List<PValue> values = new ArrayList<PValue>();
+            List<int[]> indexes = new ArrayList<int[]>();
+            for (PExpr operand : group) {
+                collectListValues(operand, values);
+                indexes.add(predicateOptions.get(operand));
+                merged.put(operand, null);
+            }
+
+            PExpr list = and ? new ANotInExpr(column, values) : new AInExpr(column, values);
+            register(list, indexes.toArray(new int[indexes.size()][]));
+            merged.put(group.get(0), list);
+        }
+
+        List<PExpr> result = new ArrayList<PExpr>(operands.size());
+        for (PExpr operand : operands) {
+            if (!merged.containsKey(operand)) {
+                result.add(operand);
+            } else if (merged.get(operand) != null) {
+                result.add(merged.get(operand));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param in true时找column = value和IN，false时找column != value和NOT IN
+     * @return 可以合并的条件的列，不能合并时返回null
+     */
+    private PColumnComponents listColumn(PExpr expr, boolean in) {
+        if (expr instanceof ABinaryExpr) {
+            ABinaryExpr binary = (ABinaryExpr) expr;
+            if (in ? !(binary.getOp() instanceof AEqOp) : !(binary.getOp() instanceof ANotEqOp)) {
+                return null;
+            }
+
+            PValue left = rewrites.resolve(binary.getLeft());
+            if (left instanceof AColumnValue) {
+                return ((AColumnValue) left).getColumnComponents();
+            }
+            PValue right = rewrites.resolve(binary.getRight());
+            if (right instanceof AColumnValue) {
+                return ((AColumnValue) right).getColumnComponents();
+            }
+            return null;
+        } else if (in && expr instanceof AInExpr) {
+            return ((AInExpr) expr).getColumnComponents();
+        } else if (!in && expr instanceof ANotInExpr) {
+            return ((ANotInExpr) expr).getColumnComponents();
+        }
+        return null;
+    }
+
+    private void collectListValues(PExpr expr, List<PValue> values) {
+        if (expr instanceof ABinaryExpr) {
+            ABinaryExpr binary = (ABinaryExpr) expr;
+            boolean columnLeft = rewrites.resolve(binary.getLeft()) instanceof AColumnValue;
+            values.add(rewrites.reference(columnLeft ? binary.getRight() : binary.getLeft()));
+        } else {
+            List<PValue> list = expr instanceof AInExpr ? ((AInExpr) expr).getValue() : ((ANotInExpr) expr).getValue();
+            for (PValue value : list) {
+                values.add(rewrites.reference(value));
+            }
+        }
+    }
+
+    /**
+     * @return NOT expr对应的叶子条件，没有对应的运算符时返回null
+     */
+    private PExpr invert(PExpr expr) {
+        PExpr inverted;
+        if (expr instanceof ABinaryExpr) {
+            ABinaryExpr binary = (ABinaryExpr) expr;
+            POp op = invert(binary.getOp());
+            if (op == null) {
+                return null;
+            }
+            inverted = new ABinaryExpr(op, rewrites.reference(binary.getLeft()), rewrites.reference(binary.getRight()));
+        } else if (expr instanceof AInExpr) {
+            AInExpr in = (AInExpr) expr;
+            inverted = new ANotInExpr((PColumnComponents) in.getColumnComponents().clone(), references(in.getValue()));
+        } else if (expr instanceof ANotInExpr) {
+            ANotInExpr notIn = (ANotInExpr) expr;
+            inverted = new AInExpr((PColumnComponents) notIn.getColumnComponents().clone(), references(notIn.getValue()));
+        } else if (expr instanceof AIsExpr) {
+            AIsExpr is = (AIsExpr) expr;
+            inverted = new AIsNotExpr((PColumnComponents) is.getColumnComponents().clone(), rewrites.reference(is.getValue()));
+        } else if (expr instanceof AIsNotExpr) {
+            AIsNotExpr isNot = (AIsNotExpr) expr;
+            inverted = new AIsExpr((PColumnComponents) isNot.getColumnComponents().clone(), rewrites.reference(isNot.getValue()));
+        } else {
+            return null;
+        }
+
+        register(inverted, predicateOptions.get(expr));
+        return inverted;
+    }
+
+    private static POp invert(POp op) {
+        if (op instanceof AEqOp) {
+            return new ANotEqOp();
+        } else if (op instanceof ANotEqOp) {
+            return new AEqOp();
+        } else if (op instanceof ALtOp) {
+            return new AGteqOp();
+        } else if (op instanceof AGteqOp) {
+            return new ALtOp();
+        } else if (op instanceof AGtOp) {
+            return new ALteqOp();
+        } else if (op instanceof ALteqOp) {
+            return new AGtOp();
+        }
+        return null;
+    }
+
+    private List<PValue> references(List<PValue> values) {
+        List<PValue> result = new ArrayList<PValue>(values.size());
+        for (PValue value : values) {
+            result.add(rewrites.reference(value));
+        }
+        return result;
+    }
+
+    private void register(PExpr expr, int[]... indexes) {
+        int size = 0;
+        for (int[] part : indexes) {
+            size += part != null ? part.length : 0;
+        }
+        if (size == 0) {
+            return;
+        }
+
+        int[] result = new int[size];
+        int i = 0;
+        for (int[] part : indexes) {
+            if (part != null) {
+                System.arraycopy(part, 0, result, i, part.length);
+                i += part.length;
+            }
+        }
+        predicateOptions.put(expr, result);
+    }
+
+    /**
+     * 左结合的AND或OR链，和解析出的语法树形状相同。
+     */
+    private PExpr chain(List<PExpr> operands, boolean and) {
+        PExpr result = operands.get(0);
+        for (int i = 1; i < operands.size(); ++i) {
+            result = new AConditionExpr(and ? new AAndOp() : new AOrOp(),
+                    rewrites.reference(result), rewrites.reference(operands.get(i)));
+        }
+        return result;
+    }
+
+    private void flatten(PExpr expr, boolean and, List<PExpr> out) {
+        if (isCondition(expr, and)) {
+            AConditionExpr condition = (AConditionExpr) expr;
+            flatten(rewrites.resolve(condition.getLeft()), and, out);
+            flatten(rewrites.resolve(condition.getRight()), and, out);
+        } else {
+            out.add(expr);
+        }
+    }
+
+    private static boolean isCondition(PExpr expr, boolean and) {
+        if (!(expr instanceof AConditionExpr)) {
+            return false;
+        }
+        POp op = ((AConditionExpr) expr).getOp();
+        return and ? op instanceof AAndOp : op instanceof AOrOp;
+    }
+}
@@ -0,0 +1,384 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.analysis.DepthFirstAdapter;
+import io.baxian.bql.framework.node.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把IN中很长的List参数拆成多段，每段生成一条语句并行执行，再合并结果：
+ * <pre>
+ * BQLChunkedQuery query = new BQLChunkedQuery("select id, name from user where id in (:ids) order by name asc limit 10", "ids");
+ * query.setChunkSize(1000);
+ * List&lt;Map&lt;String, Object&gt;&gt; rows = query.execute(options, runner, executor);
+ * </pre>
+ * 只支持SELECT，List参数只能在一个IN中出现一次并且是这个IN唯一的值，这个IN和其他条件之间只有AND，这样每行只属于一段。
+ * 参数去重后再拆分；每段的结果按ORDER BY重新排序，有LIMIT时每段取offset + count行，合并后再取LIMIT。
+ * 合并时从结果集中取排序值，ORDER BY的列要在SELECT中。
+ *
+ * 字符串在MySQL中按列的collation排序，通常不区分大小写并忽略末尾的空格，默认的String.compareTo按UTF-16编码比较，
+ * 合并后的顺序以及LIMIT留下的行可能和不拆分时不同。按字符串排序时用{@link #setCollation(Comparator)}指定一致的比较方式。
+ * 聚合函数、DISTINCT和GROUP BY的结果不能跨段合并，不支持。
+ */
+public class BQLChunkedQuery {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private final String bql;
+
+    private final String listOption;
+
+    private final BQLPlanCache planCache = new BQLPlanCache(1);
+
+    private final ASelectStatement statement;
+
+    private final List<String> orderByKeys = new ArrayList<String>();
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private BQLOptimizerConfig optimizerConfig;
+
+    private Comparator<String> collation;
+
+    /**
+     * @param listOption IN中要拆分的List参数名
+     * @throws IllegalArgumentException 语句不能按listOption拆分
+     */
+    public BQLChunkedQuery(String bql, String listOption) throws BQLException {
+        this.bql = bql;
+        this.listOption = listOption;
+
+        BQLPlan plan = planCache.get(bql);
+        PStatement statement = plan.getAst().getPStatement();
+        if (!(statement instanceof ASelectStatement)) {
+            throw new IllegalArgumentException("only SELECT can be chunked: " + bql);
+        }
+        this.statement = (ASelectStatement) statement;
+        checkSplittable(plan);
+
+        for (POrderByItem item : this.statement.getOrderByItems()) {
+            String column = ((AColumnComponents) ((AOrderByItem) item).getColumn()).getColumn().getText();
+            String key = resultSetName(plan.getMetadata(), column);
+            if (key == null) {
+                throw new IllegalArgumentException(
+                        "ORDER BY column " + column + " must be selected to merge chunks: " + bql);
+            }
+            orderByKeys.add(key);
+        }
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 同时执行的语句数上限。
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public void setOptimizerConfig(BQLOptimizerConfig optimizerConfig) {
+        this.optimizerConfig = optimizerConfig;
+    }
+
+    /**
+     * 合并时字符串排序值的比较方式，需要和排序列的collation一致，为null时用String.compareTo。
+     */
+    public void setCollation(Comparator<String> collation) {
+        this.collation = collation;
+    }
+
+    /**
+     * 每段生成一条语句，List参数为空时返回空列表。
+     */
+    public List<RenderedBQL> render(Map<String, Object> options) throws BQLException {
+        Object value = options.get(listOption);
+        if (!(value instanceof Collection)) {
+            throw new InvalidOptionException(listOption, value);
+        }
+        List<Object> values = new ArrayList<Object>(new LinkedHashSet<Object>((Collection<?>) value));
+
+        long[] limit = limit(options);
+        List<RenderedBQL> chunks = new ArrayList<RenderedBQL>((values.size() + chunkSize - 1) / chunkSize);
+        for (int from = 0; from < values.size(); from += chunkSize) {
+            Map<String, Object> chunkOptions = new HashMap<String, Object>(options);
+            chunkOptions.put(listOption, values.subList(from, Math.min(from + chunkSize, values.size())));
+
+            BQLCompiler compiler = new BQLCompiler(planCache);
+            compiler.setOptimizerConfig(optimizerConfig);
+            if (limit != null) {
+                compiler.setLimitOverride(limit[0] + limit[1]);
+            }
+            compiler.compile(bql);
+            compiler.optimize(chunkOptions);
+            compiler.generate(new SQLGenerator(chunkOptions));
+            chunks.add(new RenderedBQL(compiler.output(), compiler.getOptions()));
+        }
+        return chunks;
+    }
+
+    /**
+     * @param executor 为null时在当前线程依次执行
+     * @throws BQLException 某一段执行失败，这时还没开始的段不再执行
+     */
+    public List<Map<String, Object>> execute(Map<String, Object> options, final BQLQueryRunner runner,
+                                             ExecutorService executor) throws BQLException {
+        final List<RenderedBQL> chunks = render(options);
+        final List<List<Map<String, Object>>> results = new ArrayList<List<Map<String, Object>>>(
+                Collections.<List<Map<String, Object>>>nCopies(chunks.size(), null));
+
+        if (executor == null || chunks.size() <= 1) {
+            for (int i = 0; i < chunks.size(); ++i) {
+                results.set(i, query(runner, chunks.get(i)));
+            }
+        } else {
+            // 每个worker依次领取下一段，同时执行的语句不超过parallelism
+            final AtomicInteger next = new AtomicInteger();
+            List<Future<?>> workers = new ArrayList<Future<?>>();
+            for (int i = 0; i < Math.min(parallelism, chunks.size()); ++i) {
+                workers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int chunk = next.getAndIncrement(); chunk < chunks.size(); chunk = next.getAndIncrement()) {
+                            List<Map<String, Object>> rows = runner.query(chunks.get(chunk));
+                            synchronized (results) {
+                                results.set(chunk, rows);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            await(workers, next, chunks.size());
+        }
+        return merge(results, limit(options));
+    }
+
+    private static List<Map<String, Object>> query(BQLQueryRunner runner, RenderedBQL chunk) throws BQLException {
+        try {
+            return runner.query(chunk);
+        } catch (Exception e) {
+            throw new BQLException(e);
+        }
+    }
+
+    private static void await(List<Future<?>> workers, AtomicInteger next, int chunks) throws BQLException {
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            next.set(chunks);
+            throw new BQLException(e.getCause());
+        } catch (InterruptedException e) {
+            next.set(chunks);
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new BQLException(e);
+        }
+    }
+
+    /**
+     * @throws BQLException 排序列的值不能比较，比如不同的段返回了字符串和数字
+     */
+    private List<Map<String, Object>> merge(List<List<Map<String, Object>>> results, long[] limit)
+            throws BQLException {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (List<Map<String, Object>> result : results) {
+            if (result != null) {
+                rows.addAll(result);
+            }
+        }
+
+        if (!orderByKeys.isEmpty()) {
+            // 每段已经有序，TimSort按段归并
+            try {
+                Collections.sort(rows, new RowComparator());
+            } catch (IllegalArgumentException e) {
+                throw new BQLException(bql, null, null, e);
+            }
+        }
+        if (limit != null) {
+            int from = (int) Math.min(limit[0], rows.size());
+            int to = (int) Math.min(limit[0] + limit[1], rows.size());
+            rows = new ArrayList<Map<String, Object>>(rows.subList(from, to));
+        }
+        return rows;
+    }
+
+    /**
+     * @return offset和count，没有LIMIT或者LIMIT的参数不存在时返回null
+     */
+    private long[] limit(Map<String, Object> options) throws InvalidOptionException {
+        ALimit limit = (ALimit) statement.getLimit();
+        if (limit.getCount() == null) {
+            return null;
+        }
+
+        Number offset = limit.getOffset() != null ? limitValue(limit.getOffset(), options) : Long.valueOf(0);
+        Number count = limitValue(limit.getCount(), options);
+        if (offset == null || count == null) {
+            return null;
+        }
+        return new long[]{offset.longValue(), count.longValue()};
+    }
+
+    private static Number limitValue(PValue value, Map<String, Object> options) throws InvalidOptionException {
+        if (value instanceof AIntValue) {
+            return Long.valueOf(((AIntValue) value).getInt().getText());
+        } else if (value instanceof AOptionValue) {
+            String option = ((AOptionValue) value).getIdentifier().getText();
+            Object optionValue = options.get(option);
+            if (optionValue != null && !(optionValue instanceof Number)) {
+                throw new InvalidOptionException(option, optionValue);
+            }
+            return (Number) optionValue;
+        }
+        return null;
+    }
+
+    private void checkSplittable(BQLPlan plan) {
+        if (!statement.getGroupByColumns().isEmpty()) {
+            throw new IllegalArgumentException("GROUP BY can't be merged across chunks: " + bql);
+        }
+        for (PColumn column : statement.getColumns()) {
+            AColumn aColumn = (AColumn) column;
+            if (aColumn.getFunction() != null || aColumn.getDistinct() != null) {
+                throw new IllegalArgumentException("aggregates and DISTINCT can't be merged across chunks: " + bql);
+            }
+        }
+
+        final int[] occurrences = new int[1];
+        plan.getAst().apply(new DepthFirstAdapter() {
+            @Override
+            public void caseAOptionValue(AOptionValue node) {
+                if (node.getIdentifier().getText().equals(listOption)) {
+                    ++occurrences[0];
+                }
+            }
+        });
+        if (occurrences[0] != 1 || !isConjunctIn(statement.getWhereCondition())) {
+            throw new IllegalArgumentException(
+                    "option " + listOption + " must appear once as the only value of an IN joined to the WHERE by AND: "
+                            + bql);
+        }
+    }
+
+    private boolean isConjunctIn(PExpr expr) {
+        if (expr instanceof AConditionExpr) {
+            AConditionExpr condition = (AConditionExpr) expr;
+            return condition.getOp() instanceof AAndOp
+                    && (isConjunctIn(condition.getLeft()) || isConjunctIn(condition.getRight()));
+        } else if (expr instanceof AInExpr) {
+            // IN中有其他值时每段都会查出这些值的行，List为空时也应该查出
+            List<PValue> values = ((AInExpr) expr).getValue();
+            return values.size() == 1 && values.get(0) instanceof AOptionValue
+                    && ((AOptionValue) values.get(0)).getIdentifier().getText().equals(listOption);
+        }
+        return false;
+    }
+
+    /**
+     * 排序列在SELECT中有别名时结果集中用别名；ORDER BY也可以直接写别名。
+     *
+     * @return 结果集中的列名，排序列不在SELECT中时返回null，这时合并时取不到排序值
+     */
+    private static String resultSetName(BQLMetadata metadata, String column) {
+        for (BQLColumn selected : metadata.getColumns()) {
+            if (column.equalsIgnoreCase(selected.getAlias())) {
+                return selected.getAlias();
+            }
+        }
+        for (BQLColumn selected : metadata.getColumns()) {
+            if (column.equalsIgnoreCase(selected.getName())) {
+                return selected.getNameForResultSet();
+            }
+        }
+        return null;
+    }
+
+    private class RowComparator implements Comparator<Map<String, Object>> {
+
+        @Override
+        public int compare(Map<String, Object> a, Map<String, Object> b) {
+            List<POrderByItem> items = statement.getOrderByItems();
+            for (int i = 0; i < items.size(); ++i) {
+                String key = orderByKeys.get(i);
+                int result = compareValues(key, get(a, key), get(b, key));
+                if (result != 0) {
+                    return ((AOrderByItem) items.get(i)).getOrder() instanceof ADescOrder ? -result : result;
+                }
+            }
+            return 0;
+        }
+
+        private Object get(Map<String, Object> row, String key) {
+            if (row.containsKey(key)) {
+                return row.get(key);
+            }
+            for (Map.Entry<String, Object> entry : row.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(key)) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 和MySQL一样NULL最小；不同类型的数字(比如不同驱动返回的Integer和Long)按数值比较；字符串按collation比较。
+         *
+         * @throws IllegalArgumentException 两个值不能比较
+         */
+        @SuppressWarnings("unchecked")
+        private int compareValues(String key, Object a, Object b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            if (collation != null && a instanceof String && b instanceof String) {
+                return collation.compare((String) a, (String) b);
+            }
+            if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+                Comparable<?> x = BQLPartitioning.normalize(a);
+                Comparable<?> y = BQLPartitioning.normalize(b);
+                if (x != null && y != null) {
+                    a = x;
+                    b = y;
+                }
+            }
+            if (a instanceof Comparable) {
+                try {
+                    return ((Comparable<Object>) a).compareTo(b);
+                } catch (ClassCastException e) {
+                    // 下面报告列名
+                }
+            }
+            throw new IllegalArgumentException("ORDER BY column " + key + " has values that can't be compared: "
+                    + a.getClass().getName() + " and " + b.getClass().getName());
+        }
+    }
+}
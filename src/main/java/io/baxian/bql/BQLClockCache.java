@@ -0,0 +1,130 @@
+package io.baxian.bql;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有容量上限的并发缓存，超过容量时按CLOCK(second chance)淘汰。
+ *
+ * 命中只设置访问标记，读路径不加锁；淘汰时跳过最近访问过的条目。
+ */
+class BQLClockCache<K, V> {
+
+    private final int maximumSize;
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+
+    private final Queue<K> clock = new ConcurrentLinkedQueue<K>();
+
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    BQLClockCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.value;
+    }
+
+    /**
+     * @return 已经缓存的值，或者新放入的value
+     */
+    V putIfAbsent(K key, V value) {
+        Entry<V> existing = entries.putIfAbsent(key, new Entry<V>(value));
+        if (existing != null) {
+            return existing.value;
+        }
+
+        clock.add(key);
+        if (entries.size() > maximumSize) {
+            evict();
+        }
+
+        return value;
+    }
+
+    void invalidateAll() {
+        synchronized (evictionLock) {
+            entries.clear();
+            clock.clear();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int getMaximumSize() {
+        return maximumSize;
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            while (entries.size() > maximumSize) {
+                K key = clock.poll();
+                if (key == null) {
+                    // invalidateAll()与并发的putIfAbsent()交错时可能有条目不在clock里，重新收集一遍
+                    clock.addAll(entries.keySet());
+                    continue;
+                }
+
+                Entry<V> entry = entries.get(key);
+                if (entry == null) {
+                    continue;
+                }
+
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    clock.add(key);
+                } else if (entries.remove(key, entry)) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private static class Entry<V> {
+
+        final V value;
+
+        volatile boolean referenced;
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
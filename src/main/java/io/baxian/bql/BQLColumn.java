@@ -12,7 +12,7 @@ public class BQLColumn {
         return name;
     }
 
-    public void setName(String name) {
+    void setName(String name) {
         this.name = name;
     }
 
@@ -20,7 +20,7 @@ public class BQLColumn {
         return alias;
     }
 
-    public void setAlias(String alias) {
+    void setAlias(String alias) {
         this.alias = alias;
     }
 
@@ -28,7 +28,7 @@ public class BQLColumn {
         return table;
     }
 
-    public void setTable(String table) {
+    void setTable(String table) {
         this.table = table;
     }
 
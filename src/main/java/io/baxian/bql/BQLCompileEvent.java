@@ -0,0 +1,14 @@
+package io.baxian.bql;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * BQLCompiler.compile()。
+ */
+@Name("io.baxian.bql.Compile")
+@Label("BQL Compile")
+@Description("Lexing, parsing and metadata collection, also recorded on plan cache hits. optionCount is the number of options referenced.")
+final class BQLCompileEvent extends BQLEvent {
+}
@@ -1,12 +1,10 @@
 package io.baxian.bql;
 
-import io.baxian.bql.framework.lexer.Lexer;
 import io.baxian.bql.framework.node.Start;
-import io.baxian.bql.framework.parser.Parser;
 
-import java.io.BufferedReader;
-import java.io.PushbackReader;
-import java.io.StringReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -15,35 +13,85 @@ import java.util.Map;
  */
 public class BQLCompiler {
 
+    private final BQLPlanCache planCache;
+
     private String message;
 
     private String output;
 
+    private BQLGenerator generator;
+
     private List<BQLOption> optimizedOptions;
 
     private BQLMetadata metadata;
 
+    private BQLPlan plan;
+
     private Start ast;
 
-    private Start optimzedAst;
+    private BQLRewrites rewrites;
+
+    private BQLParserType parserType = BQLParserType.SABLECC;
+
+    private BQLCompilerListener listener;
+
+    private BQLOptimizerConfig optimizerConfig;
+
+    private boolean provablyEmpty;
+
+    private List<String> keysetColumns;
+
+    private Long limitOverride;
 
     public BQLCompiler() {
+        this(null);
+    }
+
+    /**
+     * @param planCache 为null时每次compile都重新解析
+     */
+    public BQLCompiler(BQLPlanCache planCache) {
+        this.planCache = planCache;
+    }
+
+    public void setParserType(BQLParserType parserType) {
+        this.parserType = parserType;
+    }
+
+    /**
+     * @param optimizerConfig 为null时不打开优化器的可选功能
+     */
+    public void setOptimizerConfig(BQLOptimizerConfig optimizerConfig) {
+        this.optimizerConfig = optimizerConfig;
+    }
+
+    /**
+     * @param listener 接收每个阶段的耗时和计数，为null时不计时
+     */
+    public void setListener(BQLCompilerListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * SELECT有LIMIT时换成LIMIT count，去掉offset，{@link BQLChunkedQuery}每段取offset + count行时使用。
+     */
+    void setLimitOverride(Long limitOverride) {
+        this.limitOverride = limitOverride;
     }
 
     public void compile(String bql) throws BQLException {
+        BQLCompileEvent event = BQLEvents.AVAILABLE ? new BQLCompileEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
         message = null;
-        PushbackReader reader = new PushbackReader(new BufferedReader(new StringReader(bql)));
-        Lexer lexer = new Lexer(reader);
-        Parser parser = new Parser(lexer);
-        try {
-            ast = parser.parse();
+        plan = planCache != null ? planCache.get(bql, parserType, listener) : BQLPlan.compile(bql, parserType, listener);
+        ast = plan.getAst();
+        metadata = plan.getMetadata();
 
-            // 收集metadata
-            BQLMetadataCollector metadataCollector = new BQLMetadataCollector();
-            ast.apply(metadataCollector);
-            metadata = metadataCollector.getMetadata();
-        } catch (Exception e) {
-            throw new SyntaxException(bql, e.getMessage());
+        if (event != null) {
+            event.end(plan, plan.getOptionNames().size(), 0);
         }
     }
 
@@ -52,31 +100,163 @@ public class BQLCompiler {
     }
 
     public void optimize(Map<String, Object> options) throws BQLException {
-        optimzedAst = (Start)ast.clone();
+        BQLOptimizeEvent event = BQLEvents.AVAILABLE ? new BQLOptimizeEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = listener != null ? System.nanoTime() : 0;
 
-        BQLOptimizer optimizer = new BQLOptimizer(options);
-        optimzedAst.apply(optimizer);
+        // 优化器不修改语法树，plan可以被多个线程共享
+        BQLOptimizer optimizer = new BQLOptimizer(options, optimizerConfig);
+        if (limitOverride != null) {
+            optimizer.setLimitOverride(limitOverride);
+        }
+        ast.apply(optimizer);
         BQLException error = optimizer.getError();
         if (error != null) {
             throw error;
         }
 
+        if (listener != null) {
+            listener.onPhase(BQLPhase.OPTIMIZE, System.nanoTime() - start, optimizer.getPrunedPredicateCount());
+        }
+
         optimizedOptions = optimizer.getOptimizedOptions();
+        rewrites = optimizer.getRewrites();
+        provablyEmpty = optimizer.isProvablyEmpty();
+        keysetColumns = optimizer.getKeysetColumns();
+
+        if (event != null) {
+            event.end(plan, optimizedOptions.size(), 0);
+        }
     }
 
+    /**
+     * generator可以在之后重用或reset，重用前这个compiler会先保存生成的语句。
+     */
     public void generate(BQLGenerator generator) throws BQLException {
-        optimzedAst.apply(generator);
-        output = generator.output();
+        BQLGenerateEvent event = BQLEvents.AVAILABLE ? new BQLGenerateEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = listener != null ? System.nanoTime() : 0;
+
+        // 上一次的输出不再需要，不用保存
+        BQLGenerator previous = this.generator;
+        this.generator = null;
+        this.output = null;
+        if (previous != null) {
+            previous.release();
+        }
+
+        generator.release();
+        generator.setRewrites(rewrites);
+        ast.apply(generator);
+        if (listener != null) {
+            listener.onPhase(BQLPhase.GENERATE, System.nanoTime() - start, generator.content().length());
+        }
+        if (event != null) {
+            event.end(plan, optimizedOptions != null ? optimizedOptions.size() : 0, generator.content().length());
+        }
+
+        // 输出在第一次调用output()或generator被重用时才转成String
+        this.generator = generator;
+        generator.setOwner(this);
     }
 
     public String output() {
+        if (output == null && generator != null) {
+            output = generator.output();
+        }
         return output;
     }
 
+    /**
+     * generator要被重用，先把输出转成String，之后不再引用generator。
+     */
+    void detach(BQLGenerator generator) {
+        if (this.generator == generator) {
+            output();
+            this.generator = null;
+        }
+    }
+
+    /**
+     * 把生成的语句追加到out，不经过String。
+     */
+    public void output(Appendable out) throws IOException {
+        if (generator != null) {
+            generator.render(out);
+        } else if (output != null) {
+            BQLOutputs.append(output, out);
+        }
+    }
+
+    /**
+     * 把生成的语句按UTF-8编码写到out。
+     *
+     * @throws java.nio.BufferOverflowException 剩余空间不够，这时out不变
+     */
+    public void output(ByteBuffer out) {
+        if (generator != null) {
+            generator.render(out);
+        } else if (output != null) {
+            BQLOutputs.encode(output, out);
+        }
+    }
+
     public List<BQLOption> getOptions() {
         return optimizedOptions;
     }
 
+    /**
+     * 打开{@link BQLOptimizerConfig#setPredicateSimplification(boolean)}时，优化发现WHERE条件矛盾，
+     * 语句一定不会返回或修改任何行，可以不访问数据库。生成的语句仍然有效。
+     */
+    public boolean isProvablyEmpty() {
+        return provablyEmpty;
+    }
+
+    /**
+     * @return 按游标分页时的排序列，不能按游标分页时返回null，见{@link BQLOptimizerConfig#setKeysetCursorOption(String)}
+     */
+    public List<String> getKeysetColumns() {
+        return keysetColumns;
+    }
+
+    /**
+     * 用这一页最后一行生成下一页的游标。
+     *
+     * 游标条件用比较运算符，NULL和任何值比较都不成立，所以排序列都要是NOT NULL的列。
+     *
+     * @param lastRow 列名到值，列名不区分大小写，大小写不同的同名列取第一个
+     * @return 不能按游标分页时返回null
+     * @throws IllegalArgumentException lastRow中没有某个排序列或者它的值为null
+     */
+    public String nextCursor(Map<String, ?> lastRow) {
+        if (keysetColumns == null) {
+            return null;
+        }
+
+        List<Object> values = new ArrayList<Object>(keysetColumns.size());
+        for (String column : keysetColumns) {
+            Object value = lastRow.get(column);
+            if (value == null) {
+                for (Map.Entry<String, ?> entry : lastRow.entrySet()) {
+                    if (entry.getKey().equalsIgnoreCase(column)) {
+                        value = entry.getValue();
+                        break;
+                    }
+                }
+            }
+            if (value == null) {
+                throw new IllegalArgumentException("keyset column " + column + " is missing or null in the last row");
+            }
+            values.add(value);
+        }
+        return BQLCursor.encode(keysetColumns, values);
+    }
+
     public String getMessage() {
         return message;
     }
@@ -85,6 +265,10 @@ public class BQLCompiler {
         return metadata;
     }
 
+    public BQLPlan getPlan() {
+        return plan;
+    }
+
 }
 
 
@@ -0,0 +1,16 @@
+package io.baxian.bql;
+
+/**
+ * 通过{@link BQLCompiler#setListener(BQLCompilerListener)}接收每个阶段的耗时和计数。
+ *
+ * 在调用BQLCompiler的线程里同步调用，一个listener被多个compiler共用时需要线程安全。
+ * 语句命中BQLPlanCache时没有LEX、PARSE和METADATA；阶段出错时不回调。
+ */
+public interface BQLCompilerListener {
+
+    /**
+     * @param nanos 阶段耗时，单位纳秒
+     * @param count 阶段的计数，含义见{@link BQLPhase}
+     */
+    void onPhase(BQLPhase phase, long nanos, long count);
+}
@@ -0,0 +1,126 @@
+package io.baxian.bql;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按阶段统计调用次数、总耗时、总计数和耗时分布，线程安全，不加锁。
+ *
+ * 耗时按2的幂分桶：第0个桶是0纳秒，第i个桶是[2^(i-1), 2^i)纳秒。
+ * 所有计数器都是LongAdder，多个线程同时记录时分散在不同的cell上；读取时各个计数器之间不保证一致。
+ */
+public class BQLCompilerMetrics implements BQLCompilerListener {
+
+    public static final int BUCKETS = 64;
+
+    private final Phase[] phases;
+
+    public BQLCompilerMetrics() {
+        BQLPhase[] values = BQLPhase.values();
+        phases = new Phase[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            phases[i] = new Phase();
+        }
+    }
+
+    @Override
+    public void onPhase(BQLPhase phase, long nanos, long count) {
+        Phase p = phases[phase.ordinal()];
+        nanos = Math.max(0, nanos);
+        p.calls.increment();
+        p.nanos.add(nanos);
+        p.count.add(count);
+        p.buckets[bucket(nanos)].increment();
+    }
+
+    public long getCalls(BQLPhase phase) {
+        return phases[phase.ordinal()].calls.sum();
+    }
+
+    public long getTotalNanos(BQLPhase phase) {
+        return phases[phase.ordinal()].nanos.sum();
+    }
+
+    /**
+     * 所有调用的计数之和，比如LEX是一共处理了多少个token。
+     */
+    public long getTotalCount(BQLPhase phase) {
+        return phases[phase.ordinal()].count.sum();
+    }
+
+    /**
+     * 每个桶的调用次数，长度为{@link #BUCKETS}。
+     */
+    public long[] getHistogram(BQLPhase phase) {
+        LongAdder[] buckets = phases[phase.ordinal()].buckets;
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            histogram[i] = buckets[i].sum();
+        }
+        return histogram;
+    }
+
+    /**
+     * 按分桶估算的分位数，返回所在桶的上界，没有记录时返回0。
+     *
+     * @param quantile 0到1之间，比如0.99
+     */
+    public long getQuantileNanos(BQLPhase phase, double quantile) {
+        long[] histogram = getHistogram(phase);
+        long total = 0;
+        for (long n : histogram) {
+            total += n;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return getBucketUpperBound(i);
+            }
+        }
+        return getBucketUpperBound(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (Phase phase : phases) {
+            phase.calls.reset();
+            phase.nanos.reset();
+            phase.count.reset();
+            for (LongAdder bucket : phase.buckets) {
+                bucket.reset();
+            }
+        }
+    }
+
+    /**
+     * 第bucket个桶包含的最大耗时。
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static final class Phase {
+
+        final LongAdder calls = new LongAdder();
+
+        final LongAdder nanos = new LongAdder();
+
+        final LongAdder count = new LongAdder();
+
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Phase() {
+            for (int i = 0; i < BUCKETS; ++i) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.node.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Map;
+
+/**
+ * 按MySQL的规则计算常量表达式。
+ *
+ * 整数用BigInteger表示，定点小数用BigDecimal表示：
+ * <ul>
+ * <li>加、减、乘、取模按BIGINT计算，超出范围时不折叠，留给数据库报错；有小数时按DECIMAL精确计算</li>
+ * <li>除法的结果是DECIMAL，小数位数是被除数的小数位数加4(div_precision_increment的默认值)</li>
+ * <li>位运算和移位按64位无符号整数计算，移位超过63位结果为0</li>
+ * <li>以0开头的数字(grammar中的octet)在MySQL中是十进制，0x开头的数字在运算中是整数</li>
+ * </ul>
+ * 科学计数法是DOUBLE，结果的写法不好确定，不折叠；除以0在MySQL中是NULL加警告，也不折叠。
+ */
+final class BQLConstantFolder {
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private static final BigInteger UNSIGNED_MAX = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    private static final int DIV_PRECISION_INCREMENT = 4;
+
+    private static final int MAX_DECIMAL_PRECISION = 65;
+
+    private static final int MAX_DECIMAL_SCALE = 30;
+
+    private final Map<String, Object> options;
+
+    /**
+     * @param options 为null时参数不参与折叠
+     */
+    BQLConstantFolder(Map<String, Object> options) {
+        this.options = options;
+    }
+
+    /**
+     * @return 折叠后的字面量，value不是常量时返回null
+     */
+    PValue fold(PValue value) {
+        if (!isOperator(value)) {
+            return null;
+        }
+
+        Number result = evaluate(value);
+        if (result instanceof BigInteger) {
+            return new AIntValue(new TInt(result.toString()));
+        } else if (result instanceof BigDecimal) {
+            return new AFloatValue(new TFloat(((BigDecimal) result).toPlainString()));
+        }
+        return null;
+    }
+
+    static boolean isOperator(PValue value) {
+        return value instanceof AAddValue
+                || value instanceof ASubstractValue
+                || value instanceof AMultiplyValue
+                || value instanceof ADivideValue
+                || value instanceof AModuloValue
+                || value instanceof ABitAndValue
+                || value instanceof ABitOrValue
+                || value instanceof ABitXorValue
+                || value instanceof ALeftShiftValue
+                || value instanceof ARightShiftValue
+                || value instanceof ABitInvertValue;
+    }
+
+    /**
+     * @return BigInteger、BigDecimal，不是常量或者不能确定结果时返回null
+     */
+    Number evaluate(PValue value) {
+        if (value instanceof AIntValue) {
+            return integer(((AIntValue) value).getInt().getText(), 10);
+        } else if (value instanceof AOctetValue) {
+            return integer(((AOctetValue) value).getOctet().getText(), 10);
+        } else if (value instanceof AHexValue) {
+            String text = ((AHexValue) value).getHex().getText();
+            boolean negative = text.startsWith("-");
+            BigInteger hex = integer(text.substring(negative ? 3 : 2), 16);
+            return hex != null && negative ? checkInteger(hex.negate()) : hex;
+        } else if (value instanceof AFloatValue) {
+            return decimal(new BigDecimal(((AFloatValue) value).getFloat().getText()));
+        } else if (value instanceof AOptionValue) {
+            return option(((AOptionValue) value).getIdentifier().getText());
+        } else if (value instanceof AAddValue) {
+            AAddValue add = (AAddValue) value;
+            return arithmetic('+', add.getLeft(), add.getRight());
+        } else if (value instanceof ASubstractValue) {
+            ASubstractValue substract = (ASubstractValue) value;
+            return arithmetic('-', substract.getLeft(), substract.getRight());
+        } else if (value instanceof AMultiplyValue) {
+            AMultiplyValue multiply = (AMultiplyValue) value;
+            return arithmetic('*', multiply.getLeft(), multiply.getRight());
+        } else if (value instanceof ADivideValue) {
+            ADivideValue divide = (ADivideValue) value;
+            return arithmetic('/', divide.getLeft(), divide.getRight());
+        } else if (value instanceof AModuloValue) {
+            AModuloValue modulo = (AModuloValue) value;
+            return arithmetic('%', modulo.getLeft(), modulo.getRight());
+        } else if (value instanceof ABitAndValue) {
+            ABitAndValue bitAnd = (ABitAndValue) value;
+            return bitwise('&', bitAnd.getLeft(), bitAnd.getRight());
+        } else if (value instanceof ABitOrValue) {
+            ABitOrValue bitOr = (ABitOrValue) value;
+            return bitwise('|', bitOr.getLeft(), bitOr.getRight());
+        } else if (value instanceof ABitXorValue) {
+            ABitXorValue bitXor = (ABitXorValue) value;
+            return bitwise('^', bitXor.getLeft(), bitXor.getRight());
+        } else if (value instanceof ALeftShiftValue) {
+            ALeftShiftValue leftShift = (ALeftShiftValue) value;
+            return bitwise('<', leftShift.getLeft(), leftShift.getRight());
+        } else if (value instanceof ARightShiftValue) {
+            ARightShiftValue rightShift = (ARightShiftValue) value;
+            return bitwise('>', rightShift.getLeft(), rightShift.getRight());
+        } else if (value instanceof ABitInvertValue) {
+            Number operand = evaluate(((ABitInvertValue) value).getValue());
+            if (!(operand instanceof BigInteger)) {
+                return null;
+            }
+            return unsigned(~((BigInteger) operand).longValue());
+        } else {
+            return null;
+        }
+    }
+
+    private Number option(String option) {
+        if (options == null) {
+            return null;
+        }
+
+        return toNumber(options.get(option));
+    }
+
+    /**
+     * @return 整数和BigDecimal类型的参数值转成BigInteger、BigDecimal，其他类型返回null
+     */
+    static Number toNumber(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return BigInteger.valueOf(((Number) value).longValue());
+        } else if (value instanceof BigInteger) {
+            return checkInteger((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            return decimal((BigDecimal) value);
+        }
+        return null;
+    }
+
+    private Number arithmetic(char op, PValue leftValue, PValue rightValue) {
+        Number left = evaluate(leftValue);
+        if (left == null) {
+            return null;
+        }
+        Number right = evaluate(rightValue);
+        if (right == null) {
+            return null;
+        }
+
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            BigInteger a = (BigInteger) left;
+            BigInteger b = (BigInteger) right;
+            // BIGINT UNSIGNED参与运算时规则不同，不折叠
+            if (a.compareTo(LONG_MAX) > 0 || b.compareTo(LONG_MAX) > 0) {
+                return null;
+            }
+
+            switch (op) {
+                case '+':
+                    return checkSigned(a.add(b));
+                case '-':
+                    return checkSigned(a.subtract(b));
+                case '*':
+                    return checkSigned(a.multiply(b));
+                case '%':
+                    return b.signum() == 0 ? null : a.remainder(b);
+                default:
+                    return divide(new BigDecimal(a), new BigDecimal(b));
+            }
+        }
+
+        BigDecimal a = toDecimal(left);
+        BigDecimal b = toDecimal(right);
+        switch (op) {
+            case '+':
+                return decimal(a.add(b));
+            case '-':
+                return decimal(a.subtract(b));
+            case '*':
+                return decimal(a.multiply(b));
+            case '%':
+                return b.signum() == 0 ? null : decimal(a.remainder(b));
+            default:
+                return divide(a, b);
+        }
+    }
+
+    private Number divide(BigDecimal a, BigDecimal b) {
+        if (b.signum() == 0) {
+            return null;
+        }
+        int scale = Math.min(MAX_DECIMAL_SCALE, Math.max(0, a.scale()) + DIV_PRECISION_INCREMENT);
+        return decimal(a.divide(b, scale, RoundingMode.HALF_UP));
+    }
+
+    private Number bitwise(char op, PValue leftValue, PValue rightValue) {
+        Number left = evaluate(leftValue);
+        if (!(left instanceof BigInteger)) {
+            return null;
+        }
+        Number right = evaluate(rightValue);
+        if (!(right instanceof BigInteger)) {
+            return null;
+        }
+
+        // 负数按补码转成无符号数
+        long a = ((BigInteger) left).longValue();
+        long b = ((BigInteger) right).longValue();
+        switch (op) {
+            case '&':
+                return unsigned(a & b);
+            case '|':
+                return unsigned(a | b);
+            case '^':
+                return unsigned(a ^ b);
+            case '<':
+                return unsigned(b < 0 || b >= 64 ? 0 : a << b);
+            default:
+                return unsigned(b < 0 || b >= 64 ? 0 : a >>> b);
+        }
+    }
+
+    private static BigInteger integer(String text, int radix) {
+        try {
+            return checkInteger(new BigInteger(text, radix));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 超出BIGINT和BIGINT UNSIGNED范围的整数在MySQL中是DECIMAL，不折叠。
+     */
+    private static BigInteger checkInteger(BigInteger value) {
+        return value.compareTo(LONG_MIN) >= 0 && value.compareTo(UNSIGNED_MAX) <= 0 ? value : null;
+    }
+
+    private static BigInteger checkSigned(BigInteger value) {
+        return value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0 ? value : null;
+    }
+
+    private static BigDecimal decimal(BigDecimal value) {
+        return value.precision() <= MAX_DECIMAL_PRECISION && value.scale() <= MAX_DECIMAL_SCALE ? value : null;
+    }
+
+    private static BigDecimal toDecimal(Number value) {
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal((BigInteger) value);
+    }
+
+    private static BigInteger unsigned(long value) {
+        BigInteger result = BigInteger.valueOf(value);
+        return value >= 0 ? result : result.add(BigInteger.ONE.shiftLeft(64));
+    }
+}
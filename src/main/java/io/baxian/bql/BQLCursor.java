@@ -0,0 +1,153 @@
+package io.baxian.bql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 分页游标：上一页最后一行的排序列的值，编码成URL安全的字符串，客户端原样传回即可。
+ *
+ * 游标中带有列名，解码时列名和ORDER BY不同就当作无效的游标。值支持整数、浮点数、BigDecimal、BigInteger、
+ * 字符串、boolean、Date和Timestamp，不能为null。
+ */
+public final class BQLCursor {
+
+    private static final int VERSION = 1;
+
+    private BQLCursor() {
+    }
+
+    public static String encode(List<String> columns, List<?> values) {
+        if (columns.size() != values.size()) {
+            throw new IllegalArgumentException("expect " + columns.size() + " values, got " + values.size());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeShort(columns.size());
+            for (int i = 0; i < columns.size(); ++i) {
+                out.writeUTF(columns.get(i));
+                writeValue(out, columns.get(i), values.get(i));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @throws IllegalArgumentException 游标格式不对或者列名不同
+     */
+    static List<Object> decode(String cursor, List<String> columns) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("malformed cursor", e);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            if (in.readByte() != VERSION || in.readShort() != columns.size()) {
+                throw new IllegalArgumentException("cursor does not match ORDER BY");
+            }
+
+            List<Object> values = new ArrayList<Object>(columns.size());
+            for (String column : columns) {
+                if (!in.readUTF().equalsIgnoreCase(column)) {
+                    throw new IllegalArgumentException("cursor does not match ORDER BY");
+                }
+                values.add(readValue(in));
+            }
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("malformed cursor");
+            }
+            return values;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed cursor", e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, String column, Object value) throws IOException {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte('i');
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte('l');
+            out.writeLong((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte('f');
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte('d');
+            out.writeUTF(value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte('n');
+            out.writeUTF(value.toString());
+        } else if (value instanceof String) {
+            byte[] string = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte('s');
+            out.writeInt(string.length);
+            out.write(string);
+        } else if (value instanceof Boolean) {
+            out.writeByte('b');
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Timestamp) {
+            out.writeByte('T');
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof Date) {
+            out.writeByte('D');
+            out.writeLong(((Date) value).getTime());
+        } else {
+            throw new IllegalArgumentException("unsupported cursor value, column:" + column
+                    + ", type:" + (value != null ? value.getClass().getName() : "null"));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case 'i':
+                return in.readInt();
+            case 'l':
+                return in.readLong();
+            case 'f':
+                return in.readDouble();
+            case 'd':
+                return new BigDecimal(in.readUTF());
+            case 'n':
+                return new BigInteger(in.readUTF());
+            case 's':
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    throw new IllegalArgumentException("malformed cursor");
+                }
+                byte[] string = new byte[length];
+                in.readFully(string);
+                return new String(string, StandardCharsets.UTF_8);
+            case 'b':
+                return in.readBoolean();
+            case 'T':
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case 'D':
+                return new Date(in.readLong());
+            default:
+                throw new IllegalArgumentException("malformed cursor");
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package io.baxian.bql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 从MySQL的建表语句中读出列和索引，只识别CREATE TABLE和CREATE INDEX，其他语句跳过。
+ *
+ * 表选项、列类型、外键、CHECK、全文和空间索引都忽略；函数索引只保留函数之前的列。
+ */
+final class BQLDdlParser {
+
+    private static final class Token {
+
+        final String text;
+
+        // 反引号括起来的标识符、字符串和数字不是关键字
+        final boolean literal;
+
+        Token(String text, boolean literal) {
+            this.text = text;
+            this.literal = literal;
+        }
+
+        boolean is(String keyword) {
+            return !literal && text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    private final BQLSchemaCatalog catalog;
+
+    BQLDdlParser(BQLSchemaCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    void parse(String ddl) {
+        List<Token> statement = new ArrayList<Token>();
+        int depth = 0;
+        for (Token token : tokenize(ddl)) {
+            if (token.is("(")) {
+                ++depth;
+            } else if (token.is(")")) {
+                --depth;
+            }
+
+            if (depth == 0 && token.is(";")) {
+                parseStatement(statement);
+                statement.clear();
+            } else {
+                statement.add(token);
+            }
+        }
+        parseStatement(statement);
+    }
+
+    private void parseStatement(List<Token> tokens) {
+        if (tokens.isEmpty() || !tokens.get(0).is("CREATE")) {
+            return;
+        }
+
+        int i = 1;
+        if (i < tokens.size() && tokens.get(i).is("TEMPORARY")) {
+            ++i;
+        }
+        if (i < tokens.size() && tokens.get(i).is("TABLE")) {
+            parseCreateTable(tokens, i + 1);
+            return;
+        }
+
+        boolean unique = false;
+        if (i < tokens.size() && tokens.get(i).is("UNIQUE")) {
+            unique = true;
+            ++i;
+        }
+        if (i < tokens.size() && tokens.get(i).is("INDEX")) {
+            parseCreateIndex(tokens, i + 1, unique);
+        }
+    }
+
+    private void parseCreateTable(List<Token> tokens, int i) {
+        if (i + 2 < tokens.size() && tokens.get(i).is("IF") && tokens.get(i + 1).is("NOT")
+                && tokens.get(i + 2).is("EXISTS")) {
+            i += 3;
+        }
+
+        BQLTableSchema table = new BQLTableSchema();
+        i = parseTableName(tokens, i, table);
+        if (i >= tokens.size() || !tokens.get(i).is("(")) {
+            // CREATE TABLE ... LIKE和CREATE TABLE ... AS SELECT
+            return;
+        }
+
+        for (List<Token> definition : split(tokens, i)) {
+            parseDefinition(definition, table);
+        }
+        catalog.setTable(table);
+    }
+
+    private void parseDefinition(List<Token> tokens, BQLTableSchema table) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+
+        int i = 0;
+        if (tokens.get(i).is("CONSTRAINT")) {
+            ++i;
+            if (i < tokens.size() && !tokens.get(i).is("PRIMARY") && !tokens.get(i).is("UNIQUE")
+                    && !tokens.get(i).is("FOREIGN") && !tokens.get(i).is("CHECK")) {
+                ++i;
+            }
+        }
+        if (i >= tokens.size()) {
+            return;
+        }
+
+        Token first = tokens.get(i);
+        BQLIndex index = new BQLIndex();
+        if (first.is("PRIMARY")) {
+            index.setName("PRIMARY");
+            index.setPrimary(true);
+            i += 2;
+        } else if (first.is("UNIQUE")) {
+            index.setUnique(true);
+            ++i;
+            if (i < tokens.size() && (tokens.get(i).is("KEY") || tokens.get(i).is("INDEX"))) {
+                ++i;
+            }
+        } else if (first.is("KEY") || first.is("INDEX")) {
+            ++i;
+        } else if (first.is("FULLTEXT") || first.is("SPATIAL") || first.is("FOREIGN") || first.is("CHECK")) {
+            return;
+        } else {
+            parseColumn(tokens, table);
+            return;
+        }
+
+        if (index.getName() == null && i < tokens.size() && !tokens.get(i).is("(") && !tokens.get(i).is("USING")) {
+            index.setName(tokens.get(i).text);
+            ++i;
+        }
+        if (i < tokens.size() && tokens.get(i).is("USING")) {
+            i += 2;
+        }
+        if (parseIndexColumns(tokens, i, index)) {
+            table.getIndexes().add(index);
+        }
+    }
+
+    /**
+     * 列定义中的PRIMARY KEY和UNIQUE [KEY]也是索引。
+     */
+    private static void parseColumn(List<Token> tokens, BQLTableSchema table) {
+        String column = tokens.get(0).text;
+        table.getColumns().add(column);
+
+        for (int i = 1; i < tokens.size(); ++i) {
+            Token token = tokens.get(i);
+            if (!token.is("PRIMARY") && !token.is("UNIQUE")) {
+                continue;
+            }
+
+            BQLIndex index = new BQLIndex();
+            if (token.is("PRIMARY")) {
+                index.setName("PRIMARY");
+                index.setPrimary(true);
+            } else {
+                index.setName(column);
+                index.setUnique(true);
+            }
+            index.getColumns().add(column);
+            table.getIndexes().add(index);
+        }
+    }
+
+    private void parseCreateIndex(List<Token> tokens, int i, boolean unique) {
+        if (i >= tokens.size()) {
+            return;
+        }
+
+        BQLIndex index = new BQLIndex();
+        index.setName(tokens.get(i++).text);
+        index.setUnique(unique);
+        if (i < tokens.size() && tokens.get(i).is("USING")) {
+            i += 2;
+        }
+        if (i >= tokens.size() || !tokens.get(i).is("ON")) {
+            return;
+        }
+
+        BQLTableSchema name = new BQLTableSchema();
+        i = parseTableName(tokens, i + 1, name);
+        BQLTableSchema table = catalog.getTable(name.getSchema(), name.getName());
+        if (table != null && parseIndexColumns(tokens, i, index)) {
+            table.getIndexes().add(index);
+        }
+    }
+
+    /**
+     * @return 表名之后的位置
+     */
+    private static int parseTableName(List<Token> tokens, int i, BQLTableSchema table) {
+        if (i >= tokens.size()) {
+            return i;
+        }
+
+        table.setName(tokens.get(i++).text);
+        if (i + 1 < tokens.size() && tokens.get(i).is(".")) {
+            table.setSchema(table.getName());
+            table.setName(tokens.get(i + 1).text);
+            i += 2;
+        }
+        return i;
+    }
+
+    /**
+     * @return 有可用的列时返回true
+     */
+    private static boolean parseIndexColumns(List<Token> tokens, int i, BQLIndex index) {
+        if (i >= tokens.size() || !tokens.get(i).is("(")) {
+            return false;
+        }
+
+        for (List<Token> part : split(tokens, i)) {
+            if (part.isEmpty() || part.get(0).is("(")) {
+                break;
+            }
+            index.getColumns().add(part.get(0).text);
+        }
+        if (index.getColumns().isEmpty()) {
+            return false;
+        }
+        if (index.getName() == null) {
+            // 和MySQL一样用第一列的名字
+            index.setName(index.getColumns().get(0));
+        }
+        return true;
+    }
+
+    /**
+     * @param open 左括号的位置
+     * @return 括号内按顶层逗号分开的各部分
+     */
+    private static List<List<Token>> split(List<Token> tokens, int open) {
+        List<List<Token>> parts = new ArrayList<List<Token>>();
+        List<Token> part = new ArrayList<Token>();
+        int depth = 0;
+        for (int i = open + 1; i < tokens.size(); ++i) {
+            Token token = tokens.get(i);
+            if (token.is("(")) {
+                ++depth;
+            } else if (token.is(")")) {
+                if (depth == 0) {
+                    break;
+                }
+                --depth;
+            } else if (depth == 0 && token.is(",")) {
+                parts.add(part);
+                part = new ArrayList<Token>();
+                continue;
+            }
+            part.add(token);
+        }
+        parts.add(part);
+        return parts;
+    }
+
+    private static List<Token> tokenize(String ddl) {
+        List<Token> tokens = new ArrayList<Token>();
+        int length = ddl.length();
+        int i = 0;
+        while (i < length) {
+            char c = ddl.charAt(i);
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (c == '#' || c == '-' && ddl.startsWith("--", i)) {
+                int end = ddl.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && ddl.startsWith("/*", i)) {
+                int end = ddl.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '`' || c == '\'' || c == '"') {
+                StringBuilder text = new StringBuilder();
+                int j = i + 1;
+                while (j < length) {
+                    char d = ddl.charAt(j);
+                    if (d == '\\' && c != '`' && j + 1 < length) {
+                        text.append(ddl.charAt(j + 1));
+                        j += 2;
+                    } else if (d == c && j + 1 < length && ddl.charAt(j + 1) == c) {
+                        text.append(c);
+                        j += 2;
+                    } else if (d == c) {
+                        break;
+                    } else {
+                        text.append(d);
+                        ++j;
+                    }
+                }
+                tokens.add(new Token(text.toString(), true));
+                i = j + 1;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+                int j = i;
+                while (j < length && (Character.isLetterOrDigit(ddl.charAt(j)) || ddl.charAt(j) == '_'
+                        || ddl.charAt(j) == '$')) {
+                    ++j;
+                }
+                tokens.add(new Token(ddl.substring(i, j), false));
+                i = j;
+            } else {
+                tokens.add(new Token(String.valueOf(c), false));
+                ++i;
+            }
+        }
+        return tokens;
+    }
+}
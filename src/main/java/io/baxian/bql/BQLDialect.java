@@ -0,0 +1,25 @@
+package io.baxian.bql;
+
+import java.util.Map;
+
+/**
+ * BQL的输出目标。
+ */
+public enum BQLDialect {
+
+    MYSQL {
+        @Override
+        BQLGenerator newGenerator(Map<String, Object> options) {
+            return new SQLGenerator(options);
+        }
+    },
+
+    ELASTICSEARCH {
+        @Override
+        BQLGenerator newGenerator(Map<String, Object> options) {
+            return new ElasticSearchQueryGenerator(options);
+        }
+    };
+
+    abstract BQLGenerator newGenerator(Map<String, Object> options);
+}
@@ -0,0 +1,46 @@
+package io.baxian.bql;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Threshold;
+
+/**
+ * BQL的JFR事件，字段在事件需要提交时才填写。
+ *
+ * 只能在{@link BQLEvents#AVAILABLE}为true时使用，否则加载这个类会失败。
+ * 没有在录制时begin()和shouldCommit()只检查一个开关，事件对象经过逃逸分析后不会分配。
+ * 默认只记录超过1毫秒的调用。
+ */
+@Category("BQL")
+@Threshold("1 ms")
+abstract class BQLEvent extends jdk.jfr.Event {
+
+    @Label("Fingerprint")
+    long fingerprint;
+
+    @Label("Statement Type")
+    String statementType;
+
+    @Label("Table")
+    String table;
+
+    @Label("Option Count")
+    int optionCount;
+
+    @Label("Output Size")
+    int outputSize;
+
+    final void end(BQLPlan plan, int optionCount, int outputSize) {
+        if (!shouldCommit()) {
+            return;
+        }
+
+        BQLMetadata metadata = plan.getMetadata();
+        this.fingerprint = plan.getFingerprint();
+        this.statementType = metadata.getStatementType() != null ? metadata.getStatementType().name() : null;
+        this.table = metadata.getTable();
+        this.optionCount = optionCount;
+        this.outputSize = outputSize;
+        commit();
+    }
+}
@@ -0,0 +1,26 @@
+package io.baxian.bql;
+
+/**
+ * 判断能否使用{@link BQLEvent}，这个类本身不依赖jdk.jfr。
+ */
+final class BQLEvents {
+
+    /**
+     * 当前JVM是否有jdk.jfr，早期的JDK 8没有。
+     */
+    static final boolean AVAILABLE = available();
+
+    private BQLEvents() {
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, BQLEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
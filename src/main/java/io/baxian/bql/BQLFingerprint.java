@@ -0,0 +1,204 @@
+package io.baxian.bql;
+
+/**
+ * 按token计算语句的64位fingerprint，只差空白、关键字大小写或者标识符是否加反引号的语句fingerprint相同。
+ *
+ * 屏蔽字面量时所有数字和字符串都看作同一个占位符，IN列表里连续的字面量合并成一个，
+ * 这样fingerprint只反映语句的形状，可以用来给日志和监控数据分组。
+ * 不屏蔽字面量时fingerprint相同的语句解析出的语法树也相同(不考虑哈希冲突)。
+ */
+public final class BQLFingerprint {
+
+    private static final long SEED = 0xcbf29ce484222325L;
+
+    private static final long PRIME = 0x9e3779b97f4a7c15L;
+
+    // 屏蔽后的字面量，和token类型不冲突
+    private static final int LITERAL = -1;
+
+    private BQLFingerprint() {
+    }
+
+    public static long of(CharSequence bql, boolean maskLiterals) {
+        return of(BQLLexer.tokenize(bql), maskLiterals);
+    }
+
+    /**
+     * 词法分析出错时只计算出错位置之前的token。
+     */
+    public static long of(BQLLexer tokens, boolean maskLiterals) {
+        Cursor cursor = new Cursor(tokens);
+        long hash = SEED;
+        // IN列表里已经写入了一个字面量，后面的逗号和字面量都跳过
+        boolean inList = false;
+        boolean literalWritten = false;
+        int previous = -1;
+
+        while (cursor.next()) {
+            int type = tokens.getType(cursor.token);
+            boolean literal = isLiteral(type);
+
+            if (maskLiterals && inList) {
+                if (literal && literalWritten) {
+                    previous = LITERAL;
+                    continue;
+                }
+                if (type == BQLLexer.COMMA && previous == LITERAL && cursor.peekLiteral()) {
+                    continue;
+                }
+            }
+
+            if (type == BQLLexer.LPAREN) {
+                inList = previous == BQLLexer.IN;
+            } else if (type == BQLLexer.RPAREN) {
+                inList = false;
+            }
+
+            if (maskLiterals && literal) {
+                hash = mix(hash, LITERAL);
+                literalWritten = inList;
+                previous = LITERAL;
+                continue;
+            }
+
+            hash = mix(hash, type);
+            if (type == BQLLexer.IDENTIFIER || literal) {
+                hash = mixText(hash, tokens, cursor.token);
+            }
+            literalWritten = false;
+            previous = type;
+        }
+
+        return finish(hash);
+    }
+
+    /**
+     * 两个语句是否只差空白、关键字大小写和反引号，即不屏蔽字面量时的fingerprint相等且没有冲突。
+     */
+    static boolean sameStatement(BQLLexer a, BQLLexer b) {
+        Cursor x = new Cursor(a);
+        Cursor y = new Cursor(b);
+        while (true) {
+            boolean hasX = x.next();
+            boolean hasY = y.next();
+            if (!hasX || !hasY) {
+                return hasX == hasY;
+            }
+
+            int type = a.getType(x.token);
+            if (type != b.getType(y.token)) {
+                return false;
+            }
+
+            if ((type == BQLLexer.IDENTIFIER || isLiteral(type)) && !sameText(a, x.token, b, y.token)) {
+                return false;
+            }
+        }
+    }
+
+    private static boolean isLiteral(int type) {
+        switch (type) {
+            case BQLLexer.INT:
+            case BQLLexer.FLOAT:
+            case BQLLexer.SCIENTIFIC:
+            case BQLLexer.HEX:
+            case BQLLexer.OCTET:
+            case BQLLexer.STRING:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * PRIME;
+    }
+
+    private static long mixText(long hash, BQLLexer tokens, int index) {
+        CharSequence input = tokens.getInput();
+        int offset = tokens.getOffset(index);
+        int length = tokens.getLength(index);
+        for (int i = offset; i < offset + length; ++i) {
+            hash = mix(hash, input.charAt(i));
+        }
+        return mix(hash, length);
+    }
+
+    private static boolean sameText(BQLLexer a, int i, BQLLexer b, int j) {
+        int length = a.getLength(i);
+        if (length != b.getLength(j)) {
+            return false;
+        }
+
+        CharSequence x = a.getInput();
+        CharSequence y = b.getInput();
+        int offsetX = a.getOffset(i);
+        int offsetY = b.getOffset(j);
+        for (int k = 0; k < length; ++k) {
+            if (x.charAt(offsetX + k) != y.charAt(offsetY + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * 按顺序读取有意义的token：跳过空白，`identifier`读成identifier，不成对的反引号保留。
+     */
+    private static final class Cursor {
+
+        private final BQLLexer tokens;
+
+        private int index;
+
+        int token;
+
+        Cursor(BQLLexer tokens) {
+            this.tokens = tokens;
+        }
+
+        boolean next() {
+            index = skipBlanks(index);
+            if (index >= tokens.size()) {
+                return false;
+            }
+
+            token = index++;
+            if (tokens.getType(token) == BQLLexer.QUOTE) {
+                int identifier = skipBlanks(index);
+                if (identifier < tokens.size() && tokens.getType(identifier) == BQLLexer.IDENTIFIER) {
+                    int quote = skipBlanks(identifier + 1);
+                    if (quote < tokens.size() && tokens.getType(quote) == BQLLexer.QUOTE) {
+                        token = identifier;
+                        index = quote + 1;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 下一个有意义的token是否是字面量。
+         */
+        boolean peekLiteral() {
+            int i = skipBlanks(index);
+            return i < tokens.size() && isLiteral(tokens.getType(i));
+        }
+
+        private int skipBlanks(int i) {
+            while (i < tokens.size() && tokens.getType(i) == BQLLexer.BLANKS) {
+                ++i;
+            }
+            return i;
+        }
+    }
+}
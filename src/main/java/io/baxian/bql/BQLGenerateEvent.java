@@ -0,0 +1,14 @@
+package io.baxian.bql;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * BQLCompiler.generate()。
+ */
+@Name("io.baxian.bql.Generate")
+@Label("BQL Generate")
+@Description("SQL or Elasticsearch query generation. optionCount is the number of bound values, outputSize the number of characters.")
+final class BQLGenerateEvent extends BQLEvent {
+}
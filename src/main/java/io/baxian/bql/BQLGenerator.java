@@ -1,9 +1,144 @@
 package io.baxian.bql;
 
 import io.baxian.bql.framework.analysis.DepthFirstAdapter;
+import io.baxian.bql.framework.node.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
 
 public abstract class BQLGenerator extends DepthFirstAdapter {
 
+    private BQLRewrites rewrites = BQLRewrites.NONE;
+
+    // 最近一次用这个generator生成语句的compiler，generator被重用前先让它保存输出
+    private BQLCompiler owner;
+
     public abstract String output();
 
+    /**
+     * 把生成的内容追加到out，不经过String。
+     */
+    public void render(Appendable out) throws IOException {
+        BQLOutputs.append(content(), out);
+    }
+
+    /**
+     * 把生成的内容按UTF-8编码写到out。
+     *
+     * @throws java.nio.BufferOverflowException 剩余空间不够，这时out不变
+     */
+    public void render(ByteBuffer out) {
+        BQLOutputs.encode(content(), out);
+    }
+
+    /**
+     * 生成的内容，子类返回内部的缓冲区，避免render时复制成String。
+     */
+    protected CharSequence content() {
+        return output();
+    }
+
+    /**
+     * 设置优化器的改写结果，生成时按改写后的语法树输出。
+     */
+    public void setRewrites(BQLRewrites rewrites) {
+        this.rewrites = rewrites != null ? rewrites : BQLRewrites.NONE;
+    }
+
+    /**
+     * 清除上一次的改写结果和参数，同一个generator可以被池化后重复使用。
+     */
+    public void reset(Map<String, Object> options) {
+        release();
+        rewrites = BQLRewrites.NONE;
+    }
+
+    void setOwner(BQLCompiler owner) {
+        release();
+        this.owner = owner;
+    }
+
+    /**
+     * 子类在清空上一次生成的内容之前调用，之前用这个generator的compiler会先把输出转成String保存下来。
+     */
+    protected final void release() {
+        BQLCompiler current = owner;
+        if (current != null) {
+            owner = null;
+            current.detach(this);
+        }
+    }
+
+    protected <T extends Node> T resolve(T node) {
+        return rewrites.resolve(node);
+    }
+
+    /**
+     * 优化器可能改写整个WHERE，比如给分页查询加上游标条件，语句原来没有WHERE时也会加上。
+     */
+    protected PExpr resolveWhere(PExpr where) {
+        return rewrites.resolveWhere(where);
+    }
+
+    protected Object getOptionValue(AOptionValue value, Map<String, Object> options) {
+        return rewrites.getValue(value, options);
+    }
+
+    /**
+     * @return 优化器按WHERE条件算出的分区，没有时返回null
+     */
+    protected List<String> getPrunedPartitions() {
+        return rewrites.getPartitions();
+    }
+
+    /**
+     * @return 优化器规范化了IN列表，只剩一个值的NOT IN会变成!=
+     */
+    protected boolean isInNormalization() {
+        return rewrites.isInNormalization();
+    }
+
+    /**
+     * @return 优化器按规则选出的索引提示，没有时返回null
+     */
+    protected BQLIndexHint getIndexHint() {
+        return rewrites.getIndexHint();
+    }
+
+    /**
+     * @return 小于0时child需要加括号
+     */
+    static int comparePriority(PValue parent, PValue child) {
+        if (parent == null || child == null) {
+            return 0;
+        }
+        return priority(parent) - priority(child);
+    }
+
+    /**
+     * 运算符的优先级，数值小的先计算，不是运算符时为0。
+     * 节点类都是final的，instanceof只比较一次类型。
+     */
+    static int priority(PValue value) {
+        if (value instanceof AAddValue || value instanceof ASubstractValue) {
+            return 3;
+        } else if (value instanceof AMultiplyValue || value instanceof ADivideValue || value instanceof AModuloValue) {
+            return 2;
+        } else if (value instanceof ABitAndValue) {
+            return 4;
+        } else if (value instanceof ABitXorValue) {
+            return 5;
+        } else if (value instanceof ABitOrValue) {
+            return 6;
+        } else if (value instanceof ALeftShiftValue || value instanceof ARightShiftValue) {
+            return 7;
+        } else if (value instanceof ABitInvertValue) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+
 }
@@ -0,0 +1,50 @@
+package io.baxian.bql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 表上的一个索引，列按索引中的顺序排列。
+ */
+public class BQLIndex {
+
+    private String name;
+
+    private List<String> columns = new ArrayList<String>();
+
+    private boolean primary;
+
+    private boolean unique;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
+    public boolean isPrimary() {
+        return primary;
+    }
+
+    public void setPrimary(boolean primary) {
+        this.primary = primary;
+    }
+
+    public boolean isUnique() {
+        return unique || primary;
+    }
+
+    public void setUnique(boolean unique) {
+        this.unique = unique;
+    }
+}
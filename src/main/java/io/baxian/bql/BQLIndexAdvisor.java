@@ -0,0 +1,178 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.node.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按表的索引整理WHERE条件。
+ *
+ * 顶层AND连接的条件中，选出被=、IN、IS NULL覆盖最长前缀的索引(范围条件只能作为前缀的最后一列)，
+ * 这个索引的列上的条件按索引的列顺序排到前面，其他条件保持原来的顺序。
+ * 只改变AND的顺序，条件本身不变，新的AND节点通过{@link BQLRewrites#reference(PExpr)}引用原来的条件。
+ */
+final class BQLIndexAdvisor {
+
+    private final BQLRewrites rewrites;
+
+    private final String table;
+
+    private final String alias;
+
+    /**
+     * @param alias 可以为null
+     */
+    BQLIndexAdvisor(BQLRewrites rewrites, String table, String alias) {
+        this.rewrites = rewrites;
+        this.table = table;
+        this.alias = alias;
+    }
+
+    PExpr reorder(PExpr where, BQLTableSchema schema) {
+        List<PExpr> operands = new ArrayList<PExpr>();
+        flatten(where, operands);
+        if (operands.size() < 2) {
+            return where;
+        }
+
+        List<String> prefix = bestPrefix(operands, schema);
+        if (prefix.isEmpty()) {
+            return where;
+        }
+
+        List<PExpr> ordered = new ArrayList<PExpr>(operands.size());
+        Map<PExpr, Boolean> used = new IdentityHashMap<PExpr, Boolean>();
+        for (String column : prefix) {
+            for (PExpr operand : operands) {
+                if (column.equals(column(operand)) && !used.containsKey(operand)) {
+                    ordered.add(operand);
+                    used.put(operand, Boolean.TRUE);
+                }
+            }
+        }
+        for (PExpr operand : operands) {
+            if (!used.containsKey(operand)) {
+                ordered.add(operand);
+            }
+        }
+        if (ordered.equals(operands)) {
+            return where;
+        }
+
+        PExpr result = ordered.get(0);
+        for (int i = 1; i < ordered.size(); ++i) {
+            result = new AConditionExpr(new AAndOp(), rewrites.reference(result), rewrites.reference(ordered.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * @return 顶层AND连接的条件用到的本表的列，小写
+     */
+    Set<String> columns(PExpr where) {
+        List<PExpr> operands = new ArrayList<PExpr>();
+        flatten(where, operands);
+
+        Set<String> columns = new LinkedHashSet<String>();
+        for (PExpr operand : operands) {
+            String column = column(operand);
+            if (column != null) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 主键和唯一索引优先，覆盖的列数相同时用先定义的索引。
+     */
+    private List<String> bestPrefix(List<PExpr> operands, BQLTableSchema schema) {
+        List<String> best = new ArrayList<String>();
+        boolean bestUnique = false;
+        for (BQLIndex index : schema.getIndexes()) {
+            List<String> prefix = new ArrayList<String>();
+            for (String column : index.getColumns()) {
+                String name = column.toLowerCase(Locale.ROOT);
+                Boolean equality = null;
+                for (PExpr operand : operands) {
+                    if (name.equals(column(operand))) {
+                        equality = Boolean.TRUE.equals(equality) || isEquality(operand);
+                    }
+                }
+                if (equality == null) {
+                    break;
+                }
+                prefix.add(name);
+                if (!equality) {
+                    break;
+                }
+            }
+
+            if (prefix.size() > best.size() || prefix.size() == best.size() && index.isUnique() && !bestUnique) {
+                best = prefix;
+                bestUnique = index.isUnique();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return 条件中本表的列，小写，不能用索引的条件返回null
+     */
+    private String column(PExpr expr) {
+        PColumnComponents components = null;
+        if (expr instanceof ABinaryExpr) {
+            ABinaryExpr binary = (ABinaryExpr) expr;
+            if (binary.getOp() instanceof ANotEqOp) {
+                return null;
+            }
+            PValue left = rewrites.resolve(binary.getLeft());
+            PValue right = rewrites.resolve(binary.getRight());
+            if (left instanceof AColumnValue && !(right instanceof AColumnValue)) {
+                components = ((AColumnValue) left).getColumnComponents();
+            } else if (right instanceof AColumnValue && !(left instanceof AColumnValue)) {
+                components = ((AColumnValue) right).getColumnComponents();
+            }
+        } else if (expr instanceof ABetweenExpr) {
+            components = ((ABetweenExpr) expr).getColumnComponents();
+        } else if (expr instanceof AInExpr) {
+            components = ((AInExpr) expr).getColumnComponents();
+        } else if (expr instanceof AIsExpr) {
+            components = ((AIsExpr) expr).getColumnComponents();
+        }
+        if (components == null) {
+            return null;
+        }
+
+        AColumnComponents column = (AColumnComponents) components;
+        TIdentifier qualifier = column.getTable();
+        if (qualifier != null && !qualifier.getText().equalsIgnoreCase(alias)
+                && !qualifier.getText().equalsIgnoreCase(table)) {
+            return null;
+        }
+        return column.getColumn().getText().toLowerCase(Locale.ROOT);
+    }
+
+    private boolean isEquality(PExpr expr) {
+        if (expr instanceof ABinaryExpr) {
+            return ((ABinaryExpr) expr).getOp() instanceof AEqOp;
+        }
+        return expr instanceof AInExpr || expr instanceof AIsExpr;
+    }
+
+    private void flatten(PExpr expr, List<PExpr> out) {
+        if (expr instanceof AConditionExpr && ((AConditionExpr) expr).getOp() instanceof AAndOp) {
+            AConditionExpr condition = (AConditionExpr) expr;
+            flatten(rewrites.resolve(condition.getLeft()), out);
+            flatten(rewrites.resolve(condition.getRight()), out);
+        } else if (expr != null) {
+            out.add(expr);
+        }
+    }
+}
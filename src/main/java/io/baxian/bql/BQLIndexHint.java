@@ -0,0 +1,103 @@
+package io.baxian.bql;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 索引提示规则，SELECT的表(和别名)相同并且WHERE中AND连接的条件用到了规则中所有的列时，
+ * 在表名后输出USE INDEX或FORCE INDEX：
+ * <pre>
+ * BQLIndexHint.force("orders", "idx_user_day").alias("o").columns("user_id", "day")
+ * select o.id from orders as o where o.user_id = :uid and o.day &gt; :day
+ *     SELECT `o`.`id` FROM `orders` AS `o` FORCE INDEX (`idx_user_day`) WHERE ...
+ * </pre>
+ */
+public final class BQLIndexHint {
+
+    public enum Type {
+        USE, FORCE
+    }
+
+    private final Type type;
+
+    private final String table;
+
+    private final String index;
+
+    private String alias;
+
+    private final Set<String> columns = new LinkedHashSet<String>();
+
+    private BQLIndexHint(Type type, String table, String index) {
+        this.type = type;
+        this.table = table;
+        this.index = index;
+    }
+
+    /**
+     * @param table 表名，带schema时写成schema.table
+     */
+    public static BQLIndexHint use(String table, String index) {
+        return new BQLIndexHint(Type.USE, table, index);
+    }
+
+    public static BQLIndexHint force(String table, String index) {
+        return new BQLIndexHint(Type.FORCE, table, index);
+    }
+
+    /**
+     * 只在表的别名相同时使用。
+     */
+    public BQLIndexHint alias(String alias) {
+        this.alias = alias;
+        return this;
+    }
+
+    /**
+     * WHERE中必须有条件的列，不区分大小写。
+     */
+    public BQLIndexHint columns(String... columns) {
+        for (String column : columns) {
+            this.columns.add(column.toLowerCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public Set<String> getColumns() {
+        return Collections.unmodifiableSet(columns);
+    }
+
+    /**
+     * @param columns WHERE中的列，小写
+     */
+    boolean matches(String schema, String table, String alias, Collection<String> columns) {
+        boolean tableMatched = this.table.equalsIgnoreCase(table)
+                || schema != null && this.table.equalsIgnoreCase(schema + "." + table);
+        if (!tableMatched) {
+            return false;
+        }
+        if (this.alias != null && !this.alias.equalsIgnoreCase(alias)) {
+            return false;
+        }
+        return columns.containsAll(this.columns);
+    }
+}
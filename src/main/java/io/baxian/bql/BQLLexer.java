@@ -0,0 +1,685 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.lexer.Lexer;
+import io.baxian.bql.framework.lexer.LexerException;
+import io.baxian.bql.framework.node.*;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * 手写的BQL词法分析器，输出和BQL.grammar生成的{@link Lexer}相同的token序列，包括行号、列号和出错信息。
+ *
+ * 直接扫描{@link CharSequence}，不经过Reader。token只记录类型、偏移和长度，关键字和符号不创建字符串，
+ * 标识符、数字等在交给parser时才取出文本。
+ */
+public final class BQLLexer {
+
+    // token类型，和grammar中Tokens的声明顺序一致
+    public static final int SELECT = 0;
+    public static final int DELETE = 1;
+    public static final int UPDATE = 2;
+    public static final int INSERT = 3;
+    public static final int INTO = 4;
+    public static final int AS = 5;
+    public static final int FROM = 6;
+    public static final int WHERE = 7;
+    public static final int AND = 8;
+    public static final int OR = 9;
+    public static final int NOT = 10;
+    public static final int IS = 11;
+    public static final int LIKE = 12;
+    public static final int IN = 13;
+    public static final int TRUE = 14;
+    public static final int FALSE = 15;
+    public static final int BETWEEN = 16;
+    public static final int ORDER = 17;
+    public static final int GROUP = 18;
+    public static final int BY = 19;
+    public static final int PARTITION = 20;
+    public static final int LIMIT = 21;
+    public static final int DESC = 22;
+    public static final int ASC = 23;
+    public static final int NULL = 24;
+    public static final int SET = 25;
+    public static final int VALUES = 26;
+    public static final int ON = 27;
+    public static final int DUPLICATE = 28;
+    public static final int KEY = 29;
+    public static final int DISTINCT = 30;
+    public static final int LPAREN = 31;
+    public static final int RPAREN = 32;
+    public static final int DOT = 33;
+    public static final int COMMA = 34;
+    public static final int COLON = 35;
+    public static final int QUOTE = 36;
+    public static final int LT = 37;
+    public static final int GT = 38;
+    public static final int LTEQ = 39;
+    public static final int GTEQ = 40;
+    public static final int EQ = 41;
+    public static final int NOT_EQ = 42;
+    public static final int BIT_INVERT = 43;
+    public static final int MUL = 44;
+    public static final int DIV = 45;
+    public static final int MOD = 46;
+    public static final int ADD = 47;
+    public static final int SUB = 48;
+    public static final int BIT_AND = 49;
+    public static final int BIT_XOR = 50;
+    public static final int BIT_OR = 51;
+    public static final int LSHIFT = 52;
+    public static final int RSHIFT = 53;
+    public static final int BLANKS = 54;
+    public static final int IDENTIFIER = 55;
+    public static final int OCTET = 56;
+    public static final int HEX = 57;
+    public static final int INT = 58;
+    public static final int FLOAT = 59;
+    public static final int SCIENTIFIC = 60;
+    public static final int STRING = 61;
+    public static final int SINGLE_QUOTE = 62;
+
+    private static final String[] KEYWORDS = {
+            "select", "delete", "update", "insert", "into", "as", "from", "where", "and", "or", "not",
+            "is", "like", "in", "true", "false", "between", "order", "group", "by", "partition", "limit",
+            "desc", "asc", "null", "set", "values", "on", "duplicate", "key", "distinct"
+    };
+
+    private static final String[] UPPER_KEYWORDS = new String[KEYWORDS.length];
+
+    // 按长度分组的关键字，识别标识符后先按长度分派，再逐个比较
+    private static final int[][] KEYWORDS_BY_LENGTH = new int[10][];
+
+    static {
+        int[] counts = new int[KEYWORDS_BY_LENGTH.length];
+        for (int i = 0; i < KEYWORDS.length; ++i) {
+            UPPER_KEYWORDS[i] = KEYWORDS[i].toUpperCase();
+            counts[KEYWORDS[i].length()]++;
+        }
+
+        for (int length = 0; length < KEYWORDS_BY_LENGTH.length; ++length) {
+            KEYWORDS_BY_LENGTH[length] = new int[counts[length]];
+            counts[length] = 0;
+        }
+
+        for (int i = 0; i < KEYWORDS.length; ++i) {
+            int length = KEYWORDS[i].length();
+            KEYWORDS_BY_LENGTH[length][counts[length]++] = i;
+        }
+    }
+
+    private final CharSequence input;
+
+    private int size;
+
+    private int[] types;
+
+    private int[] offsets;
+
+    private int[] lengths;
+
+    private int[] lines;
+
+    private int[] positions;
+
+    private int eofLine;
+
+    private int eofPos;
+
+    private String error;
+
+    // 和SableCC的Lexer一样记录行号和列号，从0开始
+    private int line;
+
+    private int pos;
+
+    private boolean cr;
+
+    private BQLLexer(CharSequence input) {
+        this.input = input;
+
+        int capacity = Math.max(16, input.length() / 2);
+        this.types = new int[capacity];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.positions = new int[capacity];
+    }
+
+    public static BQLLexer tokenize(CharSequence input) {
+        BQLLexer lexer = new BQLLexer(input);
+        lexer.scan();
+        return lexer;
+    }
+
+    public static BQLLexer tokenize(char[] input) {
+        return tokenize(CharBuffer.wrap(input));
+    }
+
+    public CharSequence getInput() {
+        return input;
+    }
+
+    /**
+     * token个数，包括空白，不包括EOF。
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getType(int index) {
+        return types[index];
+    }
+
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * 行号，从1开始。
+     */
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    /**
+     * 列号，从1开始。
+     */
+    public int getPos(int index) {
+        return positions[index];
+    }
+
+    public String getText(int index) {
+        int offset = offsets[index];
+        return input.subSequence(offset, offset + lengths[index]).toString();
+    }
+
+    /**
+     * 遇到无法识别的字符时的出错信息，和SableCC的LexerException一致；没有出错时返回null。
+     *
+     * 出错位置之前的token仍然保留，parser读到出错位置时才抛出异常，所以先遇到的语法错误仍然先报告。
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * 包装成SableCC的Lexer，交给{@link io.baxian.bql.framework.parser.Parser}使用。
+     *
+     * 空白是Ignored Tokens，不会交给parser。
+     */
+    public Lexer toLexer() {
+        return new TokenLexer(this);
+    }
+
+    private void scan() {
+        CharSequence s = input;
+        int n = s.length();
+        int i = 0;
+
+        while (i < n) {
+            char c = s.charAt(i);
+            int type;
+            int end;
+            // DFA实际读到的位置（不含），超过end的部分会退回
+            int scanEnd = -1;
+
+            switch (c) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    end = i + 1;
+                    while (end < n && isBlank(s.charAt(end))) {
+                        ++end;
+                    }
+                    type = BLANKS;
+                    break;
+                case '(':
+                    type = LPAREN;
+                    end = i + 1;
+                    break;
+                case ')':
+                    type = RPAREN;
+                    end = i + 1;
+                    break;
+                case '.':
+                    type = DOT;
+                    end = i + 1;
+                    break;
+                case ',':
+                    type = COMMA;
+                    end = i + 1;
+                    break;
+                case ':':
+                    type = COLON;
+                    end = i + 1;
+                    break;
+                case '`':
+                    type = QUOTE;
+                    end = i + 1;
+                    break;
+                case '=':
+                    type = EQ;
+                    end = i + 1;
+                    break;
+                case '~':
+                    type = BIT_INVERT;
+                    end = i + 1;
+                    break;
+                case '*':
+                    type = MUL;
+                    end = i + 1;
+                    break;
+                case '/':
+                    type = DIV;
+                    end = i + 1;
+                    break;
+                case '%':
+                    type = MOD;
+                    end = i + 1;
+                    break;
+                case '+':
+                    type = ADD;
+                    end = i + 1;
+                    break;
+                case '&':
+                    type = BIT_AND;
+                    end = i + 1;
+                    break;
+                case '^':
+                    type = BIT_XOR;
+                    end = i + 1;
+                    break;
+                case '|':
+                    type = BIT_OR;
+                    end = i + 1;
+                    break;
+                case '<':
+                    end = i + 2;
+                    if (i + 1 < n && s.charAt(i + 1) == '=') {
+                        type = LTEQ;
+                    } else if (i + 1 < n && s.charAt(i + 1) == '<') {
+                        type = LSHIFT;
+                    } else if (i + 1 < n && s.charAt(i + 1) == '>') {
+                        type = NOT_EQ;
+                    } else {
+                        type = LT;
+                        end = i + 1;
+                    }
+                    break;
+                case '>':
+                    end = i + 2;
+                    if (i + 1 < n && s.charAt(i + 1) == '=') {
+                        type = GTEQ;
+                    } else if (i + 1 < n && s.charAt(i + 1) == '>') {
+                        type = RSHIFT;
+                    } else {
+                        type = GT;
+                        end = i + 1;
+                    }
+                    break;
+                case '!':
+                    if (i + 1 < n && s.charAt(i + 1) == '=') {
+                        type = NOT_EQ;
+                        end = i + 2;
+                        break;
+                    }
+                    // 单独的'!'不是token，出错信息包含DFA读到的下一个字符
+                    fail(i, Math.min(i + 2, n));
+                    return;
+                case '\'': {
+                    int j = i + 1;
+                    type = SINGLE_QUOTE;
+                    end = i + 1;
+                    scanEnd = n;
+                    while (j < n) {
+                        char ch = s.charAt(j);
+                        if (ch == '\'') {
+                            type = STRING;
+                            end = j + 1;
+                            scanEnd = -1;
+                            break;
+                        } else if (ch == '\\') {
+                            // 只允许\'转义
+                            if (j + 1 < n && s.charAt(j + 1) == '\'') {
+                                j += 2;
+                            } else {
+                                scanEnd = Math.min(j + 2, n);
+                                break;
+                            }
+                        } else {
+                            ++j;
+                        }
+                    }
+                    break;
+                }
+                default:
+                    if (isLetter(c)) {
+                        end = i + 1;
+                        while (end < n && isIdentifierPart(s.charAt(end))) {
+                            ++end;
+                        }
+                        type = keyword(s, i, end - i);
+                    } else if (c == '-' || isDigit(c)) {
+                        long number = scanNumber(s, i, n);
+                        type = (int)(number >>> 32);
+                        end = (int)number;
+                    } else {
+                        fail(i, i + 1);
+                        return;
+                    }
+                    break;
+            }
+
+            add(type, i, end);
+
+            if (scanEnd < 0) {
+                scanEnd = Math.min(end + 1, n);
+            }
+            if (scanEnd > end) {
+                // SableCC退回多读的字符时会恢复行号和列号，但不恢复cr
+                cr = s.charAt(scanEnd - 1) == '\r';
+            }
+
+            i = end;
+        }
+
+        eofLine = line + 1;
+        eofPos = pos + 1;
+    }
+
+    private void add(int type, int start, int end) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+
+        types[size] = type;
+        offsets[size] = start;
+        lengths[size] = end - start;
+        lines[size] = line + 1;
+        positions[size] = pos + 1;
+        ++size;
+
+        advance(start, end);
+    }
+
+    private void advance(int start, int end) {
+        for (int i = start; i < end; ++i) {
+            char c = input.charAt(i);
+            if (c == '\n') {
+                if (cr) {
+                    cr = false;
+                } else {
+                    ++line;
+                    pos = 0;
+                }
+            } else if (c == '\r') {
+                ++line;
+                pos = 0;
+                cr = true;
+            } else {
+                ++pos;
+                cr = false;
+            }
+        }
+    }
+
+    private void fail(int start, int end) {
+        error = "[" + (line + 1) + "," + (pos + 1) + "] Unknown token: " + input.subSequence(start, end);
+    }
+
+    private static int keyword(CharSequence s, int start, int length) {
+        if (length >= KEYWORDS_BY_LENGTH.length) {
+            return IDENTIFIER;
+        }
+
+        // 关键字只有全小写和全大写两种写法
+        String[] keywords = isLowerCase(s.charAt(start)) ? KEYWORDS : UPPER_KEYWORDS;
+        for (int type : KEYWORDS_BY_LENGTH[length]) {
+            if (matches(s, start, keywords[type])) {
+                return type;
+            }
+        }
+
+        return IDENTIFIER;
+    }
+
+    private static boolean matches(CharSequence s, int start, String keyword) {
+        for (int i = 0; i < keyword.length(); ++i) {
+            if (s.charAt(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按最长匹配识别数字，结果的高32位是类型，低32位是结束位置。
+     *
+     * 长度相同时取grammar中先声明的token：octet、hex、int、float、scientific。
+     */
+    private static long scanNumber(CharSequence s, int start, int n) {
+        int j = start;
+        boolean negative = s.charAt(j) == '-';
+        if (negative) {
+            ++j;
+        }
+
+        if (j >= n || !isDigit(s.charAt(j))) {
+            return ((long) SUB << 32) | (start + 1);
+        }
+
+        // 负号后面的数字都不匹配时退回到单独的sub
+        int type = negative ? SUB : -1;
+        int end = negative ? start + 1 : start;
+
+        char first = s.charAt(j);
+        int digitsEnd = skipDigits(s, j, n);
+
+        // octet = '-'? '0' positive_digit digit*
+        if (first == '0' && j + 1 < n && isPositiveDigit(s.charAt(j + 1))) {
+            type = OCTET;
+            end = digitsEnd;
+        }
+
+        // hex = '-'? '0' ('X'|'x') positive_digit digit*
+        if (first == '0' && j + 2 < n && (s.charAt(j + 1) == 'x' || s.charAt(j + 1) == 'X')
+                && isPositiveDigit(s.charAt(j + 2))) {
+            int e = skipDigits(s, j + 2, n);
+            if (e > end) {
+                type = HEX;
+                end = e;
+            }
+        }
+
+        // int = '0' | '-'? positive_digit digit*
+        if (first != '0' || !negative) {
+            int e = (first == '0') ? j + 1 : digitsEnd;
+            if (e > end) {
+                type = INT;
+                end = e;
+            }
+        }
+
+        // float = '-'? digit+ '.' digit+
+        if (digitsEnd + 1 < n && s.charAt(digitsEnd) == '.' && isDigit(s.charAt(digitsEnd + 1))) {
+            int e = skipDigits(s, digitsEnd + 1, n);
+            if (e > end) {
+                type = FLOAT;
+                end = e;
+            }
+        }
+
+        // scientific = '-'? positive_digit ('.' digit+)? ['e' + 'E'] ('+'|'-') digit+
+        if (first != '0') {
+            int k = j + 1;
+            if (k + 1 < n && s.charAt(k) == '.' && isDigit(s.charAt(k + 1))) {
+                k = skipDigits(s, k + 1, n);
+            }
+            if (k + 2 < n && (s.charAt(k) == 'e' || s.charAt(k) == 'E')
+                    && (s.charAt(k + 1) == '+' || s.charAt(k + 1) == '-') && isDigit(s.charAt(k + 2))) {
+                int e = skipDigits(s, k + 2, n);
+                if (e > end) {
+                    type = SCIENTIFIC;
+                    end = e;
+                }
+            }
+        }
+
+        return ((long) type << 32) | end;
+    }
+
+    private static int skipDigits(CharSequence s, int start, int n) {
+        int i = start;
+        while (i < n && isDigit(s.charAt(i))) {
+            ++i;
+        }
+        return i;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isLowerCase(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isPositiveDigit(char c) {
+        return c >= '1' && c <= '9';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    Token newToken(int index) {
+        int type = types[index];
+        int line = lines[index];
+        int pos = positions[index];
+
+        if (type <= DISTINCT) {
+            String text = isLowerCase(input.charAt(offsets[index])) ? KEYWORDS[type] : UPPER_KEYWORDS[type];
+            switch (type) {
+                case SELECT: return new TSelect(text, line, pos);
+                case DELETE: return new TDelete(text, line, pos);
+                case UPDATE: return new TUpdate(text, line, pos);
+                case INSERT: return new TInsert(text, line, pos);
+                case INTO: return new TInto(text, line, pos);
+                case AS: return new TAs(text, line, pos);
+                case FROM: return new TFrom(text, line, pos);
+                case WHERE: return new TWhere(text, line, pos);
+                case AND: return new TAnd(text, line, pos);
+                case OR: return new TOr(text, line, pos);
+                case NOT: return new TNot(text, line, pos);
+                case IS: return new TIs(text, line, pos);
+                case LIKE: return new TLike(text, line, pos);
+                case IN: return new TIn(text, line, pos);
+                case TRUE: return new TTrue(text, line, pos);
+                case FALSE: return new TFalse(text, line, pos);
+                case BETWEEN: return new TBetween(text, line, pos);
+                case ORDER: return new TOrder(text, line, pos);
+                case GROUP: return new TGroup(text, line, pos);
+                case BY: return new TBy(text, line, pos);
+                case PARTITION: return new TPartition(text, line, pos);
+                case LIMIT: return new TLimit(text, line, pos);
+                case DESC: return new TDesc(text, line, pos);
+                case ASC: return new TAsc(text, line, pos);
+                case NULL: return new TNull(text, line, pos);
+                case SET: return new TSet(text, line, pos);
+                case VALUES: return new TValues(text, line, pos);
+                case ON: return new TOn(text, line, pos);
+                case DUPLICATE: return new TDuplicate(text, line, pos);
+                case KEY: return new TKey(text, line, pos);
+                default: return new TDistinct(text, line, pos);
+            }
+        }
+
+        switch (type) {
+            case LPAREN: return new TLparen(line, pos);
+            case RPAREN: return new TRparen(line, pos);
+            case DOT: return new TDot(line, pos);
+            case COMMA: return new TComma(line, pos);
+            case COLON: return new TColon(line, pos);
+            case QUOTE: return new TQuote(line, pos);
+            case LT: return new TLt(line, pos);
+            case GT: return new TGt(line, pos);
+            case LTEQ: return new TLteq(line, pos);
+            case GTEQ: return new TGteq(line, pos);
+            case EQ: return new TEq(line, pos);
+            case NOT_EQ: return new TNotEq(input.charAt(offsets[index]) == '!' ? "!=" : "<>", line, pos);
+            case BIT_INVERT: return new TBitInvert(line, pos);
+            case MUL: return new TMul(line, pos);
+            case DIV: return new TDiv(line, pos);
+            case MOD: return new TMod(line, pos);
+            case ADD: return new TAdd(line, pos);
+            case SUB: return new TSub(line, pos);
+            case BIT_AND: return new TBitAnd(line, pos);
+            case BIT_XOR: return new TBitXor(line, pos);
+            case BIT_OR: return new TBitOr(line, pos);
+            case LSHIFT: return new TLshift(line, pos);
+            case RSHIFT: return new TRshift(line, pos);
+            case BLANKS: return new TBlanks(getText(index), line, pos);
+            case IDENTIFIER: return new TIdentifier(getText(index), line, pos);
+            case OCTET: return new TOctet(getText(index), line, pos);
+            case HEX: return new THex(getText(index), line, pos);
+            case INT: return new TInt(getText(index), line, pos);
+            case FLOAT: return new TFloat(getText(index), line, pos);
+            case SCIENTIFIC: return new TScientific(getText(index), line, pos);
+            case STRING: return new TString(getText(index), line, pos);
+            default: return new TSingleQuote(line, pos);
+        }
+    }
+
+    EOF newEOF() {
+        return new EOF(eofLine, eofPos);
+    }
+
+    private static class TokenLexer extends Lexer {
+
+        private final BQLLexer tokens;
+
+        private int index;
+
+        TokenLexer(BQLLexer tokens) {
+            super(null);
+            this.tokens = tokens;
+        }
+
+        @Override
+        protected Token getToken() throws LexerException {
+            while (index < tokens.size && tokens.types[index] == BLANKS) {
+                ++index;
+            }
+
+            if (index < tokens.size) {
+                return tokens.newToken(index++);
+            }
+
+            if (tokens.error != null) {
+                throw new LexerException(tokens.error);
+            }
+
+            return tokens.newEOF();
+        }
+    }
+}
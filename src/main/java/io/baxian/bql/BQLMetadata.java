@@ -1,31 +1,95 @@
 package io.baxian.bql;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * 语句的metadata，由{@link BQLPlan}在编译时收集，之后只读，和编译缓存中的plan一起被多个线程共享。
+ */
 public class BQLMetadata {
 
+    private BQLStatementType statementType;
+
+    private long fingerprint;
+
+    private long maskedFingerprint;
+
+    // 不为null时fingerprint还没有计算，第一次读取时按这个语句计算
+    private volatile String fingerprintSource;
+
     private String schema;
 
     private String table;
 
     private String alias;
 
-    private List<BQLColumn> columns = new ArrayList<BQLColumn>();
+    private final List<BQLColumn> columns = new ArrayList<BQLColumn>();
+
+    private final List<BQLColumn> readOnlyColumns = Collections.unmodifiableList(columns);
+
+    public BQLStatementType getStatementType() {
+        return statementType;
+    }
+
+    void setStatementType(BQLStatementType statementType) {
+        this.statementType = statementType;
+    }
+
+    /**
+     * 按token计算的fingerprint，见{@link BQLFingerprint}。
+     */
+    public long getFingerprint() {
+        computeFingerprints();
+        return fingerprint;
+    }
+
+    /**
+     * 屏蔽字面量后的fingerprint。
+     */
+    public long getMaskedFingerprint() {
+        computeFingerprints();
+        return maskedFingerprint;
+    }
+
+    /**
+     * 编译时不计算fingerprint，第一次读取时再按bql计算。
+     */
+    void setFingerprintSource(String bql) {
+        this.fingerprintSource = bql;
+    }
+
+    /**
+     * 多个线程同时计算时结果相同，fingerprintSource是volatile的，清空之前写入的值对其他线程可见。
+     */
+    private void computeFingerprints() {
+        String bql = fingerprintSource;
+        if (bql == null) {
+            return;
+        }
+
+        BQLLexer tokens = BQLLexer.tokenize(bql);
+        fingerprint = BQLFingerprint.of(tokens, false);
+        maskedFingerprint = BQLFingerprint.of(tokens, true);
+        fingerprintSource = null;
+    }
 
     public String getTable() {
         return table;
     }
 
-    public void setTable(String table) {
+    void setTable(String table) {
         this.table = table;
     }
 
+    /**
+     * @return 只读的列表
+     */
     public List<BQLColumn> getColumns() {
-        return columns;
+        return readOnlyColumns;
     }
 
-    public void addColumn(BQLColumn column) {
+    void addColumn(BQLColumn column) {
         if (column != null) {
             columns.add(column);
         }
@@ -39,11 +103,11 @@ public class BQLMetadata {
         return alias;
     }
 
-    public void setAlias(String alias) {
+    void setAlias(String alias) {
         this.alias = alias;
     }
 
-    public void setSchema(String schema) {
+    void setSchema(String schema) {
         this.schema = schema;
     }
 }
@@ -11,22 +11,26 @@ public class BQLMetadataCollector extends DepthFirstAdapter {
 
     @Override
     public void caseASelectStatement(ASelectStatement statement) {
+        metadata.setStatementType(BQLStatementType.SELECT);
         collectTable(statement.getTable());
         collectColumns(statement.getColumns());
     }
 
     @Override
     public void caseADeleteStatement(ADeleteStatement statement) {
+        metadata.setStatementType(BQLStatementType.DELETE);
         collectTable(statement.getTable());
     }
 
     @Override
     public void caseAUpdateStatement(AUpdateStatement statement) {
+        metadata.setStatementType(BQLStatementType.UPDATE);
         collectTable(statement.getTable());
     }
 
     @Override
     public void caseAInsertStatement(AInsertStatement statement) {
+        metadata.setStatementType(BQLStatementType.INSERT);
         collectTable(statement.getTable());
     }
 
@@ -0,0 +1,46 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.analysis.DepthFirstAdapter;
+import io.baxian.bql.framework.node.Node;
+import io.baxian.bql.framework.node.Token;
+
+/**
+ * AST工具方法。
+ *
+ * 编译缓存中的AST被多个线程共享，不修改；优化器的改写记录在{@link BQLRewrites}中。
+ */
+final class BQLNodes {
+
+    private BQLNodes() {
+    }
+
+    /**
+     * 节点改写后的结构，key相同的条件优化结果也相同。
+     * 运算符节点没有token，toString()区分不了>和>=，这里加上节点类型。
+     */
+    static String key(Node node, final BQLRewrites rewrites) {
+        final StringBuilder key = new StringBuilder();
+        node.apply(new DepthFirstAdapter() {
+            @Override
+            public void defaultIn(Node node) {
+                key.append(node.getClass().getSimpleName()).append('(');
+
+                Node target = rewrites.resolve(node);
+                if (target != node) {
+                    key.append(target != null ? key(target, rewrites) : "null");
+                }
+            }
+
+            @Override
+            public void defaultOut(Node node) {
+                key.append(')');
+            }
+
+            @Override
+            public void defaultCase(Node node) {
+                key.append(((Token) node).getText()).append(' ');
+            }
+        });
+        return key.toString();
+    }
+}
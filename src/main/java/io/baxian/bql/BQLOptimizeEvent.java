@@ -0,0 +1,14 @@
+package io.baxian.bql;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * BQLCompiler.optimize()。
+ */
+@Name("io.baxian.bql.Optimize")
+@Label("BQL Optimize")
+@Description("Pruning predicates with missing options and binding values. optionCount is the number of bound values.")
+final class BQLOptimizeEvent extends BQLEvent {
+}
@@ -14,18 +14,106 @@ public class BQLOptimizer extends DepthFirstAdapter {
 
     private List<BQLOption> optimizedOptions = new ArrayList<BQLOption>();
 
+    private List<BQLOptionSlot> optionSlots = new ArrayList<BQLOptionSlot>();
+
+    private BQLRewrites rewrites = new BQLRewrites();
+
     private BQLException error;
 
+    private int prunedPredicates;
+
+    private final BQLConstantFolder folder;
+
+    private final boolean inNormalization;
+
+    private final boolean sortInValues;
+
+    private final boolean booleanNormalization;
+
+    private final boolean predicateSimplification;
+
+    // 每个条件的绑定值在optimizedOptions中的下标，改写WHERE后按新的条件重新排列绑定值
+    private Map<PExpr, int[]> predicateOptions;
+
+    private boolean provablyEmpty;
+
+    private final BQLPartitionCatalog partitionCatalog;
+
+    private final BQLSchemaCatalog schemaCatalog;
+
+    private final String keysetCursorOption;
+
+    private final List<String> keysetUniqueKey;
+
+    private final int inListPadding;
+
+    private Long limitOverride;
+
+    private List<String> keysetColumns;
+
     public BQLOptimizer(Map<String, Object> options) {
+        this(options, null);
+    }
+
+    /**
+     * @param config 为null时不打开任何可选功能
+     */
+    public BQLOptimizer(Map<String, Object> options, BQLOptimizerConfig config) {
         if (options != null) {
             this.options = options;
         }
+
+        if (config != null && config.isConstantFolding()) {
+            folder = new BQLConstantFolder(config.isFoldBoundOptions() ? this.options : null);
+        } else {
+            folder = null;
+        }
+
+        inNormalization = config != null && config.isInNormalization();
+        sortInValues = inNormalization && config.isSortInValues();
+        booleanNormalization = config != null && config.isBooleanNormalization();
+        predicateSimplification = config != null && config.isPredicateSimplification();
+        partitionCatalog = config != null ? config.getPartitionCatalog() : null;
+        schemaCatalog = config != null ? config.getSchemaCatalog() : null;
+        keysetCursorOption = config != null ? config.getKeysetCursorOption() : null;
+        keysetUniqueKey = config != null ? config.getKeysetUniqueKey() : null;
+        inListPadding = config != null ? config.getInListPadding() : 0;
+        rewrites.setInNormalization(inNormalization);
+        if (booleanNormalization || predicateSimplification || schemaCatalog != null) {
+            predicateOptions = new IdentityHashMap<PExpr, int[]>();
+        }
+    }
+
+    /**
+     * SELECT的LIMIT换成LIMIT count。
+     */
+    void setLimitOverride(long limitOverride) {
+        this.limitOverride = limitOverride;
     }
 
     public List<BQLOption> getOptimizedOptions() {
         return optimizedOptions;
     }
 
+    /**
+     * 与{@link #getOptimizedOptions()}一一对应，记录每个绑定值来自哪个参数。
+     */
+    List<BQLOptionSlot> getOptionSlots() {
+        return optionSlots;
+    }
+
+    /**
+     * 优化器不修改语法树，删除和替换的节点都记录在这里，生成器通过{@link BQLGenerator#setRewrites(BQLRewrites)}使用。
+     */
+    public BQLRewrites getRewrites() {
+        return rewrites;
+    }
+
+    private void addOption(List<BQLOption> values, String option, Object value, int index) {
+        values.add(new BQLOption(option, value));
+        optionSlots.add(new BQLOptionSlot(option, index));
+    }
+
     @Override
     public void caseASelectStatement(ASelectStatement statement) {
         List<PValue> partitions = statement.getPartitions();
@@ -33,32 +121,207 @@ public class BQLOptimizer extends DepthFirstAdapter {
 
         PExpr current = statement.getWhereCondition();
         try {
-            current = visitExpr(current, optimizedOptions, false);
+            current = optimizeWhere(statement.getTable(), current, false);
         } catch (MissingOptionException e) {
             error = e;
             return;
         }
 
-        statement.setWhereCondition(current);
+        rewrites.replace(statement.getWhereCondition(), current);
+
+        boolean seeking = false;
+        if (keysetCursorOption != null) {
+            keysetColumns = keysetColumns(statement);
+            Object cursor = options.get(keysetCursorOption);
+            if (keysetColumns != null && cursor != null) {
+                try {
+                    current = seekAfter(statement.getOrderByItems(), current, cursor);
+                } catch (InvalidOptionException e) {
+                    error = e;
+                    return;
+                }
+                rewrites.setWhere(current);
+                seeking = true;
+            }
+        }
+
+        if (partitionCatalog != null && partitions.isEmpty()) {
+            prunePartitions(statement.getTable(), current);
+        }
+        if (schemaCatalog != null && current != null) {
+            chooseIndexHint(statement.getTable(), current);
+        }
 
         PLimit limit = statement.getLimit();
-        statement.setLimit(optimizeLimit(limit, optimizedOptions));
+        ALimit aLimit = (ALimit) limit;
+        if (limitOverride != null && aLimit.getCount() != null) {
+            rewrites.replace(limit, new ALimit(null, new AIntValue(new TInt(String.valueOf(limitOverride)))));
+        } else if (seeking && aLimit.getOffset() != null && aLimit.getCount() != null) {
+            // 游标已经定位到上一页的末尾，去掉offset
+            rewrites.replace(limit, optimizeLimit(new ALimit(null, (PValue) aLimit.getCount().clone()), optimizedOptions));
+        } else {
+            rewrites.replace(limit, optimizeLimit(limit, optimizedOptions));
+        }
+    }
+
+    /**
+     * ORDER BY都是本表的列，并且包含keysetUniqueKey或者表结构中某个唯一索引的全部列时可以按游标分页，
+     * 否则排序值相同的行会被跳过。
+     *
+     * @return 排序列的列名，不能按游标分页时返回null
+     */
+    private List<String> keysetColumns(ASelectStatement statement) {
+        List<POrderByItem> items = statement.getOrderByItems();
+        if (items.isEmpty()) {
+            return null;
+        }
+
+        ATable table = (ATable) statement.getTable();
+        ATableComponents components = (ATableComponents) table.getComponents();
+        String name = components.getTable().getText();
+        String alias = table.getAlias() != null ? table.getAlias().getText() : null;
+
+        List<String> columns = new ArrayList<String>(items.size());
+        Set<String> names = new HashSet<String>();
+        for (POrderByItem item : items) {
+            AColumnComponents column = (AColumnComponents) ((AOrderByItem) item).getColumn();
+            TIdentifier qualifier = column.getTable();
+            if (qualifier != null && !qualifier.getText().equalsIgnoreCase(name)
+                    && !qualifier.getText().equalsIgnoreCase(alias)) {
+                return null;
+            }
+            columns.add(column.getColumn().getText());
+            names.add(column.getColumn().getText().toLowerCase(Locale.ROOT));
+        }
+
+        if (keysetUniqueKey != null && covers(names, keysetUniqueKey)) {
+            return columns;
+        }
+        BQLTableSchema tableSchema = schemaCatalog != null ? schemaCatalog.getTable(
+                components.getSchema() != null ? components.getSchema().getText() : null, name) : null;
+        if (tableSchema == null) {
+            return null;
+        }
+        for (BQLIndex index : tableSchema.getIndexes()) {
+            if (index.isUnique() && covers(names, index.getColumns())) {
+                return columns;
+            }
+        }
+        return null;
+    }
+
+    private static boolean covers(Set<String> names, List<String> columns) {
+        for (String column : columns) {
+            if (!names.contains(column.toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在WHERE上加上排在游标之后的条件，(k1, k2) &gt; (v1, v2)写成
+     * k1 &gt;= v1 AND (k1 &gt; v1 OR k1 = v1 AND k2 &gt; v2)，每列可以有不同的排序方向，
+     * 第一个条件让MySQL可以按索引范围扫描。
+     */
+    private PExpr seekAfter(List<POrderByItem> items, PExpr where, Object cursor) throws InvalidOptionException {
+        List<Object> values;
+        try {
+            values = BQLCursor.decode(cursor.toString(), keysetColumns);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidOptionException(keysetCursorOption, cursor);
+        }
+
+        // 按输出的顺序创建节点，绑定值的顺序和占位符一致
+        PExpr lead = null;
+        if (items.size() > 1) {
+            lead = seekPredicate(items.get(0), values.get(0), true);
+        }
+
+        PExpr seek = null;
+        for (int i = 0; i < items.size(); ++i) {
+            PExpr term = null;
+            for (int j = 0; j < i; ++j) {
+                PExpr equal = new ABinaryExpr(new AEqOp(), seekColumn(items.get(j)), seekValue(values.get(j)));
+                term = term != null ? new AConditionExpr(new AAndOp(), term, equal) : equal;
+            }
+            PExpr after = seekPredicate(items.get(i), values.get(i), false);
+            term = term != null ? new AConditionExpr(new AAndOp(), term, after) : after;
+            seek = seek != null ? new AConditionExpr(new AOrOp(), seek, term) : term;
+        }
+        if (lead != null) {
+            seek = new AConditionExpr(new AAndOp(), lead, seek);
+        }
+        return where != null ? new AConditionExpr(new AAndOp(), rewrites.reference(where), seek) : seek;
+    }
+
+    private PExpr seekPredicate(POrderByItem item, Object value, boolean inclusive) {
+        boolean desc = ((AOrderByItem) item).getOrder() instanceof ADescOrder;
+        POp op;
+        if (desc) {
+            op = inclusive ? new ALteqOp() : new ALtOp();
+        } else {
+            op = inclusive ? new AGteqOp() : new AGtOp();
+        }
+        return new ABinaryExpr(op, seekColumn(item), seekValue(value));
+    }
+
+    private static PValue seekColumn(POrderByItem item) {
+        return new AColumnValue((PColumnComponents) ((AOrderByItem) item).getColumn().clone());
+    }
+
+    private PValue seekValue(Object value) {
+        AOptionValue option = new AOptionValue(new TIdentifier(keysetCursorOption));
+        rewrites.bind(option, value);
+        addOption(optimizedOptions, keysetCursorOption, value, BQLOptionSlot.SCALAR);
+        return option;
+    }
+
+    private void prunePartitions(PTable table, PExpr where) {
+        ATableComponents components = (ATableComponents) ((ATable) table).getComponents();
+        TIdentifier schema = components.getSchema();
+        BQLPartitioning partitioning = partitionCatalog.getPartitioning(
+                schema != null ? schema.getText() : null, components.getTable().getText());
+        if (partitioning == null) {
+            return;
+        }
+
+        List<String> pruned = new BQLPartitionPruner(partitioning, rewrites, options).prune(where);
+        if (pruned == null) {
+            return;
+        }
+        if (pruned.isEmpty()) {
+            provablyEmpty = true;
+        } else {
+            rewrites.setPartitions(pruned);
+        }
+    }
+
+    private void chooseIndexHint(PTable table, PExpr where) {
+        ATable aTable = (ATable) table;
+        ATableComponents components = (ATableComponents) aTable.getComponents();
+        String schema = components.getSchema() != null ? components.getSchema().getText() : null;
+        String name = components.getTable().getText();
+        String alias = aTable.getAlias() != null ? aTable.getAlias().getText() : null;
+
+        Set<String> columns = new BQLIndexAdvisor(rewrites, name, alias).columns(where);
+        rewrites.setIndexHint(schemaCatalog.getIndexHint(schema, name, alias, columns));
     }
 
     @Override
     public void caseADeleteStatement(ADeleteStatement statement) {
         PExpr current = statement.getWhereCondition();
         try {
-            current = visitExpr(current, optimizedOptions, true);
+            current = optimizeWhere(statement.getTable(), current, true);
         } catch (MissingOptionException e) {
             error = e;
             return;
         }
 
-        statement.setWhereCondition(current);
+        rewrites.replace(statement.getWhereCondition(), current);
 
         PLimit limit = statement.getLimit();
-        statement.setLimit(optimizeLimit(limit, optimizedOptions));
+        rewrites.replace(limit, optimizeLimit(limit, optimizedOptions));
     }
 
     @Override
@@ -68,15 +331,15 @@ public class BQLOptimizer extends DepthFirstAdapter {
 
         PExpr current = statement.getWhereCondition();
         try {
-            current = visitExpr(current, optimizedOptions, true);
+            current = optimizeWhere(statement.getTable(), current, true);
         } catch (MissingOptionException e) {
             error = e;
             return;
         }
-        statement.setWhereCondition(current);
+        rewrites.replace(statement.getWhereCondition(), current);
 
         PLimit limit = statement.getLimit();
-        statement.setLimit(optimizeLimit(limit, optimizedOptions));
+        rewrites.replace(limit, optimizeLimit(limit, optimizedOptions));
     }
 
     @Override
@@ -93,40 +356,31 @@ public class BQLOptimizer extends DepthFirstAdapter {
         for (PRow row : rows) {
             ARow aRow = (ARow) row;
 
-            List<PValue> values = aRow.getValues();
-            for (int i = 0; i < values.size(); ++i) {
-                PValue value = values.get(i);
+            for (PValue value : aRow.getValues()) {
                 PValue newValue = optimizeValue(value, optimizedOptions, false);
                 if (newValue != null) {
-                    values.set(i, newValue);
+                    rewrites.replace(value, newValue);
                 } else {
-                    values.set(i, new ANullValue());
+                    rewrites.replace(value, new ANullValue());
                 }
             }
         }
     }
 
     private void optimizeInsertColumns(List<PUpdateColumn> columns) throws MissingOptionException {
-        List<PUpdateColumn> optimizedColumns = new ArrayList<PUpdateColumn>();
-
         for (PUpdateColumn c : columns) {
             AUpdateColumn column = (AUpdateColumn)c;
 
             PValue oldValue = column.getValue();
             PValue newValue = optimizeValue(oldValue, optimizedOptions, false);
-            column.setValue(newValue);
-            if (newValue != null) {
-                optimizedColumns.add(c);
+            rewrites.replace(oldValue, newValue);
+            if (newValue == null) {
+                rewrites.replace(c, null);
             }
         }
-
-        columns.clear();
-        columns.addAll(optimizedColumns);
     }
 
     private void optimizeUpdateColumns(List<PUpdateColumn> columns, List<BQLOption> values) {
-        List<PUpdateColumn> optimizedColumns = new ArrayList<PUpdateColumn>();
-
         for (PUpdateColumn c : columns) {
             AUpdateColumn column = (AUpdateColumn)c;
 
@@ -138,49 +392,36 @@ public class BQLOptimizer extends DepthFirstAdapter {
                 error = e;
                 return;
             }
-            column.setValue(newValue);
+            rewrites.replace(oldValue, newValue);
 
-            if (newValue != null) {
-                optimizedColumns.add(c);
+            if (newValue == null) {
+                rewrites.replace(c, null);
             }
         }
-
-        columns.clear();
-        columns.addAll(optimizedColumns);
     }
 
     private void optimizePartitions(List<PValue> partitions, List<BQLOption> values) {
-        List<PValue> optimizedPartitions = new ArrayList<PValue>();
-
         for (PValue partition : partitions) {
 
             if (partition instanceof AOptionValue) {
                 String option = ((AOptionValue)partition).getIdentifier().getText();
 
-                if (options.containsKey(option)) {
-
-                    Object value = options.get(option);
-                    if (value != null) {
-                        optimizedPartitions.add(partition);
-
-                        if (value instanceof List) {
-                            for (Object v : (List)value) {
-                                if (v != null) {
-                                    values.add(new BQLOption(option, v));
-                                }
-                            }
-                        } else {
-                            values.add(new BQLOption(option, value));
+                Object value = options.get(option);
+                if (value == null) {
+                    rewrites.replace(partition, null);
+                } else if (value instanceof List) {
+                    List list = (List)value;
+                    for (int i = 0; i < list.size(); ++i) {
+                        Object v = list.get(i);
+                        if (v != null) {
+                            addOption(values, option, v, i);
                         }
                     }
+                } else {
+                    addOption(values, option, value, -1);
                 }
-            } else {
-                optimizedPartitions.add(partition);
             }
         }
-
-        partitions.clear();
-        partitions.addAll(optimizedPartitions);
     }
 
     private PLimit optimizeLimit(PLimit limit, List<BQLOption> values) {
@@ -194,7 +435,7 @@ public class BQLOptimizer extends DepthFirstAdapter {
             if (value == null) {
                 return null;
             }
-            values.add(new BQLOption(option, value));
+            addOption(values, option, value, -1);
         }
 
         PValue count = aLimit.getCount();
@@ -204,7 +445,7 @@ public class BQLOptimizer extends DepthFirstAdapter {
             if (value == null) {
                 return null;
             }
-            values.add(new BQLOption(option, value));
+            addOption(values, option, value, -1);
         }
 
         return limit;
@@ -353,14 +594,15 @@ public class BQLOptimizer extends DepthFirstAdapter {
             } else if (optionValue instanceof Collection) {
                 Collection collection = (Collection)optionValue;
                 if (!collection.isEmpty()) {
+                    int i = 0;
                     for (Object v : collection) {
-                        values.add(new BQLOption(option, v));
+                        addOption(values, option, v, i++);
                     }
                 } else {
                     return null;
                 }
             } else {
-                values.add(new BQLOption(option, optionValue));
+                addOption(values, option, optionValue, -1);
             }
             return value;
         } else {
@@ -372,6 +614,15 @@ public class BQLOptimizer extends DepthFirstAdapter {
     }
 
     private PValue optimizeValue(PValue value, List<BQLOption> values, boolean optionRequired) throws MissingOptionException {
+        if (folder != null) {
+            // 常量子树整个换成字面量，其中的参数不再绑定
+            PValue folded = folder.fold(value);
+            if (folded != null) {
+                rewrites.replace(value, folded);
+                return folded;
+            }
+        }
+
         if (value instanceof AOptionValue) {
             return optimizeOptionValue(value, values, optionRequired);
         } else if (value instanceof AAddValue) {
@@ -416,7 +667,7 @@ public class BQLOptimizer extends DepthFirstAdapter {
             String option = ((AOptionValue)value).getIdentifier().getText();
             if (options.containsKey(option)) {
                 Object optionValue = options.get(option);
-                values.add(new BQLOption(option, optionValue));
+                addOption(values, option, optionValue, -1);
             } else {
                 if (optionRequired) {
                     throw new MissingOptionException(option);
@@ -434,7 +685,7 @@ public class BQLOptimizer extends DepthFirstAdapter {
             String option = ((AOptionValue)value).getIdentifier().getText();
             if (options.containsKey(option)) {
                 Object optionValue = options.get(option);
-                values.add(new BQLOption(option, optionValue));
+                addOption(values, option, optionValue, -1);
             } else {
                 if (optionRequired) {
                     throw new MissingOptionException(option);
@@ -448,10 +699,10 @@ public class BQLOptimizer extends DepthFirstAdapter {
 
     private PExpr optimizeBinaryExpr(ABinaryExpr expr, List<BQLOption> values, boolean optionRequired) throws MissingOptionException {
         PValue left = optimizeValue(expr.getLeft(), values, optionRequired);
-        expr.setLeft(left);
+        rewrites.replace(expr.getLeft(), left);
 
         PValue right = optimizeValue(expr.getRight(), values, optionRequired);
-        expr.setRight(right);
+        rewrites.replace(expr.getRight(), right);
 
         if (left != null && right != null) {
             return expr;
@@ -462,10 +713,10 @@ public class BQLOptimizer extends DepthFirstAdapter {
 
     private PExpr optimizeBetweenExpr(ABetweenExpr expr, List<BQLOption> values, boolean optionRequired) throws MissingOptionException {
         PValue left = optimizeValue(expr.getLeft(), values, optionRequired);
-        expr.setLeft(left);
+        rewrites.replace(expr.getLeft(), left);
 
         PValue right = optimizeValue(expr.getRight(), values, optionRequired);
-        expr.setRight(right);
+        rewrites.replace(expr.getRight(), right);
 
         if (left != null && right != null) {
             return expr;
@@ -475,31 +726,37 @@ public class BQLOptimizer extends DepthFirstAdapter {
     }
 
     private PExpr optimizeInExpr(AInExpr expr, List<BQLOption> values, boolean optionRequired) throws MissingOptionException {
-        List<PValue> newValues = new ArrayList<PValue>();
+        if (inNormalization && isNormalizable(expr.getValue())) {
+            return normalizeInExpr(expr, expr.getColumnComponents(), expr.getValue(), false, values, optionRequired);
+        }
+
+        boolean empty = true;
+
+        for (PValue value : expr.getValue()) {
+            if (inListPadding > 0 && isNonEmptyList(value)) {
+                padOptionList((AOptionValue) value, values);
+                empty = false;
+                continue;
+            }
 
-        List<PValue> inValues = expr.getValue();
-        for (PValue value : inValues) {
             PValue newValue = optimizeValue(value, values, optionRequired);
+            rewrites.replace(value, newValue);
             if (newValue != null) {
-                newValues.add(newValue);
+                empty = false;
             }
         }
 
-        if (newValues.isEmpty()) {
-            return null;
-        }
-
-        inValues.clear();
-        inValues.addAll(newValues);
-
-        return expr;
+        return empty ? null : expr;
     }
 
     private PExpr optimizeNotInExpr(ANotInExpr expr, List<BQLOption> values, boolean optionRequired) throws MissingOptionException {
-        List<PValue> newValues = new ArrayList<PValue>();
+        if (inNormalization && isNormalizable(expr.getValue())) {
+            return normalizeInExpr(expr, expr.getColumnComponents(), expr.getValue(), true, values, optionRequired);
+        }
 
-        List<PValue> inValues = expr.getValue();
-        for (PValue value : inValues) {
+        boolean empty = true;
+
+        for (PValue value : expr.getValue()) {
 
             if (value instanceof AOptionValue) {
 
@@ -511,6 +768,7 @@ public class BQLOptimizer extends DepthFirstAdapter {
                         if (optionRequired) {
                             throw new MissingOptionException(option);
                         }
+                        rewrites.replace(value, null);
                         continue;
                     }
                 }
@@ -520,26 +778,221 @@ public class BQLOptimizer extends DepthFirstAdapter {
 
                     List list = (List)optionValue;
                     if (list.isEmpty()) {
+                        rewrites.replace(value, null);
                         continue;
                     }
 
-                    for (Object v : (List)optionValue) {
-                        values.add(new BQLOption(option, v));
+                    if (inListPadding > 0) {
+                        padOptionList((AOptionValue) value, values);
+                    } else {
+                        for (int i = 0; i < list.size(); ++i) {
+                            addOption(values, option, list.get(i), i);
+                        }
                     }
                 } else {
-                    values.add(new BQLOption(option, optionValue));
+                    addOption(values, option, optionValue, -1);
                 }
 
-                newValues.add(value);
+                empty = false;
             } else {
-                newValues.add(value);
+                empty = false;
             }
         }
 
-        inValues.clear();
-        inValues.addAll(newValues);
+        return empty ? null : expr;
+    }
+
+    private boolean isNonEmptyList(PValue value) {
+        if (!(value instanceof AOptionValue)) {
+            return false;
+        }
+        Object optionValue = options.get(((AOptionValue) value).getIdentifier().getText());
+        return optionValue instanceof Collection && !((Collection) optionValue).isEmpty();
+    }
+
+    /**
+     * 重复最后一个元素，把List参数补齐到{@link #paddedSize(int, int)}。
+     */
+    private void padOptionList(AOptionValue value, List<BQLOption> values) {
+        String option = value.getIdentifier().getText();
+        List<Object> padded = new ArrayList<Object>((Collection<?>) options.get(option));
+        int last = padded.size() - 1;
+        for (int size = paddedSize(padded.size(), inListPadding); padded.size() < size; ) {
+            padded.add(padded.get(last));
+        }
+
+        // Set等其他Collection也按复制出来的List输出和绑定
+        rewrites.bind(value, padded);
+        for (int i = 0; i < padded.size(); ++i) {
+            addOption(values, option, padded.get(i), Math.min(i, last));
+        }
+    }
 
-        return newValues.isEmpty() ? null : expr;
+    /**
+     * @return 不超过inListPadding时取不小于size的2的幂，超过时取inListPadding的倍数
+     */
+    static int paddedSize(int size, int inListPadding) {
+        if (size >= inListPadding) {
+            return (size + inListPadding - 1) / inListPadding * inListPadding;
+        }
+        return size <= 1 ? size : Math.min(Integer.highestOneBit(size - 1) << 1, inListPadding);
+    }
+
+    private static boolean isNormalizable(List<PValue> list) {
+        for (PValue value : list) {
+            if (!(value instanceof AOptionValue)
+                    && !(value instanceof AIntValue)
+                    && !(value instanceof AFloatValue)
+                    && !(value instanceof AScientificValue)
+                    && !(value instanceof AStringValue)
+                    && !(value instanceof AHexValue)
+                    && !(value instanceof AOctetValue)
+                    && !(value instanceof ANullValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 去重后所有参数的元素都合并到第一个参数上输出，其余参数删掉；只剩一个值时换成column = value或column != value。
+     */
+    private PExpr normalizeInExpr(PExpr expr, PColumnComponents comps, List<PValue> list, boolean not,
+                                  List<BQLOption> values, boolean optionRequired) throws MissingOptionException {
+        List<PValue> literals = new ArrayList<PValue>();
+        Set<String> literalTexts = new HashSet<String>();
+        List<Object> elements = new ArrayList<Object>();
+        List<BQLOptionSlot> slots = new ArrayList<BQLOptionSlot>();
+        Set<Object> seen = new HashSet<Object>();
+        AOptionValue first = null;
+
+        for (PValue value : list) {
+            if (!(value instanceof AOptionValue)) {
+                if (literalTexts.add(value.toString())) {
+                    literals.add(value);
+                } else {
+                    rewrites.replace(value, null);
+                }
+                continue;
+            }
+
+            String option = ((AOptionValue) value).getIdentifier().getText();
+            if (!options.containsKey(option)) {
+                if (optionRequired) {
+                    throw new MissingOptionException(option);
+                }
+                rewrites.replace(value, null);
+                continue;
+            }
+
+            Object optionValue = options.get(option);
+            if (optionValue instanceof Collection) {
+                int i = 0;
+                for (Object v : (Collection) optionValue) {
+                    if (seen.add(v)) {
+                        elements.add(v);
+                        slots.add(new BQLOptionSlot(option, i));
+                    }
+                    ++i;
+                }
+            } else if (seen.add(optionValue)) {
+                elements.add(optionValue);
+                slots.add(new BQLOptionSlot(option, BQLOptionSlot.SCALAR));
+            }
+
+            if (first == null) {
+                first = (AOptionValue) value;
+            } else {
+                rewrites.replace(value, null);
+            }
+        }
+
+        int size = literals.size() + elements.size();
+        if (size == 0) {
+            return null;
+        }
+
+        if (sortInValues) {
+            sortElements(elements, slots);
+        }
+
+        if (size == 1) {
+            PValue right;
+            if (!literals.isEmpty()) {
+                right = (PValue) literals.get(0).clone();
+            } else if (elements.get(0) == null) {
+                right = new ANullValue();
+            } else {
+                AOptionValue option = (AOptionValue) first.clone();
+                rewrites.bind(option, elements.get(0));
+                addOption(values, slots.get(0).getOption(), elements.get(0), slots.get(0).getIndex());
+                right = option;
+            }
+
+            POp op = not ? new ANotEqOp() : new AEqOp();
+            return new ABinaryExpr(op, new AColumnValue((PColumnComponents) comps.clone()), right);
+        }
+
+        if (inListPadding > 0 && !elements.isEmpty()) {
+            int last = elements.size() - 1;
+            for (int padded = paddedSize(size, inListPadding); size < padded; ++size) {
+                elements.add(elements.get(last));
+                slots.add(slots.get(last));
+            }
+        }
+
+        if (first != null) {
+            if (elements.isEmpty()) {
+                rewrites.replace(first, null);
+            } else {
+                rewrites.bind(first, elements);
+            }
+        }
+
+        for (int i = 0; i < elements.size(); ++i) {
+            // 生成器把null输出成NULL，不绑定
+            if (elements.get(i) != null) {
+                addOption(values, slots.get(i).getOption(), elements.get(i), slots.get(i).getIndex());
+            }
+        }
+        return expr;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void sortElements(final List<Object> elements, List<BQLOptionSlot> slots) {
+        if (elements.size() < 2) {
+            return;
+        }
+
+        Class<?> type = elements.get(0) != null ? elements.get(0).getClass() : null;
+        if (type == null || !Comparable.class.isAssignableFrom(type)) {
+            return;
+        }
+        for (Object element : elements) {
+            if (element == null || element.getClass() != type) {
+                return;
+            }
+        }
+
+        Integer[] order = new Integer[elements.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return ((Comparable<Object>) elements.get(a)).compareTo(elements.get(b));
+            }
+        });
+
+        List<Object> sortedElements = new ArrayList<Object>(order.length);
+        List<BQLOptionSlot> sortedSlots = new ArrayList<BQLOptionSlot>(order.length);
+        for (int i : order) {
+            sortedElements.add(elements.get(i));
+            sortedSlots.add(slots.get(i));
+        }
+        Collections.copy(elements, sortedElements);
+        Collections.copy(slots, sortedSlots);
     }
 
     private PExpr visitExpr(PExpr expr, List<BQLOption> values, boolean optionRequired) throws MissingOptionException {
@@ -548,13 +1001,13 @@ public class BQLOptimizer extends DepthFirstAdapter {
             PExpr left = condition.getLeft();
             if (left != null) {
                 left = visitExpr(left, values, optionRequired);
-                condition.setLeft(left);
+                rewrites.replace(condition.getLeft(), left);
             }
 
             PExpr right = condition.getRight();
             if (right != null) {
                 right = visitExpr(right, values, optionRequired);
-                condition.setRight(right);
+                rewrites.replace(condition.getRight(), right);
             }
 
             if (left == null && right == null) {
@@ -571,7 +1024,7 @@ public class BQLOptimizer extends DepthFirstAdapter {
 
             PExpr childExpr = aNotExpr.getExpr();
             childExpr = visitExpr(childExpr, values, optionRequired);
-            aNotExpr.setExpr(childExpr);
+            rewrites.replace(aNotExpr.getExpr(), childExpr);
 
             if (childExpr != null) {
                 return expr;
@@ -579,13 +1032,122 @@ public class BQLOptimizer extends DepthFirstAdapter {
                 return null;
             }
         } else {
-            return optimizeExpr(expr, values, optionRequired);
+            int start = values.size();
+            PExpr optimized = optimizeExpr(expr, values, optionRequired);
+            if (optimized == null && expr != null) {
+                ++prunedPredicates;
+            } else if (predicateOptions != null && values.size() > start) {
+                int[] indexes = new int[values.size() - start];
+                for (int i = 0; i < indexes.length; ++i) {
+                    indexes[i] = start + i;
+                }
+                predicateOptions.put(optimized, indexes);
+            }
+            return optimized;
+        }
+    }
+
+    /**
+     * 删掉缺少参数的条件后再按配置规范化和化简，最后按改写后的条件重新排列绑定值。
+     */
+    private PExpr optimizeWhere(PTable table, PExpr where, boolean optionRequired) throws MissingOptionException {
+        int start = optimizedOptions.size();
+        PExpr current = visitExpr(where, optimizedOptions, optionRequired);
+        if (predicateOptions == null || current == null) {
+            return current;
+        }
+
+        if (booleanNormalization) {
+            current = new BQLBooleanNormalizer(rewrites, predicateOptions).normalize(current);
+        }
+
+        if (predicateSimplification) {
+            BQLPredicateSimplifier simplifier = new BQLPredicateSimplifier(rewrites, options);
+            current = simplifier.simplify(current);
+            if (simplifier.isContradiction()) {
+                provablyEmpty = true;
+            }
+        }
+
+        if (schemaCatalog != null) {
+            current = reorderPredicates(table, current);
+        }
+
+        List<Integer> indexes = new ArrayList<Integer>();
+        collectOptionIndexes(current, indexes);
+
+        List<BQLOption> whereOptions = new ArrayList<BQLOption>(indexes.size());
+        List<BQLOptionSlot> whereSlots = new ArrayList<BQLOptionSlot>(indexes.size());
+        for (int i : indexes) {
+            whereOptions.add(optimizedOptions.get(i));
+            whereSlots.add(optionSlots.get(i));
+        }
+        optimizedOptions.subList(start, optimizedOptions.size()).clear();
+        optionSlots.subList(start, optionSlots.size()).clear();
+        optimizedOptions.addAll(whereOptions);
+        optionSlots.addAll(whereSlots);
+        return current;
+    }
+
+    private PExpr reorderPredicates(PTable table, PExpr where) {
+        ATable aTable = (ATable) table;
+        ATableComponents components = (ATableComponents) aTable.getComponents();
+        String schema = components.getSchema() != null ? components.getSchema().getText() : null;
+        String name = components.getTable().getText();
+        BQLTableSchema tableSchema = schemaCatalog.getTable(schema, name);
+        if (tableSchema == null) {
+            return where;
+        }
+
+        String alias = aTable.getAlias() != null ? aTable.getAlias().getText() : null;
+        return new BQLIndexAdvisor(rewrites, name, alias).reorder(where, tableSchema);
+    }
+
+    /**
+     * 按生成器输出的顺序收集条件的绑定值，被删掉的条件不在树上，绑定值也就去掉了。
+     */
+    private void collectOptionIndexes(PExpr expr, List<Integer> indexes) {
+        if (expr instanceof AConditionExpr) {
+            AConditionExpr condition = (AConditionExpr) expr;
+            collectOptionIndexes(rewrites.resolve(condition.getLeft()), indexes);
+            collectOptionIndexes(rewrites.resolve(condition.getRight()), indexes);
+        } else if (expr instanceof ANotExpr) {
+            collectOptionIndexes(rewrites.resolve(((ANotExpr) expr).getExpr()), indexes);
+        } else if (expr != null) {
+            int[] predicateIndexes = predicateOptions.get(expr);
+            if (predicateIndexes != null) {
+                for (int i : predicateIndexes) {
+                    indexes.add(i);
+                }
+            }
         }
     }
 
     public BQLException getError() {
         return error;
     }
+
+    /**
+     * 因为参数不存在而被删掉的条件数，不含因此变空的AND/OR/NOT。
+     */
+    public int getPrunedPredicateCount() {
+        return prunedPredicates;
+    }
+
+    /**
+     * 打开{@link BQLOptimizerConfig#setKeysetCursorOption(String)}时可以按游标分页的SELECT的排序列，
+     * 不能按游标分页时返回null。
+     */
+    public List<String> getKeysetColumns() {
+        return keysetColumns;
+    }
+
+    /**
+     * 化简时发现WHERE条件矛盾，语句一定不会返回或修改任何行，调用方可以不访问数据库。
+     */
+    public boolean isProvablyEmpty() {
+        return provablyEmpty;
+    }
 }
 
 
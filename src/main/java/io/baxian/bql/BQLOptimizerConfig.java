@@ -0,0 +1,187 @@
+package io.baxian.bql;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 优化器的可选功能，默认都关闭，这时输出与不带配置时相同。
+ *
+ * 通过{@link BQLCompiler#setOptimizerConfig(BQLOptimizerConfig)}使用。
+ */
+public class BQLOptimizerConfig {
+
+    private boolean constantFolding;
+
+    private boolean foldBoundOptions;
+
+    private boolean inNormalization;
+
+    private boolean sortInValues;
+
+    private boolean booleanNormalization;
+
+    private boolean predicateSimplification;
+
+    private BQLPartitionCatalog partitionCatalog;
+
+    private BQLSchemaCatalog schemaCatalog;
+
+    private String keysetCursorOption;
+
+    private List<String> keysetUniqueKey;
+
+    private int inListPadding;
+
+    public boolean isConstantFolding() {
+        return constantFolding;
+    }
+
+    /**
+     * 计算只含数字字面量的算术和位运算，比如60 * 60 * 24写成86400，按MySQL的规则计算，
+     * 溢出、除以0或者结果不确定时保持原样。
+     */
+    public void setConstantFolding(boolean constantFolding) {
+        this.constantFolding = constantFolding;
+    }
+
+    public boolean isFoldBoundOptions() {
+        return foldBoundOptions;
+    }
+
+    /**
+     * 常量折叠时把值为整数或BigDecimal的参数也当作常量，参与计算的参数不再作为绑定值输出。
+     *
+     * 输出依赖参数的值，不能和BQLRenderCache一起使用；只在打开constantFolding时有效。
+     */
+    public void setFoldBoundOptions(boolean foldBoundOptions) {
+        this.foldBoundOptions = foldBoundOptions;
+    }
+
+    public boolean isInNormalization() {
+        return inNormalization;
+    }
+
+    /**
+     * 整理IN和NOT IN列表：参数的元素按equals去重，字面量按原文去重，只剩一个值时改写成=和!=，
+     * 参数都是空列表且没有字面量时和参数不存在一样删掉整个条件。
+     *
+     * 只处理由参数和字面量组成的列表，输出依赖参数的值，不能和BQLRenderCache一起使用。
+     */
+    public void setInNormalization(boolean inNormalization) {
+        this.inNormalization = inNormalization;
+    }
+
+    public boolean isSortInValues() {
+        return sortInValues;
+    }
+
+    /**
+     * 整理IN列表时把参数的元素从小到大排序，让数据库按索引顺序查找。
+     * 元素不是同一种Comparable或者含有null时不排序；只在打开inNormalization时有效。
+     */
+    public void setSortInValues(boolean sortInValues) {
+        this.sortInValues = sortInValues;
+    }
+
+    public boolean isBooleanNormalization() {
+        return booleanNormalization;
+    }
+
+    /**
+     * 规范化WHERE条件：NOT按De Morgan定律推到叶子条件并反转运算符(NOT a = 1写成a != 1)，
+     * OR连接的同一列上的=和IN合并成IN，AND连接的!=和NOT IN合并成NOT IN。
+     *
+     * 只做不增加条件个数的改写，不展开成CNF或DNF，条件再多也不会膨胀。
+     */
+    public void setBooleanNormalization(boolean booleanNormalization) {
+        this.booleanNormalization = booleanNormalization;
+    }
+
+    public boolean isPredicateSimplification() {
+        return predicateSimplification;
+    }
+
+    /**
+     * 化简WHERE条件：去掉重复的条件，合并同一列上和数字比较的范围，比如a > 1 AND a > :x只保留更严格的一个。
+     * 条件矛盾时(比如a = 1 AND a = 2)通过{@link BQLCompiler#isProvablyEmpty()}报告。
+     *
+     * 结果依赖参数的值，不能和BQLRenderCache一起使用。
+     */
+    public void setPredicateSimplification(boolean predicateSimplification) {
+        this.predicateSimplification = predicateSimplification;
+    }
+
+    public BQLPartitionCatalog getPartitionCatalog() {
+        return partitionCatalog;
+    }
+
+    /**
+     * 分区裁剪：没有写PARTITION的SELECT按WHERE中分区列上的=、IN、BETWEEN和范围条件算出可能用到的分区，
+     * 自动加上PARTITION子句；一个分区都用不到时通过{@link BQLCompiler#isProvablyEmpty()}报告。
+     *
+     * 结果依赖参数的值，不能和BQLRenderCache一起使用。
+     */
+    public void setPartitionCatalog(BQLPartitionCatalog partitionCatalog) {
+        this.partitionCatalog = partitionCatalog;
+    }
+
+    public BQLSchemaCatalog getSchemaCatalog() {
+        return schemaCatalog;
+    }
+
+    /**
+     * 按表的索引整理WHERE：AND连接的条件中索引前缀列上的条件按索引的列顺序排到前面；
+     * SELECT匹配{@link BQLIndexHint}规则时在表名后加上USE INDEX或FORCE INDEX。
+     *
+     * 输出只依赖语句和表结构，不依赖参数的值。
+     */
+    public void setSchemaCatalog(BQLSchemaCatalog schemaCatalog) {
+        this.schemaCatalog = schemaCatalog;
+    }
+
+    public String getKeysetCursorOption() {
+        return keysetCursorOption;
+    }
+
+    /**
+     * 按游标分页：SELECT有ORDER BY并且参数中有这个名字的游标时，在WHERE上加上排在游标之后的条件并去掉LIMIT的offset，
+     * 翻到多深都只读一页的行。游标由{@link BQLCompiler#nextCursor(java.util.Map)}按上一页最后一行生成。
+     *
+     * ORDER BY要包含唯一键(可以是唯一键加上其他排序列)：包含schemaCatalog中某个唯一索引的全部列，
+     * 或者包含keysetUniqueKey的全部列，都不满足时按offset分页。排序列要是NOT NULL的列。
+     * 结果依赖参数的值，不能和BQLRenderCache一起使用。
+     */
+    public void setKeysetCursorOption(String keysetCursorOption) {
+        this.keysetCursorOption = keysetCursorOption;
+    }
+
+    public List<String> getKeysetUniqueKey() {
+        return keysetUniqueKey;
+    }
+
+    /**
+     * 按游标分页时视为唯一键的列，例如各个表都有的主键id。没有schemaCatalog或者其中没有这个表时，
+     * 只有ORDER BY包含这些列才按游标分页，否则排序值相同的行在翻页时会被跳过。
+     */
+    public void setKeysetUniqueKey(String... keysetUniqueKey) {
+        this.keysetUniqueKey = keysetUniqueKey != null && keysetUniqueKey.length > 0
+                ? Arrays.asList(keysetUniqueKey.clone()) : null;
+    }
+
+    public int getInListPadding() {
+        return inListPadding;
+    }
+
+    /**
+     * IN和NOT IN的List参数重复最后一个元素补齐到1、2、4、8...个，最多补到inListPadding个，更长的列表补齐到
+     * inListPadding的倍数。列表长度不同的语句共用同一条SQL，减少预编译语句缓存和语句摘要的条目数。
+     *
+     * 为0时不补齐；打开inNormalization时按去重后整个列表的长度补齐。
+     */
+    public void setInListPadding(int inListPadding) {
+        if (inListPadding < 0) {
+            throw new IllegalArgumentException("inListPadding must not be negative: " + inListPadding);
+        }
+        this.inListPadding = inListPadding;
+    }
+}
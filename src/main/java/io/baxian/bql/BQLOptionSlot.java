@@ -0,0 +1,85 @@
+package io.baxian.bql;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 绑定值的来源：参数名，以及参数为List时元素的下标。
+ */
+final class BQLOptionSlot {
+
+    static final int SCALAR = -1;
+
+    /**
+     * List参数的全部元素，只在{@link BQLTemplate}中使用。
+     */
+    static final int ALL = -2;
+
+    private final String option;
+
+    private final int index;
+
+    private final int inListPadding;
+
+    BQLOptionSlot(String option, int index) {
+        this(option, index, 0);
+    }
+
+    /**
+     * @param inListPadding 大于0时，ALL按{@link BQLOptimizer#paddedSize(int, int)}重复最后一个元素补齐
+     */
+    BQLOptionSlot(String option, int index, int inListPadding) {
+        this.option = option;
+        this.index = index;
+        this.inListPadding = inListPadding;
+    }
+
+    String getOption() {
+        return option;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getInListPadding() {
+        return inListPadding;
+    }
+
+    BQLOption bind(Map<String, Object> options) {
+        Object value = options.get(option);
+        if (index != SCALAR) {
+            value = ((List) value).get(index);
+        }
+        return new BQLOption(option, value);
+    }
+
+    void bind(Map<String, Object> options, List<BQLOption> values) {
+        if (index != ALL) {
+            values.add(bind(options));
+            return;
+        }
+
+        List list = (List) options.get(option);
+        int last = list.size() - 1;
+        for (int i = 0, size = size(list); i < size; ++i) {
+            values.add(new BQLOption(option, list.get(Math.min(i, last))));
+        }
+    }
+
+    void appendPlaceholders(StringBuilder sql, Map<String, Object> options) {
+        if (index != ALL) {
+            sql.append('?');
+            return;
+        }
+
+        int size = size((List) options.get(option));
+        for (int i = 0; i < size; ++i) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+    }
+
+    private int size(List list) {
+        return inListPadding > 0 ? BQLOptimizer.paddedSize(list.size(), inListPadding) : list.size();
+    }
+}
@@ -0,0 +1,106 @@
+package io.baxian.bql;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 把生成的内容直接写到输出，不先转成String。
+ */
+final class BQLOutputs {
+
+    private static final int WRITER_CHUNK = 1024;
+
+    private BQLOutputs() {
+    }
+
+    static void append(CharSequence text, Appendable out) throws IOException {
+        if (!(out instanceof Writer)) {
+            out.append(text);
+            return;
+        }
+
+        // Writer.append(CharSequence)会先调用toString()，这里分段复制
+        Writer writer = (Writer) out;
+        int length = text.length();
+        char[] chunk = new char[Math.min(length, WRITER_CHUNK)];
+        for (int start = 0; start < length; start += chunk.length) {
+            int end = Math.min(start + chunk.length, length);
+            getChars(text, start, end, chunk);
+            writer.write(chunk, 0, end - start);
+        }
+    }
+
+    /**
+     * 按UTF-8编码写到buffer，不成对的代理字符写成'?'，与{@link String#getBytes(java.nio.charset.Charset)}相同。
+     *
+     * @throws BufferOverflowException 剩余空间不够，这时buffer不变
+     */
+    static void encode(CharSequence text, ByteBuffer out) {
+        int length = text.length();
+        if (out.remaining() < utf8Length(text)) {
+            throw new BufferOverflowException();
+        }
+
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    out.put((byte) (0xf0 | (codePoint >> 18)));
+                    out.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                    out.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                    out.put((byte) (0x80 | (codePoint & 0x3f)));
+                } else {
+                    out.put((byte) '?');
+                }
+            } else {
+                out.put((byte) (0xe0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    static int utf8Length(CharSequence text) {
+        int length = text.length();
+        int bytes = length;
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    // 两个char一共4个字节
+                    bytes += 2;
+                    ++i;
+                }
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    private static void getChars(CharSequence text, int start, int end, char[] dst) {
+        if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, dst, 0);
+        } else if (text instanceof String) {
+            ((String) text).getChars(start, end, dst, 0);
+        } else {
+            for (int i = start; i < end; ++i) {
+                dst[i - start] = text.charAt(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.lexer.LexerException;
+import io.baxian.bql.framework.node.*;
+import io.baxian.bql.framework.parser.ParserException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static io.baxian.bql.BQLLexer.*;
+
+/**
+ * 手写的递归下降parser，按BQL.grammar生成和SableCC相同的语法树。
+ *
+ * value的运算符按优先级爬升解析，都是左结合。grammar中的几个特殊处理也保持一致：
+ * 带别名的distinct列不保留distinct，NOT只作用于紧跟的一个条件，limit子句缺省时也生成空的ALimit。
+ */
+final class BQLParser {
+
+    private static final int END = -1;
+
+    private final BQLLexer tokens;
+
+    private final int size;
+
+    // 当前token的下标，跳过空白
+    private int index;
+
+    BQLParser(BQLLexer tokens) {
+        this.tokens = tokens;
+        this.size = tokens.size();
+        this.index = skipBlanks(0);
+    }
+
+    Start parse() throws ParserException, LexerException {
+        PStatement statement;
+        switch (peek()) {
+            case SELECT:
+                statement = parseSelect();
+                break;
+            case DELETE:
+                statement = parseDelete();
+                break;
+            case UPDATE:
+                statement = parseUpdate();
+                break;
+            case INSERT:
+                statement = parseInsert();
+                break;
+            default:
+                throw error("select, delete, update, insert");
+        }
+
+        if (peek() != END) {
+            throw error("EOF");
+        }
+
+        return new Start(statement, tokens.newEOF());
+    }
+
+    private PStatement parseSelect() throws ParserException, LexerException {
+        expect(SELECT, "select");
+
+        List<PColumn> columns = new ArrayList<PColumn>();
+        do {
+            columns.add(parseSelectColumn());
+        } while (accept(COMMA));
+
+        expect(FROM, "from");
+
+        PTable table = parseTable();
+        List<PValue> partitions = parsePartitions();
+        PExpr where = parseWhere();
+        List<PColumnComponents> groupByColumns = parseGroupBy();
+        List<POrderByItem> orderByItems = parseOrderBy();
+        PLimit limit = parseLimit();
+
+        return new ASelectStatement(columns, table, partitions, where, groupByColumns, orderByItems, limit);
+    }
+
+    private PStatement parseDelete() throws ParserException, LexerException {
+        expect(DELETE, "delete");
+        accept(FROM);
+
+        PTable table = parseTable();
+        PExpr where = parseWhere();
+        PLimit limit = parseLimit();
+
+        return new ADeleteStatement(table, where, limit);
+    }
+
+    private PStatement parseUpdate() throws ParserException, LexerException {
+        expect(UPDATE, "update");
+
+        PTable table = parseTable();
+
+        expect(SET, "set");
+
+        List<PUpdateColumn> columns = parseUpdateColumns();
+        PExpr where = parseWhere();
+        PLimit limit = parseLimit();
+
+        return new AUpdateStatement(table, columns, where, limit);
+    }
+
+    private PStatement parseInsert() throws ParserException, LexerException {
+        expect(INSERT, "insert");
+        expect(INTO, "into");
+
+        PTable table = parseTable();
+
+        expect(LPAREN, "'('");
+        List<TIdentifier> columns = new ArrayList<TIdentifier>();
+        do {
+            columns.add(parseComponent());
+        } while (accept(COMMA));
+        expect(RPAREN, "')', ','");
+
+        expect(VALUES, "values");
+
+        List<PRow> rows = new ArrayList<PRow>();
+        do {
+            expect(LPAREN, "'('");
+            List<PValue> values = new ArrayList<PValue>();
+            do {
+                values.add(parseValue());
+            } while (accept(COMMA));
+            expect(RPAREN, "')', ','");
+
+            rows.add(new ARow(values));
+        } while (accept(COMMA));
+
+        List<PUpdateColumn> updateColumns;
+        if (accept(ON)) {
+            expect(DUPLICATE, "duplicate");
+            expect(KEY, "key");
+            expect(UPDATE, "update");
+            updateColumns = parseUpdateColumns();
+        } else {
+            updateColumns = Collections.emptyList();
+        }
+
+        return new AInsertStatement(table, columns, rows, updateColumns);
+    }
+
+    private List<PUpdateColumn> parseUpdateColumns() throws ParserException, LexerException {
+        List<PUpdateColumn> columns = new ArrayList<PUpdateColumn>();
+        do {
+            PColumnComponents components = parseColumnComponents();
+            expect(EQ, "'.', '='");
+            columns.add(new AUpdateColumn(components, parseValue()));
+        } while (accept(COMMA));
+
+        return columns;
+    }
+
+    private PColumn parseSelectColumn() throws ParserException, LexerException {
+        if (peek() == IDENTIFIER && peekNext() == LPAREN) {
+            TIdentifier function = (TIdentifier) take();
+            advance();
+
+            List<PColumnComponents> components = new ArrayList<PColumnComponents>();
+            do {
+                components.add(parseColumnComponents());
+            } while (accept(COMMA));
+            expect(RPAREN, "')', '.', ','");
+
+            expect(AS, "as");
+            TIdentifier alias = parseComponent();
+
+            return new AColumn(function, components, alias, null);
+        }
+
+        TDistinct distinct = null;
+        if (peek() == DISTINCT) {
+            distinct = (TDistinct) take();
+        }
+
+        PColumnComponents components = parseColumnComponents();
+
+        TIdentifier alias = null;
+        if (accept(AS)) {
+            alias = parseComponent();
+            // grammar中带别名的distinct列不保留distinct
+            distinct = null;
+        }
+
+        return new AColumn(null, Collections.singletonList(components), alias, distinct);
+    }
+
+    private PColumnComponents parseColumnComponents() throws ParserException, LexerException {
+        TIdentifier first = parseComponent();
+        if (!accept(DOT)) {
+            return new AColumnComponents(null, null, first);
+        }
+
+        TIdentifier second = parseComponent();
+        if (!accept(DOT)) {
+            return new AColumnComponents(null, first, second);
+        }
+
+        return new AColumnComponents(first, second, parseComponent());
+    }
+
+    private TIdentifier parseComponent() throws ParserException, LexerException {
+        switch (peek()) {
+            case IDENTIFIER:
+                return (TIdentifier) take();
+            case QUOTE: {
+                advance();
+                if (peek() != IDENTIFIER) {
+                    throw error("identifier");
+                }
+                TIdentifier identifier = (TIdentifier) take();
+                expect(QUOTE, "'`'");
+                return identifier;
+            }
+            default:
+                throw error("'`', identifier");
+        }
+    }
+
+    private PTable parseTable() throws ParserException, LexerException {
+        TIdentifier schema = null;
+        TIdentifier table = parseComponent();
+        if (accept(DOT)) {
+            schema = table;
+            table = parseComponent();
+        }
+
+        TIdentifier alias = null;
+        if (accept(AS)) {
+            alias = parseComponent();
+        }
+
+        return new ATable(new ATableComponents(schema, table), alias);
+    }
+
+    private List<PValue> parsePartitions() throws ParserException, LexerException {
+        List<PValue> partitions = new ArrayList<PValue>();
+        if (!accept(PARTITION)) {
+            return partitions;
+        }
+
+        expect(LPAREN, "'('");
+        do {
+            switch (peek()) {
+                case COLON:
+                    partitions.add(parseOption());
+                    break;
+                case IDENTIFIER:
+                    partitions.add(new AIdentifierValue((TIdentifier) take()));
+                    break;
+                default:
+                    throw error("':', identifier");
+            }
+        } while (accept(COMMA));
+        expect(RPAREN, "')', ','");
+
+        return partitions;
+    }
+
+    private PExpr parseWhere() throws ParserException, LexerException {
+        if (!accept(WHERE)) {
+            return null;
+        }
+
+        return parseExpr();
+    }
+
+    private List<PColumnComponents> parseGroupBy() throws ParserException, LexerException {
+        List<PColumnComponents> columns = new ArrayList<PColumnComponents>();
+        if (!accept(GROUP)) {
+            return columns;
+        }
+
+        expect(BY, "by");
+        do {
+            columns.add(parseColumnComponents());
+        } while (accept(COMMA));
+
+        return columns;
+    }
+
+    private List<POrderByItem> parseOrderBy() throws ParserException, LexerException {
+        List<POrderByItem> items = new ArrayList<POrderByItem>();
+        if (!accept(ORDER)) {
+            return items;
+        }
+
+        expect(BY, "by");
+        do {
+            PColumnComponents column = parseColumnComponents();
+            POrder order;
+            if (accept(DESC)) {
+                order = new ADescOrder();
+            } else if (accept(ASC)) {
+                order = new AAscOrder();
+            } else {
+                throw error("desc, asc, '.'");
+            }
+            items.add(new AOrderByItem(column, order));
+        } while (accept(COMMA));
+
+        return items;
+    }
+
+    private PLimit parseLimit() throws ParserException, LexerException {
+        if (!accept(LIMIT)) {
+            return new ALimit(null, null);
+        }
+
+        PValue first = parseLimitField();
+        if (accept(COMMA)) {
+            return new ALimit(first, parseLimitField());
+        }
+
+        return new ALimit(null, first);
+    }
+
+    private PValue parseLimitField() throws ParserException, LexerException {
+        switch (peek()) {
+            case INT:
+                return new AIntValue((TInt) take());
+            case COLON:
+                return parseOption();
+            default:
+                throw error("':', int");
+        }
+    }
+
+    private PValue parseOption() throws ParserException, LexerException {
+        expect(COLON, "':'");
+        if (peek() != IDENTIFIER) {
+            throw error("identifier");
+        }
+        return new AOptionValue((TIdentifier) take());
+    }
+
+    // expr = expr or expr_factor
+    private PExpr parseExpr() throws ParserException, LexerException {
+        PExpr left = parseAndExpr();
+        while (accept(OR)) {
+            left = new AConditionExpr(new AOrOp(), left, parseAndExpr());
+        }
+        return left;
+    }
+
+    // expr_factor = expr_factor and expr_factor2
+    private PExpr parseAndExpr() throws ParserException, LexerException {
+        PExpr left = parsePredicate();
+        while (accept(AND)) {
+            left = new AConditionExpr(new AAndOp(), left, parsePredicate());
+        }
+        return left;
+    }
+
+    // expr_factor2
+    private PExpr parsePredicate() throws ParserException, LexerException {
+        switch (peek()) {
+            case NOT:
+                advance();
+                return new ANotExpr(parsePredicate());
+            case LPAREN:
+                if (isParenthesizedExpr()) {
+                    advance();
+                    PExpr expr = parseExpr();
+                    expect(RPAREN, "and, or, ')'");
+                    return expr;
+                }
+                return parseComparison(parseValue());
+            case IDENTIFIER:
+            case QUOTE:
+                return parseColumnPredicate();
+            default:
+                return parseComparison(parseValue());
+        }
+    }
+
+    private PExpr parseColumnPredicate() throws ParserException, LexerException {
+        PColumnComponents components = parseColumnComponents();
+
+        switch (peek()) {
+            case BETWEEN: {
+                advance();
+                PValue left = parseValue();
+                expect(AND, "and");
+                return new ABetweenExpr(components, left, parseValue());
+            }
+            case IN:
+                advance();
+                return new AInExpr(components, parseValueList());
+            case NOT:
+                advance();
+                expect(IN, "in");
+                return new ANotInExpr(components, parseValueList());
+            case IS:
+                advance();
+                if (accept(NOT)) {
+                    return new AIsNotExpr(components, parseValue());
+                }
+                return new AIsExpr(components, parseValue());
+            default:
+                return parseComparison(parseBinaryValue(new AColumnValue(components), 1));
+        }
+    }
+
+    private List<PValue> parseValueList() throws ParserException, LexerException {
+        expect(LPAREN, "'('");
+
+        List<PValue> values = new ArrayList<PValue>();
+        do {
+            values.add(parseValue());
+        } while (accept(COMMA));
+
+        expect(RPAREN, "')', ','");
+        return values;
+    }
+
+    private PExpr parseComparison(PValue left) throws ParserException, LexerException {
+        POp op;
+        switch (peek()) {
+            case LT:
+                op = new ALtOp();
+                break;
+            case GT:
+                op = new AGtOp();
+                break;
+            case LTEQ:
+                op = new ALteqOp();
+                break;
+            case GTEQ:
+                op = new AGteqOp();
+                break;
+            case EQ:
+                op = new AEqOp();
+                break;
+            case NOT_EQ:
+                op = new ANotEqOp();
+                break;
+            default:
+                throw error("'<', '>', '<=', '>=', '=', not eq");
+        }
+        advance();
+
+        return new ABinaryExpr(op, left, parseValue());
+    }
+
+    /**
+     * 条件中的'('既可能是括号里的条件，也可能是括号里的value。value中不会出现比较运算符和条件关键字，
+     * 所以只要括号内有这些token就按条件解析。
+     */
+    private boolean isParenthesizedExpr() {
+        int depth = 0;
+        for (int i = index; i < size; ++i) {
+            switch (tokens.getType(i)) {
+                case LPAREN:
+                    ++depth;
+                    break;
+                case RPAREN:
+                    if (--depth == 0) {
+                        return false;
+                    }
+                    break;
+                case LT:
+                case GT:
+                case LTEQ:
+                case GTEQ:
+                case EQ:
+                case NOT_EQ:
+                case BETWEEN:
+                case IN:
+                case IS:
+                case NOT:
+                case AND:
+                case OR:
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private PValue parseValue() throws ParserException, LexerException {
+        return parseBinaryValue(parseUnaryValue(), 1);
+    }
+
+    private PValue parseBinaryValue(PValue left, int minPrecedence) throws ParserException, LexerException {
+        while (true) {
+            int op = peek();
+            int precedence = precedence(op);
+            if (precedence < minPrecedence) {
+                return left;
+            }
+            advance();
+
+            PValue right = parseUnaryValue();
+            while (precedence(peek()) > precedence) {
+                right = parseBinaryValue(right, precedence + 1);
+            }
+
+            left = newBinaryValue(op, left, right);
+        }
+    }
+
+    private PValue parseUnaryValue() throws ParserException, LexerException {
+        switch (peek()) {
+            case IDENTIFIER:
+            case QUOTE:
+                return new AColumnValue(parseColumnComponents());
+            case NULL:
+                advance();
+                return new ANullValue();
+            case COLON:
+                return parseOption();
+            case STRING:
+                return new AStringValue((TString) take());
+            case INT:
+                return new AIntValue((TInt) take());
+            case OCTET:
+                return new AOctetValue((TOctet) take());
+            case HEX:
+                return new AHexValue((THex) take());
+            case FLOAT:
+                return new AFloatValue((TFloat) take());
+            case SCIENTIFIC:
+                return new AScientificValue((TScientific) take());
+            case LPAREN: {
+                advance();
+                PValue value = parseValue();
+                expect(RPAREN, "')'");
+                return value;
+            }
+            default:
+                throw error("null, '(', '`', ':', identifier, octet, hex, int, float, scientific, string");
+        }
+    }
+
+    // 数字越大优先级越高，和grammar中value_factor的层次对应
+    private static int precedence(int type) {
+        switch (type) {
+            case LSHIFT:
+            case RSHIFT:
+                return 1;
+            case BIT_OR:
+                return 2;
+            case BIT_XOR:
+                return 3;
+            case BIT_AND:
+                return 4;
+            case ADD:
+            case SUB:
+                return 5;
+            case MUL:
+            case DIV:
+            case MOD:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    private static PValue newBinaryValue(int op, PValue left, PValue right) {
+        switch (op) {
+            case LSHIFT:
+                return new ALeftShiftValue(left, right);
+            case RSHIFT:
+                return new ARightShiftValue(left, right);
+            case BIT_OR:
+                return new ABitOrValue(left, right);
+            case BIT_XOR:
+                return new ABitXorValue(left, right);
+            case BIT_AND:
+                return new ABitAndValue(left, right);
+            case ADD:
+                return new AAddValue(left, right);
+            case SUB:
+                return new ASubstractValue(left, right);
+            case MUL:
+                return new AMultiplyValue(left, right);
+            case DIV:
+                return new ADivideValue(left, right);
+            default:
+                return new AModuloValue(left, right);
+        }
+    }
+
+    private int skipBlanks(int i) {
+        while (i < size && tokens.getType(i) == BLANKS) {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * 当前token的类型，读到词法错误的位置时抛出和SableCC相同的LexerException。
+     */
+    private int peek() throws LexerException {
+        if (index < size) {
+            return tokens.getType(index);
+        }
+
+        if (tokens.getError() != null) {
+            throw new LexerException(tokens.getError());
+        }
+
+        return END;
+    }
+
+    private int peekNext() throws LexerException {
+        int next = skipBlanks(index + 1);
+        if (next < size) {
+            return tokens.getType(next);
+        }
+
+        if (tokens.getError() != null) {
+            throw new LexerException(tokens.getError());
+        }
+
+        return END;
+    }
+
+    private void advance() {
+        index = skipBlanks(index + 1);
+    }
+
+    private Token take() {
+        Token token = tokens.newToken(index);
+        advance();
+        return token;
+    }
+
+    private boolean accept(int type) throws LexerException {
+        if (peek() == type) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(int type, String expecting) throws ParserException, LexerException {
+        if (!accept(type)) {
+            throw error(expecting);
+        }
+    }
+
+    private ParserException error(String expecting) {
+        Token token = index < size ? tokens.newToken(index) : tokens.newEOF();
+        return new ParserException(token,
+                "[" + token.getLine() + "," + token.getPos() + "] expecting: " + expecting);
+    }
+}
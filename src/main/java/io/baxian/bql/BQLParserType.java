@@ -0,0 +1,36 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.lexer.LexerException;
+import io.baxian.bql.framework.node.Start;
+import io.baxian.bql.framework.parser.Parser;
+import io.baxian.bql.framework.parser.ParserException;
+
+import java.io.IOException;
+
+/**
+ * 解析BQL使用的parser，两者生成相同的语法树。
+ */
+public enum BQLParserType {
+
+    /**
+     * BQL.grammar生成的LALR parser。
+     */
+    SABLECC {
+        @Override
+        Start parse(BQLLexer tokens) throws ParserException, LexerException, IOException {
+            return new Parser(tokens.toLexer()).parse();
+        }
+    },
+
+    /**
+     * 手写的递归下降parser，语法错误的位置和SableCC相同，提示的期望token可能不同。
+     */
+    RECURSIVE_DESCENT {
+        @Override
+        Start parse(BQLLexer tokens) throws ParserException, LexerException {
+            return new BQLParser(tokens).parse();
+        }
+    };
+
+    abstract Start parse(BQLLexer tokens) throws ParserException, LexerException, IOException;
+}
@@ -0,0 +1,39 @@
+package io.baxian.bql;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 各表的分区方式，可以被多个compiler共享。
+ *
+ * 通过{@link BQLOptimizerConfig#setPartitionCatalog(BQLPartitionCatalog)}使用：没有写PARTITION的SELECT
+ * 按WHERE中分区列上的=、IN、BETWEEN和范围条件算出可能用到的分区，自动加上PARTITION子句。
+ */
+public class BQLPartitionCatalog {
+
+    private final ConcurrentMap<String, BQLPartitioning> tables = new ConcurrentHashMap<String, BQLPartitioning>();
+
+    /**
+     * @param table 表名，带schema时写成schema.table
+     */
+    public void setPartitioning(String table, BQLPartitioning partitioning) {
+        if (partitioning != null) {
+            tables.put(table, partitioning);
+        } else {
+            tables.remove(table);
+        }
+    }
+
+    /**
+     * @param schema 可以为null
+     */
+    public BQLPartitioning getPartitioning(String schema, String table) {
+        if (schema != null) {
+            BQLPartitioning partitioning = tables.get(schema + "." + table);
+            if (partitioning != null) {
+                return partitioning;
+            }
+        }
+        return tables.get(table);
+    }
+}
@@ -0,0 +1,338 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.node.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按WHERE中分区列上的条件算出可能用到的分区。
+ *
+ * AND取交集，OR取并集，=、IN、BETWEEN、&lt;、&lt;=、&gt;、&gt;=以外的条件(NOT、!=、IS等)和类型不能比较的值
+ * 都按所有分区处理，结果只会多不会少。没有指定collation时字符串也按所有分区处理。
+ */
+final class BQLPartitionPruner {
+
+    private static final Object UNKNOWN = new Object();
+
+    private final BQLPartitioning partitioning;
+
+    private final BQLRewrites rewrites;
+
+    private final Map<String, Object> options;
+
+    private final BQLConstantFolder folder;
+
+    private final int count;
+
+    BQLPartitionPruner(BQLPartitioning partitioning, BQLRewrites rewrites, Map<String, Object> options) {
+        this.partitioning = partitioning;
+        this.rewrites = rewrites;
+        this.options = options;
+        this.folder = new BQLConstantFolder(options);
+        this.count = partitioning.getPartitions().size();
+    }
+
+    /**
+     * @param where 优化后的条件，可以为null
+     * @return 可能用到的分区，所有分区都可能用到时返回null，不可能有结果时返回空列表
+     */
+    List<String> prune(PExpr where) {
+        BitSet partitions = where != null ? partitions(where) : null;
+        if (partitions == null || partitions.cardinality() == count) {
+            return null;
+        }
+
+        List<String> names = new ArrayList<String>(partitions.cardinality());
+        for (int i = partitions.nextSetBit(0); i >= 0; i = partitions.nextSetBit(i + 1)) {
+            names.add(partitioning.getPartitions().get(i));
+        }
+        return names;
+    }
+
+    /**
+     * @return null表示所有分区
+     */
+    private BitSet partitions(PExpr expr) {
+        if (expr instanceof AConditionExpr) {
+            AConditionExpr condition = (AConditionExpr) expr;
+            BitSet left = partitions(rewrites.resolve(condition.getLeft()));
+            BitSet right = partitions(rewrites.resolve(condition.getRight()));
+            if (condition.getOp() instanceof AAndOp) {
+                if (left == null || right == null) {
+                    return left != null ? left : right;
+                }
+                left.and(right);
+            } else {
+                if (left == null || right == null) {
+                    return null;
+                }
+                left.or(right);
+            }
+            return left;
+        }
+
+        try {
+            if (expr instanceof ABinaryExpr) {
+                return comparison((ABinaryExpr) expr);
+            } else if (expr instanceof ABetweenExpr) {
+                ABetweenExpr between = (ABetweenExpr) expr;
+                if (!isPartitionColumn(between.getColumnComponents())) {
+                    return null;
+                }
+                Object lower = value(rewrites.resolve(between.getLeft()));
+                Object upper = value(rewrites.resolve(between.getRight()));
+                if (lower == UNKNOWN || upper == UNKNOWN) {
+                    return null;
+                }
+                if (lower == null || upper == null) {
+                    return new BitSet();
+                }
+                return range(lower, upper, true);
+            } else if (expr instanceof AInExpr) {
+                return in((AInExpr) expr);
+            }
+        } catch (ClassCastException e) {
+            // 值和分区的类型不同，MySQL会做类型转换，这里不判断
+        }
+        return null;
+    }
+
+    private BitSet comparison(ABinaryExpr binary) {
+        PValue left = rewrites.resolve(binary.getLeft());
+        PValue right = rewrites.resolve(binary.getRight());
+        POp op = binary.getOp();
+
+        PValue value;
+        boolean reversed;
+        if (left instanceof AColumnValue && isPartitionColumn(((AColumnValue) left).getColumnComponents())) {
+            value = right;
+            reversed = false;
+        } else if (right instanceof AColumnValue && isPartitionColumn(((AColumnValue) right).getColumnComponents())) {
+            value = left;
+            reversed = true;
+        } else {
+            return null;
+        }
+
+        Object v = value(value);
+        if (v == UNKNOWN || op instanceof ANotEqOp) {
+            return null;
+        }
+        if (v == null) {
+            // 和NULL比较的结果都是NULL
+            return new BitSet();
+        }
+
+        if (op instanceof AEqOp) {
+            return equal(v);
+        }
+
+        boolean less = op instanceof ALtOp || op instanceof ALteqOp;
+        boolean inclusive = op instanceof ALteqOp || op instanceof AGteqOp;
+        if (less != reversed) {
+            return range(null, v, inclusive);
+        }
+        return range(v, null, true);
+    }
+
+    private BitSet in(AInExpr in) {
+        if (!isPartitionColumn(in.getColumnComponents())) {
+            return null;
+        }
+
+        BitSet result = new BitSet();
+        for (PValue value : in.getValue()) {
+            value = rewrites.resolve(value);
+            if (value == null) {
+                continue;
+            }
+
+            List<Object> values = new ArrayList<Object>();
+            if (value instanceof AOptionValue) {
+                Object optionValue = rewrites.getValue((AOptionValue) value, options);
+                if (optionValue instanceof Collection) {
+                    for (Object v : (Collection) optionValue) {
+                        values.add(normalize(v));
+                    }
+                } else {
+                    values.add(normalize(optionValue));
+                }
+            } else {
+                values.add(value(value));
+            }
+
+            for (Object v : values) {
+                if (v == UNKNOWN) {
+                    return null;
+                }
+                if (v != null) {
+                    BitSet partitions = equal(v);
+                    if (partitions == null) {
+                        return null;
+                    }
+                    result.or(partitions);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 只含value所在分区，不能确定时返回null
+     */
+    private BitSet equal(Object value) {
+        BitSet result = new BitSet();
+        switch (partitioning.getType()) {
+            case RANGE:
+                int i = rangeIndex(value);
+                if (i < count) {
+                    result.set(i);
+                }
+                return result;
+            case LIST:
+                for (int p = 0; p < count; ++p) {
+                    for (Object v : partitioning.getValues(p)) {
+                        if (v != null && partitioning.compare(value, v) == 0) {
+                            result.set(p);
+                        }
+                    }
+                }
+                return result;
+            default:
+                BigInteger hash = nonNegativeInteger(value);
+                if (hash == null) {
+                    return null;
+                }
+                result.set(hash.mod(BigInteger.valueOf(count)).intValue());
+                return result;
+        }
+    }
+
+    /**
+     * @param lower 为null表示没有下界，按含下界处理
+     * @param upper 为null表示没有上界
+     */
+    private BitSet range(Object lower, Object upper, boolean upperInclusive) {
+        BitSet result = new BitSet();
+        switch (partitioning.getType()) {
+            case RANGE:
+                int from = lower != null ? rangeIndex(lower) : 0;
+                int to = count - 1;
+                if (upper != null) {
+                    to = Math.min(upperInclusive ? rangeIndex(upper) : rangeIndexExclusive(upper), count - 1);
+                }
+                if (from <= to) {
+                    result.set(from, to + 1);
+                }
+                return result;
+            case LIST:
+                for (int p = 0; p < count; ++p) {
+                    for (Object v : partitioning.getValues(p)) {
+                        if (v != null
+                                && (lower == null || partitioning.compare(v, lower) >= 0)
+                                && (upper == null || partitioning.compare(v, upper) < (upperInclusive ? 1 : 0))) {
+                            result.set(p);
+                        }
+                    }
+                }
+                return result;
+            default:
+                // 范围比分区数小时逐个计算
+                BigInteger low = lower != null ? nonNegativeInteger(lower) : null;
+                BigInteger high = upper != null ? nonNegativeInteger(upper) : null;
+                if (low == null || high == null || high.subtract(low).compareTo(BigInteger.valueOf(count)) >= 0) {
+                    return null;
+                }
+                if (!upperInclusive) {
+                    high = high.subtract(BigInteger.ONE);
+                }
+                for (BigInteger v = low; v.compareTo(high) <= 0; v = v.add(BigInteger.ONE)) {
+                    result.set(v.mod(BigInteger.valueOf(count)).intValue());
+                }
+                return result;
+        }
+    }
+
+    /**
+     * @return value所在的RANGE分区，大于所有分区的上界时返回count
+     */
+    private int rangeIndex(Object value) {
+        for (int i = 0; i < count; ++i) {
+            Object bound = partitioning.getBound(i);
+            if (bound == null || partitioning.compare(value, bound) < 0) {
+                return i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 小于value的值所在的最后一个RANGE分区
+     */
+    private int rangeIndexExclusive(Object value) {
+        for (int i = 0; i < count; ++i) {
+            Object bound = partitioning.getBound(i);
+            if (bound == null || partitioning.compare(value, bound) <= 0) {
+                return i;
+            }
+        }
+        return count - 1;
+    }
+
+    private boolean isPartitionColumn(PColumnComponents components) {
+        return ((AColumnComponents) components).getColumn().getText().equalsIgnoreCase(partitioning.getColumn());
+    }
+
+    /**
+     * @return 规范化的值，SQL的NULL返回null，不能确定时返回UNKNOWN
+     */
+    private Object value(PValue value) {
+        if (value instanceof AOptionValue) {
+            Object optionValue = rewrites.getValue((AOptionValue) value, options);
+            return optionValue instanceof Collection ? UNKNOWN : normalize(optionValue);
+        } else if (value instanceof ANullValue) {
+            return null;
+        } else if (value instanceof AStringValue) {
+            String text = ((AStringValue) value).getString().getText();
+            String content = text.substring(1, text.length() - 1);
+            // 有转义的字符串不处理
+            return content.indexOf('\\') >= 0 || content.indexOf(text.charAt(0)) >= 0 ? UNKNOWN : normalize(content);
+        } else if (value instanceof AHexValue) {
+            return UNKNOWN;
+        }
+
+        Number number = folder.evaluate(value);
+        return number != null ? BQLPartitioning.normalize(number) : UNKNOWN;
+    }
+
+    /**
+     * 字符串要按列的collation比较，没有指定collation时不能确定。
+     */
+    private Object normalize(Object value) {
+        if (value == null) {
+            return null;
+        }
+        Object normalized = BQLPartitioning.normalize(value);
+        if (normalized == null || normalized instanceof String && partitioning.getCollation() == null) {
+            return UNKNOWN;
+        }
+        return normalized;
+    }
+
+    private static BigInteger nonNegativeInteger(Object value) {
+        if (!(value instanceof BigDecimal)) {
+            return null;
+        }
+        BigDecimal decimal = (BigDecimal) value;
+        if (decimal.signum() < 0 || decimal.stripTrailingZeros().scale() > 0) {
+            return null;
+        }
+        return decimal.toBigIntegerExact();
+    }
+}
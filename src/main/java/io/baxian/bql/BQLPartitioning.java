@@ -0,0 +1,187 @@
+package io.baxian.bql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 一张表的分区方式，和建表语句中的PARTITION BY对应：
+ * <pre>
+ * PARTITION BY RANGE (day) (PARTITION p1 VALUES LESS THAN (20240101), PARTITION p2 VALUES LESS THAN MAXVALUE)
+ *     BQLPartitioning.range("day").lessThan("p1", 20240101).lessThan("p2", null)
+ * PARTITION BY LIST (region) (PARTITION east VALUES IN (1, 2), PARTITION west VALUES IN (3))
+ *     BQLPartitioning.list("region").values("east", 1, 2).values("west", 3)
+ * PARTITION BY HASH (user_id) PARTITIONS 4
+ *     BQLPartitioning.hash("user_id", 4)
+ * </pre>
+ * 分区的值可以是整数、BigDecimal、字符串或者其他Comparable，和参数比较时数字都按数值比较。
+ *
+ * 字符串在MySQL中按列的collation比较，通常不区分大小写并忽略末尾的空格，和String.compareTo不同。
+ * 没有通过{@link #collation(Comparator)}指定比较方式时，字符串上的条件都按所有分区处理。
+ */
+public final class BQLPartitioning {
+
+    public enum Type {
+        RANGE, LIST, HASH
+    }
+
+    private final Type type;
+
+    private final String column;
+
+    private final List<String> partitions = new ArrayList<String>();
+
+    // RANGE: 每个分区的上界(不含)，null表示MAXVALUE；LIST: 每个分区的值
+    private final List<Object> bounds = new ArrayList<Object>();
+
+    private final List<List<Object>> values = new ArrayList<List<Object>>();
+
+    private Comparator<String> collation;
+
+    private BQLPartitioning(Type type, String column) {
+        this.type = type;
+        this.column = column;
+    }
+
+    public static BQLPartitioning range(String column) {
+        return new BQLPartitioning(Type.RANGE, column);
+    }
+
+    public static BQLPartitioning list(String column) {
+        return new BQLPartitioning(Type.LIST, column);
+    }
+
+    /**
+     * 分区名按MySQL的默认命名为p0到p(count-1)。
+     */
+    public static BQLPartitioning hash(String column, int count) {
+        String[] partitions = new String[count];
+        for (int i = 0; i < count; ++i) {
+            partitions[i] = "p" + i;
+        }
+        return hash(column, partitions);
+    }
+
+    public static BQLPartitioning hash(String column, String... partitions) {
+        BQLPartitioning partitioning = new BQLPartitioning(Type.HASH, column);
+        partitioning.partitions.addAll(Arrays.asList(partitions));
+        return partitioning;
+    }
+
+    /**
+     * 按顺序添加RANGE分区。
+     *
+     * @param bound VALUES LESS THAN的值，null表示MAXVALUE
+     */
+    public BQLPartitioning lessThan(String partition, Object bound) {
+        if (type != Type.RANGE) {
+            throw new IllegalStateException("not a RANGE partitioning");
+        }
+
+        Comparable<?> normalized = normalize(bound);
+        if (bound != null && normalized == null) {
+            throw new IllegalArgumentException("bound is not comparable: " + bound);
+        }
+        if (!bounds.isEmpty()) {
+            Object last = bounds.get(bounds.size() - 1);
+            if (last == null || normalized != null && compare(last, normalized) >= 0) {
+                throw new IllegalArgumentException("bounds must be strictly increasing: " + partition);
+            }
+        }
+
+        partitions.add(partition);
+        bounds.add(normalized);
+        return this;
+    }
+
+    public BQLPartitioning values(String partition, Object... partitionValues) {
+        if (type != Type.LIST) {
+            throw new IllegalStateException("not a LIST partitioning");
+        }
+
+        List<Object> normalized = new ArrayList<Object>(partitionValues.length);
+        for (Object value : partitionValues) {
+            normalized.add(value != null ? normalize(value) : null);
+        }
+        partitions.add(partition);
+        values.add(normalized);
+        return this;
+    }
+
+    /**
+     * 字符串的比较方式，需要和分区列的collation一致，在添加分区之前设置。
+     */
+    public BQLPartitioning collation(Comparator<String> collation) {
+        this.collation = collation;
+        return this;
+    }
+
+    /**
+     * @return 字符串的比较方式，没有指定时返回null
+     */
+    public Comparator<String> getCollation() {
+        return collation;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public List<String> getPartitions() {
+        return Collections.unmodifiableList(partitions);
+    }
+
+    /**
+     * @return RANGE分区的上界，null表示MAXVALUE
+     */
+    Object getBound(int partition) {
+        return bounds.get(partition);
+    }
+
+    List<Object> getValues(int partition) {
+        return values.get(partition);
+    }
+
+    /**
+     * 数字转成BigDecimal，其他Comparable保持原样。
+     *
+     * @return 不能比较时返回null
+     */
+    static Comparable<?> normalize(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d) ? null : BigDecimal.valueOf(d);
+        } else if (value instanceof Comparable) {
+            return (Comparable<?>) value;
+        }
+        return null;
+    }
+
+    /**
+     * @throws ClassCastException a和b不能比较
+     */
+    @SuppressWarnings("unchecked")
+    int compare(Object a, Object b) {
+        if (a.getClass() != b.getClass()) {
+            throw new ClassCastException(a.getClass().getName() + " vs " + b.getClass().getName());
+        }
+        if (collation != null && a instanceof String) {
+            return collation.compare((String) a, (String) b);
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+}
@@ -0,0 +1,32 @@
+package io.baxian.bql;
+
+/**
+ * BQLCompiler的各个阶段，{@link BQLCompilerListener}按这个顺序收到回调，每个阶段带一个计数。
+ */
+public enum BQLPhase {
+
+    /**
+     * 词法分析，计数是token数。
+     */
+    LEX,
+
+    /**
+     * 语法分析，计数是语法树的节点数，不含token。
+     */
+    PARSE,
+
+    /**
+     * 收集metadata和参数名，计数是引用的参数个数。
+     */
+    METADATA,
+
+    /**
+     * 优化，计数是因为参数不存在被删掉的条件数。
+     */
+    OPTIMIZE,
+
+    /**
+     * 生成，计数是输出的字符数。
+     */
+    GENERATE
+}
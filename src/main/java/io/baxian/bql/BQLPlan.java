@@ -0,0 +1,135 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.analysis.DepthFirstAdapter;
+import io.baxian.bql.framework.node.AOptionValue;
+import io.baxian.bql.framework.node.Node;
+import io.baxian.bql.framework.node.Start;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 编译后的BQL语句：语法树和metadata。
+ *
+ * 编译完成后不再修改，可以在多个线程之间共享。使用方不能修改返回的AST，metadata是只读的；
+ * 优化器不改动AST，改写记录在每次优化自己的{@link BQLRewrites}中，生成器按它输出。
+ */
+public class BQLPlan {
+
+    private final String bql;
+
+    private final Start ast;
+
+    private final BQLMetadata metadata;
+
+    private final List<String> optionNames;
+
+    private BQLPlan(String bql, Start ast, BQLMetadata metadata, List<String> optionNames) {
+        this.bql = bql;
+        this.ast = ast;
+        this.metadata = metadata;
+        this.optionNames = Collections.unmodifiableList(optionNames);
+    }
+
+    public static BQLPlan compile(String bql) throws BQLException {
+        return compile(bql, BQLParserType.SABLECC);
+    }
+
+    public static BQLPlan compile(String bql, BQLParserType parserType) throws BQLException {
+        return compile(bql, parserType, null);
+    }
+
+    /**
+     * @param listener 不为null时回调LEX、PARSE和METADATA三个阶段
+     */
+    static BQLPlan compile(String bql, BQLParserType parserType, BQLCompilerListener listener) throws BQLException {
+        try {
+            boolean timed = listener != null;
+            long start = timed ? System.nanoTime() : 0;
+            BQLLexer tokens = BQLLexer.tokenize(bql);
+            long lexed = timed ? System.nanoTime() : 0;
+            Start ast = parserType.parse(tokens);
+            long parsed = timed ? System.nanoTime() : 0;
+
+            // 收集metadata
+            BQLMetadataCollector metadataCollector = new BQLMetadataCollector();
+            ast.apply(metadataCollector);
+            BQLMetadata metadata = metadataCollector.getMetadata();
+            // fingerprint只有JFR事件和按fingerprint查找编译缓存时才用到，第一次读取时再计算
+            metadata.setFingerprintSource(bql);
+
+            OptionNameCollector optionNameCollector = new OptionNameCollector();
+            ast.apply(optionNameCollector);
+            List<String> optionNames = optionNameCollector.optionNames;
+
+            if (timed) {
+                long collected = System.nanoTime();
+                listener.onPhase(BQLPhase.LEX, lexed - start, tokens.size());
+                listener.onPhase(BQLPhase.PARSE, parsed - lexed, optionNameCollector.nodes);
+                listener.onPhase(BQLPhase.METADATA, collected - parsed, optionNames.size());
+            }
+
+            return new BQLPlan(bql, ast, metadata, optionNames);
+        } catch (Exception e) {
+            throw new SyntaxException(bql, e.getMessage());
+        }
+    }
+
+    public String getBql() {
+        return bql;
+    }
+
+    public Start getAst() {
+        return ast;
+    }
+
+    public BQLMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * 语句中引用的参数名，按第一次出现的顺序排列，不重复。
+     */
+    public List<String> getOptionNames() {
+        return optionNames;
+    }
+
+    /**
+     * 按token计算的fingerprint，与空白、关键字大小写和反引号无关，见{@link BQLFingerprint}。
+     */
+    public long getFingerprint() {
+        return metadata.getFingerprint();
+    }
+
+    /**
+     * 屏蔽字面量后的fingerprint，只反映语句的形状。
+     */
+    public long getMaskedFingerprint() {
+        return metadata.getMaskedFingerprint();
+    }
+
+    /**
+     * 按第一次出现的顺序收集参数名，顺便数一下语法树的节点数。
+     */
+    private static final class OptionNameCollector extends DepthFirstAdapter {
+
+        final List<String> optionNames = new ArrayList<String>();
+
+        int nodes;
+
+        @Override
+        public void defaultIn(Node node) {
+            ++nodes;
+        }
+
+        @Override
+        public void caseAOptionValue(AOptionValue node) {
+            ++nodes;
+            String option = node.getIdentifier().getText();
+            if (!optionNames.contains(option)) {
+                optionNames.add(option);
+            }
+        }
+    }
+}
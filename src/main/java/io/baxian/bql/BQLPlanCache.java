@@ -0,0 +1,109 @@
+package io.baxian.bql;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 以BQL文本为key的编译结果缓存，线程安全。
+ *
+ * 同一条语句并发未命中时可能被编译多次，但只会缓存一份。
+ *
+ * 打开{@link #setCanonicalLookup(boolean)}后，文本未命中时再按{@link BQLFingerprint}查找，
+ * 只差空白、关键字大小写和反引号的语句共用一个plan，这时{@link BQLPlan#getBql()}是第一次编译时的文本。
+ */
+public class BQLPlanCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private final BQLClockCache<String, BQLPlan> plans;
+
+    private final BQLClockCache<Long, BQLPlan> canonicalPlans;
+
+    private final LongAdder canonicalHits = new LongAdder();
+
+    private volatile boolean canonicalLookup;
+
+    public BQLPlanCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public BQLPlanCache(int maximumSize) {
+        this.plans = new BQLClockCache<String, BQLPlan>(maximumSize);
+        this.canonicalPlans = new BQLClockCache<Long, BQLPlan>(maximumSize);
+    }
+
+    public void setCanonicalLookup(boolean canonicalLookup) {
+        this.canonicalLookup = canonicalLookup;
+    }
+
+    public boolean isCanonicalLookup() {
+        return canonicalLookup;
+    }
+
+    public BQLPlan get(String bql) throws BQLException {
+        return get(bql, BQLParserType.SABLECC);
+    }
+
+    /**
+     * @param parserType 未命中时解析使用的parser，不同parser生成的语法树相同，所以不区分缓存
+     */
+    public BQLPlan get(String bql, BQLParserType parserType) throws BQLException {
+        return get(bql, parserType, null);
+    }
+
+    BQLPlan get(String bql, BQLParserType parserType, BQLCompilerListener listener) throws BQLException {
+        BQLPlan plan = plans.get(bql);
+        if (plan != null) {
+            return plan;
+        }
+
+        if (!canonicalLookup) {
+            return plans.putIfAbsent(bql, BQLPlan.compile(bql, parserType, listener));
+        }
+
+        // fingerprint相同时再逐个比较token，避免哈希冲突时用错plan
+        BQLLexer tokens = BQLLexer.tokenize(bql);
+        long fingerprint = BQLFingerprint.of(tokens, false);
+        plan = canonicalPlans.get(fingerprint);
+        if (plan != null && tokens.getError() == null
+                && BQLFingerprint.sameStatement(tokens, BQLLexer.tokenize(plan.getBql()))) {
+            canonicalHits.increment();
+            return plans.putIfAbsent(bql, plan);
+        }
+
+        plan = BQLPlan.compile(bql, parserType, listener);
+        canonicalPlans.putIfAbsent(fingerprint, plan);
+        return plans.putIfAbsent(bql, plan);
+    }
+
+    public void invalidateAll() {
+        plans.invalidateAll();
+        canonicalPlans.invalidateAll();
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public int getMaximumSize() {
+        return plans.getMaximumSize();
+    }
+
+    public long getHitCount() {
+        return plans.getHitCount();
+    }
+
+    public long getMissCount() {
+        return plans.getMissCount();
+    }
+
+    /**
+     * 文本未命中、按fingerprint找到plan的次数，这些查找在{@link #getMissCount()}里也算一次未命中。
+     */
+    public long getCanonicalHitCount() {
+        return canonicalHits.sum();
+    }
+
+    public long getEvictionCount() {
+        return plans.getEvictionCount();
+    }
+}
@@ -0,0 +1,372 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.node.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * 化简WHERE条件：AND连接的同一列上的范围合并，去掉重复和被其他条件蕴含的条件，发现矛盾时标记结果为空。
+ *
+ * 只处理从根节点经过AND、OR能到达的条件，NOT下面的条件在三值逻辑下不能这样化简，保持原样。
+ * 列和数字比较时按数值比较，字符串比较受collation影响，只参与去重。
+ * OR中矛盾的分支被删掉，整个条件矛盾时不再删除，只通过{@link #isContradiction()}报告。
+ */
+final class BQLPredicateSimplifier {
+
+    private final BQLRewrites rewrites;
+
+    private final Map<String, Object> options;
+
+    private final BQLConstantFolder folder;
+
+    private final Set<PExpr> dropped = Collections.newSetFromMap(new IdentityHashMap<PExpr, Boolean>());
+
+    private boolean contradiction;
+
+    BQLPredicateSimplifier(BQLRewrites rewrites, Map<String, Object> options) {
+        this.rewrites = rewrites;
+        this.options = options;
+        this.folder = new BQLConstantFolder(options);
+    }
+
+    /**
+     * @param root 优化后的条件
+     * @return 化简后的条件，不会为null
+     */
+    PExpr simplify(PExpr root) {
+        // 单个条件按只有一项的AND处理，比如BETWEEN 4 AND 2
+        if (isCondition(root, AOrOp.class)) {
+            contradiction = !simplifyOr(root);
+        } else {
+            contradiction = !simplifyAnd(root);
+        }
+
+        return dropped.isEmpty() ? root : prune(root);
+    }
+
+    /**
+     * 条件不可能成立，语句不会返回或修改任何行。
+     */
+    boolean isContradiction() {
+        return contradiction;
+    }
+
+    /**
+     * @return false表示矛盾
+     */
+    private boolean simplifyAnd(PExpr and) {
+        List<PExpr> conjuncts = new ArrayList<PExpr>();
+        flatten(and, AAndOp.class, conjuncts);
+
+        Set<String> seen = new HashSet<String>();
+        Map<String, List<Range>> columns = new LinkedHashMap<String, List<Range>>();
+        for (PExpr conjunct : conjuncts) {
+            if (!seen.add(BQLNodes.key(conjunct, rewrites))) {
+                dropped.add(conjunct);
+                continue;
+            }
+
+            if (isCondition(conjunct, AOrOp.class)) {
+                if (!simplifyOr(conjunct)) {
+                    return false;
+                }
+                continue;
+            }
+
+            Range range = range(conjunct);
+            if (range != null) {
+                List<Range> ranges = columns.get(range.column);
+                if (ranges == null) {
+                    ranges = new ArrayList<Range>();
+                    columns.put(range.column, ranges);
+                }
+                ranges.add(range);
+            }
+        }
+
+        for (List<Range> ranges : columns.values()) {
+            if (!merge(ranges)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false表示所有分支都矛盾
+     */
+    private boolean simplifyOr(PExpr or) {
+        List<PExpr> disjuncts = new ArrayList<PExpr>();
+        flatten(or, AOrOp.class, disjuncts);
+
+        Set<String> seen = new HashSet<String>();
+        List<PExpr> empty = new ArrayList<PExpr>();
+        List<PExpr> duplicated = new ArrayList<PExpr>();
+        for (PExpr disjunct : disjuncts) {
+            if (!seen.add(BQLNodes.key(disjunct, rewrites))) {
+                duplicated.add(disjunct);
+            } else if (isCondition(disjunct, AAndOp.class) && !simplifyAnd(disjunct)) {
+                empty.add(disjunct);
+            }
+        }
+
+        if (empty.size() + duplicated.size() == disjuncts.size()) {
+            return false;
+        }
+        dropped.addAll(empty);
+        dropped.addAll(duplicated);
+        return true;
+    }
+
+    /**
+     * 同一列上的条件：eq和范围合并成最严格的上下界，只保留给出这两个界的条件。
+     *
+     * @return false表示矛盾
+     */
+    private boolean merge(List<Range> ranges) {
+        Range lower = null;
+        Range upper = null;
+        for (Range range : ranges) {
+            if (range.lower != null && (lower == null || stricterLower(range, lower))) {
+                lower = range;
+            }
+            if (range.upper != null && (upper == null || stricterUpper(range, upper))) {
+                upper = range;
+            }
+        }
+
+        BigDecimal point = null;
+        if (lower != null && upper != null) {
+            int cmp = lower.lower.compareTo(upper.upper);
+            if (cmp > 0 || cmp == 0 && !(lower.lowerInclusive && upper.upperInclusive)) {
+                return false;
+            }
+            if (cmp == 0) {
+                point = lower.lower;
+            }
+        }
+
+        // 一个条件同时给出上下界时只保留它，等值时优先保留=
+        if (lower != null && upper != null && lower != upper) {
+            Range both = null;
+            for (Range range : ranges) {
+                if (sameLower(range, lower) && sameUpper(range, upper) && (both == null || range.equal && !both.equal)) {
+                    both = range;
+                }
+            }
+            if (both != null) {
+                lower = both;
+                upper = both;
+            }
+        }
+
+        for (Range range : ranges) {
+            if (range.excluded != null) {
+                if (point != null && point.compareTo(range.excluded) == 0) {
+                    return false;
+                }
+                if (outside(range.excluded, lower, upper)) {
+                    dropped.add(range.predicate);
+                }
+            } else if (range != lower && range != upper) {
+                dropped.add(range.predicate);
+            }
+        }
+        return true;
+    }
+
+    private static boolean stricterLower(Range a, Range b) {
+        int cmp = a.lower.compareTo(b.lower);
+        return cmp > 0 || cmp == 0 && !a.lowerInclusive && b.lowerInclusive;
+    }
+
+    private static boolean stricterUpper(Range a, Range b) {
+        int cmp = a.upper.compareTo(b.upper);
+        return cmp < 0 || cmp == 0 && !a.upperInclusive && b.upperInclusive;
+    }
+
+    private static boolean sameLower(Range a, Range b) {
+        return a.lower != null && a.lower.compareTo(b.lower) == 0 && a.lowerInclusive == b.lowerInclusive;
+    }
+
+    private static boolean sameUpper(Range a, Range b) {
+        return a.upper != null && a.upper.compareTo(b.upper) == 0 && a.upperInclusive == b.upperInclusive;
+    }
+
+    /**
+     * @return value不在上下界之内，!= value一定成立
+     */
+    private static boolean outside(BigDecimal value, Range lower, Range upper) {
+        if (lower != null) {
+            int cmp = value.compareTo(lower.lower);
+            if (cmp < 0 || cmp == 0 && !lower.lowerInclusive) {
+                return true;
+            }
+        }
+        if (upper != null) {
+            int cmp = value.compareTo(upper.upper);
+            if (cmp > 0 || cmp == 0 && !upper.upperInclusive) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 列和数字比较的条件，其他条件返回null
+     */
+    private Range range(PExpr expr) {
+        if (expr instanceof ABinaryExpr) {
+            ABinaryExpr binary = (ABinaryExpr) expr;
+            PValue left = rewrites.resolve(binary.getLeft());
+            PValue right = rewrites.resolve(binary.getRight());
+            POp op = binary.getOp();
+
+            boolean reversed = false;
+            if (!(left instanceof AColumnValue)) {
+                PValue column = right;
+                right = left;
+                left = column;
+                reversed = true;
+            }
+            if (!(left instanceof AColumnValue)) {
+                return null;
+            }
+
+            BigDecimal value = number(right);
+            if (value == null) {
+                return null;
+            }
+
+            Range range = new Range(expr, BQLNodes.key(((AColumnValue) left).getColumnComponents(), rewrites));
+            if (op instanceof AEqOp) {
+                range.lower = value;
+                range.upper = value;
+                range.lowerInclusive = true;
+                range.upperInclusive = true;
+                range.equal = true;
+            } else if (op instanceof ANotEqOp) {
+                range.excluded = value;
+            } else if (op instanceof ALtOp || op instanceof ALteqOp) {
+                boolean inclusive = op instanceof ALteqOp;
+                range.setBound(!reversed, value, inclusive);
+            } else if (op instanceof AGtOp || op instanceof AGteqOp) {
+                boolean inclusive = op instanceof AGteqOp;
+                range.setBound(reversed, value, inclusive);
+            } else {
+                return null;
+            }
+            return range;
+        } else if (expr instanceof ABetweenExpr) {
+            ABetweenExpr between = (ABetweenExpr) expr;
+            BigDecimal lower = number(rewrites.resolve(between.getLeft()));
+            BigDecimal upper = number(rewrites.resolve(between.getRight()));
+            if (lower == null || upper == null) {
+                return null;
+            }
+
+            Range range = new Range(expr, BQLNodes.key(between.getColumnComponents(), rewrites));
+            range.setBound(false, lower, true);
+            range.setBound(true, upper, true);
+            return range;
+        }
+        return null;
+    }
+
+    private BigDecimal number(PValue value) {
+        Number number;
+        if (value instanceof AOptionValue) {
+            number = BQLConstantFolder.toNumber(rewrites.getValue((AOptionValue) value, options));
+        } else if (value instanceof AHexValue) {
+            // 0x开头的数字和字符串列比较时是二进制字符串
+            number = null;
+        } else {
+            number = folder.evaluate(value);
+        }
+
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        }
+        return (BigDecimal) number;
+    }
+
+    /**
+     * 删掉dropped中的节点，和优化器一样把只剩一个子节点的AND、OR换成这个子节点。
+     */
+    private PExpr prune(PExpr expr) {
+        if (dropped.contains(expr)) {
+            return null;
+        }
+
+        if (!(expr instanceof AConditionExpr)) {
+            return expr;
+        }
+
+        AConditionExpr condition = (AConditionExpr) expr;
+        PExpr left = prune(rewrites.resolve(condition.getLeft()));
+        rewrites.replace(condition.getLeft(), left);
+        PExpr right = prune(rewrites.resolve(condition.getRight()));
+        rewrites.replace(condition.getRight(), right);
+
+        if (left == null) {
+            return right;
+        } else if (right == null) {
+            return left;
+        } else {
+            return condition;
+        }
+    }
+
+    private void flatten(PExpr expr, Class<? extends POp> op, List<PExpr> out) {
+        if (isCondition(expr, op)) {
+            AConditionExpr condition = (AConditionExpr) expr;
+            flatten(rewrites.resolve(condition.getLeft()), op, out);
+            flatten(rewrites.resolve(condition.getRight()), op, out);
+        } else {
+            out.add(expr);
+        }
+    }
+
+    private static boolean isCondition(PExpr expr, Class<? extends POp> op) {
+        return expr instanceof AConditionExpr && op.isInstance(((AConditionExpr) expr).getOp());
+    }
+
+    /**
+     * 一个条件给出的上下界，lower、upper为null表示没有这一边的界，excluded不为null时是!=条件。
+     */
+    private static final class Range {
+
+        final PExpr predicate;
+
+        final String column;
+
+        BigDecimal lower;
+
+        boolean lowerInclusive;
+
+        BigDecimal upper;
+
+        boolean upperInclusive;
+
+        boolean equal;
+
+        BigDecimal excluded;
+
+        Range(PExpr predicate, String column) {
+            this.predicate = predicate;
+            this.column = column;
+        }
+
+        void setBound(boolean isUpper, BigDecimal value, boolean inclusive) {
+            if (isUpper) {
+                upper = value;
+                upperInclusive = inclusive;
+            } else {
+                lower = value;
+                lowerInclusive = inclusive;
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package io.baxian.bql;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 执行一条生成的语句，由调用方实现，比如用JDBC执行并把每行读成列名到值的Map。
+ *
+ * {@link BQLChunkedQuery}会在多个线程中同时调用。
+ */
+public interface BQLQueryRunner {
+
+    List<Map<String, Object>> query(RenderedBQL statement) throws Exception;
+}
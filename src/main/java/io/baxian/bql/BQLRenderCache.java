@@ -0,0 +1,373 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.node.Start;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存优化和SQL生成的结果。
+ *
+ * 生成的SQL只取决于每个参数是否存在、是否为null，以及List参数的长度和其中null元素的位置，
+ * 与参数的具体值无关。缓存以(语句, 参数签名)为key，保存SQL和每个绑定值对应的参数，
+ * 命中时只需要按顺序从options里取出绑定值。
+ *
+ * 模板模式下以(语句, 参数存在情况)为key缓存{@link BQLTemplate}，List参数的长度不同也能命中，
+ * 渲染时只拼接静态片段和占位符。参数中有含null元素的List时仍按上面的签名缓存。
+ * 命中次数超过阈值的模板再组合成{@link BQLTemplateRenderer}，组合失败或者数量超过上限时继续解释执行。
+ *
+ * ElasticSearchQueryGenerator把参数值直接写进查询里，不能这样缓存。
+ *
+ * 打开{@link #setInListPadding(int)}时IN列表按{@link BQLOptimizerConfig#setInListPadding(int)}补齐，
+ * 补齐后的长度只取决于列表长度，缓存的key不变。
+ */
+public class BQLRenderCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    public static final int DEFAULT_SPECIALIZE_THRESHOLD = 1000;
+
+    public static final int DEFAULT_MAXIMUM_RENDERERS = 32;
+
+    private final BQLClockCache<Key, Entry> entries;
+
+    private final boolean templates;
+
+    private volatile int specializeThreshold = DEFAULT_SPECIALIZE_THRESHOLD;
+
+    private volatile int maximumRenderers = DEFAULT_MAXIMUM_RENDERERS;
+
+    private volatile BQLOptimizerConfig optimizerConfig;
+
+    private final AtomicInteger rendererCount = new AtomicInteger();
+
+    public BQLRenderCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public BQLRenderCache(int maximumSize) {
+        this(maximumSize, false);
+    }
+
+    /**
+     * @param templates 是否使用模板模式
+     */
+    public BQLRenderCache(int maximumSize, boolean templates) {
+        this.entries = new BQLClockCache<Key, Entry>(maximumSize);
+        this.templates = templates;
+    }
+
+    public boolean isTemplates() {
+        return templates;
+    }
+
+    /**
+     * 模板模式下，命中threshold次的模板组合成专用的渲染函数，最多maximumRenderers个。
+     *
+     * @param threshold 为0时不组合
+     */
+    public void setSpecialization(int threshold, int maximumRenderers) {
+        this.specializeThreshold = threshold;
+        this.maximumRenderers = maximumRenderers;
+    }
+
+    public int getInListPadding() {
+        BQLOptimizerConfig config = optimizerConfig;
+        return config != null ? config.getInListPadding() : 0;
+    }
+
+    /**
+     * 见{@link BQLOptimizerConfig#setInListPadding(int)}，修改后清空缓存。
+     *
+     * @param inListPadding 为0时不补齐
+     */
+    public void setInListPadding(int inListPadding) {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setInListPadding(inListPadding);
+        optimizerConfig = inListPadding > 0 ? config : null;
+        invalidateAll();
+    }
+
+    public int getRendererCount() {
+        return rendererCount.get();
+    }
+
+    public RenderedBQL render(BQLPlan plan, Map<String, Object> options) throws BQLException {
+        if (options == null) {
+            options = Collections.emptyMap();
+        }
+
+        if (templates) {
+            long presence = BQLTemplate.presence(plan, options);
+            if (presence >= 0) {
+                Key key = new Key(plan, presence);
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    BQLTemplateRenderer renderer = specialize(entry);
+                    return renderer != null ? renderer.render(options) : entry.template.render(options);
+                }
+                return generateTemplate(plan, options, key);
+            }
+        }
+
+        String signature = signature(plan, options);
+        if (signature == null) {
+            return generate(plan, options, null);
+        }
+
+        Key key = new Key(plan, signature);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return new RenderedBQL(entry.output, entry.bind(options));
+        }
+
+        return generate(plan, options, key);
+    }
+
+    /**
+     * 把语句追加到sql，绑定值追加到values，调用方可以复用两者。
+     */
+    public void render(BQLPlan plan, Map<String, Object> options, StringBuilder sql, List<BQLOption> values)
+            throws BQLException {
+        if (options == null) {
+            options = Collections.emptyMap();
+        }
+
+        if (templates) {
+            long presence = BQLTemplate.presence(plan, options);
+            if (presence >= 0) {
+                Entry entry = entries.get(new Key(plan, presence));
+                if (entry != null) {
+                    BQLTemplateRenderer renderer = specialize(entry);
+                    if (renderer != null) {
+                        renderer.render(options, sql, values);
+                    } else {
+                        entry.template.render(options, sql, values);
+                    }
+                    return;
+                }
+            }
+        }
+
+        RenderedBQL rendered = render(plan, options);
+        sql.append(rendered.getOutput());
+        values.addAll(rendered.getOptions());
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+        rendererCount.set(0);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return entries.getHitCount();
+    }
+
+    public long getMissCount() {
+        return entries.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return entries.getEvictionCount();
+    }
+
+    private RenderedBQL generate(BQLPlan plan, Map<String, Object> options, Key key) throws BQLException {
+        Start ast = plan.getAst();
+
+        BQLOptimizer optimizer = new BQLOptimizer(options, optimizerConfig);
+        ast.apply(optimizer);
+        BQLException error = optimizer.getError();
+        if (error != null) {
+            throw error;
+        }
+
+        SQLGenerator generator = new SQLGenerator(options);
+        generator.setRewrites(optimizer.getRewrites());
+        ast.apply(generator);
+        String output = generator.output();
+
+        if (key != null) {
+            List<BQLOptionSlot> slots = optimizer.getOptionSlots();
+            entries.putIfAbsent(key, new Entry(output, slots.toArray(new BQLOptionSlot[slots.size()])));
+        }
+
+        return new RenderedBQL(output, optimizer.getOptimizedOptions());
+    }
+
+    private BQLTemplateRenderer specialize(Entry entry) {
+        BQLTemplateRenderer renderer = entry.renderer;
+        if (renderer != null || entry.specialized) {
+            return renderer;
+        }
+
+        // 计数不加锁，并发时多算或者少算几次没有关系
+        int threshold = specializeThreshold;
+        if (threshold <= 0 || ++entry.hits < threshold) {
+            return null;
+        }
+
+        synchronized (entry) {
+            if (entry.specialized) {
+                return entry.renderer;
+            }
+
+            // 被淘汰的条目不归还名额，invalidateAll()时重新计数
+            if (rendererCount.get() < maximumRenderers) {
+                try {
+                    entry.renderer = BQLTemplateRenderer.compile(entry.template);
+                    rendererCount.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // 继续解释执行
+                } catch (LinkageError e) {
+                    // 继续解释执行
+                }
+            }
+            entry.specialized = true;
+            return entry.renderer;
+        }
+    }
+
+    private RenderedBQL generateTemplate(BQLPlan plan, Map<String, Object> options, Key key) throws BQLException {
+        Start ast = plan.getAst();
+
+        BQLOptimizerConfig config = optimizerConfig;
+        BQLOptimizer optimizer = new BQLOptimizer(options, config);
+        ast.apply(optimizer);
+        BQLException error = optimizer.getError();
+        if (error != null) {
+            throw error;
+        }
+
+        BQLTemplate.Builder builder = new BQLTemplate.Builder(config != null ? config.getInListPadding() : 0);
+        SQLGenerator generator = new SQLGenerator(options);
+        generator.setRewrites(optimizer.getRewrites());
+        generator.setTemplateBuilder(builder);
+        ast.apply(generator);
+        String output = generator.output();
+
+        BQLTemplate template = builder.build(output, optimizer.getOptionSlots(), options);
+        if (template != null) {
+            entries.putIfAbsent(key, new Entry(template));
+        }
+
+        return new RenderedBQL(output, optimizer.getOptimizedOptions());
+    }
+
+    /**
+     * @return 参数签名，参数中有无法按下标取值的Collection时返回null
+     */
+    static String signature(BQLPlan plan, Map<String, Object> options) {
+        StringBuilder signature = new StringBuilder();
+
+        for (String option : plan.getOptionNames()) {
+            if (!options.containsKey(option)) {
+                signature.append('a');
+                continue;
+            }
+
+            Object value = options.get(option);
+            if (value == null) {
+                signature.append('n');
+            } else if (value instanceof List) {
+                List list = (List) value;
+                signature.append('l').append(list.size());
+                for (int i = 0; i < list.size(); ++i) {
+                    if (list.get(i) == null) {
+                        signature.append('/').append(i);
+                    }
+                }
+                signature.append(';');
+            } else if (value instanceof Collection) {
+                return null;
+            } else {
+                signature.append('s');
+            }
+        }
+
+        return signature.toString();
+    }
+
+    private static final class Key {
+
+        private final BQLPlan plan;
+
+        private final String signature;
+
+        private final long presence;
+
+        Key(BQLPlan plan, String signature) {
+            this.plan = plan;
+            this.signature = signature;
+            this.presence = -1;
+        }
+
+        Key(BQLPlan plan, long presence) {
+            this.plan = plan;
+            this.signature = null;
+            this.presence = presence;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return plan == key.plan
+                    && presence == key.presence
+                    && (signature == null ? key.signature == null : signature.equals(key.signature));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = signature != null ? signature.hashCode() : (int) (presence ^ (presence >>> 32));
+            return 31 * System.identityHashCode(plan) + hash;
+        }
+    }
+
+    private static final class Entry {
+
+        private final String output;
+
+        private final BQLOptionSlot[] slots;
+
+        private final BQLTemplate template;
+
+        private volatile BQLTemplateRenderer renderer;
+
+        private volatile boolean specialized;
+
+        private int hits;
+
+        Entry(String output, BQLOptionSlot[] slots) {
+            this.output = output;
+            this.slots = slots;
+            this.template = null;
+        }
+
+        Entry(BQLTemplate template) {
+            this.output = null;
+            this.slots = null;
+            this.template = template;
+        }
+
+        List<BQLOption> bind(Map<String, Object> options) {
+            List<BQLOption> values = new ArrayList<BQLOption>(slots.length);
+            for (BQLOptionSlot slot : slots) {
+                values.add(slot.bind(options));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.node.ABinaryExpr;
+import io.baxian.bql.framework.node.ANullValue;
+import io.baxian.bql.framework.node.AOptionValue;
+import io.baxian.bql.framework.node.Node;
+import io.baxian.bql.framework.node.PExpr;
+import io.baxian.bql.framework.node.PValue;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 优化器对语法树的改写记录。
+ *
+ * 优化器不修改语法树，只记录哪些节点被替换或删除，生成器读取子节点时通过{@link #resolve(Node)}
+ * 得到优化后的节点。这样同一棵语法树可以被多个线程同时优化，也不需要在优化前复制整棵树。
+ */
+public class BQLRewrites {
+
+    public static final BQLRewrites NONE = new BQLRewrites(new IdentityHashMap<Node, Node>(0));
+
+    private final Map<Node, Node> replacements;
+
+    private Map<AOptionValue, Object> bindings;
+
+    private List<String> partitions;
+
+    private BQLIndexHint indexHint;
+
+    private PExpr where;
+
+    private boolean inNormalization;
+
+    public BQLRewrites() {
+        this(new IdentityHashMap<Node, Node>());
+    }
+
+    private BQLRewrites(Map<Node, Node> replacements) {
+        this.replacements = replacements;
+    }
+
+    /**
+     * @param replacement 为null表示删除该节点
+     */
+    void replace(Node node, Node replacement) {
+        if (node != null && node != replacement) {
+            replacements.put(node, replacement);
+        }
+    }
+
+    /**
+     * 新建的节点不能直接引用语法树中的节点，否则节点会从原来的父节点上摘下来。
+     * 这里返回一个空的占位节点，生成器resolve时得到target。
+     */
+    PValue reference(PValue target) {
+        PValue placeholder = new ANullValue();
+        replacements.put(placeholder, target);
+        return placeholder;
+    }
+
+    PExpr reference(PExpr target) {
+        PExpr placeholder = new ABinaryExpr();
+        replacements.put(placeholder, target);
+        return placeholder;
+    }
+
+    /**
+     * 参数节点改用value输出和绑定，比如IN列表去重后的元素。
+     */
+    void bind(AOptionValue node, Object value) {
+        if (bindings == null) {
+            bindings = new IdentityHashMap<AOptionValue, Object>();
+        }
+        bindings.put(node, value);
+    }
+
+    /**
+     * @return 参数节点的值，优化器改写过时返回改写后的值，否则从options中取
+     */
+    public Object getValue(AOptionValue node, Map<String, Object> options) {
+        if (bindings != null && bindings.containsKey(node)) {
+            return bindings.get(node);
+        }
+        return options.get(node.getIdentifier().getText());
+    }
+
+    /**
+     * 按分区列上的条件算出的分区，语句没有写PARTITION时由生成器输出。
+     */
+    void setPartitions(List<String> partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * @return 优化器算出的分区，没有时返回null
+     */
+    public List<String> getPartitions() {
+        return partitions;
+    }
+
+    void setIndexHint(BQLIndexHint indexHint) {
+        this.indexHint = indexHint;
+    }
+
+    /**
+     * @return 匹配的索引提示规则，没有时返回null
+     */
+    public BQLIndexHint getIndexHint() {
+        return indexHint;
+    }
+
+    void setInNormalization(boolean inNormalization) {
+        this.inNormalization = inNormalization;
+    }
+
+    /**
+     * @return 优化时打开了{@link BQLOptimizerConfig#setInNormalization(boolean)}
+     */
+    public boolean isInNormalization() {
+        return inNormalization;
+    }
+
+    /**
+     * 替换整个WHERE条件，语句原来没有WHERE时也可以加上条件。
+     */
+    void setWhere(PExpr where) {
+        this.where = where;
+    }
+
+    /**
+     * @param original 语句中的WHERE条件，可以为null
+     * @return 优化后的WHERE条件
+     */
+    public PExpr resolveWhere(PExpr original) {
+        return where != null ? where : resolve(original);
+    }
+
+    /**
+     * @return 优化后的节点，节点被删除时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Node> T resolve(T node) {
+        if (replacements.isEmpty()) {
+            return node;
+        }
+
+        Node current = node;
+        while (current != null && replacements.containsKey(current)) {
+            current = replacements.get(current);
+        }
+        return (T) current;
+    }
+
+    public boolean isRemoved(Node node) {
+        return node != null && resolve(node) == null;
+    }
+
+    public boolean isEmpty() {
+        return replacements.isEmpty() && (bindings == null || bindings.isEmpty()) && partitions == null && indexHint == null
+                && where == null;
+    }
+}
@@ -0,0 +1,89 @@
+package io.baxian.bql;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 各表的列、索引和索引提示规则，可以被多个compiler共享。
+ *
+ * 通过{@link BQLOptimizerConfig#setSchemaCatalog(BQLSchemaCatalog)}使用：AND连接的条件按索引的列顺序排列，
+ * 匹配{@link BQLIndexHint}规则的SELECT加上USE INDEX或FORCE INDEX。表结构来自其他地方时可以覆盖
+ * {@link #getTable(String, String)}。
+ */
+public class BQLSchemaCatalog {
+
+    private final ConcurrentMap<String, BQLTableSchema> tables = new ConcurrentHashMap<String, BQLTableSchema>();
+
+    private final List<BQLIndexHint> indexHints = new CopyOnWriteArrayList<BQLIndexHint>();
+
+    /**
+     * 加载建表语句，见{@link BQLDdlParser}，同名的表会被替换。
+     */
+    public void load(String ddl) {
+        new BQLDdlParser(this).parse(ddl);
+    }
+
+    public void load(Reader reader) throws IOException {
+        StringBuilder ddl = new StringBuilder();
+        char[] buffer = new char[4096];
+        int n;
+        while ((n = reader.read(buffer)) > 0) {
+            ddl.append(buffer, 0, n);
+        }
+        load(ddl.toString());
+    }
+
+    public void setTable(BQLTableSchema table) {
+        tables.put(key(table.getSchema(), table.getName()), table);
+    }
+
+    /**
+     * @param schema 可以为null，指定的schema下没有这张表时按不带schema的表名查找
+     */
+    public BQLTableSchema getTable(String schema, String table) {
+        if (schema != null) {
+            BQLTableSchema result = tables.get(key(schema, table));
+            if (result != null) {
+                return result;
+            }
+        }
+        return tables.get(key(null, table));
+    }
+
+    /**
+     * 规则按添加的顺序匹配，用第一个匹配的规则。
+     */
+    public void addIndexHint(BQLIndexHint hint) {
+        indexHints.add(hint);
+    }
+
+    /**
+     * @param alias 可以为null
+     * @param columns WHERE中AND连接的条件用到的列，小写
+     * @return 匹配的规则，表结构已知但没有规则中的索引时不使用该规则
+     */
+    public BQLIndexHint getIndexHint(String schema, String table, String alias, Collection<String> columns) {
+        for (BQLIndexHint hint : indexHints) {
+            if (!hint.matches(schema, table, alias, columns)) {
+                continue;
+            }
+
+            BQLTableSchema tableSchema = getTable(schema, table);
+            if (tableSchema == null || tableSchema.getIndex(hint.getIndex()) != null) {
+                return hint;
+            }
+        }
+        return null;
+    }
+
+    private static String key(String schema, String table) {
+        String key = schema != null ? schema + "." + table : table;
+        return key.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,12 @@
+package io.baxian.bql;
+
+public enum BQLStatementType {
+
+    SELECT,
+
+    INSERT,
+
+    UPDATE,
+
+    DELETE
+}
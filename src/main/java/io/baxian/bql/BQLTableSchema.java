@@ -0,0 +1,62 @@
+package io.baxian.bql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一张表的列和索引，可以从建表语句加载，见{@link BQLSchemaCatalog#load(String)}。
+ */
+public class BQLTableSchema {
+
+    private String schema;
+
+    private String name;
+
+    private List<String> columns = new ArrayList<String>();
+
+    private List<BQLIndex> indexes = new ArrayList<BQLIndex>();
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public void setSchema(String schema) {
+        this.schema = schema;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
+    public List<BQLIndex> getIndexes() {
+        return indexes;
+    }
+
+    public void setIndexes(List<BQLIndex> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * @return 名字不区分大小写，没有时返回null
+     */
+    public BQLIndex getIndex(String name) {
+        for (BQLIndex index : indexes) {
+            if (index.getName() != null && index.getName().equalsIgnoreCase(name)) {
+                return index;
+            }
+        }
+        return null;
+    }
+}
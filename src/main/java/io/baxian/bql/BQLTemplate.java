@@ -0,0 +1,204 @@
+package io.baxian.bql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 编译好的SQL模板：静态片段和参数占位符交替排列，渲染时按顺序拼接，不再遍历语法树。
+ *
+ * 哪些条件被去掉、哪里输出NULL只取决于每个参数是否存在、是否为null、List是否为空，
+ * 所以每种参数存在情况({@link #presence(BQLPlan, Map)})编译一个模板，去掉的条件已经不在片段里。
+ * List参数的长度只影响占位符个数，渲染时展开。
+ *
+ * 模板不可变，可以被任意线程共享。
+ */
+final class BQLTemplate {
+
+    private final String[] chunks;
+
+    private final BQLOptionSlot[] placeholders;
+
+    private final BQLOptionSlot[] binds;
+
+    private final int staticLength;
+
+    private BQLTemplate(String[] chunks, BQLOptionSlot[] placeholders, BQLOptionSlot[] binds) {
+        this.chunks = chunks;
+        this.placeholders = placeholders;
+        this.binds = binds;
+
+        int length = 0;
+        for (String chunk : chunks) {
+            length += chunk.length();
+        }
+        this.staticLength = length;
+    }
+
+    String[] getChunks() {
+        return chunks;
+    }
+
+    BQLOptionSlot[] getPlaceholders() {
+        return placeholders;
+    }
+
+    BQLOptionSlot[] getBinds() {
+        return binds;
+    }
+
+    /**
+     * 把语句追加到sql，绑定值追加到values。
+     */
+    void render(Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+        sql.ensureCapacity(sql.length() + staticLength + 3 * placeholders.length);
+
+        for (int i = 0; i < placeholders.length; ++i) {
+            sql.append(chunks[i]);
+            placeholders[i].appendPlaceholders(sql, options);
+        }
+        sql.append(chunks[placeholders.length]);
+
+        for (BQLOptionSlot bind : binds) {
+            bind.bind(options, values);
+        }
+    }
+
+    RenderedBQL render(Map<String, Object> options) {
+        StringBuilder sql = new StringBuilder(staticLength + 3 * placeholders.length);
+        List<BQLOption> values = new ArrayList<BQLOption>(binds.length);
+        render(options, sql, values);
+        return new RenderedBQL(sql.toString(), values);
+    }
+
+    /**
+     * 每个参数占3位，参数超过这个数量时不使用模板。
+     */
+    static final int MAX_OPTIONS = 21;
+
+    /**
+     * @return 参数存在情况的签名，参数中有含null元素的List或者其他Collection时返回-1，这时不能使用模板
+     */
+    static long presence(BQLPlan plan, Map<String, Object> options) {
+        List<String> names = plan.getOptionNames();
+        if (names.size() > MAX_OPTIONS) {
+            return -1;
+        }
+
+        long signature = 0;
+        for (int i = 0; i < names.size(); ++i) {
+            String option = names.get(i);
+            Object value = options.get(option);
+
+            long state;
+            if (value == null) {
+                state = options.containsKey(option) ? 1 : 0;
+            } else if (value instanceof String || value instanceof Number) {
+                // 先判断常见的类，对接口的instanceof不命中时要逐个比较实现的接口
+                state = 4;
+            } else if (value instanceof List) {
+                List list = (List) value;
+                if (list.isEmpty()) {
+                    state = 2;
+                } else if (list.contains(null)) {
+                    // null元素输出为NULL，占位符的位置与值有关
+                    return -1;
+                } else {
+                    state = 3;
+                }
+            } else if (value instanceof Collection) {
+                return -1;
+            } else {
+                state = 4;
+            }
+
+            signature |= state << (3 * i);
+        }
+
+        return signature;
+    }
+
+    /**
+     * 生成SQL时记录模板，由{@link SQLGenerator}在输出参数占位符时调用。
+     */
+    static final class Builder {
+
+        private final List<String> chunks = new ArrayList<String>();
+
+        private final List<BQLOptionSlot> placeholders = new ArrayList<BQLOptionSlot>();
+
+        private final int inListPadding;
+
+        private final Set<String> padded = new HashSet<String>();
+
+        private int mark;
+
+        /**
+         * @param inListPadding 与生成语句时优化器的配置相同
+         */
+        Builder(int inListPadding) {
+            this.inListPadding = inListPadding;
+        }
+
+        void placeholder(StringBuilder sql, String option, Object value, Map<String, Object> options) {
+            BQLOptionSlot slot;
+            if (!(value instanceof List)) {
+                slot = new BQLOptionSlot(option, BQLOptionSlot.SCALAR);
+            } else if (inListPadding > 0 && value != options.get(option)) {
+                // 优化器绑定了补齐后的List
+                slot = new BQLOptionSlot(option, BQLOptionSlot.ALL, inListPadding);
+                padded.add(option);
+            } else {
+                slot = new BQLOptionSlot(option, BQLOptionSlot.ALL);
+            }
+
+            chunks.add(sql.substring(mark));
+            placeholders.add(slot);
+            slot.appendPlaceholders(sql, options);
+            mark = sql.length();
+        }
+
+        /**
+         * @param output 生成的完整语句
+         * @param slots 优化器记录的绑定值来源，每个List元素一个
+         * @return 绑定值与List的元素对不上时返回null
+         */
+        BQLTemplate build(String output, List<BQLOptionSlot> slots, Map<String, Object> options) {
+            List<String> allChunks = new ArrayList<String>(chunks);
+            allChunks.add(output.substring(mark));
+
+            List<BQLOptionSlot> binds = new ArrayList<BQLOptionSlot>();
+            for (int i = 0; i < slots.size(); ) {
+                BQLOptionSlot slot = slots.get(i);
+                if (slot.getIndex() == BQLOptionSlot.SCALAR) {
+                    binds.add(slot);
+                    ++i;
+                    continue;
+                }
+
+                // 同一个List参数连续的下标0..n-1合并成一个，补齐时后面重复n-1
+                int size = ((List) options.get(slot.getOption())).size();
+                boolean padding = padded.contains(slot.getOption());
+                int n = padding ? BQLOptimizer.paddedSize(size, inListPadding) : size;
+                for (int j = 0; j < n; ++j, ++i) {
+                    if (i >= slots.size() || !isSlot(slots.get(i), slot.getOption(), Math.min(j, size - 1))) {
+                        return null;
+                    }
+                }
+                binds.add(new BQLOptionSlot(slot.getOption(), BQLOptionSlot.ALL, padding ? inListPadding : 0));
+            }
+
+            return new BQLTemplate(
+                    allChunks.toArray(new String[allChunks.size()]),
+                    placeholders.toArray(new BQLOptionSlot[placeholders.size()]),
+                    binds.toArray(new BQLOptionSlot[binds.size()]));
+        }
+
+        private static boolean isSlot(BQLOptionSlot slot, String option, int index) {
+            return slot.getIndex() == index && slot.getOption().equals(option);
+        }
+    }
+}
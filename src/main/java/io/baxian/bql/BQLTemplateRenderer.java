@@ -0,0 +1,166 @@
+package io.baxian.bql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把{@link BQLTemplate}组合成一个专用的MethodHandle，用于调用次数多的语句。
+ *
+ * 相邻的静态片段和单值占位符事先合并成一个字符串，只有List参数的占位符在渲染时展开，
+ * 每个绑定值的取法也事先确定，渲染时没有循环和分支。
+ * HotSpot对调用次数多的MethodHandle会生成专用的字节码，相当于为每个语句生成一个渲染类。
+ */
+final class BQLTemplateRenderer {
+
+    private static final MethodType STEP = MethodType.methodType(void.class, Map.class, StringBuilder.class, List.class);
+
+    private static final MethodHandle DONE;
+
+    private static final MethodHandle APPEND;
+
+    private static final MethodHandle APPEND_LIST;
+
+    private static final MethodHandle BIND;
+
+    private static final MethodHandle BIND_LIST;
+
+    private static final MethodHandle APPEND_SLOT;
+
+    private static final MethodHandle BIND_SLOT;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType step = STEP.insertParameterTypes(0, String.class);
+        MethodType slotStep = STEP.insertParameterTypes(0, BQLOptionSlot.class);
+        try {
+            DONE = lookup.findStatic(BQLTemplateRenderer.class, "done", STEP);
+            APPEND = lookup.findStatic(BQLTemplateRenderer.class, "append", step);
+            APPEND_LIST = lookup.findStatic(BQLTemplateRenderer.class, "appendList", step);
+            BIND = lookup.findStatic(BQLTemplateRenderer.class, "bind", step);
+            BIND_LIST = lookup.findStatic(BQLTemplateRenderer.class, "bindList", step);
+            APPEND_SLOT = lookup.findStatic(BQLTemplateRenderer.class, "appendSlot", slotStep);
+            BIND_SLOT = lookup.findStatic(BQLTemplateRenderer.class, "bindSlot", slotStep);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MethodHandle handle;
+
+    private final int staticLength;
+
+    private final int bindCount;
+
+    private BQLTemplateRenderer(MethodHandle handle, int staticLength, int bindCount) {
+        this.handle = handle;
+        this.staticLength = staticLength;
+        this.bindCount = bindCount;
+    }
+
+    static BQLTemplateRenderer compile(BQLTemplate template) {
+        String[] chunks = template.getChunks();
+        BQLOptionSlot[] placeholders = template.getPlaceholders();
+        BQLOptionSlot[] binds = template.getBinds();
+
+        List<MethodHandle> steps = new ArrayList<MethodHandle>();
+
+        StringBuilder text = new StringBuilder(chunks[0]);
+        int staticLength = 0;
+        for (int i = 0; i < placeholders.length; ++i) {
+            BQLOptionSlot placeholder = placeholders[i];
+            if (placeholder.getIndex() == BQLOptionSlot.ALL) {
+                staticLength += addAppend(steps, text);
+                steps.add(placeholder.getInListPadding() > 0
+                        ? MethodHandles.insertArguments(APPEND_SLOT, 0, placeholder)
+                        : MethodHandles.insertArguments(APPEND_LIST, 0, placeholder.getOption()));
+                text.setLength(0);
+            } else {
+                text.append('?');
+            }
+            text.append(chunks[i + 1]);
+        }
+        staticLength += addAppend(steps, text);
+
+        for (BQLOptionSlot bind : binds) {
+            if (bind.getInListPadding() > 0) {
+                // 补齐的List由slot计算补齐后的长度
+                steps.add(MethodHandles.insertArguments(BIND_SLOT, 0, bind));
+                continue;
+            }
+            MethodHandle step = bind.getIndex() == BQLOptionSlot.ALL ? BIND_LIST : BIND;
+            steps.add(MethodHandles.insertArguments(step, 0, bind.getOption()));
+        }
+
+        // foldArguments先调用combiner，所以从最后一步往前组合
+        MethodHandle handle = DONE;
+        for (int i = steps.size() - 1; i >= 0; --i) {
+            handle = MethodHandles.foldArguments(handle, steps.get(i));
+        }
+
+        return new BQLTemplateRenderer(handle, staticLength, binds.length);
+    }
+
+    private static int addAppend(List<MethodHandle> steps, StringBuilder text) {
+        if (text.length() > 0) {
+            steps.add(MethodHandles.insertArguments(APPEND, 0, text.toString()));
+        }
+        return text.length();
+    }
+
+    void render(Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+        try {
+            handle.invokeExact(options, sql, values);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // 组合的方法都不抛出受检异常
+            throw new IllegalStateException(e);
+        }
+    }
+
+    RenderedBQL render(Map<String, Object> options) {
+        StringBuilder sql = new StringBuilder(staticLength + 16);
+        List<BQLOption> values = new ArrayList<BQLOption>(bindCount);
+        render(options, sql, values);
+        return new RenderedBQL(sql.toString(), values);
+    }
+
+    private static void done(Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+    }
+
+    private static void append(String text, Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+        sql.append(text);
+    }
+
+    private static void appendList(String option, Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+        int size = ((List) options.get(option)).size();
+        for (int i = 0; i < size; ++i) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+    }
+
+    private static void bind(String option, Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+        values.add(new BQLOption(option, options.get(option)));
+    }
+
+    private static void bindList(String option, Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+        List list = (List) options.get(option);
+        for (int i = 0; i < list.size(); ++i) {
+            values.add(new BQLOption(option, list.get(i)));
+        }
+    }
+
+    private static void appendSlot(BQLOptionSlot slot, Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+        slot.appendPlaceholders(sql, options);
+    }
+
+    private static void bindSlot(BQLOptionSlot slot, Map<String, Object> options, StringBuilder sql, List<BQLOption> values) {
+        slot.bind(options, values);
+    }
+}
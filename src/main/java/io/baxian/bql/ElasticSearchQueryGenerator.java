@@ -2,7 +2,7 @@ package io.baxian.bql;
 
 import io.baxian.bql.framework.node.*;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -15,236 +15,174 @@ public class ElasticSearchQueryGenerator extends BQLGenerator {
 
     private StringBuilder query;
 
-    private Map<String, Integer> opPriorities = new HashMap<String, Integer>();
+    private String output;
 
     public ElasticSearchQueryGenerator() {
-        this(new HashMap<String, Object>());
+        this(null);
     }
 
     public ElasticSearchQueryGenerator(Map<String, Object> options) {
-        if (options != null) {
-            this.options = options;
-        }
-
-        opPriorities.put(ABitInvertValue.class.getName(), 1);
-
-        opPriorities.put(AMultiplyValue.class.getName(), 2);
-        opPriorities.put(AModuloValue.class.getName(), 2);
-        opPriorities.put(ADivideValue.class.getName(), 2);
-
-        opPriorities.put(AAddValue.class.getName(), 3);
-        opPriorities.put(ASubstractValue.class.getName(), 3);
-
-        opPriorities.put(ABitAndValue.class.getName(), 4);
-
-        opPriorities.put(ABitXorValue.class.getName(), 5);
-
-        opPriorities.put(ABitOrValue.class.getName(), 6);
+        this.options = options != null ? options : Collections.<String, Object>emptyMap();
+    }
 
-        opPriorities.put(ALeftShiftValue.class.getName(), 7);
-        opPriorities.put(ARightShiftValue.class.getName(), 7);
+    /**
+     * 换一组参数重新使用这个generator，上一次生成的内容会被覆盖。
+     */
+    @Override
+    public void reset(Map<String, Object> options) {
+        super.reset(options);
+        this.options = options != null ? options : Collections.<String, Object>emptyMap();
+        output = null;
     }
 
     @Override
     public void inStart(Start node) {
-        query = new StringBuilder();
+        release();
+        if (query == null) {
+            query = new StringBuilder();
+        } else {
+            query.setLength(0);
+        }
+        output = null;
     }
 
     @Override
     public void caseASelectStatement(ASelectStatement statement) {
 
-        PExpr condition = statement.getWhereCondition();
+        PExpr condition = resolveWhere(statement.getWhereCondition());
         if (condition != null) {
-            buildWhereClause(query, statement.getWhereCondition());
+            buildWhereClause(query, condition);
         }
 
     }
 
+    @Override
     public String output() {
-        return query.toString();
+        if (output == null) {
+            output = query.toString();
+        }
+        return output;
+    }
+
+    @Override
+    protected CharSequence content() {
+        return query;
     }
 
     private void buildWhereClause(StringBuilder sql, PExpr root) {
-        String condition = visitExpr(root);
-        sql.append(condition);
+        buildExpr(sql, root);
     }
 
-    private String visitExpr(PExpr expr) {
+    private void buildExpr(StringBuilder sql, PExpr expr) {
         if (expr instanceof AConditionExpr) {
             AConditionExpr condition = (AConditionExpr) expr;
 
-            StringBuilder result = new StringBuilder();
-
-            PExpr left = condition.getLeft();
+            PExpr left = resolve(condition.getLeft());
 
             boolean leftParenNeeded = conditionParenNeeded(condition, left);
             if (leftParenNeeded) {
-                result.append("(");
+                sql.append("(");
             }
-            result.append(visitExpr(left));
+            buildExpr(sql, left);
             if (leftParenNeeded) {
-                result.append(")");
+                sql.append(")");
             }
 
-            result.append(" ");
-            result.append(toOpString(condition.getOp()));
-            result.append(" ");
+            sql.append(" ");
+            sql.append(toOpString(condition.getOp()));
+            sql.append(" ");
 
-            PExpr right = condition.getRight();
+            PExpr right = resolve(condition.getRight());
 
             boolean rightParenNeed = conditionParenNeeded(condition, right);
             if (rightParenNeed) {
-                result.append("(");
+                sql.append("(");
             }
-            result.append(visitExpr(right));
+            buildExpr(sql, right);
             if (rightParenNeed) {
-                result.append(")");
+                sql.append(")");
             }
-
-            return result.toString();
         } else if (expr instanceof ANotExpr) {
             ANotExpr aNotExpr = (ANotExpr)expr;
+            PExpr child = resolve(aNotExpr.getExpr());
 
-            boolean parenNeeded = notParenNeeded(aNotExpr.getExpr());
+            boolean parenNeeded = notParenNeeded(child);
 
-            StringBuilder result = new StringBuilder();
-            result.append("NOT ");
+            sql.append("NOT ");
 
             if (parenNeeded) {
-                result.append("(");
+                sql.append("(");
             }
 
-            result.append(visitExpr(aNotExpr.getExpr()));
+            buildExpr(sql, child);
 
             if (parenNeeded) {
-                result.append(")");
+                sql.append(")");
             }
-
-            return result.toString();
-        } else {
-            return buildExprSQL(expr);
-        }
-    }
-
-    private String buildExprSQL(PExpr expr) {
-        if (expr instanceof ABinaryExpr) {
-            return buildBinaryExpr((ABinaryExpr)expr);
+        } else if (expr instanceof ABinaryExpr) {
+            ABinaryExpr binary = (ABinaryExpr) expr;
+            if (binary.getOp() instanceof ANotEqOp && isInNormalization()) {
+                // query string没有!=，写成NOT column:value；没有打开IN规范化时保持原来的输出
+                sql.append("NOT ");
+                buildValue(sql, binary.getLeft());
+            } else {
+                buildValue(sql, binary.getLeft());
+                sql.append(toOpString(binary.getOp()));
+            }
+            buildValue(sql, binary.getRight());
         } else if (expr instanceof ABetweenExpr) {
-            return buildBetweenExpr((ABetweenExpr) expr);
+            ABetweenExpr between = (ABetweenExpr) expr;
+            buildColumn(sql, (AColumnComponents) between.getColumnComponents());
+            sql.append("[");
+            buildValue(sql, between.getLeft());
+            sql.append(" TO ");
+            buildValue(sql, between.getRight());
+            sql.append("]");
         } else if (expr instanceof AInExpr) {
-            return buildInExpr((AInExpr) expr);
+            AInExpr in = (AInExpr) expr;
+            buildInExpr(sql, in.getColumnComponents(), in.getValue());
         } else if (expr instanceof ANotInExpr) {
-            return buildNotInExpr((ANotInExpr) expr);
-        } else if (expr instanceof ANotExpr) {
-            return buildNotExpr((ANotExpr) expr);
+            ANotInExpr notIn = (ANotInExpr) expr;
+            sql.append("NOT ");
+            buildInExpr(sql, notIn.getColumnComponents(), notIn.getValue());
         } else if (expr instanceof AIsExpr) {
-            return buildIsExpr((AIsExpr) expr);
+            AIsExpr is = (AIsExpr) expr;
+            buildColumn(sql, (AColumnComponents) is.getColumnComponents());
+            sql.append(" IS ");
+            buildValue(sql, is.getValue());
         } else if (expr instanceof AIsNotExpr) {
-            return buildIsNotExpr((AIsNotExpr)expr);
+            AIsNotExpr isNot = (AIsNotExpr) expr;
+            buildColumn(sql, (AColumnComponents) isNot.getColumnComponents());
+            sql.append(" IS NOT ");
+            buildValue(sql, isNot.getValue());
         } else {
-            return String.format("__UNSUPPORTED_EXPRESSION__(%s)", expr.toString());
+            sql.append("__UNSUPPORTED_EXPRESSION__(");
+            sql.append(expr);
+            sql.append(")");
         }
     }
 
-    private String buildIsNotExpr(AIsNotExpr expr) {
-        StringBuilder result = new StringBuilder();
-
-        result.append(toColumnString((AColumnComponents)expr.getColumnComponents()));
-        result.append(" IS NOT ");
-        result.append(toValueString(expr.getValue()));
-
-        return result.toString();
-    }
-
-    private String buildIsExpr(AIsExpr expr) {
-        StringBuilder result = new StringBuilder();
+    private void buildInExpr(StringBuilder sql, PColumnComponents comps, List<PValue> values) {
+        buildColumn(sql, (AColumnComponents) comps);
+        sql.append("(");
 
-        result.append(toColumnString((AColumnComponents)expr.getColumnComponents()));
-        result.append(" IS ");
-        result.append(toValueString(expr.getValue()));
-
-        return result.toString();
-    }
-
-    private String buildNotExpr(ANotExpr expr) {
-        return "NOT " + buildExprSQL(expr.getExpr());
-    }
-
-    private String buildBinaryExpr(ABinaryExpr expr) {
-        PValue left = expr.getLeft();
-        PValue right = expr.getRight();
-
-        StringBuilder result = new StringBuilder();
-        result.append(toValueString(left));
-        result.append(toOpString(expr.getOp()));
-        result.append(toValueString(right));
-
-        return result.toString();
-    }
-
-    private String buildBetweenExpr(ABetweenExpr expr) {
-        AColumnComponents components = (AColumnComponents) expr.getColumnComponents();
-
-        StringBuilder result = new StringBuilder();
-        result.append(toColumnString(components));
-        result.append("[");
-        result.append(toValueString(expr.getLeft()));
-        result.append(" TO ");
-        result.append(toValueString(expr.getRight()));
-        result.append("]");
-
-        return result.toString();
-    }
-
-    private String buildInExpr(AInExpr expr) {
-        StringBuilder result = new StringBuilder();
-
-        AColumnComponents comps = (AColumnComponents)expr.getColumnComponents();
-        result.append(toColumnString(comps));
-        result.append("(");
-
-        {
-            int i = 0;
-            for (PValue value : expr.getValue()) {
-                if (i > 0) {
-                    result.append(" OR ");
-                }
-
-                result.append(toValueString(value));
-
-                ++i;
+        int i = 0;
+        for (PValue value : values) {
+            value = resolve(value);
+            if (value == null) {
+                continue;
             }
-        }
-
-        result.append(")");
-
-        return result.toString();
-    }
-
-    private String buildNotInExpr(ANotInExpr expr) {
-        StringBuilder result = new StringBuilder();
 
-        result.append("NOT ");
-        AColumnComponents comps = (AColumnComponents)expr.getColumnComponents();
-        result.append(toColumnString(comps));
-        result.append("(");
-
-        {
-            int i = 0;
-            for (PValue value : expr.getValue()) {
-                if (i > 0) {
-                    result.append(" OR ");
-                }
+            if (i > 0) {
+                sql.append(" OR ");
+            }
 
-                result.append(toValueString(value));
+            buildValue(sql, value);
 
-                ++i;
-            }
+            ++i;
         }
 
-        result.append(")");
-
-        return result.toString();
+        sql.append(")");
     }
 
     private String toOpString(POp op) {
@@ -292,254 +230,134 @@ public class ElasticSearchQueryGenerator extends BQLGenerator {
         return condition.getOp() instanceof AOrOp;
     }
 
-    private String toColumnString(AColumnComponents columnComponents) {
-        StringBuilder result = new StringBuilder();
+    private void buildColumn(StringBuilder sql, AColumnComponents columnComponents) {
         TIdentifier schema = columnComponents.getSchema();
         if (schema != null) {
-            result.append(schema.getText());
-            result.append(".");
+            sql.append(schema.getText());
+            sql.append(".");
         }
 
         TIdentifier table = columnComponents.getTable();
         if (table != null) {
-            result.append(table.getText());
-            result.append(".");
+            sql.append(table.getText());
+            sql.append(".");
         }
 
-        TIdentifier column = columnComponents.getColumn();
-        result.append(column.getText());
-        result.append(":");
-
-        return result.toString();
+        sql.append(columnComponents.getColumn().getText());
+        sql.append(":");
     }
 
-    private String toValueStringWithParen(PValue parent, PValue value) {
-        StringBuilder result = new StringBuilder();
+    private void buildValueWithParen(StringBuilder sql, PValue parent, PValue value) {
+        value = resolve(value);
 
-        int parenNeeded = compareOperatorPriority(parent, value);
-        if (parenNeeded < 0) {
-            result.append("(");
+        boolean parenNeeded = comparePriority(parent, value) < 0;
+        if (parenNeeded) {
+            sql.append("(");
         }
 
-        result.append(toValueString(value));
+        buildValue(sql, value);
 
-        if (parenNeeded < 0) {
-            result.append(")");
+        if (parenNeeded) {
+            sql.append(")");
         }
-
-        return result.toString();
     }
 
-    private String toValueString(PValue value) {
-        return toValueString(value, true);
-    }
+    private void buildValue(StringBuilder sql, PValue value) {
+        value = resolve(value);
 
-    private String toValueString(PValue value, boolean quoteIdentifier) {
         if (value instanceof AOptionValue) {
-            return toOptionValueString(value);
+            buildOptionValue(sql, (AOptionValue) value);
         } else if (value instanceof AColumnValue) {
             AColumnValue column = (AColumnValue) value;
-            return toColumnString((AColumnComponents) column.getColumnComponents());
+            buildColumn(sql, (AColumnComponents) column.getColumnComponents());
         } else if (value instanceof AAddValue) {
-            return toAddValueString((AAddValue) value);
+            AAddValue add = (AAddValue) value;
+            buildOperatorValue(sql, add, add.getLeft(), " + ", add.getRight());
         } else if (value instanceof ASubstractValue) {
-            return toSubstractValueString((ASubstractValue) value);
+            ASubstractValue substract = (ASubstractValue) value;
+            buildOperatorValue(sql, substract, substract.getLeft(), " - ", substract.getRight());
         } else if (value instanceof AMultiplyValue) {
-            return toMultiplyValueString((AMultiplyValue) value);
+            AMultiplyValue multiply = (AMultiplyValue) value;
+            buildOperatorValue(sql, multiply, multiply.getLeft(), " * ", multiply.getRight());
         } else if (value instanceof ADivideValue) {
-            return toDivideValueString((ADivideValue) value);
+            ADivideValue divide = (ADivideValue) value;
+            buildOperatorValue(sql, divide, divide.getLeft(), " / ", divide.getRight());
         } else if (value instanceof ABitOrValue) {
-            return toBitOrValueString((ABitOrValue) value);
+            ABitOrValue bitOr = (ABitOrValue) value;
+            buildOperatorValue(sql, bitOr, bitOr.getLeft(), " | ", bitOr.getRight());
         } else if (value instanceof ABitAndValue) {
-            return toBitAndValueString((ABitAndValue) value);
+            ABitAndValue bitAnd = (ABitAndValue) value;
+            buildOperatorValue(sql, bitAnd, bitAnd.getLeft(), " & ", bitAnd.getRight());
         } else if (value instanceof ABitXorValue) {
-            return toBitXorValueString((ABitXorValue) value);
+            ABitXorValue bitXor = (ABitXorValue) value;
+            buildOperatorValue(sql, bitXor, bitXor.getLeft(), " ^ ", bitXor.getRight());
         } else if (value instanceof AModuloValue) {
-            return toModuloValueString((AModuloValue) value);
+            // 取模一直没有按优先级加括号，保持原来的输出
+            AModuloValue modulo = (AModuloValue) value;
+            buildValue(sql, modulo.getLeft());
+            sql.append(" % ");
+            buildValue(sql, modulo.getRight());
         } else if (value instanceof ALeftShiftValue) {
-            return toLeftShiftValueString((ALeftShiftValue) value);
+            ALeftShiftValue leftShift = (ALeftShiftValue) value;
+            buildOperatorValue(sql, leftShift, leftShift.getLeft(), " << ", leftShift.getRight());
         } else if (value instanceof ARightShiftValue) {
-            return toRightShiftValueString((ARightShiftValue) value);
+            ARightShiftValue rightShift = (ARightShiftValue) value;
+            buildOperatorValue(sql, rightShift, rightShift.getLeft(), " >> ", rightShift.getRight());
         } else if (value instanceof AIdentifierValue) {
-            return toIdentifierValueString(value, quoteIdentifier);
+            sql.append("`");
+            sql.append(((AIdentifierValue) value).getIdentifier().getText());
+            sql.append("`");
         } else if (value instanceof AStringValue) {
-            String v = value.toString().trim();
+            // 去掉字符串两边的引号
+            String v = ((AStringValue) value).getString().getText();
             if (!v.isEmpty()) {
-                v = v.substring(1, v.length() - 1);
+                sql.append(v, 1, v.length() - 1);
             }
-            return v;
-        } else if ((value instanceof AIntValue)
-                || (value instanceof AFloatValue)
-                || (value instanceof AScientificValue)
-                || (value instanceof AHexValue)
-                || (value instanceof AOctetValue)) {
-            return value.toString().trim();
+        } else if (value instanceof AIntValue) {
+            sql.append(((AIntValue) value).getInt().getText());
+        } else if (value instanceof AFloatValue) {
+            sql.append(((AFloatValue) value).getFloat().getText());
+        } else if (value instanceof AScientificValue) {
+            sql.append(((AScientificValue) value).getScientific().getText());
+        } else if (value instanceof AHexValue) {
+            sql.append(((AHexValue) value).getHex().getText());
+        } else if (value instanceof AOctetValue) {
+            sql.append(((AOctetValue) value).getOctet().getText());
         } else if (value instanceof ANullValue) {
-            return "NULL";
+            sql.append("NULL");
         } else {
-            return String.format("__UNSUPPORTED_VALUE__(%s)", value.toString());
+            sql.append("__UNSUPPORTED_VALUE__(");
+            sql.append(value);
+            sql.append(")");
         }
     }
 
-    private String toAddValueString(AAddValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" + ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toSubstractValueString(ASubstractValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" - ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toMultiplyValueString(AMultiplyValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" * ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toDivideValueString(ADivideValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" / ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toModuloValueString(AModuloValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueString(value.getLeft()));
-        result.append(" % ");
-        result.append(toValueString(value.getRight()));
-        return result.toString();
-    }
-
-    private String toBitOrValueString(ABitOrValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" | ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toBitAndValueString(ABitAndValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" & ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toBitXorValueString(ABitXorValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" ^ ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toLeftShiftValueString(ALeftShiftValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" << ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toRightShiftValueString(ARightShiftValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" >> ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
+    private void buildOperatorValue(StringBuilder sql, PValue value, PValue left, String op, PValue right) {
+        buildValueWithParen(sql, value, left);
+        sql.append(op);
+        buildValueWithParen(sql, value, right);
     }
 
-    private String toOptionValueString(PValue value) {
-        String option = ((AOptionValue) value).getIdentifier().getText();
-        Object optionValue = options.get(option);
+    private void buildOptionValue(StringBuilder sql, AOptionValue value) {
+        Object optionValue = getOptionValue(value, options);
         if (optionValue instanceof List) {
-            StringBuilder result = new StringBuilder();
             List list = (List)optionValue;
             for (int i = 0; i < list.size(); ++i) {
                 if (i > 0) {
-                    result.append(" OR ");
+                    sql.append(" OR ");
                 }
                 if (list.get(i) != null) {
-                    result.append(list.get(i).toString());
+                    sql.append(list.get(i));
                 } else {
-                    result.append("NULL");
+                    sql.append("NULL");
                 }
             }
-            return result.toString();
         } else {
             if (optionValue != null) {
-                return optionValue.toString();
+                sql.append(optionValue);
             } else {
-                return "NULL";
+                sql.append("NULL");
             }
         }
     }
-
-    private String toIdentifierValueString(PValue value, boolean quoteIdentifier) {
-        StringBuilder result = new StringBuilder();
-
-        boolean isIdentity = (value instanceof AIdentifierValue);
-        if (isIdentity && quoteIdentifier) {
-            result.append("`");
-        }
-
-        result.append(value.toString().trim());
-
-        if (isIdentity && quoteIdentifier) {
-            result.append("`");
-        }
-
-        return result.toString();
-    }
-
-    private int compareOperatorPriority(PValue parent, PValue child) {
-        if (parent == null) {
-            return 0;
-        }
-
-        if (child == null) {
-            return 0;
-        }
-
-        String parentClass = parent.getClass().getName();
-        String childClass = child.getClass().getName();
-
-        int parentPriority = opPriorities.getOrDefault(parentClass, 0);
-        int childPriority = opPriorities.getOrDefault(childClass, 0);
-
-        return parentPriority - childPriority;
-    }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
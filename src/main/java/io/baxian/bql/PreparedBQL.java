@@ -0,0 +1,141 @@
+package io.baxian.bql;
+
+import io.baxian.bql.framework.node.Start;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译好的BQL语句，不可变，可以放在静态变量里被任意线程共享。
+ *
+ * <pre>
+ * PreparedBQL p = BQL.prepare("select id from users where id = :id");
+ * RenderedBQL r = p.render(options, BQLDialect.MYSQL);
+ * </pre>
+ */
+public final class PreparedBQL {
+
+    private final BQLPlan plan;
+
+    private final BQLRenderCache renderCache;
+
+    private final BQLOptimizerConfig optimizerConfig;
+
+    public PreparedBQL(BQLPlan plan) {
+        this(plan, null);
+    }
+
+    /**
+     * @param renderCache 为null时每次render都重新优化和生成，IN列表按renderCache的设置补齐
+     */
+    public PreparedBQL(BQLPlan plan, BQLRenderCache renderCache) {
+        this.plan = plan;
+        this.renderCache = renderCache;
+        this.optimizerConfig = null;
+    }
+
+    /**
+     * 不使用渲染缓存，MySQL方言的IN列表按{@link BQLOptimizerConfig#setInListPadding(int)}补齐。
+     */
+    public PreparedBQL(BQLPlan plan, int inListPadding) {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setInListPadding(inListPadding);
+
+        this.plan = plan;
+        this.renderCache = null;
+        this.optimizerConfig = inListPadding > 0 ? config : null;
+    }
+
+    public RenderedBQL render(Map<String, Object> options) throws BQLException {
+        return render(options, BQLDialect.MYSQL);
+    }
+
+    public RenderedBQL render(Map<String, Object> options, BQLDialect dialect) throws BQLException {
+        if (options == null) {
+            options = Collections.emptyMap();
+        }
+
+        if (dialect == BQLDialect.MYSQL && renderCache != null) {
+            return renderCache.render(plan, options);
+        }
+
+        List<BQLOption> values = new ArrayList<BQLOption>();
+        BQLGenerator generator = generate(options, dialect, values);
+        return new RenderedBQL(generator.output(), values);
+    }
+
+    /**
+     * 把语句直接写到out，比如连接池的缓冲区或者HTTP请求体，绑定值追加到values。
+     */
+    public void render(Map<String, Object> options, BQLDialect dialect, Appendable out, List<BQLOption> values)
+            throws BQLException, IOException {
+        if (options == null) {
+            options = Collections.emptyMap();
+        }
+
+        if (dialect == BQLDialect.MYSQL && renderCache != null) {
+            if (out instanceof StringBuilder) {
+                renderCache.render(plan, options, (StringBuilder) out, values);
+            } else {
+                RenderedBQL rendered = renderCache.render(plan, options);
+                out.append(rendered.getOutput());
+                values.addAll(rendered.getOptions());
+            }
+            return;
+        }
+
+        generate(options, dialect, values).render(out);
+    }
+
+    /**
+     * 按MySQL方言把语句追加到sql，绑定值追加到values，调用方可以复用两者。
+     */
+    public void render(Map<String, Object> options, StringBuilder sql, List<BQLOption> values) throws BQLException {
+        if (renderCache != null) {
+            renderCache.render(plan, options, sql, values);
+            return;
+        }
+
+        if (options == null) {
+            options = Collections.emptyMap();
+        }
+
+        BQLGenerator generator = generate(options, BQLDialect.MYSQL, values);
+        sql.append(generator.content());
+    }
+
+    private BQLGenerator generate(Map<String, Object> options, BQLDialect dialect, List<BQLOption> values)
+            throws BQLException {
+        Start ast = plan.getAst();
+
+        // ElasticSearch的查询里直接写参数值，补齐没有意义
+        BQLOptimizer optimizer = new BQLOptimizer(options, dialect == BQLDialect.MYSQL ? optimizerConfig : null);
+        ast.apply(optimizer);
+        BQLException error = optimizer.getError();
+        if (error != null) {
+            throw error;
+        }
+
+        BQLGenerator generator = dialect.newGenerator(options);
+        generator.setRewrites(optimizer.getRewrites());
+        ast.apply(generator);
+
+        values.addAll(optimizer.getOptimizedOptions());
+        return generator;
+    }
+
+    public String getBql() {
+        return plan.getBql();
+    }
+
+    public BQLMetadata getMetadata() {
+        return plan.getMetadata();
+    }
+
+    public BQLPlan getPlan() {
+        return plan;
+    }
+}
@@ -0,0 +1,32 @@
+package io.baxian.bql;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次渲染的结果：生成的语句和按占位符顺序排列的绑定值。
+ */
+public final class RenderedBQL {
+
+    private final String output;
+
+    private final List<BQLOption> options;
+
+    public RenderedBQL(String output, List<BQLOption> options) {
+        this.output = output;
+        this.options = Collections.unmodifiableList(options);
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public List<BQLOption> getOptions() {
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return output;
+    }
+}
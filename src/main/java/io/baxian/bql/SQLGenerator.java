@@ -2,7 +2,7 @@ package io.baxian.bql;
 
 import io.baxian.bql.framework.node.*;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -15,39 +15,45 @@ public class SQLGenerator extends BQLGenerator {
 
     private StringBuilder sql;
 
-    private Map<String, Integer> opPriorities = new HashMap<String, Integer>();
+    private String output;
+
+    private BQLTemplate.Builder template;
 
     public SQLGenerator() {
-        this(new HashMap<String, Object>());
+        this(null);
     }
 
     public SQLGenerator(Map<String, Object> options) {
-        if (options != null) {
-            this.options = options;
-        }
-
-        opPriorities.put(ABitInvertValue.class.getName(), 1);
-
-        opPriorities.put(AMultiplyValue.class.getName(), 2);
-        opPriorities.put(AModuloValue.class.getName(), 2);
-        opPriorities.put(ADivideValue.class.getName(), 2);
-
-        opPriorities.put(AAddValue.class.getName(), 3);
-        opPriorities.put(ASubstractValue.class.getName(), 3);
-
-        opPriorities.put(ABitAndValue.class.getName(), 4);
-
-        opPriorities.put(ABitXorValue.class.getName(), 5);
+        this.options = options != null ? options : Collections.<String, Object>emptyMap();
+    }
 
-        opPriorities.put(ABitOrValue.class.getName(), 6);
+    /**
+     * 生成的同时记录模板，参数占位符之间的内容作为静态片段。
+     */
+    void setTemplateBuilder(BQLTemplate.Builder template) {
+        this.template = template;
+    }
 
-        opPriorities.put(ALeftShiftValue.class.getName(), 7);
-        opPriorities.put(ARightShiftValue.class.getName(), 7);
+    /**
+     * 换一组参数重新使用这个generator，上一次生成的内容会被覆盖。
+     */
+    @Override
+    public void reset(Map<String, Object> options) {
+        super.reset(options);
+        this.options = options != null ? options : Collections.<String, Object>emptyMap();
+        template = null;
+        output = null;
     }
 
     @Override
     public void inStart(Start node) {
-        sql = new StringBuilder();
+        release();
+        if (sql == null) {
+            sql = new StringBuilder();
+        } else {
+            sql.setLength(0);
+        }
+        output = null;
     }
 
     @Override
@@ -58,13 +64,19 @@ public class SQLGenerator extends BQLGenerator {
 
         sql.append(" FROM ");
 
-        buildTable(sql, statement.getTable());
+        List<PValue> partitions = statement.getPartitions();
+        buildTable(sql, statement.getTable(), partitions.isEmpty() ? getPrunedPartitions() : null);
+
+        buildPartitions(sql, partitions);
 
-        buildPartitions(sql, statement.getPartitions());
+        BQLIndexHint indexHint = getIndexHint();
+        if (indexHint != null) {
+            sql.append(" ").append(indexHint.getType()).append(" INDEX (`").append(indexHint.getIndex()).append("`)");
+        }
 
-        PExpr condition = statement.getWhereCondition();
+        PExpr condition = resolveWhere(statement.getWhereCondition());
         if (condition != null) {
-            buildWhereClause(sql, statement.getWhereCondition());
+            buildWhereClause(sql, condition);
         }
 
         List<PColumnComponents> groupByColumns = statement.getGroupByColumns();
@@ -77,7 +89,7 @@ public class SQLGenerator extends BQLGenerator {
             buildOrderByItems(sql, orderByItems);
         }
 
-        PLimit limit = statement.getLimit();
+        PLimit limit = resolve(statement.getLimit());
         if (limit != null) {
             buildLimit(sql, limit);
         }
@@ -89,12 +101,12 @@ public class SQLGenerator extends BQLGenerator {
 
         buildTable(sql, statement.getTable());
 
-        PExpr condition = statement.getWhereCondition();
+        PExpr condition = resolve(statement.getWhereCondition());
         if (condition != null) {
-            buildWhereClause(sql, statement.getWhereCondition());
+            buildWhereClause(sql, condition);
         }
 
-        PLimit limit = statement.getLimit();
+        PLimit limit = resolve(statement.getLimit());
         if (limit != null) {
             buildLimit(sql, limit);
         }
@@ -110,12 +122,12 @@ public class SQLGenerator extends BQLGenerator {
 
         buildUpdateColumns(sql, statement.getColumns());
 
-        PExpr condition = statement.getWhereCondition();
+        PExpr condition = resolve(statement.getWhereCondition());
         if (condition != null) {
-            buildWhereClause(sql, statement.getWhereCondition());
+            buildWhereClause(sql, condition);
         }
 
-        PLimit limit = statement.getLimit();
+        PLimit limit = resolve(statement.getLimit());
         if (limit != null) {
             buildLimit(sql, limit);
         }
@@ -139,7 +151,15 @@ public class SQLGenerator extends BQLGenerator {
     }
 
     private void buildInsertUpdateClause(StringBuilder sql, List<PUpdateColumn> columns) {
-        if (!columns.isEmpty()) {
+        boolean empty = true;
+        for (PUpdateColumn c : columns) {
+            if (resolve(c) != null) {
+                empty = false;
+                break;
+            }
+        }
+
+        if (!empty) {
             sql.append(" ON DUPLICATE KEY UPDATE ");
 
             buildInsertUpdateColumns(sql, columns);
@@ -150,24 +170,28 @@ public class SQLGenerator extends BQLGenerator {
         boolean hasComma = false;
 
         for (PUpdateColumn c : columns) {
+            if (resolve(c) == null) {
+                continue;
+            }
+
             if (hasComma) {
                 sql.append(", ");
             }
 
             AUpdateColumn aColumn = (AUpdateColumn)c;
 
-            PValue value = aColumn.getValue();
+            PValue value = resolve(aColumn.getValue());
             if (value instanceof AOptionValue) {
                 AColumnComponents comps = (AColumnComponents) aColumn.getComponents();
-                sql.append(toColumnString(comps));
+                buildColumn(sql, comps);
                 sql.append(" = ");
-                sql.append(toOptionValueString(value));
+                buildOptionValue(sql, (AOptionValue) value);
                 hasComma = true;
             } else {
                 AColumnComponents comps = (AColumnComponents) aColumn.getComponents();
-                sql.append(toColumnString(comps));
+                buildColumn(sql, comps);
                 sql.append(" = ");
-                sql.append(toValueString(value));
+                buildValue(sql, value);
                 hasComma = true;
             }
         }
@@ -190,9 +214,9 @@ public class SQLGenerator extends BQLGenerator {
 
                 PValue value = valueList.get(j);
                 if (value instanceof AOptionValue) {
-                    sql.append(toValueString(value));
+                    buildValue(sql, value);
                 } else {
-                    sql.append(toValueString(value));
+                    buildValue(sql, value);
                 }
             }
 
@@ -221,6 +245,10 @@ public class SQLGenerator extends BQLGenerator {
         boolean hasComma = false;
 
         for (PUpdateColumn c : columns) {
+            if (resolve(c) == null) {
+                continue;
+            }
+
             if (hasComma) {
                 sql.append(", ");
             }
@@ -228,9 +256,9 @@ public class SQLGenerator extends BQLGenerator {
             AUpdateColumn aColumn = (AUpdateColumn)c;
 
             AColumnComponents comps = (AColumnComponents) aColumn.getComponents();
-            sql.append(toColumnString(comps));
+            buildColumn(sql, comps);
             sql.append(" = ");
-            sql.append(toValueString(aColumn.getValue()));
+            buildValue(sql, aColumn.getValue());
 
             hasComma = true;
         }
@@ -250,7 +278,7 @@ public class SQLGenerator extends BQLGenerator {
                 }
 
                 AColumnComponents comps = (AColumnComponents) aColumn.getComponents().get(0);
-                sql.append(toColumnString(comps));
+                buildColumn(sql, comps);
             } else {
                 sql.append(function.getText());
                 sql.append("(");
@@ -262,7 +290,7 @@ public class SQLGenerator extends BQLGenerator {
                         sql.append(", ");
                     }
                     AColumnComponents aComp = (AColumnComponents)comp;
-                    sql.append(toColumnString(aComp));
+                    buildColumn(sql, aComp);
 
                     hasComma = true;
                 }
@@ -280,6 +308,13 @@ public class SQLGenerator extends BQLGenerator {
     }
 
     private void buildTable(StringBuilder sql, PTable t) {
+        buildTable(sql, t, null);
+    }
+
+    /**
+     * @param prunedPartitions 优化器算出的分区，按MySQL的语法写在表名和别名之间，可以为null
+     */
+    private void buildTable(StringBuilder sql, PTable t, List<String> prunedPartitions) {
         ATable aTable = (ATable)t;
         ATableComponents comps = (ATableComponents) aTable.getComponents();
 
@@ -295,6 +330,14 @@ public class SQLGenerator extends BQLGenerator {
         sql.append(table.getText());
         sql.append("`");
 
+        if (prunedPartitions != null && !prunedPartitions.isEmpty()) {
+            sql.append(" PARTITION (");
+            for (int i = 0; i < prunedPartitions.size(); ++i) {
+                sql.append(i > 0 ? ", `" : "`").append(prunedPartitions.get(i)).append("`");
+            }
+            sql.append(")");
+        }
+
         TIdentifier alias = aTable.getAlias();
         if (alias != null) {
             sql.append(" AS `");
@@ -304,209 +347,142 @@ public class SQLGenerator extends BQLGenerator {
     }
 
     private void buildPartitions(StringBuilder sql, List<PValue> partitions) {
-        if (!partitions.isEmpty()) {
-            sql.append(" PARTITION (");
-
-            int i = 0;
-            for (PValue partition : partitions) {
-                if (i > 0) {
-                    sql.append(", ");
-                }
+        int i = 0;
+        for (PValue partition : partitions) {
+            partition = resolve(partition);
+            if (partition == null) {
+                continue;
+            }
 
-                sql.append(toValueString(partition, false));
+            sql.append(i > 0 ? ", " : " PARTITION (");
+            buildValue(sql, partition, false);
 
-                ++i;
-            }
+            ++i;
+        }
 
+        if (i > 0) {
             sql.append(")");
         }
     }
 
     private void buildWhereClause(StringBuilder sql, PExpr root) {
-        String condition = visitExpr(root);
-
         sql.append(" WHERE ");
-        sql.append(condition);
+
+        buildExpr(sql, root);
     }
 
-    private String visitExpr(PExpr expr) {
+    private void buildExpr(StringBuilder sql, PExpr expr) {
         if (expr instanceof AConditionExpr) {
             AConditionExpr condition = (AConditionExpr) expr;
 
-            StringBuilder result = new StringBuilder();
-
-            PExpr left = condition.getLeft();
+            PExpr left = resolve(condition.getLeft());
 
             boolean leftParenNeeded = conditionParenNeeded(condition, left);
             if (leftParenNeeded) {
-                result.append("(");
+                sql.append("(");
             }
-            result.append(visitExpr(left));
+            buildExpr(sql, left);
             if (leftParenNeeded) {
-                result.append(")");
+                sql.append(")");
             }
 
-            result.append(" ");
-            result.append(toOpString(condition.getOp()));
-            result.append(" ");
+            sql.append(" ");
+            sql.append(toOpString(condition.getOp()));
+            sql.append(" ");
 
-            PExpr right = condition.getRight();
+            PExpr right = resolve(condition.getRight());
 
             boolean rightParenNeed = conditionParenNeeded(condition, right);
             if (rightParenNeed) {
-                result.append("(");
+                sql.append("(");
             }
-            result.append(visitExpr(right));
+            buildExpr(sql, right);
             if (rightParenNeed) {
-                result.append(")");
+                sql.append(")");
             }
-
-            return result.toString();
         } else if (expr instanceof ANotExpr) {
             ANotExpr aNotExpr = (ANotExpr)expr;
+            PExpr child = resolve(aNotExpr.getExpr());
 
-            boolean parenNeeded = notParenNeeded(aNotExpr.getExpr());
+            boolean parenNeeded = notParenNeeded(child);
 
-            StringBuilder result = new StringBuilder();
-            result.append("NOT ");
+            sql.append("NOT ");
 
             if (parenNeeded) {
-                result.append("(");
+                sql.append("(");
             }
 
-            result.append(visitExpr(aNotExpr.getExpr()));
+            buildExpr(sql, child);
 
             if (parenNeeded) {
-                result.append(")");
+                sql.append(")");
             }
-
-            return result.toString();
-        } else {
-            return buildExprSQL(expr);
-        }
-    }
-
-    private String buildExprSQL(PExpr expr) {
-        if (expr instanceof ABinaryExpr) {
-            return buildBinaryExpr((ABinaryExpr)expr);
+        } else if (expr instanceof ABinaryExpr) {
+            buildBinaryExpr(sql, (ABinaryExpr) expr);
         } else if (expr instanceof ABetweenExpr) {
-            return buildBetweenExpr((ABetweenExpr) expr);
+            buildBetweenExpr(sql, (ABetweenExpr) expr);
         } else if (expr instanceof AInExpr) {
-            return buildInExpr((AInExpr) expr);
+            AInExpr in = (AInExpr) expr;
+            buildInExpr(sql, in.getColumnComponents(), " IN (", in.getValue());
         } else if (expr instanceof ANotInExpr) {
-            return buildNotInExpr((ANotInExpr) expr);
-        } else if (expr instanceof ANotExpr) {
-            return buildNotExpr((ANotExpr) expr);
+            ANotInExpr notIn = (ANotInExpr) expr;
+            buildInExpr(sql, notIn.getColumnComponents(), " NOT IN (", notIn.getValue());
         } else if (expr instanceof AIsExpr) {
-            return buildIsExpr((AIsExpr) expr);
+            AIsExpr is = (AIsExpr) expr;
+            buildColumn(sql, (AColumnComponents) is.getColumnComponents());
+            sql.append(" IS ");
+            buildValue(sql, is.getValue());
         } else if (expr instanceof AIsNotExpr) {
-            return buildIsNotExpr((AIsNotExpr)expr);
+            AIsNotExpr isNot = (AIsNotExpr) expr;
+            buildColumn(sql, (AColumnComponents) isNot.getColumnComponents());
+            sql.append(" IS NOT ");
+            buildValue(sql, isNot.getValue());
         } else {
-            return String.format("__UNSUPPORTED_EXPRESSION__(%s)", expr.toString());
+            sql.append("__UNSUPPORTED_EXPRESSION__(");
+            sql.append(expr);
+            sql.append(")");
         }
     }
 
-    private String buildIsNotExpr(AIsNotExpr expr) {
-        StringBuilder result = new StringBuilder();
-
-        result.append(toColumnString((AColumnComponents)expr.getColumnComponents()));
-        result.append(" IS NOT ");
-        result.append(toValueString(expr.getValue()));
-
-        return result.toString();
-    }
-
-    private String buildIsExpr(AIsExpr expr) {
-        StringBuilder result = new StringBuilder();
-
-        result.append(toColumnString((AColumnComponents)expr.getColumnComponents()));
-        result.append(" IS ");
-        result.append(toValueString(expr.getValue()));
-
-        return result.toString();
-    }
-
-    private String buildNotExpr(ANotExpr expr) {
-        return "NOT " + buildExprSQL(expr.getExpr());
-    }
-
-    private String buildBinaryExpr(ABinaryExpr expr) {
-        PValue left = expr.getLeft();
-        PValue right = expr.getRight();
-
-        StringBuilder result = new StringBuilder();
-        result.append(toValueString(left));
+    private void buildBinaryExpr(StringBuilder sql, ABinaryExpr expr) {
+        buildValue(sql, expr.getLeft());
 
-        result.append(" ");
-        result.append(toOpString(expr.getOp()));
-        result.append(" ");
+        sql.append(" ");
+        sql.append(toOpString(expr.getOp()));
+        sql.append(" ");
 
-        result.append(toValueString(right));
-
-        return result.toString();
+        buildValue(sql, expr.getRight());
     }
 
-    private String buildBetweenExpr(ABetweenExpr expr) {
-        AColumnComponents components = (AColumnComponents) expr.getColumnComponents();
-
-        StringBuilder result = new StringBuilder();
-        result.append(toColumnString(components));
-        result.append(" BETWEEN ");
-        result.append(toValueString(expr.getLeft()));
-        result.append(" AND ");
-        result.append(toValueString(expr.getRight()));
-
-        return result.toString();
+    private void buildBetweenExpr(StringBuilder sql, ABetweenExpr expr) {
+        buildColumn(sql, (AColumnComponents) expr.getColumnComponents());
+        sql.append(" BETWEEN ");
+        buildValue(sql, expr.getLeft());
+        sql.append(" AND ");
+        buildValue(sql, expr.getRight());
     }
 
-    private String buildInExpr(AInExpr expr) {
-        StringBuilder result = new StringBuilder();
+    private void buildInExpr(StringBuilder sql, PColumnComponents comps, String op, List<PValue> values) {
+        buildColumn(sql, (AColumnComponents) comps);
+        sql.append(op);
 
-        AColumnComponents comps = (AColumnComponents)expr.getColumnComponents();
-        result.append(toColumnString(comps));
-        result.append(" IN (");
-
-        {
-            int i = 0;
-            for (PValue value : expr.getValue()) {
-                if (i > 0) {
-                    result.append(", ");
-                }
-
-                result.append(toValueString(value));
-
-                ++i;
+        int i = 0;
+        for (PValue value : values) {
+            value = resolve(value);
+            if (value == null) {
+                continue;
             }
-        }
-
-        result.append(")");
-
-        return result.toString();
-    }
-
-    private String buildNotInExpr(ANotInExpr expr) {
-        StringBuilder result = new StringBuilder();
-
-        AColumnComponents comps = (AColumnComponents)expr.getColumnComponents();
-        result.append(toColumnString(comps));
-        result.append(" NOT IN (");
 
-        {
-            int i = 0;
-            for (PValue value : expr.getValue()) {
-                if (i > 0) {
-                    result.append(", ");
-                }
+            if (i > 0) {
+                sql.append(", ");
+            }
 
-                result.append(toValueString(value));
+            buildValue(sql, value);
 
-                ++i;
-            }
+            ++i;
         }
 
-        result.append(")");
-
-        return result.toString();
+        sql.append(")");
     }
 
     private String toOpString(POp op) {
@@ -564,7 +540,7 @@ public class SQLGenerator extends BQLGenerator {
             }
 
             AColumnComponents comps = (AColumnComponents)c;
-            sql.append(toColumnString(comps));
+            buildColumn(sql, comps);
 
             ++i;
         }
@@ -580,7 +556,7 @@ public class SQLGenerator extends BQLGenerator {
             }
 
             AOrderByItem orderByItem = (AOrderByItem)item;
-            sql.append(toColumnString((AColumnComponents)orderByItem.getColumn()));
+            buildColumn(sql, (AColumnComponents)orderByItem.getColumn());
             sql.append(" ");
 
             POrder order = orderByItem.getOrder();
@@ -602,272 +578,169 @@ public class SQLGenerator extends BQLGenerator {
 
         if (offset != null && count != null) {
             sql.append(" LIMIT ");
-            sql.append(toValueString(offset));
+            buildValue(sql, offset);
             sql.append(", ");
-            sql.append(toValueString(count));
+            buildValue(sql, count);
         } else if (count != null) {
             sql.append(" LIMIT ");
-            sql.append(toValueString(count));
+            buildValue(sql, count);
         }
     }
 
-    private String toColumnString(AColumnComponents columnComponents) {
-        StringBuilder result = new StringBuilder();
+    private void buildColumn(StringBuilder sql, AColumnComponents columnComponents) {
         TIdentifier schema = columnComponents.getSchema();
         if (schema != null) {
-            result.append("`");
-            result.append(schema.getText());
-            result.append("`");
-            result.append(".");
+            sql.append("`");
+            sql.append(schema.getText());
+            sql.append("`.");
         }
 
         TIdentifier table = columnComponents.getTable();
         if (table != null) {
-            result.append("`");
-            result.append(table.getText());
-            result.append("`");
-            result.append(".");
+            sql.append("`");
+            sql.append(table.getText());
+            sql.append("`.");
         }
 
-        TIdentifier column = columnComponents.getColumn();
-        result.append("`");
-        result.append(column.getText());
-        result.append("`");
-
-        return result.toString();
+        sql.append("`");
+        sql.append(columnComponents.getColumn().getText());
+        sql.append("`");
     }
 
-    private String toValueStringWithParen(PValue parent, PValue value) {
-        StringBuilder result = new StringBuilder();
+    private void buildValueWithParen(StringBuilder sql, PValue parent, PValue value) {
+        value = resolve(value);
 
-        int parenNeeded = compareOperatorPriority(parent, value);
-        if (parenNeeded < 0) {
-            result.append("(");
+        boolean parenNeeded = comparePriority(parent, value) < 0;
+        if (parenNeeded) {
+            sql.append("(");
         }
 
-        result.append(toValueString(value));
+        buildValue(sql, value);
 
-        if (parenNeeded < 0) {
-            result.append(")");
+        if (parenNeeded) {
+            sql.append(")");
         }
-
-        return result.toString();
     }
 
-    private String toValueString(PValue value) {
-        return toValueString(value, true);
+    private void buildValue(StringBuilder sql, PValue value) {
+        buildValue(sql, value, true);
     }
 
-    private String toValueString(PValue value, boolean quoteIdentifier) {
+    private void buildValue(StringBuilder sql, PValue value, boolean quoteIdentifier) {
+        value = resolve(value);
+
         if (value instanceof AOptionValue) {
-            return toOptionValueString(value);
+            buildOptionValue(sql, (AOptionValue) value);
         } else if (value instanceof AColumnValue) {
             AColumnValue column = (AColumnValue) value;
-            return toColumnString((AColumnComponents) column.getColumnComponents());
+            buildColumn(sql, (AColumnComponents) column.getColumnComponents());
         } else if (value instanceof AAddValue) {
-            return toAddValueString((AAddValue) value);
+            AAddValue add = (AAddValue) value;
+            buildOperatorValue(sql, add, add.getLeft(), " + ", add.getRight());
         } else if (value instanceof ASubstractValue) {
-            return toSubstractValueString((ASubstractValue) value);
+            ASubstractValue substract = (ASubstractValue) value;
+            buildOperatorValue(sql, substract, substract.getLeft(), " - ", substract.getRight());
         } else if (value instanceof AMultiplyValue) {
-            return toMultiplyValueString((AMultiplyValue) value);
+            AMultiplyValue multiply = (AMultiplyValue) value;
+            buildOperatorValue(sql, multiply, multiply.getLeft(), " * ", multiply.getRight());
         } else if (value instanceof ADivideValue) {
-            return toDivideValueString((ADivideValue) value);
+            ADivideValue divide = (ADivideValue) value;
+            buildOperatorValue(sql, divide, divide.getLeft(), " / ", divide.getRight());
         } else if (value instanceof ABitOrValue) {
-            return toBitOrValueString((ABitOrValue) value);
+            ABitOrValue bitOr = (ABitOrValue) value;
+            buildOperatorValue(sql, bitOr, bitOr.getLeft(), " | ", bitOr.getRight());
         } else if (value instanceof ABitAndValue) {
-            return toBitAndValueString((ABitAndValue) value);
+            ABitAndValue bitAnd = (ABitAndValue) value;
+            buildOperatorValue(sql, bitAnd, bitAnd.getLeft(), " & ", bitAnd.getRight());
         } else if (value instanceof ABitXorValue) {
-            return toBitXorValueString((ABitXorValue) value);
+            ABitXorValue bitXor = (ABitXorValue) value;
+            buildOperatorValue(sql, bitXor, bitXor.getLeft(), " ^ ", bitXor.getRight());
         } else if (value instanceof AModuloValue) {
-            return toModuloValueString((AModuloValue) value);
+            // 取模一直没有按优先级加括号，保持原来的输出
+            AModuloValue modulo = (AModuloValue) value;
+            buildValue(sql, modulo.getLeft());
+            sql.append(" % ");
+            buildValue(sql, modulo.getRight());
         } else if (value instanceof ALeftShiftValue) {
-            return toLeftShiftValueString((ALeftShiftValue) value);
+            ALeftShiftValue leftShift = (ALeftShiftValue) value;
+            buildOperatorValue(sql, leftShift, leftShift.getLeft(), " << ", leftShift.getRight());
         } else if (value instanceof ARightShiftValue) {
-            return toRightShiftValueString((ARightShiftValue) value);
+            ARightShiftValue rightShift = (ARightShiftValue) value;
+            buildOperatorValue(sql, rightShift, rightShift.getLeft(), " >> ", rightShift.getRight());
         } else if (value instanceof AIdentifierValue) {
-            return toIdentifierValueString(value, quoteIdentifier);
-        } else if ((value instanceof AIntValue)
-                || (value instanceof AFloatValue)
-                || (value instanceof AScientificValue)
-                || (value instanceof AStringValue)
-                || (value instanceof AHexValue)
-                || (value instanceof AOctetValue)) {
-            return value.toString().trim();
+            if (quoteIdentifier) {
+                sql.append("`");
+            }
+            sql.append(((AIdentifierValue) value).getIdentifier().getText());
+            if (quoteIdentifier) {
+                sql.append("`");
+            }
+        } else if (value instanceof AIntValue) {
+            sql.append(((AIntValue) value).getInt().getText());
+        } else if (value instanceof AFloatValue) {
+            sql.append(((AFloatValue) value).getFloat().getText());
+        } else if (value instanceof AScientificValue) {
+            sql.append(((AScientificValue) value).getScientific().getText());
+        } else if (value instanceof AStringValue) {
+            sql.append(((AStringValue) value).getString().getText());
+        } else if (value instanceof AHexValue) {
+            sql.append(((AHexValue) value).getHex().getText());
+        } else if (value instanceof AOctetValue) {
+            sql.append(((AOctetValue) value).getOctet().getText());
         } else if (value instanceof ANullValue) {
-            return "NULL";
+            sql.append("NULL");
         } else {
-            return String.format("__UNSUPPORTED_VALUE__(%s)", value.toString());
+            sql.append("__UNSUPPORTED_VALUE__(");
+            sql.append(value);
+            sql.append(")");
         }
     }
 
-    private String toAddValueString(AAddValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" + ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toSubstractValueString(ASubstractValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" - ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toMultiplyValueString(AMultiplyValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" * ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toDivideValueString(ADivideValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" / ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toModuloValueString(AModuloValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueString(value.getLeft()));
-        result.append(" % ");
-        result.append(toValueString(value.getRight()));
-        return result.toString();
-    }
-
-    private String toBitOrValueString(ABitOrValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" | ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toBitAndValueString(ABitAndValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" & ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toBitXorValueString(ABitXorValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" ^ ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
-
-    private String toLeftShiftValueString(ALeftShiftValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" << ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
+    private void buildOperatorValue(StringBuilder sql, PValue value, PValue left, String op, PValue right) {
+        buildValueWithParen(sql, value, left);
+        sql.append(op);
+        buildValueWithParen(sql, value, right);
     }
 
-    private String toRightShiftValueString(ARightShiftValue value) {
-        StringBuilder result = new StringBuilder();
-        result.append(toValueStringWithParen(value, value.getLeft()));
-        result.append(" >> ");
-        result.append(toValueStringWithParen(value, value.getRight()));
-        return result.toString();
-    }
+    private void buildOptionValue(StringBuilder sql, AOptionValue value) {
+        String option = value.getIdentifier().getText();
+        Object optionValue = getOptionValue(value, options);
+        if (template != null && optionValue != null) {
+            template.placeholder(sql, option, optionValue, options);
+            return;
+        }
 
-    private String toOptionValueString(PValue value) {
-        String option = ((AOptionValue) value).getIdentifier().getText();
-        Object optionValue = options.get(option);
         if (optionValue instanceof List) {
-            StringBuilder result = new StringBuilder();
             List list = (List)optionValue;
             for (int i = 0; i < list.size(); ++i) {
                 if (i > 0) {
-                    result.append(", ");
+                    sql.append(", ");
                 }
                 if (list.get(i) != null) {
-                    result.append("?");
+                    sql.append("?");
                 } else {
-                    result.append("NULL");
+                    sql.append("NULL");
                 }
             }
-            return result.toString();
         } else {
             if (optionValue != null) {
-                return "?";
+                sql.append("?");
             } else {
-                return "NULL";
+                sql.append("NULL");
             }
         }
     }
 
-    private String getOptionName(AOptionValue value) {
-        return value.getIdentifier().getText();
-    }
-
-    private String toIdentifierValueString(PValue value, boolean quoteIdentifier) {
-        StringBuilder result = new StringBuilder();
-
-        boolean isIdentity = (value instanceof AIdentifierValue);
-        if (isIdentity && quoteIdentifier) {
-            result.append("`");
-        }
-
-        result.append(value.toString().trim());
-
-        if (isIdentity && quoteIdentifier) {
-            result.append("`");
-        }
-
-        return result.toString();
-    }
-
-    private int compareOperatorPriority(PValue parent, PValue child) {
-        if (parent == null) {
-            return 0;
-        }
-
-        if (child == null) {
-            return 0;
+    @Override
+    public String output() {
+        if (output == null) {
+            output = sql.toString();
         }
-
-        String parentClass = parent.getClass().getName();
-        String childClass = child.getClass().getName();
-
-        int parentPriority = opPriorities.getOrDefault(parentClass, 0);
-        int childPriority = opPriorities.getOrDefault(childClass, 0);
-
-        return parentPriority - childPriority;
+        return output;
     }
 
     @Override
-    public String output() {
-        return sql.toString();
+    protected CharSequence content() {
+        return sql;
     }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
@@ -2,6 +2,7 @@ package io.baxian.bql.elasticsearch;
 
 import io.baxian.bql.BQLCompiler;
 import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOptimizerConfig;
 import io.baxian.bql.ElasticSearchQueryGenerator;
 import org.junit.Test;
 
@@ -400,6 +401,47 @@ public class SelectTest {
 
         assertEquals("LPN:1 AND quantity:>0", sql);
     }
+
+    @Test
+    public void inNormalization() throws BQLException {
+        List<Integer> ids = new ArrayList<Integer>();
+        ids.add(3);
+        ids.add(1);
+        ids.add(3);
+
+        List<Integer> single = new ArrayList<Integer>();
+        single.add(5);
+        single.add(5);
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", ids);
+        options.put("single", single);
+
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setInNormalization(true);
+        config.setSortInValues(true);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile("select id from users where id in (:ids, 2) and uid not in (:single) and gid in (:single)");
+        compiler.optimize(options);
+        compiler.generate(new ElasticSearchQueryGenerator(options));
+
+        assertEquals("id:(1 OR 3 OR 2) AND NOT uid:5 AND gid:5", compiler.output());
+    }
+
+    @Test
+    public void notEqualWithoutInNormalization() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("uid", 5);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile("select id from users where uid != :uid and status != 1");
+        compiler.optimize(options);
+        compiler.generate(new ElasticSearchQueryGenerator(options));
+
+        assertEquals("uid:!=5 AND status:!=1", compiler.output());
+    }
 }
 
 
@@ -0,0 +1,227 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.fail;
+
+/**
+ * compile、optimize、generate每次分配的字节数与allocation-budget.tsv里记录的相比不能增加太多。
+ *
+ * 分配量和JVM、GC、JIT有关，不直接比较字节数：文件第一行的语句作为基准，每条语句先按同一阶段基准语句的
+ * 分配量换算成比例，再和记录时的比例比较，超过{@link #TOLERANCE}就失败。
+ *
+ * 用-Dbql.allocation.report=true运行时只打印每个阶段的分配量，输出可以直接作为新的allocation-budget.tsv：
+ * <pre>
+ * mvn test -Dtest=AllocationTest -Dbql.allocation.report=true
+ * </pre>
+ */
+public class AllocationTest {
+
+    private static final String BUDGET_FILE = "/allocation-budget.tsv";
+
+    private static final String REPORT_PROPERTY = "bql.allocation.report";
+
+    private static final int WARMUP = 2000;
+
+    private static final int ITERATIONS = 200;
+
+    private static final String[] PHASES = {"compile", "optimize", "generate"};
+
+    // 允许比记录时多25%，再加上64字节换算后的余量
+    private static final double TOLERANCE = 1.25;
+
+    private static final long SLACK = 64;
+
+    @Test
+    public void withinBudget() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        boolean report = Boolean.getBoolean(REPORT_PROPERTY);
+        Map<String, long[]> budgets = readBudgets();
+        List<String> failures = new ArrayList<String>();
+        StringBuilder recorded = new StringBuilder();
+
+        if (report) {
+            System.out.println("compile\toptimize\tgenerate\ttotal\tstatement");
+        }
+
+        double[] scale = null;
+        if (!report) {
+            Map.Entry<String, long[]> reference = budgets.entrySet().iterator().next();
+            String bql = reference.getKey();
+            scale = scale(measure(threads, bql, options(BQLPlan.compile(bql))), reference.getValue());
+        }
+
+        for (String bql : LexerTest.readStatements()) {
+            Map<String, Object> options;
+            try {
+                options = options(BQLPlan.compile(bql));
+                generate(bql, options);
+            } catch (BQLException e) {
+                // 测试语法错误的语句
+                continue;
+            }
+
+            long[] allocated = measure(threads, bql, options);
+            if (report) {
+                long total = allocated[0] + allocated[1] + allocated[2];
+                System.out.println(format(allocated) + "\t" + total + "\t" + bql);
+                recorded.append(format(allocated)).append('\t').append(bql).append('\n');
+                continue;
+            }
+
+            long[] budget = budgets.get(bql);
+            if (budget == null) {
+                failures.add("no budget: " + bql);
+                continue;
+            }
+
+            for (int i = 0; i < PHASES.length; ++i) {
+                long limit = (long) ((budget[i] * TOLERANCE + SLACK) * scale[i]);
+                if (allocated[i] > limit) {
+                    failures.add(PHASES[i] + " allocated " + allocated[i] + " bytes, recorded " + budget[i]
+                            + ", limit on this JVM " + limit + ": " + bql);
+                }
+            }
+        }
+
+        if (report) {
+            System.out.println();
+            System.out.println("# " + BUDGET_FILE.substring(1));
+            System.out.print(recorded);
+        }
+
+        if (!failures.isEmpty()) {
+            StringBuilder message = new StringBuilder();
+            for (String failure : failures) {
+                message.append(failure).append('\n');
+            }
+            message.append("run with -D").append(REPORT_PROPERTY).append("=true to print the current allocations");
+            fail(message.toString());
+        }
+    }
+
+    /**
+     * 每个阶段先预热，再取{@link #ITERATIONS}次的平均值，单位是字节。
+     */
+    private static long[] measure(com.sun.management.ThreadMXBean threads, String bql, Map<String, Object> options)
+            throws BQLException {
+        for (int i = 0; i < WARMUP; ++i) {
+            generate(bql, options);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long[] allocated = new long[PHASES.length];
+        BQLCompiler[] compilers = new BQLCompiler[ITERATIONS];
+
+        // 读取分配量本身也会分配，先扣掉
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            compilers[i] = new BQLCompiler();
+            compilers[i].compile(bql);
+        }
+        allocated[0] = threads.getThreadAllocatedBytes(thread) - start - overhead;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            compilers[i].optimize(options);
+        }
+        allocated[1] = threads.getThreadAllocatedBytes(thread) - start - overhead;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            compilers[i].generate(new SQLGenerator(options));
+            compilers[i].output();
+        }
+        allocated[2] = threads.getThreadAllocatedBytes(thread) - start - overhead;
+
+        for (int i = 0; i < allocated.length; ++i) {
+            allocated[i] = Math.max(0, allocated[i]) / ITERATIONS;
+        }
+        return allocated;
+    }
+
+    private static String generate(String bql, Map<String, Object> options) throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        return compiler.output();
+    }
+
+    private static Map<String, Object> options(BQLPlan plan) {
+        Map<String, Object> options = new HashMap<String, Object>();
+        for (String option : plan.getOptionNames()) {
+            options.put(option, 1);
+        }
+        return options;
+    }
+
+    /**
+     * 这个JVM上基准语句每个阶段的分配量与记录时的比例，有一边为0时不换算。
+     */
+    private static double[] scale(long[] measured, long[] recorded) {
+        double[] scale = new double[measured.length];
+        for (int i = 0; i < measured.length; ++i) {
+            scale[i] = measured[i] > 0 && recorded[i] > 0 ? (double) measured[i] / recorded[i] : 1;
+        }
+        return scale;
+    }
+
+    private static String format(long[] bytes) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < bytes.length; ++i) {
+            text.append(i > 0 ? "\t" : "").append(bytes[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 每行是记录时compile、optimize、generate的分配量和语句，用tab分隔，#开头的是注释，第一行是基准语句。
+     */
+    private static Map<String, long[]> readBudgets() throws Exception {
+        Map<String, long[]> budgets = new LinkedHashMap<String, long[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                AllocationTest.class.getResourceAsStream(BUDGET_FILE), Charset.forName("UTF-8")));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t", PHASES.length + 1);
+                long[] budget = new long[PHASES.length];
+                for (int i = 0; i < PHASES.length; ++i) {
+                    budget[i] = Long.parseLong(fields[i].trim());
+                }
+                budgets.put(fields[PHASES.length], budget);
+            }
+        } finally {
+            reader.close();
+        }
+        return budgets;
+    }
+}
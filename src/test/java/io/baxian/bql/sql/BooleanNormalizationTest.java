@@ -0,0 +1,138 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLGenerator;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLOptimizerConfig;
+import io.baxian.bql.BQLPlanCache;
+import io.baxian.bql.ElasticSearchQueryGenerator;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BooleanNormalizationTest {
+
+    @Test
+    public void orEqualitiesToIn() throws BQLException {
+        assertNormalized("`a` IN (1, 2, 3)", "a = 1 or a = 2 or a = 3");
+        assertNormalized("`a` IN (1, 2, 3)", "a = 1 or (a = 2 or 3 = a)");
+        assertNormalized("`a` IN (1, 2, 3, 4) OR `b` = 5", "a in (1, 2) or b = 5 or a = 3 or a in (4)");
+        assertNormalized("`a` NOT IN (1, 2) AND `b` = 3", "a != 1 and b = 3 and a != 2");
+        assertNormalized("`a` = 1 AND `a` = 2", "a = 1 and a = 2");
+        assertNormalized("(`a` IN (1, 2) OR `b` = 1) AND `c` = 1", "(a = 1 or b = 1 or a = 2) and c = 1");
+    }
+
+    @Test
+    public void pushNotInward() throws BQLException {
+        assertNormalized("`a` != 1", "not a = 1");
+        assertNormalized("`a` >= 1 OR `b` <= 2", "not (a < 1 and b > 2)");
+        assertNormalized("`a` = 1 AND `b` NOT IN (1, 2)", "not (a != 1 or b in (1, 2))");
+        assertNormalized("`a` IS NOT NULL AND `b` IS NULL", "not (a is null or b is not null)");
+        assertNormalized("`a` > 1", "not not a > 1");
+        assertNormalized("NOT `a` BETWEEN 1 AND 2 OR `b` NOT IN (1, 2)", "not (a between 1 and 2 and (b = 1 or b = 2))");
+        assertNormalized("`a` = 1 AND (`b` != 1 OR `c` != 2) AND `d` = 1", "a = 1 and not (b = 1 and c = 2) and d = 1");
+    }
+
+    @Test
+    public void boundOptions() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("p1", 1);
+        options.put("p2", 2);
+        options.put("p3", 3);
+        options.put("b", "x");
+        options.put("ids", Arrays.asList(4, 5));
+
+        BQLCompiler compiler = compile("select id from t where a = :p1 or b = :b or a = :p2 or a in (:ids) or a = :missing",
+                options, new SQLGenerator(options));
+        assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?, ?, ?) OR `b` = ?", compiler.output());
+        assertEquals(Arrays.<Object>asList(1, 2, 4, 5, "x"), values(compiler.getOptions()));
+
+        compiler = compile("select id from t where not (a = :p1 and b = :b) and a != :p3 limit :p2",
+                options, new SQLGenerator(options));
+        assertEquals("SELECT `id` FROM `t` WHERE (`a` != ? OR `b` != ?) AND `a` != ? LIMIT ?", compiler.output());
+        assertEquals(Arrays.<Object>asList(1, "x", 3, 2), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void elasticSearch() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("p1", 1);
+        options.put("p2", 2);
+
+        BQLCompiler compiler = compile("select id from t where (a = :p1 or a = :p2) and not (b = 1 or b = 2)",
+                options, new ElasticSearchQueryGenerator(options));
+        assertEquals("a:(1 OR 2) AND NOT b:(1 OR 2)", compiler.output());
+    }
+
+    @Test
+    public void withSimplification() throws BQLException {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setBooleanNormalization(true);
+        config.setPredicateSimplification(true);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile("select id from t where not (a <= 5 or a != 3)");
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+        assertTrue(compiler.isProvablyEmpty());
+    }
+
+    @Test
+    public void sharedPlanUnchanged() throws BQLException {
+        BQLPlanCache cache = new BQLPlanCache(16);
+        String bql = "select id from t where not (a = 1 or a = 2) and (b = 1 or b = 2)";
+
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setBooleanNormalization(true);
+        for (int i = 0; i < 2; ++i) {
+            BQLCompiler compiler = new BQLCompiler(cache);
+            compiler.setOptimizerConfig(config);
+            compiler.compile(bql);
+            compiler.optimize(null);
+            compiler.generate(new SQLGenerator());
+            assertEquals("SELECT `id` FROM `t` WHERE `a` NOT IN (1, 2) AND `b` IN (1, 2)", compiler.output());
+        }
+
+        BQLCompiler compiler = new BQLCompiler(cache);
+        compiler.compile(bql);
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+        assertEquals("SELECT `id` FROM `t` WHERE NOT (`a` = 1 OR `a` = 2) AND (`b` = 1 OR `b` = 2)", compiler.output());
+    }
+
+    private static void assertNormalized(String expected, String condition) throws BQLException {
+        BQLCompiler compiler = compile("select id from t where " + condition, null, new SQLGenerator());
+        assertEquals("SELECT `id` FROM `t` WHERE " + expected, compiler.output());
+    }
+
+    private static List<Object> values(List<BQLOption> options) {
+        List<Object> values = new ArrayList<Object>();
+        for (BQLOption option : options) {
+            values.add(option.getValue());
+        }
+        return values;
+    }
+
+    private static BQLCompiler compile(String bql, Map<String, Object> options, BQLGenerator generator)
+            throws BQLException {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setBooleanNormalization(true);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(generator);
+        return compiler;
+    }
+}
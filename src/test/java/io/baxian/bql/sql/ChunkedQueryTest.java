@@ -0,0 +1,287 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLChunkedQuery;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLQueryRunner;
+import io.baxian.bql.RenderedBQL;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedQueryTest {
+
+    @Test
+    public void render() throws BQLException {
+        BQLChunkedQuery query = new BQLChunkedQuery(
+                "select id, score as s from t where status = :status and id in (:ids) order by score desc limit :offset, :count", "ids");
+        query.setChunkSize(2);
+
+        List<RenderedBQL> chunks = query.render(options(Arrays.<Object>asList(1, 2, 2, 3, 4, 5), 1, 2));
+        assertEquals(3, chunks.size());
+        String sql = "SELECT `id`, `score` AS `s` FROM `t` WHERE `status` = ? AND `id` IN (?, ?)"
+                + " ORDER BY `score` DESC LIMIT 3";
+        assertEquals(sql, chunks.get(0).getOutput());
+        assertEquals(sql, chunks.get(1).getOutput());
+        assertEquals(sql.replace("(?, ?)", "(?)"), chunks.get(2).getOutput());
+        assertEquals(Arrays.<Object>asList(1, 1, 2), values(chunks.get(0)));
+        assertEquals(Arrays.<Object>asList(1, 3, 4), values(chunks.get(1)));
+        assertEquals(Arrays.<Object>asList(1, 5), values(chunks.get(2)));
+    }
+
+    @Test
+    public void mergeWithOrderAndLimit() throws Exception {
+        List<Object> ids = new ArrayList<Object>();
+        for (int i = 0; i < 100; ++i) {
+            ids.add(i);
+        }
+
+        BQLChunkedQuery query = new BQLChunkedQuery(
+                "select id, score as s from t where status = :status and id in (:ids) order by score desc, id asc limit :offset, :count", "ids");
+        query.setChunkSize(7);
+        query.setParallelism(3);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            FakeTable table = new FakeTable();
+            List<Map<String, Object>> rows = query.execute(options(ids, 5, 10), table, executor);
+            assertEquals(15, table.calls.get());
+            assertTrue(table.maxConcurrent.get() <= 3);
+
+            // score = id % 10，score相同时按id升序
+            List<Object> expected = Arrays.<Object>asList(59, 69, 79, 89, 99, 8, 18, 28, 38, 48);
+            List<Object> actual = new ArrayList<Object>();
+            for (Map<String, Object> row : rows) {
+                actual.add(row.get("id"));
+            }
+            assertEquals(expected, actual);
+
+            assertEquals(100, query.execute(options(ids, null, null), table, null).size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void stringCollation() throws BQLException {
+        final String[] names = {null, "apple", "Banana", "cherry", "Date"};
+        BQLChunkedQuery query = new BQLChunkedQuery(
+                "select id, name from t where id in (:ids) order by name asc limit 2", "ids");
+        query.setChunkSize(2);
+        query.setCollation(String.CASE_INSENSITIVE_ORDER);
+
+        // 和不区分大小写的collation一样，每段按名字排序
+        List<Map<String, Object>> rows = query.execute(options(Arrays.<Object>asList(2, 4, 1, 3), null, null),
+                new BQLQueryRunner() {
+                    @Override
+                    public List<Map<String, Object>> query(RenderedBQL statement) throws Exception {
+                        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+                        for (BQLOption option : statement.getOptions()) {
+                            Map<String, Object> row = new HashMap<String, Object>();
+                            row.put("id", option.getValue());
+                            row.put("name", names[(Integer) option.getValue()]);
+                            rows.add(row);
+                        }
+                        Collections.sort(rows, new Comparator<Map<String, Object>>() {
+                            @Override
+                            public int compare(Map<String, Object> a, Map<String, Object> b) {
+                                return ((String) a.get("name")).compareToIgnoreCase((String) b.get("name"));
+                            }
+                        });
+                        return rows;
+                    }
+                }, null);
+        assertEquals(2, rows.size());
+        assertEquals(1, rows.get(0).get("id"));
+        assertEquals(2, rows.get(1).get("id"));
+    }
+
+    @Test
+    public void mixedTypes() throws BQLException {
+        BQLChunkedQuery query = new BQLChunkedQuery("select id, score from t where id in (:ids) order by score desc", "ids");
+        query.setChunkSize(1);
+
+        // 不同段返回Integer、Long和BigDecimal时按数值比较
+        final Object[] scores = {null, 1, 3L, new BigDecimal("2.5")};
+        List<Map<String, Object>> rows = query.execute(options(Arrays.<Object>asList(1, 2, 3), null, null),
+                new ScoreTable(scores), null);
+        assertEquals(Arrays.<Object>asList(2, 3, 1), ids(rows));
+
+        scores[3] = "2.5";
+        try {
+            query.execute(options(Arrays.<Object>asList(1, 2, 3), null, null), new ScoreTable(scores), null);
+            fail();
+        } catch (BQLException e) {
+            assertTrue(e.getCause().getMessage().contains("column score "));
+        }
+    }
+
+    /**
+     * 每段一个id，返回score为scores[id]的行。
+     */
+    private static class ScoreTable implements BQLQueryRunner {
+
+        private final Object[] scores;
+
+        ScoreTable(Object[] scores) {
+            this.scores = scores;
+        }
+
+        @Override
+        public List<Map<String, Object>> query(RenderedBQL statement) throws Exception {
+            List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+            for (BQLOption option : statement.getOptions()) {
+                Map<String, Object> row = new HashMap<String, Object>();
+                row.put("id", option.getValue());
+                row.put("score", scores[(Integer) option.getValue()]);
+                rows.add(row);
+            }
+            return rows;
+        }
+    }
+
+    private static List<Object> ids(List<Map<String, Object>> rows) {
+        List<Object> ids = new ArrayList<Object>();
+        for (Map<String, Object> row : rows) {
+            ids.add(row.get("id"));
+        }
+        return ids;
+    }
+
+    @Test
+    public void emptyList() throws BQLException {
+        BQLChunkedQuery query = new BQLChunkedQuery("select id from t where status = :status and id in (:ids)", "ids");
+        assertEquals(0, query.render(options(new ArrayList<Object>(), null, null)).size());
+        assertEquals(0, query.execute(options(new ArrayList<Object>(), null, null), new FakeTable(), null).size());
+    }
+
+    @Test
+    public void failure() throws BQLException {
+        BQLChunkedQuery query = new BQLChunkedQuery("select id from t where id in (:ids)", "ids");
+        query.setChunkSize(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            query.execute(options(Arrays.<Object>asList(1, 2, 3), null, null), new BQLQueryRunner() {
+                @Override
+                public List<Map<String, Object>> query(RenderedBQL statement) throws Exception {
+                    throw new IllegalStateException("boom");
+                }
+            }, executor);
+            fail();
+        } catch (BQLException e) {
+            assertEquals("boom", e.getCause().getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void notSplittable() throws BQLException {
+        assertNotSplittable("select id from t where id in (:ids) or status = 1");
+        assertNotSplittable("select id from t where id not in (:ids)");
+        assertNotSplittable("select id from t where id in (:ids) and pid in (:ids)");
+        assertNotSplittable("select id from t where id in (:ids, 5)");
+        assertNotSplittable("select id from t where status = 1 and id in (:other, :ids)");
+        assertNotSplittable("select count(id) as c from t where id in (:ids)");
+        assertNotSplittable("select id from t where id in (:ids) group by id");
+        assertNotSplittable("delete from t where id in (:ids)");
+        assertNotSplittable("select id from t where id in (:ids) order by score desc");
+        assertNotSplittable("select id, score as s from t where id in (:ids) order by s desc, created asc");
+
+        new BQLChunkedQuery("select id, score as s from t where id in (:ids) order by s desc, t.id asc", "ids");
+    }
+
+    private static void assertNotSplittable(String bql) throws BQLException {
+        try {
+            new BQLChunkedQuery(bql, "ids");
+            fail(bql);
+        } catch (IllegalArgumentException e) {
+            // 结果不能跨段合并
+        }
+    }
+
+    private static Map<String, Object> options(List<Object> ids, Integer offset, Integer count) {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", ids);
+        options.put("status", 1);
+        if (offset != null) {
+            options.put("offset", offset);
+            options.put("count", count);
+        }
+        return options;
+    }
+
+    private static List<Object> values(RenderedBQL chunk) {
+        List<Object> values = new ArrayList<Object>();
+        for (BQLOption option : chunk.getOptions()) {
+            values.add(option.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * 按绑定的id返回score = id % 10的行，按score降序、id升序排序并取LIMIT。
+     */
+    private static class FakeTable implements BQLQueryRunner {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        final AtomicInteger running = new AtomicInteger();
+
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @Override
+        public List<Map<String, Object>> query(RenderedBQL statement) throws Exception {
+            calls.incrementAndGet();
+            int concurrent = running.incrementAndGet();
+            while (maxConcurrent.get() < concurrent) {
+                maxConcurrent.compareAndSet(maxConcurrent.get(), concurrent);
+            }
+            try {
+                Thread.sleep(1);
+
+                List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+                for (BQLOption option : statement.getOptions()) {
+                    if (option.getField().equals("ids")) {
+                        int id = (Integer) option.getValue();
+                        Map<String, Object> row = new HashMap<String, Object>();
+                        row.put("id", id);
+                        row.put("S", id % 10);
+                        rows.add(row);
+                    }
+                }
+                Collections.sort(rows, new Comparator<Map<String, Object>>() {
+                    @Override
+                    public int compare(Map<String, Object> a, Map<String, Object> b) {
+                        int result = (Integer) b.get("S") - (Integer) a.get("S");
+                        return result != 0 ? result : (Integer) a.get("id") - (Integer) b.get("id");
+                    }
+                });
+
+                String sql = statement.getOutput();
+                if (sql.contains(" LIMIT ")) {
+                    int limit = Integer.parseInt(sql.substring(sql.lastIndexOf(' ') + 1));
+                    rows = rows.subList(0, Math.min(limit, rows.size()));
+                }
+                return rows;
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+}
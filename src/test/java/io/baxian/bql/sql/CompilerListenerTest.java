@@ -0,0 +1,153 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLCompilerListener;
+import io.baxian.bql.BQLCompilerMetrics;
+import io.baxian.bql.BQLLexer;
+import io.baxian.bql.BQLParserType;
+import io.baxian.bql.BQLPhase;
+import io.baxian.bql.BQLPlanCache;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompilerListenerTest {
+
+    private static final String BQL = "select id from users where id = :id and (name = :name or age > :age)";
+
+    @Test
+    public void phasesAndCounts() throws Exception {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("id", 1);
+
+        for (BQLParserType parserType : BQLParserType.values()) {
+            Recorder recorder = new Recorder();
+            BQLCompiler compiler = new BQLCompiler();
+            compiler.setParserType(parserType);
+            compiler.setListener(recorder);
+            compiler.compile(BQL);
+            compiler.optimize(options);
+            compiler.generate(new SQLGenerator(options));
+
+            assertEquals(Arrays.asList(BQLPhase.LEX, BQLPhase.PARSE, BQLPhase.METADATA,
+                    BQLPhase.OPTIMIZE, BQLPhase.GENERATE), recorder.phases);
+            assertEquals(BQLLexer.tokenize(BQL).size(), recorder.count(BQLPhase.LEX));
+            assertTrue(recorder.count(BQLPhase.PARSE) > 10);
+            assertEquals(3, recorder.count(BQLPhase.METADATA));
+            assertEquals(2, recorder.count(BQLPhase.OPTIMIZE));
+            assertEquals(compiler.output().length(), recorder.count(BQLPhase.GENERATE));
+        }
+    }
+
+    @Test
+    public void sameNodeCountForBothParsers() throws Exception {
+        for (String bql : LexerTest.readStatements()) {
+            long[] nodes = new long[2];
+            for (BQLParserType parserType : BQLParserType.values()) {
+                Recorder recorder = new Recorder();
+                BQLCompiler compiler = new BQLCompiler();
+                compiler.setParserType(parserType);
+                compiler.setListener(recorder);
+                try {
+                    compiler.compile(bql);
+                } catch (Exception e) {
+                    continue;
+                }
+                nodes[parserType.ordinal()] = recorder.count(BQLPhase.PARSE);
+            }
+            assertEquals(bql, nodes[0], nodes[1]);
+        }
+    }
+
+    @Test
+    public void planCacheHitSkipsParsing() throws Exception {
+        Recorder recorder = new Recorder();
+        BQLCompiler compiler = new BQLCompiler(new BQLPlanCache());
+        compiler.setListener(recorder);
+        compiler.compile(BQL);
+        assertEquals(3, recorder.phases.size());
+
+        recorder.phases.clear();
+        compiler.compile(BQL);
+        compiler.optimize(null);
+        assertEquals(Arrays.asList(BQLPhase.OPTIMIZE), recorder.phases);
+        assertEquals(3, recorder.count(BQLPhase.OPTIMIZE));
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        BQLCompilerMetrics metrics = new BQLCompilerMetrics();
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setListener(metrics);
+        for (int i = 0; i < 10; ++i) {
+            compiler.compile(BQL);
+        }
+
+        long tokens = BQLLexer.tokenize(BQL).size();
+        assertEquals(10, metrics.getCalls(BQLPhase.LEX));
+        assertEquals(10 * tokens, metrics.getTotalCount(BQLPhase.LEX));
+        assertEquals(0, metrics.getCalls(BQLPhase.OPTIMIZE));
+
+        long[] histogram = metrics.getHistogram(BQLPhase.PARSE);
+        long calls = 0;
+        for (long n : histogram) {
+            calls += n;
+        }
+        assertEquals(10, calls);
+
+        long p50 = metrics.getQuantileNanos(BQLPhase.PARSE, 0.5);
+        long p100 = metrics.getQuantileNanos(BQLPhase.PARSE, 1);
+        assertTrue(p50 > 0 && p50 <= p100);
+        assertTrue(metrics.getTotalNanos(BQLPhase.PARSE) <= 10 * p100);
+
+        metrics.reset();
+        assertEquals(0, metrics.getCalls(BQLPhase.LEX));
+        assertEquals(0, metrics.getQuantileNanos(BQLPhase.LEX, 0.99));
+    }
+
+    @Test
+    public void bucketBounds() {
+        BQLCompilerMetrics metrics = new BQLCompilerMetrics();
+        metrics.onPhase(BQLPhase.GENERATE, 0, 0);
+        metrics.onPhase(BQLPhase.GENERATE, 1, 0);
+        metrics.onPhase(BQLPhase.GENERATE, 1000, 0);
+        metrics.onPhase(BQLPhase.GENERATE, 1023, 0);
+        metrics.onPhase(BQLPhase.GENERATE, 1024, 0);
+
+        long[] histogram = metrics.getHistogram(BQLPhase.GENERATE);
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[1]);
+        assertEquals(2, histogram[10]);
+        assertEquals(1, histogram[11]);
+        assertEquals(1023, BQLCompilerMetrics.getBucketUpperBound(10));
+        assertEquals(0, metrics.getQuantileNanos(BQLPhase.GENERATE, 0.2));
+        assertEquals(1023, metrics.getQuantileNanos(BQLPhase.GENERATE, 0.8));
+        assertEquals(2047, metrics.getQuantileNanos(BQLPhase.GENERATE, 1));
+    }
+
+    private static class Recorder implements BQLCompilerListener {
+
+        final List<BQLPhase> phases = new ArrayList<BQLPhase>();
+
+        final Map<BQLPhase, Long> counts = new HashMap<BQLPhase, Long>();
+
+        @Override
+        public void onPhase(BQLPhase phase, long nanos, long count) {
+            assertTrue(nanos >= 0);
+            phases.add(phase);
+            counts.put(phase, count);
+        }
+
+        long count(BQLPhase phase) {
+            return counts.get(phase);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOptimizerConfig;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConstantFoldingTest {
+
+    @Test
+    public void arithmetic() throws BQLException {
+        assertFolded("`a` = 86400", "a = 60 * 60 * 24");
+        assertFolded("`a` = 7", "a = 1 + 2 * 3");
+        assertFolded("`a` = 9", "a = (1 + 2) * 3");
+        assertFolded("`a` = -3", "a = 2 - 5");
+        assertFolded("`a` - -3 = 1", "a - (2 - 5) = 1");
+        assertFolded("`a` = 1", "a = 10 % 3");
+        assertFolded("`a` = -1", "a = -7 % 3");
+        assertFolded("`a` = 113", "a = 0112 + 1");
+        assertFolded("`a` = 275", "a = 0x112 + 1");
+        assertFolded("`a` + 1 + 2 = 3", "a + 1 + 2 = 3");
+        assertFolded("`a` = `b` * 3600", "a = b * (60 * 60)");
+    }
+
+    @Test
+    public void decimal() throws BQLException {
+        assertFolded("`a` = 3.5000", "a = 7 / 2");
+        assertFolded("`a` = 0.3333", "a = 1 / 3");
+        assertFolded("`a` = 0.66667", "a = 2.0 / 3");
+        assertFolded("`a` = 3.75", "a = 1.25 * 3");
+        assertFolded("`a` = 0.3", "a = 0.1 + 0.2");
+        assertFolded("`a` = 1.5", "a = 5.5 % 2");
+    }
+
+    @Test
+    public void bitwise() throws BQLException {
+        assertFolded("`flags` & 8 > 0", "flags & (1 << 3) > 0");
+        assertFolded("`a` = 6", "a = 7 & 14");
+        assertFolded("`a` = 15", "a = 7 | 8");
+        assertFolded("`a` = 9", "a = 12 ^ 5");
+        assertFolded("`a` = 2", "a = 16 >> 3");
+        assertFolded("`a` = 1", "a = -1 & 1");
+        assertFolded("`a` = 9223372036854775807", "a = -1 >> 1");
+        assertFolded("`a` = 0", "a = 1 << 64");
+        assertFolded("`a` = 18446744073709551615", "a = -1 | 0");
+    }
+
+    @Test
+    public void notFolded() throws BQLException {
+        // 溢出、除以0、DOUBLE和无符号数参与算术运算时保持原样
+        assertFolded("`a` = 9223372036854775807 + 1", "a = 9223372036854775807 + 1");
+        assertFolded("`a` = 4294967296 * 4294967296", "a = 4294967296 * 4294967296");
+        assertFolded("`a` = 1 / 0", "a = 1 / 0");
+        assertFolded("`a` = 1 % 0", "a = 1 % 0");
+        assertFolded("`a` = 1.2e+10 * 2", "a = 1.2e+10 * 2");
+        assertFolded("`a` = 18446744073709551615 - 1", "a = 18446744073709551615 - 1");
+        assertFolded("`a` = '1' + 1", "a = '1' + 1");
+    }
+
+    @Test
+    public void disabledByDefault() throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile("select id from t where a = 60 * 60 * 24");
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+        assertEquals("SELECT `id` FROM `t` WHERE `a` = 60 * 60 * 24", compiler.output());
+    }
+
+    @Test
+    public void boundOptions() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("days", 7);
+        options.put("price", new BigDecimal("9.90"));
+        options.put("name", "bql");
+        options.put("ratio", 0.5);
+        options.put("ids", Arrays.asList(1, 2));
+
+        String bql = "select id from t where a > :days * 86400 and b = :price * 2 and c = :name"
+                + " and d = :ratio * 2 and e in (:ids) and f = :days";
+
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setConstantFolding(true);
+        BQLCompiler compiler = compile(bql, options, config);
+        assertEquals("SELECT `id` FROM `t` WHERE `a` > ? * 86400 AND `b` = ? * 2 AND `c` = ?"
+                + " AND `d` = ? * 2 AND `e` IN (?, ?) AND `f` = ?", compiler.output());
+        assertEquals(7, compiler.getOptions().size());
+
+        config.setFoldBoundOptions(true);
+        compiler = compile(bql, options, config);
+        assertEquals("SELECT `id` FROM `t` WHERE `a` > 604800 AND `b` = 19.80 AND `c` = ?"
+                + " AND `d` = ? * 2 AND `e` IN (?, ?) AND `f` = ?", compiler.output());
+        assertEquals(5, compiler.getOptions().size());
+        assertEquals("name", compiler.getOptions().get(0).getField());
+        assertEquals("ratio", compiler.getOptions().get(1).getField());
+    }
+
+    @Test
+    public void updateAndInsert() throws BQLException {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setConstantFolding(true);
+
+        BQLCompiler compiler = compile("UPDATE logs SET a = 1 + 2, b = a + 2 * 3", null, config);
+        assertEquals("UPDATE `logs` SET `a` = 3, `b` = `a` + 6", compiler.output());
+
+        compiler = compile("insert into logs(a, b) values(1 << 10, 2)", null, config);
+        assertEquals("INSERT INTO `logs` (`a`, `b`) VALUES (1024, 2)", compiler.output());
+    }
+
+    private static void assertFolded(String expected, String condition) throws BQLException {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setConstantFolding(true);
+        BQLCompiler compiler = compile("select id from t where " + condition, null, config);
+        assertEquals("SELECT `id` FROM `t` WHERE " + expected, compiler.output());
+    }
+
+    private static BQLCompiler compile(String bql, Map<String, Object> options, BQLOptimizerConfig config)
+            throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        return compiler;
+    }
+}
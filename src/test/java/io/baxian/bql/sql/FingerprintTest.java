@@ -0,0 +1,166 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLFingerprint;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.BQLPlanCache;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class FingerprintTest {
+
+    @Test
+    public void ignoresBlanksCaseAndQuotes() {
+        String bql = "select id, name from users where id = :id and name = 'bql' order by id desc limit 10";
+        String[] same = {
+                "SELECT id, name FROM users WHERE id = :id AND name = 'bql' ORDER BY id DESC LIMIT 10",
+                "select  `id`,`name`\n from `users`\twhere id=:id and name='bql' order by ` id ` desc limit 10",
+        };
+
+        for (boolean mask : new boolean[]{false, true}) {
+            long fingerprint = BQLFingerprint.of(bql, mask);
+            for (String other : same) {
+                assertEquals(other, fingerprint, BQLFingerprint.of(other, mask));
+            }
+        }
+    }
+
+    @Test
+    public void distinguishesStatements() {
+        String[] different = {
+                "select id from users where id = 1",
+                "select id from users where id = 2",
+                "select id from users where id = '1'",
+                "select id from users where uid = 1",
+                "select id from users where ID = 1",
+                "select id from users where id = :id",
+                "select id from users where id = :ID",
+                "select id from users where id > 1",
+                "select id from users",
+                "select `id from users`",
+                "select id from users where id in (1, 2)",
+        };
+
+        Set<Long> fingerprints = new HashSet<Long>();
+        for (String bql : different) {
+            fingerprints.add(BQLFingerprint.of(bql, false));
+        }
+        assertEquals(different.length, fingerprints.size());
+    }
+
+    @Test
+    public void maskLiterals() {
+        long masked = BQLFingerprint.of("select id from users where id = 1 and name = 'a'", true);
+        assertEquals(masked, BQLFingerprint.of("select id from users where id = 2 and name = 'b'", true));
+        assertEquals(masked, BQLFingerprint.of("select id from users where id = 0x10 and name = 1.5", true));
+        assertNotEquals(masked, BQLFingerprint.of("select id from users where id = :id and name = 'b'", true));
+
+        // IN列表里连续的字面量合并
+        long in = BQLFingerprint.of("select id from users where id in (1)", true);
+        assertEquals(in, BQLFingerprint.of("select id from users where id in (1, 2, 3)", true));
+        assertEquals(in, BQLFingerprint.of("SELECT id FROM users WHERE id IN ('a','b')", true));
+        assertNotEquals(in, BQLFingerprint.of("select id from users where id in (1, :p)", true));
+        assertEquals(BQLFingerprint.of("select id from users where id not in (:p, 1, 2)", true),
+                BQLFingerprint.of("select id from users where id not in (:p, 3)", true));
+
+        // 其他地方的字面量个数不变
+        assertNotEquals(BQLFingerprint.of("select id from users limit 10", true),
+                BQLFingerprint.of("select id from users limit 0, 10", true));
+        assertNotEquals(BQLFingerprint.of("insert into t(a, b) values(1, 2)", true),
+                BQLFingerprint.of("insert into t(a, b) values(1, 2), (3, 4)", true));
+    }
+
+    @Test
+    public void metadata() throws BQLException {
+        String bql = "select id from users where id = 1";
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile(bql);
+
+        BQLPlan plan = compiler.getPlan();
+        assertEquals(BQLFingerprint.of(bql, false), plan.getFingerprint());
+        assertEquals(BQLFingerprint.of(bql, true), plan.getMaskedFingerprint());
+        assertEquals(plan.getFingerprint(), compiler.getMetadata().getFingerprint());
+        assertEquals(plan.getMaskedFingerprint(), compiler.getMetadata().getMaskedFingerprint());
+    }
+
+    @Test
+    public void canonicalPlanCache() throws BQLException {
+        BQLPlanCache cache = new BQLPlanCache(16);
+        cache.setCanonicalLookup(true);
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("id", 1);
+
+        String[] statements = {
+                "select id from users where id = :id",
+                "SELECT `id` FROM `users` WHERE `id` = :id",
+                "select id\n  from users\n where id = :id",
+        };
+
+        BQLPlan first = null;
+        for (String bql : statements) {
+            BQLCompiler compiler = new BQLCompiler(cache);
+            compiler.compile(bql);
+            compiler.optimize(options);
+            compiler.generate(new SQLGenerator(options));
+            assertEquals("SELECT `id` FROM `users` WHERE `id` = ?", compiler.output());
+
+            if (first == null) {
+                first = compiler.getPlan();
+            }
+            assertSame(first, compiler.getPlan());
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(2, cache.getCanonicalHitCount());
+
+        // 字面量不同的语句不共用
+        BQLCompiler compiler = new BQLCompiler(cache);
+        compiler.compile("select id from users where id = 1");
+        BQLPlan one = compiler.getPlan();
+        compiler.compile("select id from users where id = 2");
+        assertNotSame(one, compiler.getPlan());
+        assertEquals(2, cache.getCanonicalHitCount());
+    }
+
+    @Test
+    public void canonicalLookupKeepsSyntaxErrors() throws BQLException {
+        BQLPlanCache cache = new BQLPlanCache(16);
+        cache.setCanonicalLookup(true);
+        cache.get("select distinct id from users");
+
+        try {
+            cache.get("select `distinct` id from users");
+            fail();
+        } catch (BQLException e) {
+            assertEquals(0, cache.getCanonicalHitCount());
+        }
+    }
+
+    @Test
+    public void statementsFile() throws Exception {
+        BQLPlanCache cache = new BQLPlanCache(256);
+        cache.setCanonicalLookup(true);
+        for (String bql : LexerTest.readStatements()) {
+            String upper = bql.replace("select ", "SELECT ").replace(" from ", " FROM ").replace(" where ", "  WHERE  ");
+            try {
+                assertSame(bql, cache.get(bql), cache.get(upper));
+            } catch (BQLException e) {
+                // 测试语法错误的语句
+            }
+        }
+    }
+}
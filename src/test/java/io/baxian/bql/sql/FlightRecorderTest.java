@@ -0,0 +1,69 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.SQLGenerator;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderTest {
+
+    @Test
+    public void events() throws Exception {
+        String bql = "select id from users where id = :id and name = :name";
+        Map<String, Object> options = Collections.<String, Object>singletonMap("id", 1);
+
+        File file = File.createTempFile("bql", ".jfr");
+        try {
+            Recording recording = new Recording();
+            recording.enable("io.baxian.bql.Compile").withoutThreshold();
+            recording.enable("io.baxian.bql.Optimize").withoutThreshold();
+            recording.enable("io.baxian.bql.Generate").withoutThreshold();
+            recording.start();
+
+            BQLCompiler compiler = new BQLCompiler();
+            compiler.compile(bql);
+            compiler.optimize(options);
+            compiler.generate(new SQLGenerator(options));
+            String output = compiler.output();
+
+            recording.stop();
+            recording.dump(file.toPath());
+            recording.close();
+
+            Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+            List<RecordedEvent> recorded = RecordingFile.readAllEvents(file.toPath());
+            for (RecordedEvent event : recorded) {
+                events.put(event.getEventType().getName(), event);
+            }
+            assertEquals(3, events.size());
+
+            long fingerprint = BQLPlan.compile(bql).getFingerprint();
+            for (RecordedEvent event : events.values()) {
+                assertEquals(fingerprint, event.getLong("fingerprint"));
+                assertEquals("SELECT", event.getString("statementType"));
+                assertEquals("users", event.getString("table"));
+                assertTrue(event.getDuration().toNanos() >= 0);
+            }
+
+            assertEquals(2, events.get("io.baxian.bql.Compile").getInt("optionCount"));
+            assertEquals(1, events.get("io.baxian.bql.Optimize").getInt("optionCount"));
+            RecordedEvent generate = events.get("io.baxian.bql.Generate");
+            assertEquals(1, generate.getInt("optionCount"));
+            assertEquals(output.length(), generate.getInt("outputSize"));
+        } finally {
+            file.delete();
+        }
+    }
+}
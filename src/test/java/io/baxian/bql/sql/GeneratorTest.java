@@ -0,0 +1,121 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLGenerator;
+import io.baxian.bql.ElasticSearchQueryGenerator;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 重复使用的generator与每次新建的generator输出相同。
+ */
+public class GeneratorTest {
+
+    @Test
+    public void reuseSqlGenerator() throws Exception {
+        SQLGenerator pooled = new SQLGenerator();
+        for (String bql : LexerTest.readStatements()) {
+            Map<String, Object> options = options();
+            String expected = generate(bql, options, new SQLGenerator(options));
+
+            pooled.reset(options);
+            assertEquals(bql, expected, generate(bql, options, pooled));
+        }
+    }
+
+    @Test
+    public void reuseElasticSearchGenerator() throws BQLException {
+        ElasticSearchQueryGenerator pooled = new ElasticSearchQueryGenerator();
+        String[] statements = {
+                "select id from users where a = :a and (b > 1 or c < :c)",
+                "select id from users where a in (:ids) and not b = 1",
+                "select id from users where a = (1 + :a) * 2"};
+
+        for (String bql : statements) {
+            Map<String, Object> options = options();
+            String expected = generate(bql, options, new ElasticSearchQueryGenerator(options));
+
+            pooled.reset(options);
+            assertEquals(bql, expected, generate(bql, options, pooled));
+        }
+    }
+
+    @Test
+    public void resetClearsRewrites() throws BQLException {
+        SQLGenerator pooled = new SQLGenerator();
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("b", 2);
+
+        pooled.reset(options);
+        assertEquals("SELECT `a` FROM `t` WHERE `b` = ?", generate("select a from t where b = :b", options, pooled));
+
+        // 没有经过优化器时按原样输出
+        pooled.reset(options);
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile("select a from t where b = :b and c = :c");
+        compiler.getPlan().getAst().apply(pooled);
+        assertEquals("SELECT `a` FROM `t` WHERE `b` = ? AND `c` = NULL", pooled.output());
+    }
+
+    @Test
+    public void reuseKeepsEarlierOutput() throws Exception {
+        Map<String, Object> options = options();
+        SQLGenerator pooled = new SQLGenerator(options);
+
+        BQLCompiler first = new BQLCompiler();
+        first.compile("select a from t where a = :a");
+        first.optimize(options);
+        first.generate(pooled);
+
+        // 第一个compiler还没有调用过output()，generator就被reset后重用
+        pooled.reset(options);
+        BQLCompiler second = new BQLCompiler();
+        second.compile("delete from t where id = :id");
+        second.optimize(options);
+        second.generate(pooled);
+
+        assertEquals("SELECT `a` FROM `t` WHERE `a` = ?", first.output());
+        StringBuilder out = new StringBuilder();
+        first.output(out);
+        assertEquals("SELECT `a` FROM `t` WHERE `a` = ?", out.toString());
+        assertEquals("DELETE FROM `t` WHERE `id` = ?", second.output());
+
+        // 不reset直接生成其他语句也一样
+        BQLCompiler third = new BQLCompiler();
+        third.compile("select b from t");
+        third.optimize(options);
+        third.generate(pooled);
+        assertEquals("DELETE FROM `t` WHERE `id` = ?", second.output());
+        assertEquals("SELECT `b` FROM `t`", third.output());
+    }
+
+    private static Map<String, Object> options() {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("a", 1);
+        options.put("c", "c");
+        options.put("id", 10);
+        options.put("ids", Arrays.asList(1, 2, 3));
+        options.put("name", "bql");
+        options.put("count", 20);
+        return options;
+    }
+
+    private static String generate(String bql, Map<String, Object> options, BQLGenerator generator) throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        try {
+            compiler.compile(bql);
+            compiler.optimize(options);
+        } catch (BQLException e) {
+            return e.getClass().getSimpleName();
+        }
+        compiler.generate(generator);
+        return compiler.output();
+    }
+}
@@ -0,0 +1,174 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLOptimizerConfig;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.BQLRenderCache;
+import io.baxian.bql.PreparedBQL;
+import io.baxian.bql.RenderedBQL;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class InListPaddingTest {
+
+    @Test
+    public void powerOfTwoBuckets() throws BQLException {
+        assertPadded("`a` IN (?)", Arrays.<Object>asList(1), 8);
+        assertPadded("`a` IN (?, ?)", Arrays.<Object>asList(1, 2), 8);
+        assertPadded("`a` IN (?, ?, ?, ?)", Arrays.<Object>asList(1, 2, 3, 3), 8);
+        assertPadded("`a` IN (?, ?, ?, ?, ?, ?, ?, ?)", Arrays.<Object>asList(1, 2, 3, 4, 5, 5, 5, 5), 8);
+    }
+
+    @Test
+    public void beyondCap() throws BQLException {
+        List<Object> ids = new ArrayList<Object>();
+        for (int i = 0; i < 5; ++i) {
+            ids.add(i);
+        }
+        BQLCompiler compiler = compile("select id from t where a in (:ids)", ids, 3, false);
+        assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?, ?, ?, ?, ?)", compiler.output());
+        assertEquals(Arrays.<Object>asList(0, 1, 2, 3, 4, 4), values(compiler.getOptions()));
+
+        // 列表长度不超过cap时最多补到cap
+        compiler = compile("select id from t where a in (:ids)", ids.subList(0, 3), 3, false);
+        assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?, ?)", compiler.output());
+    }
+
+    @Test
+    public void notIn() throws BQLException {
+        BQLCompiler compiler = compile("select id from t where a not in (:ids) and b = 1",
+                Arrays.<Object>asList("x", "y", "z"), 16, false);
+        assertEquals("SELECT `id` FROM `t` WHERE `a` NOT IN (?, ?, ?, ?) AND `b` = 1", compiler.output());
+        assertEquals(Arrays.<Object>asList("x", "y", "z", "z"), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void withNormalization() throws BQLException {
+        // 去重后的元素和字面量一共3个，补齐到4个
+        BQLCompiler compiler = compile("select id from t where a in (:ids, 9)",
+                Arrays.<Object>asList(1, 2, 2, 1), 16, true);
+        assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?, ?, 9)", compiler.output());
+        assertEquals(Arrays.<Object>asList(1, 2, 2), values(compiler.getOptions()));
+
+        compiler = compile("select id from t where a in (:ids)", Arrays.<Object>asList(5, 5), 16, true);
+        assertEquals("SELECT `id` FROM `t` WHERE `a` = ?", compiler.output());
+    }
+
+    @Test
+    public void set() throws BQLException {
+        // 长度已经是2的幂的Set也要按List输出
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", new LinkedHashSet<Object>(Arrays.<Object>asList(1, 2)));
+
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setInListPadding(8);
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile("select id from t where a in (:ids)");
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?)", compiler.output());
+        assertEquals(Arrays.<Object>asList(1, 2), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void renderCache() throws BQLException {
+        for (boolean templates : new boolean[] {false, true}) {
+            BQLRenderCache cache = new BQLRenderCache(16, templates);
+            cache.setInListPadding(8);
+            cache.setSpecialization(2, 4);
+            PreparedBQL prepared = new PreparedBQL(
+                    BQLPlan.compile("select id from t where a in (:ids) and b not in (:names)"), cache);
+            assertRendered(prepared);
+            assertEquals(templates ? 1 : 2, cache.size());
+            assertEquals(templates ? 1 : 0, cache.getRendererCount());
+        }
+        assertRendered(new PreparedBQL(
+                BQLPlan.compile("select id from t where a in (:ids) and b not in (:names)"), 8));
+    }
+
+    private static void assertRendered(PreparedBQL prepared) throws BQLException {
+        // 第一次生成，之后命中缓存和组合的渲染函数
+        for (int i = 0; i < 3; ++i) {
+            RenderedBQL rendered = prepared.render(options(Arrays.<Object>asList(1, 2, 3), Arrays.<Object>asList("x")));
+            assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?, ?, ?) AND `b` NOT IN (?)", rendered.getOutput());
+            assertEquals(Arrays.<Object>asList(1, 2, 3, 3, "x"), values(rendered.getOptions()));
+
+            rendered = prepared.render(options(Arrays.<Object>asList(1, 2, 3, 4, 5), Arrays.<Object>asList("x", "y", "z")));
+            assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?, ?, ?, ?, ?, ?, ?) AND `b` NOT IN (?, ?, ?, ?)",
+                    rendered.getOutput());
+            assertEquals(Arrays.<Object>asList(1, 2, 3, 4, 5, 5, 5, 5, "x", "y", "z", "z"), values(rendered.getOptions()));
+
+            rendered = prepared.render(options(new LinkedHashSet<Object>(Arrays.<Object>asList(1, 2)),
+                    Arrays.<Object>asList("x", "y")));
+            assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?) AND `b` NOT IN (?, ?)", rendered.getOutput());
+            assertEquals(Arrays.<Object>asList(1, 2, "x", "y"), values(rendered.getOptions()));
+        }
+    }
+
+    private static Map<String, Object> options(Collection<Object> ids, List<Object> names) {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", ids);
+        options.put("names", names);
+        return options;
+    }
+
+    @Test
+    public void disabledByDefault() throws BQLException {
+        BQLCompiler compiler = compile("select id from t where a in (:ids)", Arrays.<Object>asList(1, 2, 3), 0, false);
+        assertEquals("SELECT `id` FROM `t` WHERE `a` IN (?, ?, ?)", compiler.output());
+    }
+
+    private static void assertPadded(String expected, List<Object> bound, int cap) throws BQLException {
+        BQLCompiler compiler = compile("select id from t where a in (:ids)", distinct(bound), cap, false);
+        assertEquals("SELECT `id` FROM `t` WHERE " + expected, compiler.output());
+        assertEquals(bound, values(compiler.getOptions()));
+    }
+
+    private static List<Object> distinct(List<Object> values) {
+        List<Object> result = new ArrayList<Object>();
+        for (Object value : values) {
+            if (!result.contains(value)) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private static List<Object> values(List<BQLOption> options) {
+        List<Object> values = new ArrayList<Object>();
+        for (BQLOption option : options) {
+            values.add(option.getValue());
+        }
+        return values;
+    }
+
+    private static BQLCompiler compile(String bql, List<Object> ids, int cap, boolean inNormalization)
+            throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", ids);
+
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setInListPadding(cap);
+        config.setInNormalization(inNormalization);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        return compiler;
+    }
+}
@@ -0,0 +1,130 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLOptimizerConfig;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class InNormalizationTest {
+
+    @Test
+    public void dedupe() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", Arrays.asList(3, 1, 3, 2, 1));
+        options.put("more", Arrays.asList(2, 4));
+
+        BQLCompiler compiler = compile("select id from t where id in (:ids, 1, :more, 1)", options, config(false));
+        assertEquals("SELECT `id` FROM `t` WHERE `id` IN (?, ?, ?, ?, 1)", compiler.output());
+        assertEquals(Arrays.<Object>asList(3, 1, 2, 4), values(compiler.getOptions()));
+        assertEquals("more", compiler.getOptions().get(3).getField());
+    }
+
+    @Test
+    public void sort() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", Arrays.asList(30L, 10L, 30L, 20L));
+        options.put("names", Arrays.asList("b", "c", "a"));
+        options.put("mixed", Arrays.<Object>asList(2, "1"));
+
+        BQLCompiler compiler = compile("select id from t where id in (:ids) and name not in (:names)"
+                + " and c in (:mixed)", options, config(true));
+        assertEquals("SELECT `id` FROM `t` WHERE `id` IN (?, ?, ?) AND `name` NOT IN (?, ?, ?)"
+                + " AND `c` IN (?, ?)", compiler.output());
+        assertEquals(Arrays.<Object>asList(10L, 20L, 30L, "a", "b", "c", 2, "1"), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void singleValue() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", Arrays.asList(7, 7, 7));
+        options.put("id", 8);
+        options.put("none", null);
+        options.put("empty", Collections.emptyList());
+
+        BQLCompiler compiler = compile("select id from t where a in (:ids) and b not in (:id, :id)"
+                + " and c in (:empty, 'x', 'x') and d in (:none)", options, config(false));
+        assertEquals("SELECT `id` FROM `t` WHERE `a` = ? AND `b` != ? AND `c` = 'x' AND `d` = NULL",
+                compiler.output());
+        assertEquals(Arrays.<Object>asList(7, 8), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void emptyList() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", new ArrayList<Integer>());
+        options.put("names", Collections.emptySet());
+        options.put("name", "bql");
+
+        BQLCompiler compiler = compile("select id from t where id in (:ids) and name not in (:names)"
+                + " and name = :name", options, config(false));
+        assertEquals("SELECT `id` FROM `t` WHERE `name` = ?", compiler.output());
+        assertEquals(Arrays.<Object>asList("bql"), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void keepsNull() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", Arrays.asList(1, null, 1, null));
+
+        // NOT IN列表中的NULL会改变结果，只去重不删除
+        BQLCompiler compiler = compile("select id from t where id not in (:ids)", options, config(true));
+        assertEquals("SELECT `id` FROM `t` WHERE `id` NOT IN (?, NULL)", compiler.output());
+        assertEquals(Arrays.<Object>asList(1), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void unchangedWithExpressions() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("id", 1);
+
+        BQLCompiler compiler = compile("select id from t where id in (:id + 1, :id + 1)", options, config(true));
+        assertEquals("SELECT `id` FROM `t` WHERE `id` IN (? + 1, ? + 1)", compiler.output());
+        assertEquals(2, compiler.getOptions().size());
+    }
+
+    @Test
+    public void disabledByDefault() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", Arrays.asList(2, 2));
+
+        BQLCompiler compiler = compile("select id from t where id in (:ids)", options, new BQLOptimizerConfig());
+        assertEquals("SELECT `id` FROM `t` WHERE `id` IN (?, ?)", compiler.output());
+        assertEquals(2, compiler.getOptions().size());
+    }
+
+    private static BQLOptimizerConfig config(boolean sort) {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setInNormalization(true);
+        config.setSortInValues(sort);
+        return config;
+    }
+
+    private static List<Object> values(List<BQLOption> options) {
+        List<Object> values = new ArrayList<Object>();
+        for (BQLOption option : options) {
+            values.add(option.getValue());
+        }
+        return values;
+    }
+
+    private static BQLCompiler compile(String bql, Map<String, Object> options, BQLOptimizerConfig config)
+            throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        return compiler;
+    }
+}
@@ -0,0 +1,204 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLCursor;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLOptimizerConfig;
+import io.baxian.bql.BQLSchemaCatalog;
+import io.baxian.bql.ElasticSearchQueryGenerator;
+import io.baxian.bql.InvalidOptionException;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeysetPaginationTest {
+
+    @Test
+    public void firstPage() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("offset", 0);
+        options.put("count", 20);
+
+        BQLCompiler compiler = compile("select id from t where status = 1 order by id asc limit :offset, :count",
+                options, null);
+        assertEquals("SELECT `id` FROM `t` WHERE `status` = 1 ORDER BY `id` ASC LIMIT ?, ?", compiler.output());
+        assertEquals(Arrays.asList("id"), compiler.getKeysetColumns());
+    }
+
+    @Test
+    public void singleKey() throws BQLException {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("ID", 100L);
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("offset", 1000000);
+        options.put("count", 20);
+        options.put("cursor", compile("select id from t order by id asc", null, null).nextCursor(row));
+
+        BQLCompiler compiler = compile("select id from t where status = 1 order by id asc limit :offset, :count",
+                options, null);
+        assertEquals("SELECT `id` FROM `t` WHERE `status` = 1 AND `id` > ? ORDER BY `id` ASC LIMIT ?",
+                compiler.output());
+        assertEquals(Arrays.<Object>asList(100L, 20), values(compiler.getOptions()));
+
+        compiler = compile("select id from t order by id desc limit 10", options, null);
+        assertEquals("SELECT `id` FROM `t` WHERE `id` < ? ORDER BY `id` DESC LIMIT 10", compiler.output());
+    }
+
+    @Test
+    public void keyWithTiebreaker() throws BQLException {
+        Timestamp time = Timestamp.valueOf("2024-01-02 03:04:05.123456789");
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("cursor", BQLCursor.encode(Arrays.asList("created", "id"), Arrays.<Object>asList(time, 7)));
+        options.put("a", 1);
+        options.put("b", 2);
+
+        BQLCompiler compiler = compile("select id from t where a = :a or b = :b order by created desc, id asc limit 2, 10",
+                options, null);
+        assertEquals("SELECT `id` FROM `t` WHERE (`a` = ? OR `b` = ?)"
+                + " AND `created` <= ? AND (`created` < ? OR `created` = ? AND `id` > ?)"
+                + " ORDER BY `created` DESC, `id` ASC LIMIT 10", compiler.output());
+        assertEquals(Arrays.<Object>asList(1, 2, time, time, time, 7), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void cursorRoundTrip() throws BQLException {
+        List<Object> values = Arrays.<Object>asList(1, 2L, 1.5, new BigDecimal("3.14"), "\u4e2d\u6587", true, 7);
+        List<String> columns = Arrays.asList("a", "b", "c", "d", "e", "f", "id");
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("cursor", BQLCursor.encode(columns, values));
+        BQLCompiler compiler = compile("select id from t order by a asc, b asc, c asc, d asc, e asc, f asc, id asc",
+                options, null);
+        List<Object> bound = values(compiler.getOptions());
+        assertEquals(values, bound.subList(bound.size() - values.size(), bound.size()));
+    }
+
+    @Test
+    public void nextCursor() throws BQLException {
+        BQLCompiler compiler = compile("select id from t order by created desc, id asc", null, null);
+
+        // 大小写不同的同名列取第一个
+        Map<String, Object> row = new LinkedHashMap<String, Object>();
+        row.put("CREATED", 10);
+        row.put("Created", 20);
+        row.put("id", 3);
+        assertEquals(BQLCursor.encode(Arrays.asList("created", "id"), Arrays.<Object>asList(10, 3)),
+                compiler.nextCursor(row));
+
+        row.put("id", null);
+        try {
+            compiler.nextCursor(row);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("column id "));
+        }
+    }
+
+    @Test
+    public void invalidCursor() throws BQLException {
+        assertInvalid("not a cursor!");
+        assertInvalid(BQLCursor.encode(Arrays.asList("name"), Arrays.<Object>asList("x")));
+        assertInvalid(BQLCursor.encode(Arrays.asList("id", "name"), Arrays.<Object>asList(1, "x")));
+    }
+
+    @Test
+    public void offsetWithoutUniqueKey() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("cursor", BQLCursor.encode(Arrays.asList("created"), Arrays.<Object>asList(1)));
+        BQLCompiler compiler = compile("select id from t order by created desc limit 20, 10", options, null);
+        assertEquals("SELECT `id` FROM `t` ORDER BY `created` DESC LIMIT 20, 10", compiler.output());
+        assertNull(compiler.getKeysetColumns());
+
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setKeysetCursorOption("cursor");
+        compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile("select id from t order by id asc limit 20, 10");
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        assertEquals("SELECT `id` FROM `t` ORDER BY `id` ASC LIMIT 20, 10", compiler.output());
+        assertNull(compiler.getKeysetColumns());
+    }
+
+    @Test
+    public void requiresUniqueKey() throws BQLException {
+        BQLSchemaCatalog catalog = new BQLSchemaCatalog();
+        catalog.load("CREATE TABLE t (id int, day int, status int, PRIMARY KEY (id), KEY (day));");
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("cursor", BQLCursor.encode(Arrays.asList("day"), Arrays.<Object>asList(1)));
+        BQLCompiler compiler = compile("select id from t order by day asc limit 20, 10", options, catalog);
+        assertEquals("SELECT `id` FROM `t` ORDER BY `day` ASC LIMIT 20, 10", compiler.output());
+        assertNull(compiler.getKeysetColumns());
+
+        options.put("cursor", BQLCursor.encode(Arrays.asList("day", "id"), Arrays.<Object>asList(1, 5)));
+        compiler = compile("select id from t order by day asc, id asc limit 20, 10", options, catalog);
+        assertEquals("SELECT `id` FROM `t` WHERE `day` >= ? AND (`day` > ? OR `day` = ? AND `id` > ?)"
+                + " ORDER BY `day` ASC, `id` ASC LIMIT 10", compiler.output());
+    }
+
+    @Test
+    public void elasticSearch() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("cursor", BQLCursor.encode(Arrays.asList("id"), Arrays.<Object>asList(5)));
+
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setKeysetCursorOption("cursor");
+        config.setKeysetUniqueKey("id");
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile("select id from t where a = 1 order by id asc");
+        compiler.optimize(options);
+        compiler.generate(new ElasticSearchQueryGenerator(options));
+        assertEquals("a:1 AND id:>5", compiler.output());
+    }
+
+    private static void assertInvalid(String cursor) throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("cursor", cursor);
+        try {
+            compile("select id from t order by id asc", options, null);
+            fail();
+        } catch (InvalidOptionException e) {
+            // 游标无效
+        }
+    }
+
+    private static List<Object> values(List<BQLOption> options) {
+        List<Object> values = new ArrayList<Object>();
+        for (BQLOption option : options) {
+            values.add(option.getValue());
+        }
+        return values;
+    }
+
+    private static BQLCompiler compile(String bql, Map<String, Object> options, BQLSchemaCatalog catalog)
+            throws BQLException {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setKeysetCursorOption("cursor");
+        config.setKeysetUniqueKey("id");
+        config.setSchemaCatalog(catalog);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        return compiler;
+    }
+}
@@ -0,0 +1,184 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLLexer;
+import io.baxian.bql.framework.lexer.Lexer;
+import io.baxian.bql.framework.node.EOF;
+import io.baxian.bql.framework.node.TBlanks;
+import io.baxian.bql.framework.node.Token;
+import io.baxian.bql.framework.parser.Parser;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 和SableCC生成的Lexer对比token序列。
+ */
+public class LexerTest {
+
+    private static final List<String> EDGE_CASES = Arrays.asList(
+            "",
+            " \t\r\n ",
+            "select a from t where a = -1",
+            "a-1", "a - 1", "-", "-a", "-0", "-0.5", "-01", "-0x1", "-0x", "-1e+5",
+            "0", "00", "012", "0129", "0x1f", "0x0", "0X12", "0x", "1.", "1.5", "00.5", "1.2.3",
+            "1e+5", "1.5e+5", "1.55E-10", "12e+5", "1e5", "1e+", "0.5e+1", "1.5e",
+            "'abc'", "''", "'it\\'s'", "'a\\b'", "'unterminated", "'x\\", "'\\'", "'a' 'b'",
+            "'\n\r", "'\n\r\n", "'a\r", "a\r\nb\n\rc\r\r\nd", "a\n\nb\r\rc",
+            "Select SELECT select sElect selects _a a_b a1 A1",
+            "< <= << <> > >= >> != = <<= >>=",
+            "~ ^ | & % / * + - . , : ` ( )",
+            "true FALSE like into INTO duplicate KEY distinct partitionx",
+            "!x", "!", "a # b", "a\n  !", "select \"a\"", "select a from t where b = ?",
+            "select \u540d\u5b57 from t");
+
+    @Test
+    public void statements() throws Exception {
+        for (String bql : readStatements()) {
+            assertSameTokens(bql);
+            assertSameParse(bql);
+        }
+    }
+
+    @Test
+    public void edgeCases() throws Exception {
+        for (String bql : EDGE_CASES) {
+            assertSameTokens(bql);
+            assertSameParse(bql);
+        }
+    }
+
+    @Test
+    public void syntaxErrorBeforeUnknownToken() throws Exception {
+        // 语法错误在前时先报告语法错误
+        assertSameParse("select from t where # a");
+        assertSameParse("select a from t where a = 1 #");
+    }
+
+    @Test
+    public void views() {
+        BQLLexer lexer = BQLLexer.tokenize("select `id` from users where id = 0x10".toCharArray());
+
+        assertNull(lexer.getError());
+        assertEquals(17, lexer.size());
+        assertEquals(BQLLexer.SELECT, lexer.getType(0));
+        assertEquals(BQLLexer.BLANKS, lexer.getType(1));
+        assertEquals(BQLLexer.QUOTE, lexer.getType(2));
+        assertEquals(BQLLexer.IDENTIFIER, lexer.getType(3));
+        assertEquals(8, lexer.getOffset(3));
+        assertEquals(2, lexer.getLength(3));
+        assertEquals(BQLLexer.HEX, lexer.getType(16));
+        assertEquals("0x10", lexer.getText(16));
+        assertEquals(35, lexer.getPos(16));
+    }
+
+    private void assertSameTokens(String bql) throws Exception {
+        List<String> expected = new ArrayList<String>();
+        List<String> blanks = new ArrayList<String>();
+        Lexer sableccLexer = newSableCCLexer(bql);
+        try {
+            while (true) {
+                Token token = sableccLexer.next();
+                if (token instanceof TBlanks) {
+                    blanks.add(describe(token));
+                    continue;
+                }
+
+                expected.add(describe(token));
+                if (token instanceof EOF) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            expected.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+
+        BQLLexer tokens = BQLLexer.tokenize(bql);
+        List<String> actual = new ArrayList<String>();
+        Lexer lexer = tokens.toLexer();
+        try {
+            while (true) {
+                Token token = lexer.next();
+                actual.add(describe(token));
+                if (token instanceof EOF) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            actual.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+
+        assertEquals(bql, expected, actual);
+
+        // 空白不交给parser，但仍然按原样保留在token序列中
+        List<String> actualBlanks = new ArrayList<String>();
+        StringBuilder covered = new StringBuilder();
+        for (int i = 0; i < tokens.size(); ++i) {
+            assertEquals(bql, covered.length(), tokens.getOffset(i));
+            covered.append(tokens.getText(i));
+
+            if (tokens.getType(i) == BQLLexer.BLANKS) {
+                actualBlanks.add("TBlanks(" + tokens.getText(i) + ")@" + tokens.getLine(i) + ":" + tokens.getPos(i));
+            }
+        }
+        assertEquals(bql, blanks, actualBlanks);
+        if (tokens.getError() == null) {
+            assertEquals(bql, covered.toString());
+        }
+    }
+
+    private void assertSameParse(String bql) {
+        String expected;
+        try {
+            Lexer lexer = newSableCCLexer(bql);
+            expected = new Parser(lexer).parse().toString();
+        } catch (Exception e) {
+            expected = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+        String actual;
+        try {
+            actual = new Parser(BQLLexer.tokenize(bql).toLexer()).parse().toString();
+        } catch (Exception e) {
+            actual = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+        assertEquals(bql, expected, actual);
+    }
+
+    private static Lexer newSableCCLexer(String bql) {
+        // 默认的PushbackReader只能退回一个字符，"-0x"、没有结束的字符串等需要多读几个字符的输入会抛出
+        // Pushback buffer overflow，对比时按grammar本来的语义处理
+        return new Lexer(new PushbackReader(new BufferedReader(new StringReader(bql)), bql.length() + 1));
+    }
+
+    private static String describe(Token token) {
+        return token.getClass().getSimpleName() + "(" + token.getText() + ")@" + token.getLine() + ":" + token.getPos();
+    }
+
+    static List<String> readStatements() throws Exception {
+        List<String> statements = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                LexerTest.class.getResourceAsStream("/statements.bql"), Charset.forName("UTF-8")));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    statements.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return statements;
+    }
+}
@@ -4,12 +4,16 @@ import io.baxian.bql.BQLColumn;
 import io.baxian.bql.BQLCompiler;
 import io.baxian.bql.BQLException;
 import io.baxian.bql.BQLMetadata;
+import io.baxian.bql.BQLPlanCache;
+import io.baxian.bql.BQLStatementType;
 import org.junit.Test;
 
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 public class MetadataTest {
 
@@ -22,6 +26,7 @@ public class MetadataTest {
 
         BQLMetadata metadata = compiler.getMetadata();
         assertEquals("logs", metadata.getTable());
+        assertEquals(BQLStatementType.DELETE, metadata.getStatementType());
     }
 
     @Test
@@ -34,6 +39,7 @@ public class MetadataTest {
         BQLMetadata metadata = compiler.getMetadata();
 
         assertEquals("logs", metadata.getTable());
+        assertEquals(BQLStatementType.INSERT, metadata.getStatementType());
     }
 
     @Test
@@ -46,6 +52,7 @@ public class MetadataTest {
         BQLMetadata metadata = compiler.getMetadata();
 
         assertEquals("logs", metadata.getTable());
+        assertEquals(BQLStatementType.UPDATE, metadata.getStatementType());
     }
 
     @Test
@@ -57,6 +64,7 @@ public class MetadataTest {
 
         BQLMetadata metadata = compiler.getMetadata();
         assertEquals("users", metadata.getTable());
+        assertEquals(BQLStatementType.SELECT, metadata.getStatementType());
 
         List<BQLColumn> columns = metadata.getColumns();
         assertEquals(3, columns.size());
@@ -76,26 +84,24 @@ public class MetadataTest {
         assertNull(ageColumn.getTable());
         assertNull(ageColumn.getAlias());
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    @Test
+    public void sharedReadOnly() throws BQLException {
+        String bql = "select id, name from users";
+        BQLPlanCache cache = new BQLPlanCache();
+
+        BQLCompiler first = new BQLCompiler(cache);
+        first.compile(bql);
+        try {
+            first.getMetadata().getColumns().clear();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // 编译缓存中的metadata被多个compiler共享
+        }
+
+        BQLCompiler second = new BQLCompiler(cache);
+        second.compile(bql);
+        assertSame(first.getMetadata(), second.getMetadata());
+        assertEquals(2, second.getMetadata().getColumns().size());
+    }
+}
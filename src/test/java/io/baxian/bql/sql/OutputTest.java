@@ -0,0 +1,134 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLDialect;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.ElasticSearchQueryGenerator;
+import io.baxian.bql.PreparedBQL;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class OutputTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void appendable() throws Exception {
+        String bql = largeInsert();
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile(bql);
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+
+        StringBuilder builder = new StringBuilder("-- ");
+        compiler.output(builder);
+
+        StringWriter writer = new StringWriter();
+        compiler.output(writer);
+
+        String expected = compiler.output();
+        assertEquals("-- " + expected, builder.toString());
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void byteBuffer() throws Exception {
+        // 中文、4字节的emoji和不成对的代理字符
+        String bql = "select id from users where name = '\u540d\u5b57' and icon = '\ud83d\ude00' and bad = '\ud800'";
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile(bql);
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+        byte[] expected = compiler.output().getBytes(UTF_8);
+
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(256), ByteBuffer.allocateDirect(256)}) {
+            buffer.put((byte) 1);
+            compiler.output(buffer);
+            buffer.flip();
+
+            assertEquals(1, buffer.get());
+            byte[] actual = new byte[buffer.remaining()];
+            buffer.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void byteBufferOverflow() throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile("select id from users");
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        buffer.put((byte) 1);
+        try {
+            compiler.output(buffer);
+            fail();
+        } catch (BufferOverflowException e) {
+            assertEquals(1, buffer.position());
+        }
+    }
+
+    @Test
+    public void elasticSearch() throws Exception {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("name", "bql");
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile("select id from users where id = 1 and name = :name");
+        compiler.optimize(options);
+        ElasticSearchQueryGenerator generator = new ElasticSearchQueryGenerator(options);
+        compiler.generate(generator);
+
+        StringWriter writer = new StringWriter();
+        generator.render(writer);
+        assertEquals("id:1 AND name:bql", writer.toString());
+    }
+
+    @Test
+    public void preparedToWriter() throws BQLException, IOException {
+        PreparedBQL prepared = new PreparedBQL(BQLPlan.compile("select id from users where id = :id and name = :name"));
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("id", 1);
+
+        StringWriter writer = new StringWriter();
+        List<BQLOption> values = new ArrayList<BQLOption>();
+        prepared.render(options, BQLDialect.MYSQL, writer, values);
+        assertEquals("SELECT `id` FROM `users` WHERE `id` = ?", writer.toString());
+        assertEquals(1, values.size());
+
+        options.put("name", "bql");
+        writer = new StringWriter();
+        prepared.render(options, BQLDialect.ELASTICSEARCH, writer, values);
+        assertEquals("id:1 AND name:bql", writer.toString());
+    }
+
+    private static String largeInsert() {
+        StringBuilder bql = new StringBuilder("insert into users (id, name) values ");
+        for (int i = 0; i < 200; ++i) {
+            if (i > 0) {
+                bql.append(", ");
+            }
+            bql.append('(').append(i).append(", 'user").append(i).append("')");
+        }
+        return bql.toString();
+    }
+}
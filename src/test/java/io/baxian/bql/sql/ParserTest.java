@@ -0,0 +1,169 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLParserType;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.SQLGenerator;
+import io.baxian.bql.SyntaxException;
+import io.baxian.bql.framework.analysis.DepthFirstAdapter;
+import io.baxian.bql.framework.node.Node;
+import io.baxian.bql.framework.node.Token;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 手写parser和SableCC生成的parser对比语法树。
+ */
+public class ParserTest {
+
+    private static final List<String> STATEMENTS = Arrays.asList(
+            "select a from t where a = 1 + 2 * 3 - 4 / 5 % 6",
+            "select a from t where a = 1 << 2 | 3 ^ 4 & 5 >> 6 + 7",
+            "select a from t where a - b - c = a / b / c",
+            "select a from t where (a + 1) * 2 = ((b))",
+            "select a from t where ((a = 1)) and (b = 2 or (c = 3))",
+            "select a from t where (a) = 1 and not (b = 2 or c = 3)",
+            "select a from t where not not a = 1 or b = 2 and c = 3",
+            "select a from t where not a in (1, 2) and b not in (:ids) and c is not null and d is :p",
+            "select a from t where a between 1 + 1 and 2 and b between :l and :r",
+            "select a from t where a.b.c = `d`.e and :p = 1 and 'x' != b and 1.5e+3 <> -0.5",
+            "select distinct a as x, distinct b, c as `y`, count(a, t.b) as n from s.t as u",
+            "select a from t partition (p0, :p) where a = 0x1 and b = 012 group by a, t.b order by a desc, b asc limit 10",
+            "select a from t limit :offset, :count",
+            "delete t where a = 1",
+            "DELETE FROM t LIMIT 1",
+            "update t set a = a + 1, t.b = null where c = 'x' limit :n",
+            "insert into s.t (a, `b`) values (1, :b), (2 + 3, null) on duplicate key update a = a + 1, b = :b",
+            "select a from t where a = 1 and # b = 2");
+
+    private static final List<String> ERRORS = Arrays.asList(
+            "",
+            "select",
+            "select from t",
+            "select a from",
+            "select a from t where",
+            "select a from t where a",
+            "select a from t where a = ",
+            "select a from t where a = 1 and",
+            "select a from t where (a = 1",
+            "select a from t where (a + 1",
+            "select a from t where (a) and b = 1",
+            "select a from t where (a + ) = 1",
+            "select a from t where a = (b = 1)",
+            "select a from t where (a + 1 = 2) = 3",
+            "select a from t where a between 1 or 2",
+            "select a from t where a not between 1 and 2",
+            "select a from t where a is not",
+            "select count(a) from t",
+            "select distinct count(a) as n from t",
+            "select a from t order by a",
+            "select a from t group a",
+            "select a from t limit 1.5",
+            "select a from t limit 1, 2, 3",
+            "select a from t partition ()",
+            "select a from t partition (`p`)",
+            "select a from t where a = :",
+            "select a from t where a = :1",
+            "delete from t where a = 1 extra",
+            "update t a = 1",
+            "update t set a",
+            "insert t (a) values (1)",
+            "insert into t a values (1)",
+            "insert into t (a) values ()",
+            "insert into t (a) values (1) on duplicate update a = 1",
+            "select a from t where a = 1 #",
+            "select from t where # a",
+            "select a from t where a = 'x");
+
+    @Test
+    public void statements() throws Exception {
+        for (String bql : LexerTest.readStatements()) {
+            assertSameAst(bql);
+        }
+    }
+
+    @Test
+    public void operators() throws Exception {
+        for (String bql : STATEMENTS) {
+            assertSameAst(bql);
+        }
+    }
+
+    @Test
+    public void errors() throws Exception {
+        for (String bql : ERRORS) {
+            assertSameAst(bql);
+        }
+    }
+
+    @Test
+    public void compilerOption() throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setParserType(BQLParserType.RECURSIVE_DESCENT);
+        compiler.compile("select id from users where id in (:ids) and (a + 1) * 2 > 3");
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+
+        assertEquals("SELECT `id` FROM `users` WHERE (`a` + 1) * 2 > 3", compiler.output());
+    }
+
+    @Test(expected = SyntaxException.class)
+    public void syntaxError() throws BQLException {
+        BQLPlan.compile("select a from t where", BQLParserType.RECURSIVE_DESCENT);
+    }
+
+    private void assertSameAst(String bql) {
+        String expected = parse(bql, BQLParserType.SABLECC);
+        String actual = parse(bql, BQLParserType.RECURSIVE_DESCENT);
+
+        if (expected.contains("] expecting: ")) {
+            // 出错位置相同，期望的token列表不一定相同
+            assertTrue(bql + ": " + actual, actual.contains("] expecting: "));
+            assertEquals(bql, errorPosition(expected), errorPosition(actual));
+        } else {
+            assertEquals(bql, expected, actual);
+        }
+    }
+
+    private static String parse(String bql, BQLParserType parserType) {
+        try {
+            AstDumper dumper = new AstDumper();
+            BQLPlan.compile(bql, parserType).getAst().apply(dumper);
+            return dumper.dump.toString();
+        } catch (BQLException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String errorPosition(String message) {
+        return message.substring(message.indexOf('['), message.indexOf(']') + 1);
+    }
+
+    private static class AstDumper extends DepthFirstAdapter {
+
+        private final StringBuilder dump = new StringBuilder();
+
+        @Override
+        public void defaultIn(Node node) {
+            dump.append('(').append(node.getClass().getSimpleName());
+        }
+
+        @Override
+        public void defaultOut(Node node) {
+            dump.append(')');
+        }
+
+        @Override
+        public void defaultCase(Node node) {
+            Token token = (Token) node;
+            dump.append(' ').append(token.getClass().getSimpleName()).append('[').append(token.getText())
+                    .append("]@").append(token.getLine()).append(':').append(token.getPos());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOptimizerConfig;
+import io.baxian.bql.BQLPartitionCatalog;
+import io.baxian.bql.BQLPartitioning;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionPruningTest {
+
+    // 和utf8mb4_general_ci一样不区分大小写，比较时忽略末尾的空格
+    private static final Comparator<String> CASE_INSENSITIVE_PAD_SPACE = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            return String.CASE_INSENSITIVE_ORDER.compare(trimTrailing(a), trimTrailing(b));
+        }
+
+        private String trimTrailing(String text) {
+            int end = text.length();
+            while (end > 0 && text.charAt(end - 1) == ' ') {
+                --end;
+            }
+            return text.substring(0, end);
+        }
+    };
+
+    private static final BQLPartitionCatalog CATALOG = new BQLPartitionCatalog();
+
+    static {
+        CATALOG.setPartitioning("orders", BQLPartitioning.range("day")
+                .lessThan("p2022", 20230101)
+                .lessThan("p2023", 20240101)
+                .lessThan("p2024", 20250101)
+                .lessThan("pmax", null));
+        CATALOG.setPartitioning("users", BQLPartitioning.list("region")
+                .values("east", 1, 2)
+                .values("west", 3, 4)
+                .values("other", 5));
+        CATALOG.setPartitioning("logs", BQLPartitioning.list("level")
+                .collation(CASE_INSENSITIVE_PAD_SPACE)
+                .values("low", "debug", "info")
+                .values("high", "warn", "error"));
+        CATALOG.setPartitioning("shops", BQLPartitioning.list("region")
+                .values("east", "east", "north")
+                .values("west", "west"));
+        CATALOG.setPartitioning("db.events", BQLPartitioning.hash("user_id", 4));
+    }
+
+    @Test
+    public void range() throws BQLException {
+        assertPruned(" PARTITION (`p2023`)", "orders", "day = 20230615");
+        assertPruned(" PARTITION (`p2023`, `p2024`)", "orders", "day between 20230101 and 20240301");
+        assertPruned(" PARTITION (`p2022`)", "orders", "day < 20230101");
+        assertPruned(" PARTITION (`p2022`, `p2023`)", "orders", "day <= 20230101");
+        assertPruned(" PARTITION (`p2024`, `pmax`)", "orders", "day >= 20240101");
+        assertPruned(" PARTITION (`p2024`, `pmax`)", "orders", "20240101 <= day");
+        assertPruned(" PARTITION (`p2023`)", "orders", "day >= 20230101 and day < 20240101 and status = 1");
+        assertPruned(" PARTITION (`p2022`, `pmax`)", "orders", "day in (20220101, 20990101) or day = 20221231");
+        assertPruned("", "orders", "day > 20230101 or status = 1");
+        assertPruned("", "orders", "day != 20230101");
+        assertPruned("", "orders", "not day = 20230101");
+    }
+
+    @Test
+    public void list() throws BQLException {
+        assertPruned(" PARTITION (`west`)", "users", "region = 3");
+        assertPruned(" PARTITION (`east`, `other`)", "users", "region in (1, 5)");
+        assertPruned(" PARTITION (`west`, `other`)", "users", "region > 3");
+        assertPruned(" PARTITION (`high`)", "logs", "level = 'warn'");
+        assertPruned("", "logs", "level = 1");
+    }
+
+    @Test
+    public void stringCollation() throws BQLException {
+        // 没有指定collation时不按字符串裁剪，MySQL的比较可能不区分大小写、忽略末尾的空格
+        assertPruned("", "shops", "region = 'east'");
+        assertPruned("", "shops", "region = 'EAST'");
+        assertPruned("", "shops", "region = 'east '");
+        assertPruned("", "shops", "region in ('west', 'north')");
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("r", "EAST");
+        BQLCompiler compiler = compile("select id from shops where region = :r", options);
+        assertEquals("SELECT `id` FROM `shops` WHERE `region` = ?", compiler.output());
+        assertFalse(compiler.isProvablyEmpty());
+
+        assertPruned(" PARTITION (`high`)", "logs", "level = 'WARN'");
+        assertPruned(" PARTITION (`low`)", "logs", "level = 'info '");
+        assertPruned(" PARTITION (`low`)", "logs", "level in ('Debug', 'INFO ')");
+
+        options.put("levels", Arrays.asList("Warn", "error  "));
+        compiler = compile("select id from logs where level in (:levels)", options);
+        assertEquals("SELECT `id` FROM `logs` PARTITION (`high`) WHERE `level` IN (?, ?)", compiler.output());
+    }
+
+    @Test
+    public void alias() throws BQLException {
+        BQLCompiler compiler = compile("select o.id from orders as o where o.day = 20230615", null);
+        assertEquals("SELECT `o`.`id` FROM `orders` PARTITION (`p2023`) AS `o` WHERE `o`.`day` = 20230615",
+                compiler.output());
+    }
+
+    @Test
+    public void hash() throws BQLException {
+        assertPruned(" PARTITION (`p2`)", "db.events", "user_id = 10");
+        assertPruned(" PARTITION (`p1`, `p3`)", "db.events", "user_id in (5, 7, 9)");
+        assertPruned(" PARTITION (`p0`, `p1`, `p2`)", "db.events", "user_id between 8 and 10");
+        assertPruned("", "db.events", "user_id > 8");
+        assertPruned("", "db.events", "user_id = 1.5");
+        // 没有schema时不匹配db.events
+        BQLCompiler compiler = compile("select id from events where user_id = 10", null);
+        assertEquals("SELECT `id` FROM `events` WHERE `user_id` = 10", compiler.output());
+    }
+
+    @Test
+    public void boundOptions() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("start", 20230301L);
+        options.put("end", 20240301L);
+        options.put("regions", Arrays.asList(4, 5));
+
+        BQLCompiler compiler = compile("select id from orders where day between :start and :end", options);
+        assertEquals("SELECT `id` FROM `orders` PARTITION (`p2023`, `p2024`) WHERE `day` BETWEEN ? AND ?", compiler.output());
+        assertEquals(2, compiler.getOptions().size());
+
+        compiler = compile("select id from users where region in (:regions)", options);
+        assertEquals("SELECT `id` FROM `users` PARTITION (`west`, `other`) WHERE `region` IN (?, ?)", compiler.output());
+
+        // 参数不存在时条件被去掉，所有分区都可能用到
+        compiler = compile("select id from orders where day = :missing", options);
+        assertEquals("SELECT `id` FROM `orders`", compiler.output());
+    }
+
+    @Test
+    public void explicitPartitions() throws BQLException {
+        BQLCompiler compiler = compile("select id from orders partition (p2022) where day = 20230615", null);
+        assertEquals("SELECT `id` FROM `orders` PARTITION (p2022) WHERE `day` = 20230615", compiler.output());
+        assertFalse(compiler.isProvablyEmpty());
+    }
+
+    @Test
+    public void provablyEmpty() throws BQLException {
+        BQLCompiler compiler = compile("select id from users where region = 9", null);
+        assertEquals("SELECT `id` FROM `users` WHERE `region` = 9", compiler.output());
+        assertTrue(compiler.isProvablyEmpty());
+
+        compiler = compile("select id from users where region = 1 and region = 3", null);
+        assertTrue(compiler.isProvablyEmpty());
+    }
+
+    @Test
+    public void disabledByDefault() throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile("select id from orders where day = 20230615");
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+        assertEquals("SELECT `id` FROM `orders` WHERE `day` = 20230615", compiler.output());
+    }
+
+    private static void assertPruned(String partitions, String table, String condition) throws BQLException {
+        BQLCompiler compiler = compile("select id from " + table + " where " + condition, null);
+        String output = compiler.output();
+        String prefix = "SELECT `id` FROM " + quote(table) + partitions + " WHERE ";
+        assertTrue(output, output.startsWith(prefix));
+        assertFalse(output, compiler.isProvablyEmpty());
+    }
+
+    private static String quote(String table) {
+        return "`" + table.replace(".", "`.`") + "`";
+    }
+
+    private static BQLCompiler compile(String bql, Map<String, Object> options) throws BQLException {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setPartitionCatalog(CATALOG);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        return compiler;
+    }
+}
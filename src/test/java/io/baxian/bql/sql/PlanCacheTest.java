@@ -0,0 +1,136 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLPlanCache;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlanCacheTest {
+
+    @Test
+    public void hitAndMiss() throws BQLException {
+        BQLPlanCache cache = new BQLPlanCache(16);
+
+        BQLCompiler first = new BQLCompiler(cache);
+        first.compile("select id from users where id = :id");
+
+        BQLCompiler second = new BQLCompiler(cache);
+        second.compile("select id from users where id = :id");
+
+        assertSame(first.getPlan(), second.getPlan());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals("users", second.getMetadata().getTable());
+    }
+
+    @Test
+    public void eviction() throws BQLException {
+        BQLPlanCache cache = new BQLPlanCache(2);
+
+        BQLCompiler compiler = new BQLCompiler(cache);
+        compiler.compile("select a from t1");
+        compiler.compile("select a from t2");
+        compiler.compile("select a from t3");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void sharedPlanIsNotModified() throws BQLException {
+        BQLPlanCache cache = new BQLPlanCache(16);
+        String bql = "select id, name from users partition (p0, :p) where id in (1, :ids) and name = :name";
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("name", "bql");
+
+        for (int i = 0; i < 3; ++i) {
+            BQLCompiler compiler = new BQLCompiler(cache);
+            compiler.compile(bql);
+            compiler.optimize(options);
+            compiler.generate(new SQLGenerator(options));
+
+            assertEquals("SELECT `id`, `name` FROM `users` PARTITION (p0) WHERE `id` IN (1) AND `name` = ?",
+                    compiler.output());
+        }
+    }
+
+    @Test
+    public void optimizeDoesNotModifyAst() throws BQLException {
+        BQLPlanCache cache = new BQLPlanCache(16);
+        String bql = "select id from users partition (:p) where id in (:ids) and (name = :name or age > 1) limit :count";
+
+        BQLCompiler compiler = new BQLCompiler(cache);
+        compiler.compile(bql);
+        String before = compiler.getPlan().getAst().toString();
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", new ArrayList<Integer>());
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+
+        assertEquals("SELECT `id` FROM `users` WHERE `age` > 1", compiler.output());
+        assertEquals(before, compiler.getPlan().getAst().toString());
+    }
+
+    @Test
+    public void concurrentCompile() throws Exception {
+        final BQLPlanCache cache = new BQLPlanCache(16);
+        final String bql = "select id from users where id in (:ids) and age > :age";
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 64; ++i) {
+                final int n = i;
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        List<Integer> ids = new ArrayList<Integer>();
+                        for (int j = 0; j <= n % 4; ++j) {
+                            ids.add(j);
+                        }
+
+                        Map<String, Object> options = new HashMap<String, Object>();
+                        options.put("ids", ids);
+                        options.put("age", 10);
+
+                        BQLCompiler compiler = new BQLCompiler(cache);
+                        compiler.compile(bql);
+                        compiler.optimize(options);
+                        compiler.generate(new SQLGenerator(options));
+                        return compiler.output();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); ++i) {
+                StringBuilder placeholders = new StringBuilder("?");
+                for (int j = 0; j < i % 4; ++j) {
+                    placeholders.append(", ?");
+                }
+                assertEquals("SELECT `id` FROM `users` WHERE `id` IN (" + placeholders + ") AND `age` > ?",
+                        futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, cache.size());
+        assertTrue(cache.getHitCount() + cache.getMissCount() == 64);
+    }
+}
@@ -0,0 +1,144 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLOptimizerConfig;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PredicateSimplificationTest {
+
+    @Test
+    public void mergeRanges() throws BQLException {
+        assertSimplified("`a` > 5", "a > 5 and a > 3");
+        assertSimplified("`a` >= 5", "a >= 5 and a > 3 and a >= 4");
+        assertSimplified("`a` > 5", "a >= 5 and a > 5");
+        assertSimplified("`a` > 3 AND `a` < 10", "a > 3 and a < 10 and a <= 10 and a >= 1");
+        assertSimplified("`a` = 5", "a = 5 and a > 3 and a <= 5 and a != 7");
+        assertSimplified("`a` BETWEEN 2 AND 4", "a between 2 and 4 and a >= 1 and a <= 4");
+        assertSimplified("`a` > 2 AND `a` BETWEEN 1 AND 4", "a > 2 and a between 1 and 4 and a < 6");
+        assertSimplified("5 < `a`", "5 < a and a > 3 and 1 < a");
+        assertSimplified("`a` > 5 AND `b` < 3", "a > 5 and b < 3 and a > 1 and b < 4");
+        assertSimplified("`a` > 5 AND `a` != 7", "a > 5 and a != 7 and a != 2");
+        assertSimplified("`a` = 3", "a >= 3 and a = 3 and a <= 3");
+    }
+
+    @Test
+    public void duplicates() throws BQLException {
+        assertSimplified("`name` = 'a' AND `b` IS NULL", "name = 'a' and b is null and name = 'a' and b is null");
+        assertSimplified("`name` = 'a' AND `name` = 'b'", "name = 'a' and name = 'b'");
+        assertSimplified("`a` = 1 OR `b` = 2", "a = 1 or b = 2 or a = 1");
+    }
+
+    @Test
+    public void untouched() throws BQLException {
+        assertSimplified("NOT (`a` = 1 OR `a` = 1)", "not (a = 1 or a = 1)");
+        assertSimplified("`a` > `b` AND `a` > 1", "a > b and a > 1");
+        assertSimplified("`a` = 0x10 AND `a` = 16", "a = 0x10 and a = 16");
+        assertSimplified("`a` > 5 OR `a` > 3", "a > 5 or a > 3");
+    }
+
+    @Test
+    public void contradictions() throws BQLException {
+        String[] conditions = {
+                "a = 1 and a = 2",
+                "a > 5 and a < 3",
+                "a > 5 and a <= 5",
+                "a = 5 and a != 5",
+                "a between 4 and 2",
+                "a = 1 and (b = 1 or b = 2) and a > 1",
+                "(a = 1 and a = 2) or (b > 2 and b < 1)",
+                "a = 1.5 and a = 3 / 2 and a = 2",
+        };
+        for (String condition : conditions) {
+            BQLCompiler compiler = compile("select id from t where " + condition, null);
+            assertTrue(condition, compiler.isProvablyEmpty());
+        }
+
+        // NOT下面的矛盾不能说明整个条件为空
+        assertFalse(compile("select id from t where not (a = 1 and a = 2)", null).isProvablyEmpty());
+
+        BQLCompiler compiler = compile("select id from t where a = 1 and a = 1.0", null);
+        assertFalse(compiler.isProvablyEmpty());
+        assertEquals("SELECT `id` FROM `t` WHERE `a` = 1", compiler.output());
+    }
+
+    @Test
+    public void dropContradictoryBranch() throws BQLException {
+        BQLCompiler compiler = compile("select id from t where (a = 1 and a = 2) or b = 3 or (c > 1 and c > 2)", null);
+        assertFalse(compiler.isProvablyEmpty());
+        assertEquals("SELECT `id` FROM `t` WHERE `b` = 3 OR `c` > 2", compiler.output());
+    }
+
+    @Test
+    public void boundOptions() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("x", 10);
+        options.put("y", 20L);
+        options.put("z", 15);
+        options.put("name", "bql");
+
+        BQLCompiler compiler = compile("select id from t where a > :x and name = :name and a > :y and a < :z + 10"
+                + " limit :x", options);
+        assertFalse(compiler.isProvablyEmpty());
+        assertEquals("SELECT `id` FROM `t` WHERE `name` = ? AND `a` > ? AND `a` < ? + 10 LIMIT ?", compiler.output());
+        assertEquals(Arrays.<Object>asList("bql", 20L, 15, 10), values(compiler.getOptions()));
+
+        options.put("y", 25);
+        compiler = compile("select id from t where a > :x and name = :name and a > :y and a < :z + 10", options);
+        assertTrue(compiler.isProvablyEmpty());
+
+        // 条件被删掉时绑定值也删掉
+        options.put("ids", Arrays.asList(1, 2));
+        compiler = compile("update t set a = :x where id in (:ids) and (b = 1 or b = 1) and id in (:ids)", options);
+        assertEquals("UPDATE `t` SET `a` = ? WHERE `id` IN (?, ?) AND `b` = 1", compiler.output());
+        assertEquals(Arrays.<Object>asList(10, 1, 2), values(compiler.getOptions()));
+    }
+
+    @Test
+    public void disabledByDefault() throws BQLException {
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.compile("select id from t where a = 1 and a = 2 and a = 1");
+        compiler.optimize(null);
+        compiler.generate(new SQLGenerator());
+        assertFalse(compiler.isProvablyEmpty());
+        assertEquals("SELECT `id` FROM `t` WHERE `a` = 1 AND `a` = 2 AND `a` = 1", compiler.output());
+    }
+
+    private static void assertSimplified(String expected, String condition) throws BQLException {
+        BQLCompiler compiler = compile("select id from t where " + condition, null);
+        assertFalse(condition, compiler.isProvablyEmpty());
+        assertEquals("SELECT `id` FROM `t` WHERE " + expected, compiler.output());
+    }
+
+    private static List<Object> values(List<BQLOption> options) {
+        List<Object> values = new ArrayList<Object>();
+        for (BQLOption option : options) {
+            values.add(option.getValue());
+        }
+        return values;
+    }
+
+    private static BQLCompiler compile(String bql, Map<String, Object> options) throws BQLException {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setPredicateSimplification(true);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        return compiler;
+    }
+}
@@ -0,0 +1,96 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQL;
+import io.baxian.bql.BQLDialect;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.MissingOptionException;
+import io.baxian.bql.PreparedBQL;
+import io.baxian.bql.RenderedBQL;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PreparedBQLTest {
+
+    private static final PreparedBQL SELECT_USERS;
+
+    static {
+        try {
+            SELECT_USERS = BQL.prepare("select id from users where id = :id and name = :name");
+        } catch (BQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Test
+    public void render() throws BQLException {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("id", 1);
+
+        RenderedBQL rendered = SELECT_USERS.render(options, BQLDialect.MYSQL);
+        assertEquals("SELECT `id` FROM `users` WHERE `id` = ?", rendered.getOutput());
+        assertEquals(1, rendered.getOptions().size());
+        assertEquals(1, rendered.getOptions().get(0).getValue());
+
+        options.put("name", "bql");
+        rendered = SELECT_USERS.render(options, BQLDialect.ELASTICSEARCH);
+        assertEquals("id:1 AND name:bql", rendered.getOutput());
+    }
+
+    @Test
+    public void prepareUsesPlanCache() throws BQLException {
+        PreparedBQL first = BQL.prepare("select id from users where id = :id and name = :name");
+        assertSame(SELECT_USERS.getPlan(), first.getPlan());
+        assertEquals("users", first.getMetadata().getTable());
+    }
+
+    @Test(expected = MissingOptionException.class)
+    public void missingOption() throws BQLException {
+        BQL.prepare("delete from users where id = :id").render(new HashMap<String, Object>());
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RenderedBQL>> futures = new ArrayList<Future<RenderedBQL>>();
+            for (int i = 0; i < 64; ++i) {
+                final int id = i;
+                futures.add(executor.submit(new Callable<RenderedBQL>() {
+                    @Override
+                    public RenderedBQL call() throws Exception {
+                        Map<String, Object> options = new HashMap<String, Object>();
+                        options.put("id", id);
+                        if (id % 2 == 0) {
+                            options.put("name", "n" + id);
+                        }
+                        return SELECT_USERS.render(options, BQLDialect.MYSQL);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); ++i) {
+                RenderedBQL rendered = futures.get(i).get();
+                if (i % 2 == 0) {
+                    assertEquals("SELECT `id` FROM `users` WHERE `id` = ? AND `name` = ?", rendered.getOutput());
+                    assertEquals("n" + i, rendered.getOptions().get(1).getValue());
+                } else {
+                    assertEquals("SELECT `id` FROM `users` WHERE `id` = ?", rendered.getOutput());
+                }
+                assertEquals(i, rendered.getOptions().get(0).getValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.BQLRenderCache;
+import io.baxian.bql.RenderedBQL;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RenderCacheTest {
+
+    @Test
+    public void sameSignatureDifferentValues() throws BQLException {
+        BQLPlan plan = BQLPlan.compile("select id from users where id in (:ids) and name = :name and age > :age limit :count");
+        BQLRenderCache cache = new BQLRenderCache();
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", Arrays.asList(1, 2));
+        options.put("name", "a");
+        options.put("count", 10);
+
+        RenderedBQL first = cache.render(plan, options);
+
+        options.put("ids", Arrays.asList(3, 4));
+        options.put("name", "b");
+        options.put("count", 20);
+
+        RenderedBQL second = cache.render(plan, options);
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals("SELECT `id` FROM `users` WHERE `id` IN (?, ?) AND `name` = ? LIMIT ?", second.getOutput());
+        assertEquals(first.getOutput(), second.getOutput());
+
+        List<BQLOption> values = second.getOptions();
+        assertEquals(4, values.size());
+        assertEquals("ids", values.get(0).getField());
+        assertEquals(3, values.get(0).getValue());
+        assertEquals(4, values.get(1).getValue());
+        assertEquals("name", values.get(2).getField());
+        assertEquals("b", values.get(2).getValue());
+        assertEquals("count", values.get(3).getField());
+        assertEquals(20, values.get(3).getValue());
+    }
+
+    @Test
+    public void differentSignatures() throws BQLException {
+        BQLPlan plan = BQLPlan.compile("select id from users where id in (:ids) and name = :name");
+        BQLRenderCache cache = new BQLRenderCache();
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", Arrays.asList(1, 2));
+        assertEquals("SELECT `id` FROM `users` WHERE `id` IN (?, ?)", cache.render(plan, options).getOutput());
+
+        options.put("ids", Arrays.asList(1, null, 3));
+        assertEquals("SELECT `id` FROM `users` WHERE `id` IN (?, NULL, ?)", cache.render(plan, options).getOutput());
+
+        options.put("name", null);
+        assertEquals("SELECT `id` FROM `users` WHERE `id` IN (?, NULL, ?) AND `name` = NULL",
+                cache.render(plan, options).getOutput());
+
+        options.remove("ids");
+        options.put("name", "a");
+        RenderedBQL rendered = cache.render(plan, options);
+        assertEquals("SELECT `id` FROM `users` WHERE `name` = ?", rendered.getOutput());
+        assertEquals("a", rendered.getOptions().get(0).getValue());
+
+        assertEquals(4, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void partitionsSkipNullElements() throws BQLException {
+        BQLPlan plan = BQLPlan.compile("select id from logs partition (:p) where id = :id");
+        BQLRenderCache cache = new BQLRenderCache();
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("p", Arrays.asList("p0", null, "p2"));
+        options.put("id", 1);
+        cache.render(plan, options);
+
+        options.put("p", Arrays.asList("p3", null, "p5"));
+        RenderedBQL rendered = cache.render(plan, options);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, rendered.getOptions().size());
+        assertEquals("p3", rendered.getOptions().get(0).getValue());
+        assertEquals("p5", rendered.getOptions().get(1).getValue());
+        assertEquals(1, rendered.getOptions().get(2).getValue());
+    }
+
+    @Test
+    public void isNull() throws BQLException {
+        BQLPlan plan = BQLPlan.compile("select id from users where id is :p");
+        BQLRenderCache cache = new BQLRenderCache();
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("p", null);
+
+        cache.render(plan, options);
+        RenderedBQL rendered = cache.render(plan, options);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals("SELECT `id` FROM `users` WHERE `id` IS NULL", rendered.getOutput());
+        assertEquals(1, rendered.getOptions().size());
+        assertNull(rendered.getOptions().get(0).getValue());
+    }
+}
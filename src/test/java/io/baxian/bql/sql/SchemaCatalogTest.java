@@ -0,0 +1,185 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLCompiler;
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLIndex;
+import io.baxian.bql.BQLIndexHint;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLOptimizerConfig;
+import io.baxian.bql.BQLSchemaCatalog;
+import io.baxian.bql.BQLTableSchema;
+import io.baxian.bql.SQLGenerator;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaCatalogTest {
+
+    private static final String DDL = "-- orders\n"
+            + "CREATE TABLE IF NOT EXISTS `orders` (\n"
+            + "  `id` bigint(20) NOT NULL AUTO_INCREMENT,\n"
+            + "  `user_id` bigint(20) NOT NULL,\n"
+            + "  `day` int(11) NOT NULL DEFAULT '0' COMMENT 'key (day)',\n"
+            + "  `status` tinyint(4) NOT NULL,\n"
+            + "  `no` varchar(32) NOT NULL,\n"
+            + "  PRIMARY KEY (`id`),\n"
+            + "  UNIQUE KEY `uk_no` (`no`),\n"
+            + "  KEY `idx_user_day` (`user_id`, `day` DESC),\n"
+            + "  KEY (`status`),\n"
+            + "  CONSTRAINT `fk_user` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='orders; all';\n"
+            + "/* users */\n"
+            + "CREATE TABLE shop.users (id int PRIMARY KEY, name varchar(20), email varchar(64) UNIQUE);\n"
+            + "CREATE INDEX idx_name ON shop.users (name(10), email);\n"
+            + "INSERT INTO orders VALUES (1);\n";
+
+    @Test
+    public void loadDdl() throws Exception {
+        BQLSchemaCatalog catalog = new BQLSchemaCatalog();
+        catalog.load(new StringReader(DDL));
+
+        BQLTableSchema orders = catalog.getTable(null, "ORDERS");
+        assertEquals(Arrays.asList("id", "user_id", "day", "status", "no"), orders.getColumns());
+        assertEquals(Arrays.asList("PRIMARY", "uk_no", "idx_user_day", "status"), indexNames(orders));
+        assertTrue(orders.getIndex("primary").isPrimary());
+        assertTrue(orders.getIndex("uk_no").isUnique());
+        assertEquals(Arrays.asList("user_id", "day"), orders.getIndex("idx_user_day").getColumns());
+        assertEquals(orders, catalog.getTable("shop", "orders"));
+
+        BQLTableSchema users = catalog.getTable("shop", "users");
+        assertEquals("shop", users.getSchema());
+        assertEquals(Arrays.asList("id", "name", "email"), users.getColumns());
+        assertEquals(Arrays.asList("PRIMARY", "email", "idx_name"), indexNames(users));
+        assertEquals(Arrays.asList("name", "email"), users.getIndex("idx_name").getColumns());
+        assertNull(catalog.getTable(null, "users"));
+    }
+
+    @Test
+    public void turkishLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            BQLSchemaCatalog catalog = new BQLSchemaCatalog();
+            catalog.load("CREATE TABLE ITEMS (ID int PRIMARY KEY, TITLE varchar(20), KEY IDX_TITLE (TITLE))");
+            assertEquals("ITEMS", catalog.getTable(null, "items").getName());
+            assertEquals("ITEMS", catalog.getTable(null, "Items").getName());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void reorderPredicates() throws BQLException {
+        BQLSchemaCatalog catalog = new BQLSchemaCatalog();
+        catalog.load(DDL);
+
+        assertOutput(catalog, "SELECT `id` FROM `orders` WHERE `user_id` = 1 AND `day` > 2 AND `status` = 3",
+                "select id from orders where status = 3 and day > 2 and user_id = 1");
+        assertOutput(catalog, "SELECT `id` FROM `orders` WHERE `no` = 'a' AND `status` = 1",
+                "select id from orders where status = 1 and no = 'a'");
+        assertOutput(catalog, "SELECT `id` FROM `orders` AS `o` WHERE `o`.`user_id` IN (1, 2) AND `o`.`status` = 1",
+                "select id from orders as o where o.status = 1 and o.user_id in (1, 2)");
+        // 只重排AND，OR和没有索引的列保持原样
+        assertOutput(catalog, "SELECT `id` FROM `orders` WHERE `day` = 1 OR `user_id` = 2",
+                "select id from orders where day = 1 or user_id = 2");
+        assertOutput(catalog, "SELECT `id` FROM `orders` WHERE `day` = 1 AND `no` != 'a'",
+                "select id from orders where day = 1 and no != 'a'");
+        assertOutput(catalog, "SELECT `id` FROM `other` WHERE `status` = 3 AND `user_id` = 1",
+                "select id from other where status = 3 and user_id = 1");
+    }
+
+    @Test
+    public void boundOptionsFollowOrder() throws BQLException {
+        BQLSchemaCatalog catalog = new BQLSchemaCatalog();
+        catalog.load(DDL);
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("status", 3);
+        options.put("day", 20240101);
+        options.put("uid", 7L);
+
+        BQLCompiler compiler = compile(catalog,
+                "update orders set status = :status where day = :day and user_id = :uid", options);
+        assertEquals("UPDATE `orders` SET `status` = ? WHERE `user_id` = ? AND `day` = ?", compiler.output());
+
+        List<Object> values = new ArrayList<Object>();
+        for (BQLOption option : compiler.getOptions()) {
+            values.add(option.getValue());
+        }
+        assertEquals(Arrays.<Object>asList(3, 7L, 20240101), values);
+    }
+
+    @Test
+    public void indexHints() throws BQLException {
+        BQLSchemaCatalog catalog = new BQLSchemaCatalog();
+        catalog.load(DDL);
+        catalog.addIndexHint(BQLIndexHint.force("orders", "idx_user_day").alias("o").columns("user_id", "day"));
+        catalog.addIndexHint(BQLIndexHint.use("orders", "status").columns("status"));
+        catalog.addIndexHint(BQLIndexHint.force("orders", "missing").columns("no"));
+
+        assertOutput(catalog, "SELECT `id` FROM `orders` AS `o` FORCE INDEX (`idx_user_day`) "
+                        + "WHERE `o`.`user_id` = 1 AND `o`.`day` > 2",
+                "select id from orders as o where o.day > 2 and o.user_id = 1");
+        assertOutput(catalog, "SELECT `id` FROM `orders` USE INDEX (`status`) WHERE `user_id` = 1 AND `status` = 2",
+                "select id from orders where status = 2 and user_id = 1");
+        // 别名不同、条件在OR中、索引不存在时都不加提示
+        assertOutput(catalog, "SELECT `id` FROM `orders` AS `x` WHERE `x`.`user_id` = 1 AND `x`.`day` > 2",
+                "select id from orders as x where x.day > 2 and x.user_id = 1");
+        assertOutput(catalog, "SELECT `id` FROM `orders` WHERE `status` = 2 OR `day` = 1",
+                "select id from orders where status = 2 or day = 1");
+        assertOutput(catalog, "SELECT `id` FROM `orders` WHERE `no` = 'a'",
+                "select id from orders where no = 'a'");
+    }
+
+    @Test
+    public void customTable() throws BQLException {
+        BQLIndex index = new BQLIndex();
+        index.setName("idx_b_a");
+        index.setColumns(Arrays.asList("b", "a"));
+
+        BQLTableSchema table = new BQLTableSchema();
+        table.setName("t");
+        table.setColumns(Arrays.asList("a", "b"));
+        table.setIndexes(Arrays.asList(index));
+
+        BQLSchemaCatalog catalog = new BQLSchemaCatalog();
+        catalog.setTable(table);
+        assertOutput(catalog, "SELECT `id` FROM `t` WHERE `b` BETWEEN 1 AND 2 AND `a` = 1",
+                "select id from t where a = 1 and b between 1 and 2");
+    }
+
+    private static List<String> indexNames(BQLTableSchema table) {
+        List<String> names = new ArrayList<String>();
+        for (BQLIndex index : table.getIndexes()) {
+            names.add(index.getName());
+        }
+        return names;
+    }
+
+    private static void assertOutput(BQLSchemaCatalog catalog, String expected, String bql) throws BQLException {
+        assertEquals(expected, compile(catalog, bql, null).output());
+    }
+
+    private static BQLCompiler compile(BQLSchemaCatalog catalog, String bql, Map<String, Object> options)
+            throws BQLException {
+        BQLOptimizerConfig config = new BQLOptimizerConfig();
+        config.setSchemaCatalog(catalog);
+
+        BQLCompiler compiler = new BQLCompiler();
+        compiler.setOptimizerConfig(config);
+        compiler.compile(bql);
+        compiler.optimize(options);
+        compiler.generate(new SQLGenerator(options));
+        return compiler;
+    }
+}
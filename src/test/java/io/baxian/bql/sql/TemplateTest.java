@@ -0,0 +1,168 @@
+package io.baxian.bql.sql;
+
+import io.baxian.bql.BQLException;
+import io.baxian.bql.BQLOption;
+import io.baxian.bql.BQLPlan;
+import io.baxian.bql.BQLRenderCache;
+import io.baxian.bql.PreparedBQL;
+import io.baxian.bql.RenderedBQL;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TemplateTest {
+
+    private static final List<String> STATEMENTS = Arrays.asList(
+            "select id from users partition (p0, :p) where id in (1, :ids) and (name = :name or age > :age) limit :offset, :count",
+            "select id from users where id not in (:ids) and not (name = :name) and age between :age and :count",
+            "select id from users where a = :a + :b * 2 and c is :p and d is not :name order by id desc",
+            "delete from users where id in (:ids) and name = :name limit :count",
+            "update users set name = :name, age = age + :age where id in (:ids)",
+            "insert into users (id, name) values (:id, :name), (:ids, 1) on duplicate key update name = :name, age = :age");
+
+    @Test
+    public void sameListLengthsShareTemplate() throws BQLException {
+        BQLPlan plan = BQLPlan.compile("select id from users where id in (:ids) and name = :name limit :count");
+        BQLRenderCache cache = new BQLRenderCache(16, true);
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("ids", Arrays.asList(1, 2));
+        options.put("name", "a");
+        options.put("count", 10);
+        cache.render(plan, options);
+
+        options.put("ids", Arrays.asList(3, 4, 5));
+        options.put("name", "b");
+        RenderedBQL rendered = cache.render(plan, options);
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals("SELECT `id` FROM `users` WHERE `id` IN (?, ?, ?) AND `name` = ? LIMIT ?", rendered.getOutput());
+        assertEquals(Arrays.asList("ids=3", "ids=4", "ids=5", "name=b", "count=10"), describe(rendered.getOptions()));
+    }
+
+    @Test
+    public void appendToReusedBuffer() throws BQLException {
+        PreparedBQL prepared = new PreparedBQL(BQLPlan.compile("select id from users where id in (:ids)"),
+                new BQLRenderCache(16, true));
+
+        StringBuilder sql = new StringBuilder();
+        List<BQLOption> values = new ArrayList<BQLOption>();
+        for (int i = 1; i <= 3; ++i) {
+            sql.setLength(0);
+            values.clear();
+            prepared.render(Collections.<String, Object>singletonMap("ids", Collections.nCopies(i, i)), sql, values);
+        }
+
+        assertEquals("SELECT `id` FROM `users` WHERE `id` IN (?, ?, ?)", sql.toString());
+        assertEquals(Arrays.asList("ids=3", "ids=3", "ids=3"), describe(values));
+    }
+
+    @Test
+    public void specializedRenderer() throws BQLException {
+        BQLRenderCache cache = new BQLRenderCache(16, true);
+        cache.setSpecialization(2, 1);
+
+        BQLPlan first = BQLPlan.compile("select id from users where id in (:ids) and name = :name and age > :age");
+        BQLPlan second = BQLPlan.compile("select id from users where name = :name");
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("name", "a");
+        options.put("age", 18);
+        for (int i = 1; i <= 4; ++i) {
+            options.put("ids", Collections.nCopies(i, i));
+            RenderedBQL rendered = cache.render(first, options);
+            cache.render(second, options);
+
+            StringBuilder placeholders = new StringBuilder("?");
+            for (int j = 1; j < i; ++j) {
+                placeholders.append(", ?");
+            }
+            assertEquals("SELECT `id` FROM `users` WHERE `id` IN (" + placeholders + ") AND `name` = ? AND `age` > ?",
+                    rendered.getOutput());
+            assertEquals(i + 2, rendered.getOptions().size());
+            assertEquals("age=18", describe(rendered.getOptions()).get(i + 1));
+        }
+
+        // 超过上限的语句继续用模板渲染
+        assertEquals(1, cache.getRendererCount());
+        assertEquals("SELECT `id` FROM `users` WHERE `name` = ?", cache.render(second, options).getOutput());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getRendererCount());
+    }
+
+    @Test
+    public void sameOutputAsGenerator() throws BQLException {
+        List<Object> values = Arrays.<Object>asList(
+                null, 7, "x", Collections.emptyList(), Arrays.asList(1), Arrays.asList(1, 2, 3),
+                Arrays.asList(1, null), new HashSet<Integer>(Arrays.asList(1, 2)));
+        String[] names = {"p", "ids", "name", "age", "offset", "count", "a", "b", "id"};
+
+        for (String bql : STATEMENTS) {
+            BQLPlan plan = BQLPlan.compile(bql);
+            PreparedBQL expected = new PreparedBQL(plan);
+            BQLRenderCache cache = new BQLRenderCache(64, true);
+            cache.setSpecialization(3, 4);
+            PreparedBQL actual = new PreparedBQL(plan, cache);
+
+            for (int round = 0; round < 200; ++round) {
+                Map<String, Object> options = new HashMap<String, Object>();
+                for (int i = 0; i < names.length; ++i) {
+                    // 按轮次组合出各种参数存在情况，每种情况都会出现多次
+                    int choice = (round * (i + 3) + i * round / 7) % (values.size() + 1);
+                    if (choice < values.size()) {
+                        options.put(names[i], values.get(choice));
+                    }
+                }
+
+                assertSameRender(bql, expected, actual, options);
+            }
+
+            assertTrue(bql, cache.getHitCount() > cache.getMissCount());
+        }
+    }
+
+    private static void assertSameRender(String bql, PreparedBQL expected, PreparedBQL actual,
+                                         Map<String, Object> options) {
+        String expectedOutput;
+        try {
+            RenderedBQL rendered = expected.render(options);
+            expectedOutput = rendered.getOutput() + " " + describe(rendered.getOptions());
+        } catch (BQLException e) {
+            expectedOutput = e.getClass().getSimpleName();
+        }
+
+        String actualOutput;
+        try {
+            RenderedBQL rendered = actual.render(options);
+            actualOutput = rendered.getOutput() + " " + describe(rendered.getOptions());
+
+            StringBuilder sql = new StringBuilder("-- ");
+            List<BQLOption> values = new ArrayList<BQLOption>();
+            actual.render(options, sql, values);
+            assertEquals(bql, "-- " + actualOutput, sql + " " + describe(values));
+        } catch (BQLException e) {
+            actualOutput = e.getClass().getSimpleName();
+        }
+
+        assertEquals(bql + " " + options, expectedOutput, actualOutput);
+    }
+
+    private static List<String> describe(List<BQLOption> options) {
+        List<String> values = new ArrayList<String>();
+        for (BQLOption option : options) {
+            values.add(option.getField() + "=" + option.getValue());
+        }
+        return values;
+    }
+}